@@ -119,6 +119,8 @@ public class AvailableNetworkNotifier {
 
     /** List of SSIDs blocklisted from recommendation. */
     private final Set<String> mBlocklistedSsids = new ArraySet<>();
+    /** Indicates that the blocklist has changed since it was last written to the store. */
+    private boolean mHasNewDataToSerialize = false;
 
     private final WifiContext mContext;
     private final Handler mHandler;
@@ -467,6 +469,7 @@ public class AvailableNetworkNotifier {
     private void addNetworkToBlocklist(String ssid) {
         mBlocklistedSsids.add(ssid);
         mWifiMetrics.setNetworkRecommenderBlocklistSize(mTag, mBlocklistedSsids.size());
+        mHasNewDataToSerialize = true;
         mConfigManager.saveToStore(false /* forceWrite */);
         Log.d(mTag, "Network is added to the network notification blocklist: "
                 + "\"" + ssid + "\"");
@@ -480,6 +483,7 @@ public class AvailableNetworkNotifier {
             return;
         }
         mWifiMetrics.setNetworkRecommenderBlocklistSize(mTag, mBlocklistedSsids.size());
+        mHasNewDataToSerialize = true;
         mConfigManager.saveToStore(false /* forceWrite */);
         Log.d(mTag, "Network is removed from the network notification blocklist: "
                 + "\"" + ssid + "\"");
@@ -546,6 +550,8 @@ public class AvailableNetworkNotifier {
     private class AvailableNetworkNotifierStoreData implements SsidSetStoreData.DataSource {
         @Override
         public Set<String> getSsids() {
+            // Clear the flag after writing to disk.
+            mHasNewDataToSerialize = false;
             return new ArraySet<>(mBlocklistedSsids);
         }
 
@@ -554,6 +560,11 @@ public class AvailableNetworkNotifier {
             mBlocklistedSsids.addAll(ssidList);
             mWifiMetrics.setNetworkRecommenderBlocklistSize(mTag, mBlocklistedSsids.size());
         }
+
+        @Override
+        public boolean hasNewDataToSerialize() {
+            return mHasNewDataToSerialize;
+        }
     }
 
     private class NotificationEnabledSettingObserver extends ContentObserver {
@@ -23,9 +23,11 @@ import android.os.UserManager;
 
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 public class ConfigurationMap {
@@ -34,11 +36,21 @@ public class ConfigurationMap {
     private final Map<Integer, WifiConfiguration> mPerIDForCurrentUser = new HashMap<>();
     private final Map<ScanResultMatchInfo, WifiConfiguration>
             mScanResultMatchInfoMapForCurrentUser = new HashMap<>();
+    // Index of the configurations for the current user by profile key, along with the profile key
+    // each of them was indexed with. Profile keys are normally unique, but all the configurations
+    // sharing one are indexed so that removing one of them leaves the others.
+    private final Map<String, List<WifiConfiguration>> mPerProfileKeyForCurrentUser =
+            new HashMap<>();
+    private final Map<Integer, String> mProfileKeyPerIDForCurrentUser = new HashMap<>();
 
     private final UserManager mUserManager;
 
     private int mCurrentUserId = UserHandle.SYSTEM.getIdentifier();
 
+    // Incremented whenever the configurations change, including when the callers report that they
+    // modified them in place.
+    private long mGeneration = 0;
+
     ConfigurationMap(UserManager userManager) {
         mUserManager = userManager;
     }
@@ -49,17 +61,50 @@ public class ConfigurationMap {
         pw.println("mPerIDForCurrentUser=" + mPerIDForCurrentUser);
         pw.println("mScanResultMatchInfoMapForCurrentUser="
                 + mScanResultMatchInfoMapForCurrentUser);
+        pw.println("mPerProfileKeyForCurrentUser=" + mPerProfileKeyForCurrentUser.keySet());
         pw.println("mCurrentUserId=" + mCurrentUserId);
+        pw.println("mGeneration=" + mGeneration);
+    }
+
+    /**
+     * Returns the generation of the configurations. Any state derived from the configurations is
+     * up to date as long as the generation did not change since it was derived.
+     */
+    public long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Reports that configurations returned by this map were modified in place by the caller.
+     */
+    public void onConfigurationsModifiedInPlace() {
+        mGeneration++;
+    }
+
+    /**
+     * Reports that the profile key of a configuration returned by this map was changed in place by
+     * the caller.
+     */
+    public void onProfileKeyChanged(WifiConfiguration config) {
+        mGeneration++;
+        if (mPerIDForCurrentUser.get(config.networkId) == config) {
+            removeFromProfileKeyIndex(config.networkId);
+            addToProfileKeyIndex(config);
+        }
     }
 
     // RW methods:
     public WifiConfiguration put(WifiConfiguration config) {
+        mGeneration++;
         final WifiConfiguration current = mPerID.put(config.networkId, config);
         final UserHandle currentUser = UserHandle.of(mCurrentUserId);
         final UserHandle creatorUser = UserHandle.getUserHandleForUid(config.creatorUid);
         if (config.shared || currentUser.equals(creatorUser)
                 || mUserManager.isSameProfileGroup(currentUser, creatorUser)) {
-            mPerIDForCurrentUser.put(config.networkId, config);
+            if (mPerIDForCurrentUser.put(config.networkId, config) != null) {
+                removeFromProfileKeyIndex(config.networkId);
+            }
+            addToProfileKeyIndex(config);
             // TODO (b/142035508): Add a more generic fix. This cache should only hold saved
             // networks.
             if (!config.fromWifiNetworkSpecifier && !config.fromWifiNetworkSuggestion
@@ -76,8 +121,10 @@ public class ConfigurationMap {
         if (config == null) {
             return null;
         }
+        mGeneration++;
 
         mPerIDForCurrentUser.remove(netID);
+        removeFromProfileKeyIndex(netID);
 
         Iterator<Map.Entry<ScanResultMatchInfo, WifiConfiguration>> scanResultMatchInfoEntries =
                 mScanResultMatchInfoMapForCurrentUser.entrySet().iterator();
@@ -91,9 +138,12 @@ public class ConfigurationMap {
     }
 
     public void clear() {
+        mGeneration++;
         mPerID.clear();
         mPerIDForCurrentUser.clear();
         mScanResultMatchInfoMapForCurrentUser.clear();
+        mPerProfileKeyForCurrentUser.clear();
+        mProfileKeyPerIDForCurrentUser.clear();
     }
 
     /**
@@ -102,10 +152,12 @@ public class ConfigurationMap {
      * @param userId the id of the new foreground user
      */
     public void setNewUser(int userId) {
+        mGeneration++;
         mCurrentUserId = userId;
     }
 
-    // RO methods:
+    // RO methods, the callers modifying the configurations they return in place must report it
+    // with onConfigurationsModifiedInPlace():
     public WifiConfiguration getForAllUsers(int netid) {
         return mPerID.get(netid);
     }
@@ -122,16 +174,34 @@ public class ConfigurationMap {
         return mPerIDForCurrentUser.size();
     }
 
+    /**
+     * Retrieves a configuration of the current user by profile key. The callers changing the
+     * profile key of a configuration in place must report it with onProfileKeyChanged().
+     */
     public WifiConfiguration getByConfigKeyForCurrentUser(String key) {
         if (key == null) {
             return null;
         }
-        for (WifiConfiguration config : mPerIDForCurrentUser.values()) {
-            if (config.getProfileKey().equals(key)) {
-                return config;
-            }
+        List<WifiConfiguration> configs = mPerProfileKeyForCurrentUser.get(key);
+        return configs == null ? null : configs.get(0);
+    }
+
+    private void addToProfileKeyIndex(WifiConfiguration config) {
+        String key = config.getProfileKey();
+        mProfileKeyPerIDForCurrentUser.put(config.networkId, key);
+        mPerProfileKeyForCurrentUser.computeIfAbsent(key, k -> new ArrayList<>(1)).add(config);
+    }
+
+    private void removeFromProfileKeyIndex(int netID) {
+        String key = mProfileKeyPerIDForCurrentUser.remove(netID);
+        if (key == null) {
+            return;
+        }
+        List<WifiConfiguration> configs = mPerProfileKeyForCurrentUser.get(key);
+        configs.removeIf(c -> c.networkId == netID);
+        if (configs.isEmpty()) {
+            mPerProfileKeyForCurrentUser.remove(key);
         }
-        return null;
     }
 
     /**
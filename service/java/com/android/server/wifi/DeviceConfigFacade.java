@@ -147,6 +147,8 @@ public class DeviceConfigFacade {
     // Maximum traffic stats threshold for link bandwidth estimator
     static final int DEFAULT_TRAFFIC_STATS_THRESHOLD_MAX_KB = 8000;
     static final int DEFAULT_BANDWIDTH_ESTIMATOR_TIME_CONSTANT_LARGE_SEC = 6;
+    // Default maximum number of entries in the Passpoint ANQP cache
+    public static final int DEFAULT_ANQP_CACHE_MAX_SIZE = 1000;
     // Cached values of fields updated via updateDeviceConfigFlags()
     private boolean mIsAbnormalConnectionBugreportEnabled;
     private int mAbnormalConnectionDurationMs;
@@ -204,6 +206,7 @@ public class DeviceConfigFacade {
     private boolean mAllowEnhancedMacRandomizationOnOpenSsids;
     private int mTrafficStatsThresholdMaxKbyte;
     private int mBandwidthEstimatorLargeTimeConstantSec;
+    private int mAnqpCacheMaxSize;
 
     public DeviceConfigFacade(Context context, Handler handler, WifiMetrics wifiMetrics) {
         mContext = context;
@@ -375,6 +378,8 @@ public class DeviceConfigFacade {
         mBandwidthEstimatorLargeTimeConstantSec = DeviceConfig.getInt(NAMESPACE,
                 "bandwidth_estimator_time_constant_large_sec",
                 DEFAULT_BANDWIDTH_ESTIMATOR_TIME_CONSTANT_LARGE_SEC);
+        mAnqpCacheMaxSize = DeviceConfig.getInt(NAMESPACE, "anqp_cache_max_size",
+                DEFAULT_ANQP_CACHE_MAX_SIZE);
 
     }
 
@@ -791,4 +796,11 @@ public class DeviceConfigFacade {
         return mBandwidthEstimatorLargeTimeConstantSec;
     }
 
+    /**
+     * Gets the maximum number of entries in the Passpoint ANQP cache
+     */
+    public int getAnqpCacheMaxSize() {
+        return mAnqpCacheMaxSize;
+    }
+
 }
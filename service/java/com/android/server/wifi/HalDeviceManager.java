@@ -737,6 +737,7 @@ public class HalDeviceManager {
     private class WifiChipInfo {
         public IWifiChip chip;
         public int chipId;
+        public StaticChipInfo staticChipInfo;
         public ArrayList<IWifiChip.ChipMode> availableModes;
         public boolean currentModeIdValid;
         public int currentModeId;
@@ -799,6 +800,7 @@ public class HalDeviceManager {
     }
 
     private void teardownInternal() {
+        mStaticChipInfos.clear();
         managerStatusListenerDispatch();
         dispatchAllDestroyedListeners();
 
@@ -1075,6 +1077,100 @@ public class HalDeviceManager {
     @Nullable
     private WifiChipInfo[] mCachedWifiChipInfos = null;
 
+    /**
+     * Information about a chip which doesn't change while the HAL is up: its modes and the iface
+     * combinations of each mode once expanded. Its capabilities are kept as well, but they can
+     * depend on the interfaces of the chip, so they are retrieved again once an interface is
+     * created or removed.
+     */
+    private class StaticChipInfo {
+        public ArrayList<IWifiChip.ChipMode> availableModes;
+        // CHIP_CAPABILITY_UNINITIALIZED if the capabilities need to be retrieved.
+        public long chipCapabilities = CHIP_CAPABILITY_UNINITIALIZED;
+        // Whether the HAL is older than v1.5, so that the capabilities can't be retrieved.
+        public boolean chipCapabilitiesUnsupported = false;
+        // Expanded iface combinations of each chip mode, keyed by chip mode ID.
+        public SparseArray<int[][]> expandedIfaceCombos = new SparseArray<>();
+    }
+
+    /*
+     * Static chip information keyed by chip ID, so that it isn't retrieved from the HAL and
+     * expanded again on every iface request. Cleared when the HAL goes down and whenever the chip
+     * is reconfigured. The chip capabilities are invalidated whenever an iface is created or
+     * removed.
+     */
+    private final SparseArray<StaticChipInfo> mStaticChipInfos = new SparseArray<>();
+    private long mNumHalCallsSaved = 0;
+
+    /**
+     * Get the static information about the chip with the given ID, from the HAL if it is not
+     * cached yet.
+     *
+     * @return the static chip info, or null on error
+     */
+    private StaticChipInfo getStaticChipInfo(int chipId, IWifiChip chip) throws RemoteException {
+        StaticChipInfo staticChipInfo = mStaticChipInfos.get(chipId);
+        if (staticChipInfo == null) {
+            staticChipInfo = getStaticChipInfoFromHal(chip);
+            if (staticChipInfo == null) {
+                return null;
+            }
+            mStaticChipInfos.put(chipId, staticChipInfo);
+        } else {
+            mNumHalCallsSaved++;
+        }
+
+        if (staticChipInfo.chipCapabilitiesUnsupported
+                || staticChipInfo.chipCapabilities != CHIP_CAPABILITY_UNINITIALIZED) {
+            mNumHalCallsSaved++;
+            return staticChipInfo;
+        }
+        android.hardware.wifi.V1_5.IWifiChip chipV15 = getWifiChipForV1_5Mockable(chip);
+        if (chipV15 == null) {
+            // The capabilities stay uninitialized, without checking the HAL version again.
+            staticChipInfo.chipCapabilitiesUnsupported = true;
+        } else {
+            // Capabilities which couldn't be retrieved stay uninitialized, so that they are
+            // retrieved again on the next query.
+            staticChipInfo.chipCapabilities = getChipCapabilitiesInternal(chipV15);
+        }
+        return staticChipInfo;
+    }
+
+    /**
+     * Retrieve the available modes of the chip from the HAL.
+     *
+     * @return the static chip info, without the chip capabilities, or null on error
+     */
+    private StaticChipInfo getStaticChipInfoFromHal(IWifiChip chip) throws RemoteException {
+        Mutable<Boolean> statusOk = new Mutable<>(false);
+        Mutable<ArrayList<IWifiChip.ChipMode>> availableModesResp = new Mutable<>();
+        chip.getAvailableModes((WifiStatus status, ArrayList<IWifiChip.ChipMode> modes) -> {
+            statusOk.value = status.code == WifiStatusCode.SUCCESS;
+            if (statusOk.value) {
+                availableModesResp.value = modes;
+            } else {
+                Log.e(TAG, "getAvailableModes failed: " + statusString(status));
+            }
+        });
+        if (!statusOk.value) {
+            return null;
+        }
+
+        StaticChipInfo staticChipInfo = new StaticChipInfo();
+        staticChipInfo.availableModes = availableModesResp.value;
+        return staticChipInfo;
+    }
+
+    /**
+     * Invalidate the cached capabilities of all the chips, after an iface was created or removed.
+     */
+    private void invalidateChipCapabilities() {
+        for (int i = 0; i < mStaticChipInfos.size(); i++) {
+            mStaticChipInfos.valueAt(i).chipCapabilities = CHIP_CAPABILITY_UNINITIALIZED;
+        }
+    }
+
     /**
      * Get current information about all the chips in the system: modes, current mode (if any), and
      * any existing interfaces.
@@ -1144,17 +1240,8 @@ public class HalDeviceManager {
                         return null;
                     }
 
-                    Mutable<ArrayList<IWifiChip.ChipMode>> availableModesResp = new Mutable<>();
-                    chipResp.value.getAvailableModes(
-                            (WifiStatus status, ArrayList<IWifiChip.ChipMode> modes) -> {
-                                statusOk.value = status.code == WifiStatusCode.SUCCESS;
-                                if (statusOk.value) {
-                                    availableModesResp.value = modes;
-                                } else {
-                                    Log.e(TAG, "getAvailableModes failed: " + statusString(status));
-                                }
-                            });
-                    if (!statusOk.value) {
+                    StaticChipInfo staticChipInfo = getStaticChipInfo(chipId, chipResp.value);
+                    if (staticChipInfo == null) {
                         return null;
                     }
 
@@ -1175,9 +1262,6 @@ public class HalDeviceManager {
                         return null;
                     }
 
-                    Mutable<Long> chipCapabilities = new Mutable<>(0L);
-                    chipCapabilities.value = getChipCapabilities(chipResp.value);
-
                     Mutable<ArrayList<String>> ifaceNamesResp = new Mutable<>();
                     Mutable<Integer> ifaceIndex = new Mutable<>(0);
 
@@ -1317,10 +1401,11 @@ public class HalDeviceManager {
 
                     chipInfo.chip = chipResp.value;
                     chipInfo.chipId = chipId;
-                    chipInfo.availableModes = availableModesResp.value;
+                    chipInfo.staticChipInfo = staticChipInfo;
+                    chipInfo.availableModes = staticChipInfo.availableModes;
                     chipInfo.currentModeIdValid = currentModeValidResp.value;
                     chipInfo.currentModeId = currentModeResp.value;
-                    chipInfo.chipCapabilities = chipCapabilities.value;
+                    chipInfo.chipCapabilities = staticChipInfo.chipCapabilities;
                     chipInfo.ifaces[IfaceType.STA] = staIfaces;
                     chipInfo.ifaces[IfaceType.AP] = apIfaces;
                     chipInfo.ifaces[IfaceType.P2P] = p2pIfaces;
@@ -1665,23 +1750,14 @@ public class HalDeviceManager {
             for (WifiChipInfo chipInfo: chipInfos) {
                 if (!isChipCapabilitiesSupported(chipInfo, requiredChipCapabilities)) continue;
                 for (IWifiChip.ChipMode chipMode: chipInfo.availableModes) {
-                    for (IWifiChip.ChipIfaceCombination chipIfaceCombo : chipMode
-                            .availableCombinations) {
-                        int[][] expandedIfaceCombos = expandIfaceCombos(chipIfaceCombo);
-                        if (VDBG) {
-                            Log.d(TAG, chipIfaceCombo + " expands to "
-                                    + Arrays.deepToString(expandedIfaceCombos));
-                        }
-
-                        for (int[] expandedIfaceCombo: expandedIfaceCombos) {
-                            IfaceCreationData currentProposal = canIfaceComboSupportRequest(
-                                    chipInfo, chipMode, expandedIfaceCombo, targetHalIfaceType,
-                                    requestorWs);
-                            if (compareIfaceCreationData(currentProposal,
-                                    bestIfaceCreationProposal)) {
-                                if (VDBG) Log.d(TAG, "new proposal accepted");
-                                bestIfaceCreationProposal = currentProposal;
-                            }
+                    for (int[] expandedIfaceCombo: getExpandedIfaceCombos(chipInfo, chipMode)) {
+                        IfaceCreationData currentProposal = canIfaceComboSupportRequest(
+                                chipInfo, chipMode, expandedIfaceCombo, targetHalIfaceType,
+                                requestorWs);
+                        if (compareIfaceCreationData(currentProposal,
+                                bestIfaceCreationProposal)) {
+                            if (VDBG) Log.d(TAG, "new proposal accepted");
+                            bestIfaceCreationProposal = currentProposal;
                         }
                     }
                 }
@@ -1738,19 +1814,10 @@ public class HalDeviceManager {
         for (WifiChipInfo chipInfo: chipInfos) {
             if (!isChipCapabilitiesSupported(chipInfo, requiredChipCapabilities)) continue;
             for (IWifiChip.ChipMode chipMode: chipInfo.availableModes) {
-                for (IWifiChip.ChipIfaceCombination chipIfaceCombo : chipMode
-                        .availableCombinations) {
-                    int[][] expandedIfaceCombos = expandIfaceCombos(chipIfaceCombo);
-                    if (VDBG) {
-                        Log.d(TAG, chipIfaceCombo + " expands to "
-                                + Arrays.deepToString(expandedIfaceCombos));
-                    }
-
-                    for (int[] expandedIfaceCombo: expandedIfaceCombos) {
-                        if (canIfaceComboSupportRequest(chipInfo, chipMode, expandedIfaceCombo,
-                                ifaceType, requestorWs) != null) {
-                            return true;
-                        }
+                for (int[] expandedIfaceCombo: getExpandedIfaceCombos(chipInfo, chipMode)) {
+                    if (canIfaceComboSupportRequest(chipInfo, chipMode, expandedIfaceCombo,
+                            ifaceType, requestorWs) != null) {
+                        return true;
                     }
                 }
             }
@@ -1765,9 +1832,8 @@ public class HalDeviceManager {
      *
      * Returns [# of combinations][4 (IfaceType)]
      *
-     * Note: there could be duplicates - allow (inefficient but ...).
-     * TODO: optimize by using a Set as opposed to a []: will remove duplicates. Will need to
-     * provide correct hashes.
+     * Note: there could be duplicates - they are removed by
+     * {@link #getExpandedIfaceCombos(WifiChipInfo, IWifiChip.ChipMode)}.
      */
     private int[][] expandIfaceCombos(IWifiChip.ChipIfaceCombination chipIfaceCombo) {
         int numOfCombos = 1;
@@ -1792,6 +1858,43 @@ public class HalDeviceManager {
         return expandedIfaceCombos;
     }
 
+    /**
+     * Returns all the iface combinations of the chip mode, expanded by
+     * {@link #expandIfaceCombos(IWifiChip.ChipIfaceCombination)} and without duplicates, in the
+     * order of the combinations of the mode.
+     *
+     * The expansion only depends on the static chip info, so it is done once per chip mode.
+     */
+    private int[][] getExpandedIfaceCombos(WifiChipInfo chipInfo, IWifiChip.ChipMode chipMode) {
+        int[][] expandedIfaceCombos = chipInfo.staticChipInfo.expandedIfaceCombos.get(chipMode.id);
+        if (expandedIfaceCombos != null) {
+            return expandedIfaceCombos;
+        }
+
+        List<int[]> uniqueIfaceCombos = new ArrayList<>();
+        for (IWifiChip.ChipIfaceCombination chipIfaceCombo : chipMode.availableCombinations) {
+            int[][] ifaceCombos = expandIfaceCombos(chipIfaceCombo);
+            if (VDBG) {
+                Log.d(TAG, chipIfaceCombo + " expands to " + Arrays.deepToString(ifaceCombos));
+            }
+            for (int[] ifaceCombo : ifaceCombos) {
+                boolean isDuplicate = false;
+                for (int[] uniqueIfaceCombo : uniqueIfaceCombos) {
+                    if (Arrays.equals(uniqueIfaceCombo, ifaceCombo)) {
+                        isDuplicate = true;
+                        break;
+                    }
+                }
+                if (!isDuplicate) {
+                    uniqueIfaceCombos.add(ifaceCombo);
+                }
+            }
+        }
+        expandedIfaceCombos = uniqueIfaceCombos.toArray(new int[0][]);
+        chipInfo.staticChipInfo.expandedIfaceCombos.put(chipMode.id, expandedIfaceCombos);
+        return expandedIfaceCombos;
+    }
+
     private class IfaceCreationData {
         public WifiChipInfo chipInfo;
         public int chipModeId;
@@ -2212,19 +2315,10 @@ public class HalDeviceManager {
         for (WifiChipInfo chipInfo: chipInfos) {
             if (!isChipCapabilitiesSupported(chipInfo, requiredChipCapabilities)) continue;
             for (IWifiChip.ChipMode chipMode: chipInfo.availableModes) {
-                for (IWifiChip.ChipIfaceCombination chipIfaceCombo
-                        : chipMode.availableCombinations) {
-                    int[][] expandedIfaceCombos = expandIfaceCombos(chipIfaceCombo);
-                    if (VDBG) {
-                        Log.d(TAG, chipIfaceCombo + " expands to "
-                                + Arrays.deepToString(expandedIfaceCombos));
-                    }
-
-                    for (int[] expandedIfaceCombo: expandedIfaceCombos) {
-                        if (canIfaceComboSupportRequestedIfaceCombo(
-                                expandedIfaceCombo, ifaceCombo)) {
-                            return true;
-                        }
+                for (int[] expandedIfaceCombo: getExpandedIfaceCombos(chipInfo, chipMode)) {
+                    if (canIfaceComboSupportRequestedIfaceCombo(
+                            expandedIfaceCombo, ifaceCombo)) {
+                        return true;
                     }
                 }
             }
@@ -2267,6 +2361,7 @@ public class HalDeviceManager {
 
                     WifiStatus status = ifaceCreationData.chipInfo.chip.configureChip(
                             ifaceCreationData.chipModeId);
+                    mStaticChipInfos.remove(ifaceCreationData.chipInfo.chipId);
                     updateRttControllerOnModeChange();
                     if (status.code != WifiStatusCode.SUCCESS) {
                         Log.e(TAG, "executeChipReconfiguration: configureChip error: "
@@ -2328,6 +2423,7 @@ public class HalDeviceManager {
                                 });
                         break;
                 }
+                invalidateChipCapabilities();
 
                 if (statusResp.value.code != WifiStatusCode.SUCCESS) {
                     Log.e(TAG, "executeChipReconfiguration: failed to create interface"
@@ -2396,6 +2492,7 @@ public class HalDeviceManager {
 
             // dispatch listeners no matter what status
             dispatchDestroyedListeners(name, type);
+            invalidateChipCapabilities();
 
             if (status != null && status.code == WifiStatusCode.SUCCESS) {
                 return true;
@@ -2721,19 +2818,7 @@ public class HalDeviceManager {
         if (wifiChip == null) return featureSet;
 
         try {
-            final Mutable<Long> feat = new Mutable<>(CHIP_CAPABILITY_UNINITIALIZED);
-            synchronized (mLock) {
-                android.hardware.wifi.V1_5.IWifiChip iWifiChipV15 =
-                        getWifiChipForV1_5Mockable(wifiChip);
-                // HAL newer than v1.5 support getting capabilities before creating an interface.
-                if (iWifiChipV15 != null) {
-                    iWifiChipV15.getCapabilities_1_5((status, capabilities) -> {
-                        if (!ok("getCapabilities_1_5", status)) return;
-                        feat.value = (long) capabilities;
-                    });
-                }
-            }
-            featureSet = feat.value;
+            featureSet = getChipCapabilitiesInternal(wifiChip);
         } catch (RemoteException e) {
             Log.e(TAG, "Exception on getCapabilities: " + e);
             return 0;
@@ -2741,6 +2826,50 @@ public class HalDeviceManager {
         return featureSet;
     }
 
+    /**
+     * Get the chip capabilities from a v1.5 HAL.
+     *
+     * @return bitmask defined by HAL interface, or CHIP_CAPABILITY_UNINITIALIZED if the HAL is
+     * older than v1.5 or the call failed
+     */
+    private long getChipCapabilitiesInternal(@NonNull IWifiChip wifiChip) throws RemoteException {
+        synchronized (mLock) {
+            android.hardware.wifi.V1_5.IWifiChip iWifiChipV15 =
+                    getWifiChipForV1_5Mockable(wifiChip);
+            // HAL newer than v1.5 support getting capabilities before creating an interface.
+            if (iWifiChipV15 == null) {
+                return CHIP_CAPABILITY_UNINITIALIZED;
+            }
+            return getChipCapabilitiesInternal(iWifiChipV15);
+        }
+    }
+
+    /**
+     * Get the chip capabilities from the given v1.5 chip.
+     *
+     * @return bitmask defined by HAL interface, or CHIP_CAPABILITY_UNINITIALIZED if the call
+     * failed
+     */
+    private long getChipCapabilitiesInternal(
+            @NonNull android.hardware.wifi.V1_5.IWifiChip iWifiChipV15) throws RemoteException {
+        final Mutable<Long> feat = new Mutable<>(CHIP_CAPABILITY_UNINITIALIZED);
+        iWifiChipV15.getCapabilities_1_5((status, capabilities) -> {
+            if (!ok("getCapabilities_1_5", status)) return;
+            feat.value = (long) capabilities;
+        });
+        return feat.value;
+    }
+
+    /**
+     * Returns the number of HAL calls saved by caching the static chip information.
+     */
+    @VisibleForTesting
+    public long getNumHalCallsSaved() {
+        synchronized (mLock) {
+            return mNumHalCallsSaved;
+        }
+    }
+
     /**
      * Dump the internal state of the class.
      */
@@ -2750,6 +2879,7 @@ public class HalDeviceManager {
         pw.println("  mWifi: " + mWifi);
         pw.println("  mManagerStatusListeners: " + mManagerStatusListeners);
         pw.println("  mInterfaceInfoCache: " + mInterfaceInfoCache);
+        pw.println("  mNumHalCallsSaved: " + mNumHalCallsSaved);
         pw.println("  mDebugChipsInfo: " + Arrays.toString(getAllChipInfo()));
     }
 }
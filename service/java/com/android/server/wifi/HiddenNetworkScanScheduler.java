@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import android.annotation.NonNull;
+import android.net.wifi.WifiScanner.ScanSettings.HiddenNetwork;
+import android.util.ArrayMap;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.server.wifi.scanner.WificondScannerImpl;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Selects the hidden networks to probe in each scan, when there are more hidden networks than
+ * the firmware can probe in a single scan.
+ *
+ * The hidden networks are probed in rotation using stride scheduling: each network is weighted
+ * by its priority, and each scan probes the networks which are the furthest behind their share
+ * of probes. So every hidden network is eventually probed, and the networks connected to more
+ * recently and more frequently (per {@link WifiScoreCard}) are probed more often.
+ *
+ * NOTE: This class is not thread safe and should only be used from the main Wifi thread.
+ */
+public class HiddenNetworkScanScheduler {
+    private static final String TAG = "HiddenNetworkScanScheduler";
+
+    /** Maximum number of hidden networks probed by the firmware in a single scan. */
+    @VisibleForTesting
+    public static final int MAX_HIDDEN_NETWORKS_PER_SCAN =
+            WificondScannerImpl.MAX_HIDDEN_NETWORK_IDS_PER_SCAN;
+    /** Number of the most recently connected networks given a higher weight. */
+    @VisibleForTesting
+    public static final int NUM_RECENT_NETWORKS_WITH_BONUS = 4;
+    /** Maximum weight given for the number of connection attempts to a network. */
+    @VisibleForTesting
+    public static final int MAX_CONNECTION_ATTEMPTS_WEIGHT = 8;
+
+    private static class ProbeState {
+        // Virtual time of the network, advanced by the inverse of its weight on each probe.
+        public double pass;
+        public double weight;
+        public int rank;
+        public int numProbes;
+        public long lastProbedScan = -1;
+    }
+
+    private final WifiScoreCard mWifiScoreCard;
+    private final Map<String, ProbeState> mProbeStates = new ArrayMap<>();
+    // Virtual time new hidden networks start at, so that they don't starve the others.
+    private double mVirtualTime = 0;
+    private long mNumScans = 0;
+    private long mNumRotatedScans = 0;
+
+    HiddenNetworkScanScheduler(@NonNull WifiScoreCard wifiScoreCard) {
+        mWifiScoreCard = wifiScoreCard;
+    }
+
+    /**
+     * Select the hidden networks to probe in the next scan.
+     *
+     * @param hiddenNetworks All the hidden networks which can be probed, in order of priority.
+     * @return the hidden networks to probe, at most {@link #MAX_HIDDEN_NETWORKS_PER_SCAN}, in
+     * order of priority.
+     */
+    public @NonNull List<HiddenNetwork> selectHiddenNetworksForScan(
+            @NonNull List<HiddenNetwork> hiddenNetworks) {
+        Map<String, HiddenNetwork> candidates = new LinkedHashMap<>();
+        List<ProbeState> candidateStates = new ArrayList<>();
+        for (HiddenNetwork hiddenNetwork : hiddenNetworks) {
+            if (candidates.containsKey(hiddenNetwork.ssid)) continue;
+            candidates.put(hiddenNetwork.ssid, hiddenNetwork);
+            ProbeState state = mProbeStates.get(hiddenNetwork.ssid);
+            if (state == null) {
+                state = new ProbeState();
+                state.pass = mVirtualTime;
+                mProbeStates.put(hiddenNetwork.ssid, state);
+            }
+            state.rank = candidateStates.size();
+            state.weight = getWeight(hiddenNetwork.ssid, state.rank);
+            candidateStates.add(state);
+        }
+        mProbeStates.keySet().retainAll(candidates.keySet());
+
+        List<String> selectedSsids = new ArrayList<>(candidates.keySet());
+        if (selectedSsids.size() > MAX_HIDDEN_NETWORKS_PER_SCAN) {
+            mNumRotatedScans++;
+            selectedSsids.sort(Comparator.comparingDouble(
+                    (String ssid) -> mProbeStates.get(ssid).pass)
+                    .thenComparingInt(ssid -> mProbeStates.get(ssid).rank));
+            selectedSsids = new ArrayList<>(
+                    selectedSsids.subList(0, MAX_HIDDEN_NETWORKS_PER_SCAN));
+            selectedSsids.sort(Comparator.comparingInt(ssid -> mProbeStates.get(ssid).rank));
+        }
+        List<HiddenNetwork> selected = new ArrayList<>();
+        for (String ssid : selectedSsids) {
+            ProbeState state = mProbeStates.get(ssid);
+            state.pass += 1 / state.weight;
+            state.numProbes++;
+            state.lastProbedScan = mNumScans;
+            selected.add(candidates.get(ssid));
+        }
+        mNumScans++;
+        if (!candidateStates.isEmpty()) {
+            mVirtualTime = Double.MAX_VALUE;
+            for (ProbeState state : candidateStates) {
+                mVirtualTime = Math.min(mVirtualTime, state.pass);
+            }
+        }
+        return selected;
+    }
+
+    private double getWeight(String ssid, int rank) {
+        int connectionAttempts = Math.min(mWifiScoreCard.getConnectionAttemptCount(ssid),
+                MAX_CONNECTION_ATTEMPTS_WEIGHT);
+        return 1 + connectionAttempts + Math.max(0, NUM_RECENT_NETWORKS_WITH_BONUS - rank);
+    }
+
+    /**
+     * Fraction of the current hidden networks which were probed at least once.
+     */
+    @VisibleForTesting
+    public double getProbeCoverage() {
+        if (mProbeStates.isEmpty()) return 1;
+        int numProbed = 0;
+        for (ProbeState state : mProbeStates.values()) {
+            if (state.numProbes > 0) numProbed++;
+        }
+        return (double) numProbed / mProbeStates.size();
+    }
+
+    /**
+     * Largest number of scans since any of the current hidden networks was probed.
+     */
+    @VisibleForTesting
+    public long getMaxScansSinceProbed() {
+        long maxScansSinceProbed = 0;
+        for (ProbeState state : mProbeStates.values()) {
+            maxScansSinceProbed = Math.max(maxScansSinceProbed,
+                    mNumScans - 1 - state.lastProbedScan);
+        }
+        return maxScansSinceProbed;
+    }
+
+    /**
+     * Jain's fairness index of the number of probes of the current hidden networks relative to
+     * their weight, between 1 / (number of networks) and 1 when perfectly fair.
+     */
+    @VisibleForTesting
+    public double getFairnessIndex() {
+        double sum = 0;
+        double sumOfSquares = 0;
+        for (ProbeState state : mProbeStates.values()) {
+            double share = state.numProbes / state.weight;
+            sum += share;
+            sumOfSquares += share * share;
+        }
+        if (sumOfSquares == 0) return 1;
+        return sum * sum / (mProbeStates.size() * sumOfSquares);
+    }
+
+    /**
+     * Dump the state of the scheduler.
+     */
+    public void dump(PrintWriter pw) {
+        pw.println("Dump of " + TAG);
+        pw.println(TAG + ": hiddenNetworks=" + mProbeStates.size() + " scans=" + mNumScans
+                + " rotatedScans=" + mNumRotatedScans + " coverage=" + getProbeCoverage()
+                + " maxScansSinceProbed=" + getMaxScansSinceProbed()
+                + " fairness=" + getFairnessIndex());
+    }
+}
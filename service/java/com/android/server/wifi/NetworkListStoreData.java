@@ -67,6 +67,11 @@ public abstract class NetworkListStoreData implements WifiConfigStore.StoreData
      */
     private List<WifiConfiguration> mConfigurations;
 
+    /**
+     * Indicates that the list of configurations has changed since it was last serialized.
+     */
+    private boolean mHasNewDataToSerialize = false;
+
     NetworkListStoreData(Context context) {
         mContext = context;
     }
@@ -76,6 +81,7 @@ public abstract class NetworkListStoreData implements WifiConfigStore.StoreData
             @Nullable WifiConfigStoreEncryptionUtil encryptionUtil)
             throws XmlPullParserException, IOException {
         serializeNetworkList(out, mConfigurations, encryptionUtil);
+        mHasNewDataToSerialize = false;
     }
 
     @Override
@@ -97,8 +103,7 @@ public abstract class NetworkListStoreData implements WifiConfigStore.StoreData
 
     @Override
     public boolean hasNewDataToSerialize() {
-        // always persist.
-        return true;
+        return mHasNewDataToSerialize;
     }
 
     @Override
@@ -106,8 +111,13 @@ public abstract class NetworkListStoreData implements WifiConfigStore.StoreData
         return XML_TAG_SECTION_HEADER_NETWORK_LIST;
     }
 
+    /**
+     * Sets the configurations to be stored to file on the next write.
+     * @param configs
+     */
     public void setConfigurations(List<WifiConfiguration> configs) {
         mConfigurations = configs;
+        mHasNewDataToSerialize = true;
     }
 
     /**
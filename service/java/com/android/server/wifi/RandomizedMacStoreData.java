@@ -41,6 +41,7 @@ public class RandomizedMacStoreData implements WifiConfigStore.StoreData {
     private static final String XML_TAG_MAC_MAP = "MacMapEntry";
 
     private Map<String, String> mMacMapping;
+    private boolean mHasNewDataToSerialize = false;
 
     RandomizedMacStoreData() {}
 
@@ -51,6 +52,7 @@ public class RandomizedMacStoreData implements WifiConfigStore.StoreData {
         if (mMacMapping != null) {
             XmlUtil.writeNextValue(out, XML_TAG_MAC_MAP, mMacMapping);
         }
+        mHasNewDataToSerialize = false;
     }
 
     @Override
@@ -88,8 +90,7 @@ public class RandomizedMacStoreData implements WifiConfigStore.StoreData {
 
     @Override
     public boolean hasNewDataToSerialize() {
-        // always persist.
-        return true;
+        return mHasNewDataToSerialize;
     }
 
     @Override
@@ -116,11 +117,12 @@ public class RandomizedMacStoreData implements WifiConfigStore.StoreData {
     }
 
     /**
-     * Sets the data to be stored to file.
+     * Sets the data to be stored to file on the next write.
      * @param macMapping
      */
     public void setMacMapping(Map<String, String> macMapping) {
         mMacMapping = macMapping;
+        mHasNewDataToSerialize = true;
     }
 }
 
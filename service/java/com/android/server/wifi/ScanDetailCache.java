@@ -22,31 +22,69 @@ import android.net.wifi.WifiConfiguration;
 
 import com.android.server.wifi.hotspot2.NetworkDetail;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.TreeSet;
 
 /**
  * Maps BSSIDs to their individual ScanDetails for a given WifiConfiguration.
+ *
+ * Alongside the BSSID map, the cache maintains an index of its entries ordered by descending
+ * timestamp, then descending RSSI, so that the most recent scan result is available without
+ * sorting the cache and trimming only touches the entries being evicted.
  */
 public class ScanDetailCache {
 
     private static final String TAG = "ScanDetailCache";
     private static final boolean DBG = false;
 
+    /**
+     * Position of a ScanDetail in {@link #mRecencyIndex}. The timestamp and RSSI are captured when
+     * the ScanDetail is put in the cache, so that in place updates of the ScanResult can't
+     * corrupt the index. ScanDetails updated in place must be put again to be re-indexed.
+     */
+    private static class IndexKey {
+        final String mBssid;
+        final long mSeen;
+        final int mLevel;
+        final ScanDetail mScanDetail;
+
+        IndexKey(ScanDetail scanDetail) {
+            ScanResult scanResult = scanDetail.getScanResult();
+            mBssid = scanDetail.getBSSIDString();
+            mSeen = scanResult.seen;
+            mLevel = scanResult.level;
+            mScanDetail = scanDetail;
+        }
+    }
+
+    /**
+     * Most recent first. Ties are broken by descending RSSI, then by BSSID.
+     */
+    private static final Comparator<IndexKey> RECENCY_COMPARATOR = (a, b) -> {
+        if (a.mSeen != b.mSeen) {
+            return a.mSeen > b.mSeen ? -1 : 1;
+        }
+        if (a.mLevel != b.mLevel) {
+            return a.mLevel > b.mLevel ? -1 : 1;
+        }
+        return a.mBssid.compareTo(b.mBssid);
+    };
+
     private final WifiConfiguration mConfig;
     private final int mMaxSize;
     private final int mTrimSize;
     private final HashMap<String, ScanDetail> mMap;
+    private final HashMap<String, IndexKey> mIndexKeys;
+    private final TreeSet<IndexKey> mRecencyIndex;
 
     /**
      * Scan Detail cache associated with each configured network.
      *
      * The cache size is trimmed down to |trimSize| once it crosses the provided |maxSize|.
-     * Since this operation is relatively expensive, ensure that |maxSize| and |trimSize| are not
-     * too close to each other. |trimSize| should always be <= |maxSize|.
+     * |trimSize| should always be <= |maxSize|.
      *
      * @param config   WifiConfiguration object corresponding to the network.
      * @param maxSize  Max size desired for the cache.
@@ -56,16 +94,30 @@ public class ScanDetailCache {
         mConfig = config;
         mMaxSize = maxSize;
         mTrimSize = trimSize;
-        mMap = new HashMap(16, 0.75f);
+        mMap = new HashMap<>(16, 0.75f);
+        mIndexKeys = new HashMap<>(16, 0.75f);
+        mRecencyIndex = new TreeSet<>(RECENCY_COMPARATOR);
     }
 
+    /**
+     * Add or replace the ScanDetail of its BSSID. This must also be called after updating the
+     * timestamp or RSSI of a ScanDetail already in the cache, to re-index it.
+     */
     void put(ScanDetail scanDetail) {
+        String bssid = scanDetail.getBSSIDString();
         // First check if we have reached |maxSize|. if yes, trim it down to |trimSize|.
-        if (mMap.size() >= mMaxSize) {
+        if (mMap.size() >= mMaxSize && !mMap.containsKey(bssid)) {
             trim();
         }
 
-        mMap.put(scanDetail.getBSSIDString(), scanDetail);
+        mMap.put(bssid, scanDetail);
+        IndexKey oldKey = mIndexKeys.remove(bssid);
+        if (oldKey != null) {
+            mRecencyIndex.remove(oldKey);
+        }
+        IndexKey key = new IndexKey(scanDetail);
+        mIndexKeys.put(bssid, key);
+        mRecencyIndex.add(key);
     }
 
     /**
@@ -91,6 +143,10 @@ public class ScanDetailCache {
 
     void remove(@NonNull String bssid) {
         mMap.remove(bssid);
+        IndexKey key = mIndexKeys.remove(bssid);
+        if (key != null) {
+            mRecencyIndex.remove(key);
+        }
     }
 
     int size() {
@@ -102,43 +158,22 @@ public class ScanDetailCache {
     }
 
     Collection<String> keySet() {
-        return mMap.keySet();
+        return Collections.unmodifiableSet(mMap.keySet());
     }
 
     Collection<ScanDetail> values() {
-        return mMap.values();
+        return Collections.unmodifiableCollection(mMap.values());
     }
 
     /**
      * Method to reduce the cache to |mTrimSize| size by removing the oldest entries.
-     * TODO: Investigate if this method can be further optimized.
      */
     private void trim() {
-        int currentSize = mMap.size();
-        if (currentSize < mTrimSize) {
-            return; // Nothing to trim
-        }
-        ArrayList<ScanDetail> list = new ArrayList<ScanDetail>(mMap.values());
-        if (list.size() != 0) {
-            // Sort by ascending timestamp (oldest scan results first)
-            Collections.sort(list, new Comparator() {
-                public int compare(Object o1, Object o2) {
-                    ScanDetail a = (ScanDetail) o1;
-                    ScanDetail b = (ScanDetail) o2;
-                    if (a.getSeen() > b.getSeen()) {
-                        return 1;
-                    }
-                    if (a.getSeen() < b.getSeen()) {
-                        return -1;
-                    }
-                    return a.getBSSIDString().compareTo(b.getBSSIDString());
-                }
-            });
-        }
-        for (int i = 0; i < currentSize - mTrimSize; i++) {
+        while (mMap.size() > mTrimSize) {
             // Remove oldest results from scan cache
-            ScanDetail result = list.get(i);
-            mMap.remove(result.getBSSIDString());
+            IndexKey oldest = mRecencyIndex.pollLast();
+            mMap.remove(oldest.mBssid);
+            mIndexKeys.remove(oldest.mBssid);
         }
     }
 
@@ -146,42 +181,10 @@ public class ScanDetailCache {
      * Return the most recent ScanResult for this network, or null if non exists.
      */
     public ScanResult getMostRecentScanResult() {
-        ArrayList<ScanDetail> list = sort();
-        if (list.size() == 0) {
+        if (mRecencyIndex.isEmpty()) {
             return null;
         }
-        return list.get(0).getScanResult();
-    }
-
-    /**
-     * Returns the list of sorted ScanDetails in descending order of timestamp, followed by
-     * descending order of RSSI.
-     * @hide
-     **/
-    private ArrayList<ScanDetail> sort() {
-        ArrayList<ScanDetail> list = new ArrayList<ScanDetail>(mMap.values());
-        if (list.size() != 0) {
-            Collections.sort(list, new Comparator() {
-                public int compare(Object o1, Object o2) {
-                    ScanResult a = ((ScanDetail) o1).getScanResult();
-                    ScanResult b = ((ScanDetail) o2).getScanResult();
-                    if (a.seen > b.seen) {
-                        return -1;
-                    }
-                    if (a.seen < b.seen) {
-                        return 1;
-                    }
-                    if (a.level > b.level) {
-                        return -1;
-                    }
-                    if (a.level < b.level) {
-                        return 1;
-                    }
-                    return a.BSSID.compareTo(b.BSSID);
-                }
-            });
-        }
-        return list;
+        return mRecencyIndex.first().mScanDetail.getScanResult();
     }
 
     @Override
@@ -189,10 +192,10 @@ public class ScanDetailCache {
         StringBuilder sbuf = new StringBuilder();
         sbuf.append("Scan Cache:  ").append('\n');
 
-        ArrayList<ScanDetail> list = sort();
         long now_ms = System.currentTimeMillis();
-        if (list.size() > 0) {
-            for (ScanDetail scanDetail : list) {
+        if (!mRecencyIndex.isEmpty()) {
+            for (IndexKey key : mRecencyIndex) {
+                ScanDetail scanDetail = key.mScanDetail;
                 ScanResult result = scanDetail.getScanResult();
                 long milli = now_ms - scanDetail.getSeen();
                 long ageSec = 0;
@@ -46,6 +46,7 @@ import com.android.wifi.resources.R;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -73,7 +74,8 @@ import javax.annotation.concurrent.NotThreadSafe;
  *   {@link #SCAN_REQUEST_THROTTLE_TIME_WINDOW_FG_APPS_MS}.
  *  b) Background apps combined can request 1 scan every
  *   {@link #SCAN_REQUEST_THROTTLE_INTERVAL_BG_APPS_MS}.
- * Note: This class is not thread-safe. It needs to be invoked from the main Wifi thread only.
+ * Note: This class is not thread-safe. It needs to be invoked from the main Wifi thread only,
+ * except for {@link #getScanResults()}.
  */
 @NotThreadSafe
 public class ScanRequestProxy {
@@ -86,6 +88,14 @@ public class ScanRequestProxy {
     @VisibleForTesting
     public static final int SCAN_REQUEST_THROTTLE_INTERVAL_BG_APPS_MS = 30 * 60 * 1000;
 
+    // Security types of the networks in range, as indexed in |mLastScanResultsSecurityIndex|.
+    private static final int SECURITY_WPA2_PERSONAL_ONLY = 1 << 0;
+    private static final int SECURITY_WPA3_PERSONAL_ONLY = 1 << 1;
+    private static final int SECURITY_OPEN_ONLY = 1 << 2;
+    private static final int SECURITY_OWE_ONLY = 1 << 3;
+    private static final int SECURITY_WPA2_ENTERPRISE_ONLY = 1 << 4;
+    private static final int SECURITY_WPA3_ENTERPRISE_ONLY = 1 << 5;
+
     private final Context mContext;
     private final Handler mHandler;
     private final AppOpsManager mAppOps;
@@ -116,6 +126,12 @@ public class ScanRequestProxy {
     // Stored as a map of bssid -> ScanResult to allow other clients to perform ScanResult lookup
     // for bssid more efficiently.
     private final Map<String, ScanResult> mLastScanResultsMap = new HashMap<>();
+    // Immutable snapshot of the values of |mLastScanResultsMap|, published whenever the map is
+    // updated so that it can be read from any thread without posting to the main Wifi thread.
+    private volatile List<ScanResult> mLastScanResultsSnapshot = Collections.emptyList();
+    // Index of the security types found in |mLastScanResultsMap| for each quoted SSID, as a
+    // bitmask of the SECURITY_* types. Rebuilt along with the snapshot.
+    private final Map<String, Integer> mLastScanResultsSecurityIndex = new HashMap<>();
     // external ScanResultCallback tracker
     private final RemoteCallbackList<IScanResultsCallback> mRegisteredScanResultsCallbacks;
     // Global scan listener for listening to all scan requests.
@@ -151,6 +167,7 @@ public class ScanRequestProxy {
                 // Store the last scan results & send out the scan completion broadcast.
                 mLastScanResultsMap.clear();
                 Arrays.stream(scanResults).forEach(s -> mLastScanResultsMap.put(s.BSSID, s));
+                updateScanResultsSnapshot();
                 sendScanResultBroadcast(true);
                 sendScanResultsAvailableToCallbacks();
             }
@@ -487,11 +504,15 @@ public class ScanRequestProxy {
                 | WifiScanner.REPORT_EVENT_FULL_SCAN_RESULT;
         if (mScanningForHiddenNetworksEnabled) {
             settings.hiddenNetworks.clear();
+            List<WifiScanner.ScanSettings.HiddenNetwork> hiddenNetworks = new ArrayList<>();
             // retrieve the list of hidden network SSIDs from saved network to scan for, if enabled.
-            settings.hiddenNetworks.addAll(mWifiConfigManager.retrieveHiddenNetworkList());
+            hiddenNetworks.addAll(mWifiConfigManager.retrieveHiddenNetworkList());
             // retrieve the list of hidden network SSIDs from Network suggestion to scan for.
-            settings.hiddenNetworks.addAll(
+            hiddenNetworks.addAll(
                     mWifiInjector.getWifiNetworkSuggestionsManager().retrieveHiddenNetworkList());
+            // rotate through the hidden networks if they don't all fit in one scan.
+            settings.hiddenNetworks.addAll(mWifiInjector.getHiddenNetworkScanScheduler()
+                    .selectHiddenNetworksForScan(hiddenNetworks));
         }
         mWifiScanner.startScan(settings, new HandlerExecutor(mHandler),
                 new ScanRequestProxyScanListener(), workSource);
@@ -501,11 +522,70 @@ public class ScanRequestProxy {
     /**
      * Return the results of the most recent access point scan, in the form of
      * a list of {@link ScanResult} objects.
+     * Note: This method is thread-safe, and the same unmodifiable list is returned to all callers
+     * until new scan results are received.
      * @return the list of results
      */
     public List<ScanResult> getScanResults() {
-        // return a copy to prevent external modification
-        return new ArrayList<>(mLastScanResultsMap.values());
+        return mLastScanResultsSnapshot;
+    }
+
+    /**
+     * Publish a new snapshot of the stored scan results and rebuild their security index.
+     */
+    private void updateScanResultsSnapshot() {
+        mLastScanResultsSnapshot = mLastScanResultsMap.isEmpty()
+                ? Collections.emptyList()
+                : Collections.unmodifiableList(new ArrayList<>(mLastScanResultsMap.values()));
+        mLastScanResultsSecurityIndex.clear();
+        for (ScanResult scanResult : mLastScanResultsMap.values()) {
+            int securityTypes = getSecurityTypes(scanResult);
+            if (securityTypes == 0) continue;
+            mLastScanResultsSecurityIndex.merge(ScanResultUtil.createQuotedSSID(scanResult.SSID),
+                    securityTypes, (a, b) -> a | b);
+        }
+    }
+
+    /**
+     * Classify the security of the provided scan result as a bitmask of the SECURITY_* types.
+     */
+    private static int getSecurityTypes(@NonNull ScanResult r) {
+        int securityTypes = 0;
+        boolean isPsk = ScanResultUtil.isScanResultForPskNetwork(r);
+        boolean isSae = ScanResultUtil.isScanResultForSaeNetwork(r);
+        if (isPsk && !isSae) {
+            securityTypes |= SECURITY_WPA2_PERSONAL_ONLY;
+        }
+        if (isSae && !isPsk) {
+            securityTypes |= SECURITY_WPA3_PERSONAL_ONLY;
+        }
+        boolean isOwe = ScanResultUtil.isScanResultForOweNetwork(r);
+        if (ScanResultUtil.isScanResultForOpenNetwork(r) && !isOwe) {
+            securityTypes |= SECURITY_OPEN_ONLY;
+        }
+        if (isOwe && !ScanResultUtil.isScanResultForOweTransitionNetwork(r)) {
+            securityTypes |= SECURITY_OWE_ONLY;
+        }
+        boolean isEap = ScanResultUtil.isScanResultForEapNetwork(r);
+        boolean isWpa3EnterpriseTransition =
+                ScanResultUtil.isScanResultForWpa3EnterpriseTransitionNetwork(r);
+        boolean isWpa3EnterpriseOnly = ScanResultUtil.isScanResultForWpa3EnterpriseOnlyNetwork(r);
+        if (isEap && !isWpa3EnterpriseTransition && !isWpa3EnterpriseOnly) {
+            securityTypes |= SECURITY_WPA2_ENTERPRISE_ONLY;
+        }
+        if (isWpa3EnterpriseOnly && !isWpa3EnterpriseTransition && !isEap) {
+            securityTypes |= SECURITY_WPA3_ENTERPRISE_ONLY;
+        }
+        return securityTypes;
+    }
+
+    /**
+     * Check if any network with the provided quoted SSID in the last scan results has the
+     * provided SECURITY_* type.
+     */
+    private boolean isSecurityTypeInRange(String ssid, int securityType) {
+        Integer securityTypes = mLastScanResultsSecurityIndex.get(ssid);
+        return securityTypes != null && (securityTypes & securityType) != 0;
     }
 
     /**
@@ -527,6 +607,7 @@ public class ScanRequestProxy {
      */
     private void clearScanResults() {
         mLastScanResultsMap.clear();
+        updateScanResultsSnapshot();
         mLastScanTimestampForBgApps = 0;
         mLastScanTimestampsForFgApps.clear();
     }
@@ -593,51 +674,31 @@ public class ScanRequestProxy {
 
     /** Indicate whether there are WPA2 personal only networks. */
     public boolean isWpa2PersonalOnlyNetworkInRange(String ssid) {
-        return mLastScanResultsMap.values().stream().anyMatch(r ->
-                ssid.equals(ScanResultUtil.createQuotedSSID(r.SSID))
-                && ScanResultUtil.isScanResultForPskNetwork(r)
-                && !ScanResultUtil.isScanResultForSaeNetwork(r));
+        return isSecurityTypeInRange(ssid, SECURITY_WPA2_PERSONAL_ONLY);
     }
 
     /** Indicate whether there are WPA3 only networks. */
     public boolean isWpa3PersonalOnlyNetworkInRange(String ssid) {
-        return mLastScanResultsMap.values().stream().anyMatch(r ->
-                ssid.equals(ScanResultUtil.createQuotedSSID(r.SSID))
-                && ScanResultUtil.isScanResultForSaeNetwork(r)
-                && !ScanResultUtil.isScanResultForPskNetwork(r));
+        return isSecurityTypeInRange(ssid, SECURITY_WPA3_PERSONAL_ONLY);
     }
 
     /** Indicate whether there are OPEN only networks. */
     public boolean isOpenOnlyNetworkInRange(String ssid) {
-        return mLastScanResultsMap.values().stream().anyMatch(r ->
-                ssid.equals(ScanResultUtil.createQuotedSSID(r.SSID))
-                && ScanResultUtil.isScanResultForOpenNetwork(r)
-                && !ScanResultUtil.isScanResultForOweNetwork(r));
+        return isSecurityTypeInRange(ssid, SECURITY_OPEN_ONLY);
     }
 
     /** Indicate whether there are OWE only networks. */
     public boolean isOweOnlyNetworkInRange(String ssid) {
-        return mLastScanResultsMap.values().stream().anyMatch(r ->
-                ssid.equals(ScanResultUtil.createQuotedSSID(r.SSID))
-                && ScanResultUtil.isScanResultForOweNetwork(r)
-                && !ScanResultUtil.isScanResultForOweTransitionNetwork(r));
+        return isSecurityTypeInRange(ssid, SECURITY_OWE_ONLY);
     }
 
     /** Indicate whether there are WPA2 Enterprise only networks. */
     public boolean isWpa2EnterpriseOnlyNetworkInRange(String ssid) {
-        return mLastScanResultsMap.values().stream().anyMatch(r ->
-                ssid.equals(ScanResultUtil.createQuotedSSID(r.SSID))
-                && ScanResultUtil.isScanResultForEapNetwork(r)
-                && !ScanResultUtil.isScanResultForWpa3EnterpriseTransitionNetwork(r)
-                && !ScanResultUtil.isScanResultForWpa3EnterpriseOnlyNetwork(r));
+        return isSecurityTypeInRange(ssid, SECURITY_WPA2_ENTERPRISE_ONLY);
     }
 
     /** Indicate whether there are WPA3 Enterprise only networks. */
     public boolean isWpa3EnterpriseOnlyNetworkInRange(String ssid) {
-        return mLastScanResultsMap.values().stream().anyMatch(r ->
-                ssid.equals(ScanResultUtil.createQuotedSSID(r.SSID))
-                && ScanResultUtil.isScanResultForWpa3EnterpriseOnlyNetwork(r)
-                && !ScanResultUtil.isScanResultForWpa3EnterpriseTransitionNetwork(r)
-                && !ScanResultUtil.isScanResultForEapNetwork(r));
+        return isSecurityTypeInRange(ssid, SECURITY_WPA3_ENTERPRISE_ONLY);
     }
 }
@@ -64,6 +64,11 @@ public class SsidSetStoreData implements WifiConfigStore.StoreData {
          * @param ssidSet The set of SSIDs
          */
         void setSsids(Set<String> ssidSet);
+
+        /**
+         * Whether there is new data to serialize to the store file.
+         */
+        boolean hasNewDataToSerialize();
     }
 
     /**
@@ -83,7 +88,7 @@ public class SsidSetStoreData implements WifiConfigStore.StoreData {
             throws XmlPullParserException, IOException {
         Set<String> ssidSet = mDataSource.getSsids();
         if (ssidSet != null && !ssidSet.isEmpty()) {
-            XmlUtil.writeNextValue(out, XML_TAG_SSID_SET, mDataSource.getSsids());
+            XmlUtil.writeNextValue(out, XML_TAG_SSID_SET, ssidSet);
         }
     }
 
@@ -120,8 +125,7 @@ public class SsidSetStoreData implements WifiConfigStore.StoreData {
 
     @Override
     public boolean hasNewDataToSerialize() {
-        // always persist.
-        return true;
+        return mDataSource.hasNewDataToSerialize();
     }
 
     @Override
@@ -66,11 +66,13 @@ import com.android.server.wifi.WifiNative.SupplicantDeathEventHandler;
 import com.android.server.wifi.util.GeneralUtil.Mutable;
 import com.android.server.wifi.util.NativeUtil;
 
+import java.io.PrintWriter;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -118,6 +120,14 @@ public class SupplicantStaIfaceHal {
     private Map<String, WifiConfiguration> mCurrentNetworkLocalConfigs = new HashMap<>();
     private Map<String, List<Pair<SupplicantStaNetworkHal, WifiConfiguration>>>
             mLinkedNetworkLocalAndRemoteConfigs = new HashMap<>();
+    // Per interface, access ordered map of profile key to the networks provisioned in
+    // wpa_supplicant (including the current network), when more than one network is kept
+    // provisioned. The eldest entry is the least recently connected network.
+    private Map<String, LinkedHashMap<String, ProvisionedNetwork>> mProvisionedNetworks =
+            new HashMap<>();
+    private long mProvisionedNetworkCacheHits = 0;
+    private long mProvisionedNetworkCacheMisses = 0;
+    private long mNumHalCallsSaved = 0;
     @VisibleForTesting
     Map<Integer, PmkCacheStoreData> mPmkCacheEntries = new HashMap<>();
     private SupplicantDeathEventHandler mDeathEventHandler;
@@ -175,6 +185,22 @@ public class SupplicantStaIfaceHal {
         }
     }
 
+    /**
+     * Network provisioned in wpa_supplicant, with the number of HIDL calls made to provision it.
+     */
+    private static class ProvisionedNetwork {
+        public final SupplicantStaNetworkHal networkHandle;
+        public final WifiConfiguration config;
+        public final int numHalCallsToProvision;
+
+        ProvisionedNetwork(SupplicantStaNetworkHal networkHandle, WifiConfiguration config,
+                int numHalCallsToProvision) {
+            this.networkHandle = networkHandle;
+            this.config = config;
+            this.numHalCallsToProvision = numHalCallsToProvision;
+        }
+    }
+
     @VisibleForTesting
     static class PmkCacheStoreData {
         public long expirationTimeInSec;
@@ -586,6 +612,7 @@ public class SupplicantStaIfaceHal {
                 return false;
             }
             mISupplicantStaIfaceCallbacks.remove(ifaceName);
+            mProvisionedNetworks.remove(ifaceName);
             return true;
         }
     }
@@ -652,6 +679,7 @@ public class SupplicantStaIfaceHal {
             mCurrentNetworkLocalConfigs.clear();
             mCurrentNetworkRemoteHandles.clear();
             mLinkedNetworkLocalAndRemoteConfigs.clear();
+            mProvisionedNetworks.clear();
         }
     }
 
@@ -985,7 +1013,9 @@ public class SupplicantStaIfaceHal {
      * Add the provided network configuration to wpa_supplicant and initiate connection to it.
      * This method does the following:
      * 1. If |config| is different to the current supplicant network, removes all supplicant
-     * networks and saves |config|.
+     * networks and saves |config|. If more than one network is kept provisioned in
+     * wpa_supplicant, reuses the network provisioned for |config| instead if there is one, and
+     * only removes the least recently used networks.
      * 2. Select the new network in wpa_supplicant.
      *
      * @param ifaceName Name of the interface.
@@ -1013,6 +1043,19 @@ public class SupplicantStaIfaceHal {
                     }
                     mCurrentNetworkLocalConfigs.put(ifaceName, new WifiConfiguration(config));
                 }
+            } else if (getProvisionedNetworkCacheSize() > 1
+                    && mLinkedNetworkLocalAndRemoteConfigs.get(ifaceName) == null) {
+                mCurrentNetworkRemoteHandles.remove(ifaceName);
+                mCurrentNetworkLocalConfigs.remove(ifaceName);
+                Pair<SupplicantStaNetworkHal, WifiConfiguration> pair =
+                        getOrProvisionNetwork(ifaceName, config);
+                if (pair == null) {
+                    loge("Failed to add/save network configuration: " + config
+                            .getProfileKey());
+                    return false;
+                }
+                mCurrentNetworkRemoteHandles.put(ifaceName, pair.first);
+                mCurrentNetworkLocalConfigs.put(ifaceName, pair.second);
             } else {
                 mCurrentNetworkRemoteHandles.remove(ifaceName);
                 mCurrentNetworkLocalConfigs.remove(ifaceName);
@@ -1057,6 +1100,126 @@ public class SupplicantStaIfaceHal {
         }
     }
 
+    private int getProvisionedNetworkCacheSize() {
+        return Math.max(1, mWifiGlobals.getSupplicantProvisionedNetworkCacheSize());
+    }
+
+    /**
+     * Get the network provisioned in wpa_supplicant for |config| if it is up to date, update it
+     * if only some of its network variables changed, or provision it after removing the least
+     * recently used networks.
+     *
+     * @return a Pair object including SupplicantStaNetworkHal and WifiConfiguration objects
+     * for the network, or null on failure.
+     */
+    private Pair<SupplicantStaNetworkHal, WifiConfiguration> getOrProvisionNetwork(
+            @NonNull String ifaceName, @NonNull WifiConfiguration config) {
+        String profileKey = config.getProfileKey();
+        LinkedHashMap<String, ProvisionedNetwork> provisionedNetworks =
+                mProvisionedNetworks.get(ifaceName);
+        ProvisionedNetwork provisionedNetwork =
+                provisionedNetworks == null ? null : provisionedNetworks.get(profileKey);
+        if (provisionedNetwork != null
+                && WifiConfigurationUtil.isSameNetwork(config, provisionedNetwork.config)) {
+            // The BSSID may have been changed by a roam since the network was provisioned.
+            String bssid = config.getNetworkSelectionStatus().getNetworkSelectionBSSID();
+            if (provisionedNetwork.networkHandle.setBssid(bssid)) {
+                logd("Network is still provisioned, will not trigger add operation.");
+                mProvisionedNetworkCacheHits++;
+                mNumHalCallsSaved += provisionedNetwork.numHalCallsToProvision - 1;
+                return new Pair(provisionedNetwork.networkHandle, new WifiConfiguration(config));
+            }
+            loge("Failed to set BSSID of provisioned network: " + profileKey);
+        }
+        mProvisionedNetworkCacheMisses++;
+        if (provisionedNetwork != null) {
+            SupplicantStaNetworkHal networkHandle = provisionedNetwork.networkHandle;
+            if (networkHandle.saveWifiConfiguration(config)) {
+                logd("Network is still provisioned, updated the changed network variables.");
+                mNumHalCallsSaved += provisionedNetwork.numHalCallsToProvision
+                        - networkHandle.getNumHalCallsForLastSave();
+                WifiConfiguration savedConfig = new WifiConfiguration(config);
+                provisionedNetworks.put(profileKey, new ProvisionedNetwork(networkHandle,
+                        savedConfig, provisionedNetwork.numHalCallsToProvision));
+                return new Pair(networkHandle, savedConfig);
+            }
+            logi("Failed to update provisioned network, will add it again: " + profileKey);
+        }
+        if (!removeProvisionedNetworksToAdd(ifaceName, profileKey)) {
+            loge("Failed to remove existing networks");
+            return null;
+        }
+        Pair<SupplicantStaNetworkHal, WifiConfiguration> pair =
+                addNetworkAndSaveConfig(ifaceName, config);
+        if (pair == null) {
+            return null;
+        }
+        provisionedNetworks = mProvisionedNetworks.get(ifaceName);
+        if (provisionedNetworks == null) {
+            provisionedNetworks = new LinkedHashMap<>(16, 0.75f, true);
+            mProvisionedNetworks.put(ifaceName, provisionedNetworks);
+        }
+        // Count the addNetwork call along with the calls made on the network.
+        provisionedNetworks.put(profileKey, new ProvisionedNetwork(pair.first, pair.second,
+                pair.first.getNumHalCallsForLastSave() + 1));
+        return pair;
+    }
+
+    /**
+     * Remove from wpa_supplicant the outdated network provisioned for |profileKey| and the least
+     * recently used networks, to make room for the network of |profileKey|. Removes all networks
+     * if no network is provisioned yet, or if a network could not be removed.
+     */
+    private boolean removeProvisionedNetworksToAdd(@NonNull String ifaceName,
+            @NonNull String profileKey) {
+        LinkedHashMap<String, ProvisionedNetwork> provisionedNetworks =
+                mProvisionedNetworks.get(ifaceName);
+        if (provisionedNetworks == null) {
+            return removeAllNetworks(ifaceName);
+        }
+        List<String> profileKeysToRemove = new ArrayList<>();
+        if (provisionedNetworks.containsKey(profileKey)) {
+            profileKeysToRemove.add(profileKey);
+        }
+        int numToEvict = provisionedNetworks.size() - profileKeysToRemove.size()
+                - (getProvisionedNetworkCacheSize() - 1);
+        Iterator<String> iter = provisionedNetworks.keySet().iterator();
+        while (numToEvict > 0 && iter.hasNext()) {
+            String key = iter.next();
+            if (!key.equals(profileKey)) {
+                profileKeysToRemove.add(key);
+                numToEvict--;
+            }
+        }
+        for (String key : profileKeysToRemove) {
+            ProvisionedNetwork provisionedNetwork = provisionedNetworks.remove(key);
+            if (!removeNetwork(ifaceName, provisionedNetwork.networkHandle.getNetworkId())) {
+                loge("Failed to remove provisioned network: " + key);
+                return removeAllNetworks(ifaceName);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Dump the state of the networks provisioned in wpa_supplicant.
+     */
+    public void dump(PrintWriter pw) {
+        synchronized (mLock) {
+            pw.println("Dump of SupplicantStaIfaceHal");
+            pw.println("Provisioned network cache size: " + getProvisionedNetworkCacheSize());
+            long numLookups = mProvisionedNetworkCacheHits + mProvisionedNetworkCacheMisses;
+            pw.println("Provisioned network cache: hits=" + mProvisionedNetworkCacheHits
+                    + " misses=" + mProvisionedNetworkCacheMisses + " hitRate="
+                    + (numLookups == 0 ? 0 : 100 * mProvisionedNetworkCacheHits / numLookups)
+                    + "% halCallsSaved=" + mNumHalCallsSaved);
+            for (Map.Entry<String, LinkedHashMap<String, ProvisionedNetwork>> entry
+                    : mProvisionedNetworks.entrySet()) {
+                pw.println("  " + entry.getKey() + ": " + entry.getValue().keySet());
+            }
+        }
+    }
+
     /**
      * Initiates roaming to the already configured network in wpa_supplicant. If the network
      * configuration provided does not match the already configured network, then this triggers
@@ -1113,6 +1276,30 @@ public class SupplicantStaIfaceHal {
         synchronized (mLock) {
             logd("Remove cached HAL data for config id " + networkId);
             removePmkCacheEntry(networkId);
+            removeProvisionedNetworks(networkId);
+        }
+    }
+
+    /**
+     * Remove from wpa_supplicant the networks provisioned for |networkId| which are not the
+     * current network. Networks which could not be removed will be removed once least recently
+     * used.
+     */
+    private void removeProvisionedNetworks(int networkId) {
+        for (Map.Entry<String, LinkedHashMap<String, ProvisionedNetwork>> entry
+                : mProvisionedNetworks.entrySet()) {
+            String ifaceName = entry.getKey();
+            Iterator<ProvisionedNetwork> iter = entry.getValue().values().iterator();
+            while (iter.hasNext()) {
+                ProvisionedNetwork provisionedNetwork = iter.next();
+                if (provisionedNetwork.config.networkId != networkId || provisionedNetwork
+                        .networkHandle == getCurrentNetworkRemoteHandle(ifaceName)) {
+                    continue;
+                }
+                if (removeNetwork(ifaceName, provisionedNetwork.networkHandle.getNetworkId())) {
+                    iter.remove();
+                }
+            }
         }
     }
 
@@ -1157,6 +1344,7 @@ public class SupplicantStaIfaceHal {
             mCurrentNetworkRemoteHandles.remove(ifaceName);
             mCurrentNetworkLocalConfigs.remove(ifaceName);
             mLinkedNetworkLocalAndRemoteConfigs.remove(ifaceName);
+            mProvisionedNetworks.remove(ifaceName);
             return true;
         }
     }
@@ -3780,6 +3968,12 @@ public class SupplicantStaIfaceHal {
                 Log.e(TAG, "couldn't remove non-current supplicant networks");
                 return false;
             }
+            LinkedHashMap<String, ProvisionedNetwork> provisionedNetworks =
+                    mProvisionedNetworks.get(ifaceName);
+            if (provisionedNetworks != null) {
+                provisionedNetworks.values().removeIf(
+                        provisionedNetwork -> provisionedNetwork.networkHandle != currentHandle);
+            }
 
             mLinkedNetworkLocalAndRemoteConfigs.remove(ifaceName);
 
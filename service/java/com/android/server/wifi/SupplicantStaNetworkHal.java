@@ -42,10 +42,15 @@ import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -98,6 +103,15 @@ public class SupplicantStaNetworkHal {
     private ISupplicantStaNetworkCallback mISupplicantStaNetworkCallback;
 
     private boolean mVerboseLoggingEnabled = false;
+    // Number of HIDL calls made on the network.
+    private int mNumHalCalls = 0;
+    // Number of HIDL calls made by the last saveWifiConfiguration call.
+    private int mNumHalCallsForLastSave = 0;
+    // Values last saved to wpa_supplicant by saveWifiConfiguration, keyed by network variable,
+    // and the variables saved by the ongoing saveWifiConfiguration call.
+    private final Map<String, Object> mSavedValues = new HashMap<>();
+    private final Set<String> mFieldsSavedInPass = new HashSet<>();
+    private int mSavedSecurityType = -1;
     // Network variables read from wpa_supplicant.
     private int mNetworkId;
     private ArrayList<Byte> mSsid;
@@ -269,6 +283,11 @@ public class SupplicantStaNetworkHal {
     /**
      * Save an entire WifiConfiguration to wpa_supplicant via HIDL.
      *
+     * If a configuration was already saved to this network, only the network variables whose
+     * value changed are set. This fails if the security type changed or if a variable which was
+     * saved before is not set by |config|, since it cannot be cleared, and the network must then
+     * be removed and added again.
+     *
      * @param config WifiConfiguration object to be saved.
      * @return true if succeeds, false otherwise.
      * @throws IllegalArgumentException on malformed configuration params.
@@ -276,38 +295,96 @@ public class SupplicantStaNetworkHal {
     public boolean saveWifiConfiguration(WifiConfiguration config) {
         synchronized (mLock) {
             if (config == null) return false;
+            SecurityParams securityParams = config.getNetworkSelectionStatus()
+                    .getCandidateSecurityParams();
+            if (null == securityParams) {
+                Log.wtf(TAG, "No available security params.");
+                return false;
+            }
+            if (!mSavedValues.isEmpty()
+                    && mSavedSecurityType != securityParams.getSecurityType()) {
+                Log.e(TAG, config.SSID + ": cannot update network to security type "
+                        + securityParams.getSecurityType());
+                return false;
+            }
+            int numHalCalls = mNumHalCalls;
+            mFieldsSavedInPass.clear();
+            boolean success = saveWifiConfiguration(config, securityParams);
+            mNumHalCallsForLastSave = mNumHalCalls - numHalCalls;
+            if (!success) return false;
+            mSavedSecurityType = securityParams.getSecurityType();
+            if (mSavedValues.size() > mFieldsSavedInPass.size()) {
+                Log.e(TAG, config.SSID + ": cannot clear previously saved network variables");
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Number of HIDL calls made by the last {@link #saveWifiConfiguration(WifiConfiguration)}
+     * call.
+     */
+    public int getNumHalCallsForLastSave() {
+        synchronized (mLock) {
+            return mNumHalCallsForLastSave;
+        }
+    }
+
+    /**
+     * Set a network variable with |setter|, unless |value| is the value last saved to it.
+     *
+     * @param field Name of the network variable.
+     * @param value Value to set, compared with {@link Objects#deepEquals(Object, Object)}.
+     * @param setter Sets the value in wpa_supplicant.
+     * @return true if the value is set, false otherwise.
+     */
+    private <T> boolean setIfChanged(String field, T value, Predicate<T> setter) {
+        mFieldsSavedInPass.add(field);
+        if (mSavedValues.containsKey(field)
+                && Objects.deepEquals(mSavedValues.get(field), value)) {
+            return true;
+        }
+        if (!setter.test(value)) {
+            mSavedValues.remove(field);
+            return false;
+        }
+        mSavedValues.put(field, value);
+        return true;
+    }
+
+    private boolean saveWifiConfiguration(WifiConfiguration config,
+            SecurityParams securityParams) {
+        synchronized (mLock) {
             /** SSID */
             if (config.SSID != null) {
-                if (!setSsid(NativeUtil.decodeSsid(config.SSID))) {
+                ArrayList<Byte> ssid = NativeUtil.decodeSsid(config.SSID);
+                if (!setIfChanged("ssid", ssid, this::setSsid)) {
                     Log.e(TAG, "failed to set SSID: " + config.SSID);
                     return false;
                 }
             }
             /** BSSID */
             String bssidStr = config.getNetworkSelectionStatus().getNetworkSelectionBSSID();
-            if (bssidStr != null) {
+            // Reset a previously saved BSSID to "any" if none is selected.
+            if (bssidStr != null || mSavedValues.containsKey("bssid")) {
                 byte[] bssid = NativeUtil.macAddressToByteArray(bssidStr);
-                if (!setBssid(bssid)) {
+                if (!setIfChanged("bssid", bssid, this::setBssid)) {
                     Log.e(TAG, "failed to set BSSID: " + bssidStr);
                     return false;
                 }
             }
             /** HiddenSSID */
-            if (!setScanSsid(config.hiddenSSID)) {
+            if (!setIfChanged("scanSsid", config.hiddenSSID, this::setScanSsid)) {
                 Log.e(TAG, config.SSID + ": failed to set hiddenSSID: " + config.hiddenSSID);
                 return false;
             }
 
-            SecurityParams securityParams = config.getNetworkSelectionStatus()
-                    .getCandidateSecurityParams();
-            if (null == securityParams) {
-                Log.wtf(TAG, "No available security params.");
-                return false;
-            }
             Log.d(TAG, "The target security params: " + securityParams);
 
             /** RequirePMF */
-            if (!setRequirePmf(securityParams.isRequirePmf())) {
+            if (!setIfChanged("requirePmf", securityParams.isRequirePmf(),
+                    this::setRequirePmf)) {
                 Log.e(TAG, config.SSID + ": failed to set requirePMF: " + config.requirePmf);
                 return false;
             }
@@ -321,7 +398,8 @@ public class SupplicantStaNetworkHal {
                 // Add upgradable type key management flags for PSK/SAE.
                 keyMgmtMask = addPskSaeUpgradableTypeFlagsIfSupported(
                         config, keyMgmtMask);
-                if (!setKeyMgmt(wifiConfigurationToSupplicantKeyMgmtMask(keyMgmtMask))) {
+                int keyMgmt = wifiConfigurationToSupplicantKeyMgmtMask(keyMgmtMask);
+                if (!setIfChanged("keyMgmt", keyMgmt, this::setKeyMgmt)) {
                     Log.e(TAG, "failed to set Key Management");
                     return false;
                 }
@@ -334,32 +412,28 @@ public class SupplicantStaNetworkHal {
             }
             /** Security Protocol */
             BitSet allowedProtocols = securityParams.getAllowedProtocols();
-            if (allowedProtocols.cardinality() != 0
-                    && !setProto(wifiConfigurationToSupplicantProtoMask(allowedProtocols))) {
+            if (allowedProtocols.cardinality() != 0 && !setProtoIfChanged(allowedProtocols)) {
                 Log.e(TAG, "failed to set Security Protocol");
                 return false;
             }
             /** Auth Algorithm */
             BitSet allowedAuthAlgorithms = securityParams.getAllowedAuthAlgorithms();
             if (allowedAuthAlgorithms.cardinality() != 0
-                    && !setAuthAlg(wifiConfigurationToSupplicantAuthAlgMask(
-                    allowedAuthAlgorithms))) {
+                    && !setAuthAlgIfChanged(allowedAuthAlgorithms)) {
                 Log.e(TAG, "failed to set AuthAlgorithm");
                 return false;
             }
             /** Group Cipher */
             BitSet allowedGroupCiphers = securityParams.getAllowedGroupCiphers();
             if (allowedGroupCiphers.cardinality() != 0
-                    && (!setGroupCipher(wifiConfigurationToSupplicantGroupCipherMask(
-                    allowedGroupCiphers)))) {
+                    && !setGroupCipherIfChanged(allowedGroupCiphers)) {
                 Log.e(TAG, "failed to set Group Cipher");
                 return false;
             }
             /** Pairwise Cipher*/
             BitSet allowedPairwiseCiphers = securityParams.getAllowedPairwiseCiphers();
             if (allowedPairwiseCiphers.cardinality() != 0
-                    && !setPairwiseCipher(wifiConfigurationToSupplicantPairwiseCipherMask(
-                    allowedPairwiseCiphers))) {
+                    && !setPairwiseCipherIfChanged(allowedPairwiseCiphers)) {
                 Log.e(TAG, "failed to set PairwiseCipher");
                 return false;
             }
@@ -368,21 +442,24 @@ public class SupplicantStaNetworkHal {
             // For SAE, password must be a quoted ASCII string
             if (config.preSharedKey != null) {
                 if (securityParams.isSecurityType(WifiConfiguration.SECURITY_TYPE_WAPI_PSK)) {
-                    if (!setPskPassphrase(config.preSharedKey)) {
+                    if (!setIfChanged("pskPassphrase", config.preSharedKey,
+                            this::setPskPassphrase)) {
                         Log.e(TAG, "failed to set wapi psk passphrase");
                         return false;
                     }
                 } else if (config.preSharedKey.startsWith("\"")) {
                     if (securityParams.isSecurityType(WifiConfiguration.SECURITY_TYPE_SAE)) {
                         /* WPA3 case, field is SAE Password */
-                        if (!setSaePassword(
-                                NativeUtil.removeEnclosingQuotes(config.preSharedKey))) {
+                        String saePassword = NativeUtil.removeEnclosingQuotes(config.preSharedKey);
+                        if (!setIfChanged("saePassword", saePassword,
+                                this::setSaePassword)) {
                             Log.e(TAG, "failed to set sae password");
                             return false;
                         }
                     } else {
-                        if (!setPskPassphrase(
-                                NativeUtil.removeEnclosingQuotes(config.preSharedKey))) {
+                        String passphrase = NativeUtil.removeEnclosingQuotes(config.preSharedKey);
+                        if (!setIfChanged("pskPassphrase", passphrase,
+                                this::setPskPassphrase)) {
                             Log.e(TAG, "failed to set psk passphrase");
                             return false;
                         }
@@ -391,7 +468,8 @@ public class SupplicantStaNetworkHal {
                     if (securityParams.isSecurityType(WifiConfiguration.SECURITY_TYPE_SAE)) {
                         return false;
                     }
-                    if (!setPsk(NativeUtil.hexStringToByteArray(config.preSharedKey))) {
+                    byte[] psk = NativeUtil.hexStringToByteArray(config.preSharedKey);
+                    if (!setIfChanged("psk", psk, this::setPsk)) {
                         Log.e(TAG, "failed to set psk");
                         return false;
                     }
@@ -402,8 +480,11 @@ public class SupplicantStaNetworkHal {
             if (config.wepKeys != null) {
                 for (int i = 0; i < config.wepKeys.length; i++) {
                     if (config.wepKeys[i] != null) {
-                        if (!setWepKey(
-                                i, NativeUtil.hexOrQuotedStringToBytes(config.wepKeys[i]))) {
+                        final int keyIdx = i;
+                        ArrayList<Byte> wepKey =
+                                NativeUtil.hexOrQuotedStringToBytes(config.wepKeys[i]);
+                        if (!setIfChanged("wepKey" + i, wepKey,
+                                key -> setWepKey(keyIdx, key))) {
                             Log.e(TAG, "failed to set wep_key " + i);
                             return false;
                         }
@@ -413,7 +494,7 @@ public class SupplicantStaNetworkHal {
             }
             /** Wep Tx Key Idx */
             if (hasSetKey) {
-                if (!setWepTxKeyIdx(config.wepTxKeyIndex)) {
+                if (!setIfChanged("wepTxKeyIdx", config.wepTxKeyIndex, this::setWepTxKeyIdx)) {
                     Log.e(TAG, "failed to set wep_tx_keyidx: " + config.wepTxKeyIndex);
                     return false;
                 }
@@ -425,13 +506,15 @@ public class SupplicantStaNetworkHal {
             }
             metadata.put(ID_STRING_KEY_CONFIG_KEY, config.getProfileKey());
             metadata.put(ID_STRING_KEY_CREATOR_UID, Integer.toString(config.creatorUid));
-            if (!setIdStr(createNetworkExtra(metadata))) {
+            String idStr = createNetworkExtra(metadata);
+            if (!setIfChanged("idStr", idStr, this::setIdStr)) {
                 Log.e(TAG, "failed to set id string");
                 return false;
             }
             /** UpdateIdentifier */
             if (config.updateIdentifier != null
-                    && !setUpdateIdentifier(Integer.parseInt(config.updateIdentifier))) {
+                    && !setIfChanged("updateIdentifier", config.updateIdentifier,
+                            id -> setUpdateIdentifier(Integer.parseInt(id)))) {
                 Log.e(TAG, "failed to set update identifier");
                 return false;
             }
@@ -459,7 +542,7 @@ public class SupplicantStaNetworkHal {
                     mode = android.hardware.wifi.supplicant.V1_4
                             .ISupplicantStaNetwork.SaeH2eMode.H2E_MANDATORY;
                 }
-                if (!setSaeH2eMode(mode)) {
+                if (!setIfChanged("saeH2eMode", mode, this::setSaeH2eMode)) {
                     Log.e(TAG, "failed to set H2E preference.");
                     return false;
                 }
@@ -471,7 +554,9 @@ public class SupplicantStaNetworkHal {
                     /** WAPI certificate suite name*/
                     String param = config.enterpriseConfig
                             .getFieldValue(WifiEnterpriseConfig.WAPI_CERT_SUITE_KEY);
-                    if (!TextUtils.isEmpty(param) && !setWapiCertSuite(param)) {
+                    if (!TextUtils.isEmpty(param)
+                            && !setIfChanged("wapiCertSuite", param,
+                                    this::setWapiCertSuite)) {
                         Log.e(TAG, config.SSID + ": failed to set WAPI certificate suite: "
                                 + param);
                         return false;
@@ -483,7 +568,8 @@ public class SupplicantStaNetworkHal {
             }
 
             // Now that the network is configured fully, start listening for callback events.
-            return tryRegisterCallback(config.networkId, config.SSID);
+            return setIfChanged("callback", Arrays.asList(config.networkId, config.SSID),
+                    unused -> tryRegisterCallback(config.networkId, config.SSID));
         }
     }
 
@@ -627,36 +713,39 @@ public class SupplicantStaNetworkHal {
         /** Group Cipher **/
         BitSet allowedGroupCiphers = securityParams.getAllowedGroupCiphers();
         if (allowedGroupCiphers.cardinality() != 0
-                && !setGroupCipher(wifiConfigurationToSupplicantGroupCipherMask(
-                allowedGroupCiphers))) {
+                && !setGroupCipherIfChanged(allowedGroupCiphers)) {
             Log.e(TAG, "failed to set Group Cipher");
             return false;
         }
         /** Pairwise Cipher*/
         BitSet allowedPairwiseCiphers = securityParams.getAllowedPairwiseCiphers();
         if (allowedPairwiseCiphers.cardinality() != 0
-                && !setPairwiseCipher(wifiConfigurationToSupplicantPairwiseCipherMask(
-                allowedPairwiseCiphers))) {
+                && !setPairwiseCipherIfChanged(allowedPairwiseCiphers)) {
             Log.e(TAG, "failed to set PairwiseCipher");
             return false;
         }
         /** GroupMgmt Cipher */
         BitSet allowedGroupManagementCiphers = securityParams.getAllowedGroupManagementCiphers();
-        if (allowedGroupManagementCiphers.cardinality() != 0
-                && !setGroupMgmtCipher(wifiConfigurationToSupplicantGroupMgmtCipherMask(
-                allowedGroupManagementCiphers))) {
-            Log.e(TAG, "failed to set GroupMgmtCipher");
-            return false;
+        if (allowedGroupManagementCiphers.cardinality() != 0) {
+            int groupMgmtCipher =
+                    wifiConfigurationToSupplicantGroupMgmtCipherMask(allowedGroupManagementCiphers);
+            if (!setIfChanged("groupMgmtCipher", groupMgmtCipher,
+                    this::setGroupMgmtCipher)) {
+                Log.e(TAG, "failed to set GroupMgmtCipher");
+                return false;
+            }
         }
 
         BitSet allowedSuiteBCiphers = securityParams.getAllowedSuiteBCiphers();
         if (allowedSuiteBCiphers.get(WifiConfiguration.SuiteBCipher.ECDHE_RSA)) {
-            if (!enableTlsSuiteBEapPhase1Param(true)) {
+            if (!setIfChanged("tlsSuiteBEapPhase1Param", true,
+                    this::enableTlsSuiteBEapPhase1Param)) {
                 Log.e(TAG, "failed to set TLSSuiteB");
                 return false;
             }
         } else if (allowedSuiteBCiphers.get(WifiConfiguration.SuiteBCipher.ECDHE_ECDSA)) {
-            if (!enableSuiteBEapOpenSslCiphers()) {
+            if (!setIfChanged("suiteBEapOpenSslCiphers", true,
+                    unused -> enableSuiteBEapOpenSslCiphers())) {
                 Log.e(TAG, "failed to set OpensslCipher");
                 return false;
             }
@@ -665,6 +754,28 @@ public class SupplicantStaNetworkHal {
         return true;
     }
 
+    private boolean setProtoIfChanged(BitSet allowedProtocols) {
+        int proto = wifiConfigurationToSupplicantProtoMask(allowedProtocols);
+        return setIfChanged("proto", proto, this::setProto);
+    }
+
+    private boolean setAuthAlgIfChanged(BitSet allowedAuthAlgorithms) {
+        int authAlg = wifiConfigurationToSupplicantAuthAlgMask(allowedAuthAlgorithms);
+        return setIfChanged("authAlg", authAlg, this::setAuthAlg);
+    }
+
+    private boolean setGroupCipherIfChanged(BitSet allowedGroupCiphers) {
+        int groupCipher = wifiConfigurationToSupplicantGroupCipherMask(allowedGroupCiphers);
+        return setIfChanged("groupCipher", groupCipher, this::setGroupCipher);
+    }
+
+    private boolean setPairwiseCipherIfChanged(BitSet allowedPairwiseCiphers) {
+        int pairwiseCipher =
+                wifiConfigurationToSupplicantPairwiseCipherMask(allowedPairwiseCiphers);
+        return setIfChanged("pairwiseCipher", pairwiseCipher,
+                this::setPairwiseCipher);
+    }
+
     /**
      * Save network variables from the provided WifiEnterpriseConfig object to wpa_supplicant.
      *
@@ -676,13 +787,16 @@ public class SupplicantStaNetworkHal {
         synchronized (mLock) {
             if (eapConfig == null) return false;
             /** EAP method */
-            if (!setEapMethod(wifiConfigurationToSupplicantEapMethod(eapConfig.getEapMethod()))) {
+            int eapMethod = wifiConfigurationToSupplicantEapMethod(eapConfig.getEapMethod());
+            if (!setIfChanged("eapMethod", eapMethod, this::setEapMethod)) {
                 Log.e(TAG, ssid + ": failed to set eap method: " + eapConfig.getEapMethod());
                 return false;
             }
             /** EAP Phase 2 method */
-            if (!setEapPhase2Method(wifiConfigurationToSupplicantEapPhase2Method(
-                    eapConfig.getPhase2Method()))) {
+            int eapPhase2Method =
+                    wifiConfigurationToSupplicantEapPhase2Method(eapConfig.getPhase2Method());
+            if (!setIfChanged("eapPhase2Method", eapPhase2Method,
+                    this::setEapPhase2Method)) {
                 Log.e(TAG, ssid + ": failed to set eap phase 2 method: "
                         + eapConfig.getPhase2Method());
                 return false;
@@ -690,8 +804,8 @@ public class SupplicantStaNetworkHal {
             String eapParam = null;
             /** EAP Identity */
             eapParam = eapConfig.getFieldValue(WifiEnterpriseConfig.IDENTITY_KEY);
-            if (!TextUtils.isEmpty(eapParam)
-                    && !setEapIdentity(NativeUtil.stringToByteArrayList(eapParam))) {
+            if (!TextUtils.isEmpty(eapParam) && !setIfChanged("eapIdentity", eapParam,
+                    param -> setEapIdentity(NativeUtil.stringToByteArrayList(param)))) {
                 Log.e(TAG, ssid + ": failed to set eap identity: " + eapParam);
                 return false;
             }
@@ -706,78 +820,90 @@ public class SupplicantStaNetworkHal {
                         eapParam = decoratedUsernamePrefix + eapParam;
                     }
                 }
-                if (!setEapAnonymousIdentity(NativeUtil.stringToByteArrayList(eapParam))) {
+                if (!setIfChanged("eapAnonymousIdentity", eapParam,
+                        param -> setEapAnonymousIdentity(
+                                NativeUtil.stringToByteArrayList(param)))) {
                     Log.e(TAG, ssid + ": failed to set eap anonymous identity: " + eapParam);
                     return false;
                 }
             }
             /** EAP Password */
             eapParam = eapConfig.getFieldValue(WifiEnterpriseConfig.PASSWORD_KEY);
-            if (!TextUtils.isEmpty(eapParam)
-                    && !setEapPassword(NativeUtil.stringToByteArrayList(eapParam))) {
+            if (!TextUtils.isEmpty(eapParam) && !setIfChanged("eapPassword", eapParam,
+                    param -> setEapPassword(NativeUtil.stringToByteArrayList(param)))) {
                 Log.e(TAG, ssid + ": failed to set eap password");
                 return false;
             }
             /** EAP Client Cert */
             eapParam = eapConfig.getFieldValue(WifiEnterpriseConfig.CLIENT_CERT_KEY);
-            if (!TextUtils.isEmpty(eapParam) && !setEapClientCert(eapParam)) {
+            if (!TextUtils.isEmpty(eapParam)
+                    && !setIfChanged("eapClientCert", eapParam, this::setEapClientCert)) {
                 Log.e(TAG, ssid + ": failed to set eap client cert: " + eapParam);
                 return false;
             }
             /** EAP CA Cert */
             eapParam = eapConfig.getFieldValue(WifiEnterpriseConfig.CA_CERT_KEY);
-            if (!TextUtils.isEmpty(eapParam) && !setEapCACert(eapParam)) {
+            if (!TextUtils.isEmpty(eapParam)
+                    && !setIfChanged("eapCACert", eapParam, this::setEapCACert)) {
                 Log.e(TAG, ssid + ": failed to set eap ca cert: " + eapParam);
                 return false;
             }
             /** EAP Subject Match */
             eapParam = eapConfig.getFieldValue(WifiEnterpriseConfig.SUBJECT_MATCH_KEY);
-            if (!TextUtils.isEmpty(eapParam) && !setEapSubjectMatch(eapParam)) {
+            if (!TextUtils.isEmpty(eapParam)
+                    && !setIfChanged("eapSubjectMatch", eapParam, this::setEapSubjectMatch)) {
                 Log.e(TAG, ssid + ": failed to set eap subject match: " + eapParam);
                 return false;
             }
             /** EAP Engine ID */
             eapParam = eapConfig.getFieldValue(WifiEnterpriseConfig.ENGINE_ID_KEY);
-            if (!TextUtils.isEmpty(eapParam) && !setEapEngineID(eapParam)) {
+            if (!TextUtils.isEmpty(eapParam)
+                    && !setIfChanged("eapEngineID", eapParam, this::setEapEngineID)) {
                 Log.e(TAG, ssid + ": failed to set eap engine id: " + eapParam);
                 return false;
             }
             /** EAP Engine */
             eapParam = eapConfig.getFieldValue(WifiEnterpriseConfig.ENGINE_KEY);
-            if (!TextUtils.isEmpty(eapParam) && !setEapEngine(
-                    eapParam.equals(WifiEnterpriseConfig.ENGINE_ENABLE) ? true : false)) {
+            if (!TextUtils.isEmpty(eapParam) && !setIfChanged("eapEngine", eapParam,
+                    param -> setEapEngine(
+                            param.equals(WifiEnterpriseConfig.ENGINE_ENABLE) ? true : false))) {
                 Log.e(TAG, ssid + ": failed to set eap engine: " + eapParam);
                 return false;
             }
             /** EAP Private Key */
             eapParam = eapConfig.getFieldValue(WifiEnterpriseConfig.PRIVATE_KEY_ID_KEY);
-            if (!TextUtils.isEmpty(eapParam) && !setEapPrivateKeyId(eapParam)) {
+            if (!TextUtils.isEmpty(eapParam)
+                    && !setIfChanged("eapPrivateKeyId", eapParam, this::setEapPrivateKeyId)) {
                 Log.e(TAG, ssid + ": failed to set eap private key: " + eapParam);
                 return false;
             }
             /** EAP Alt Subject Match */
             eapParam = eapConfig.getFieldValue(WifiEnterpriseConfig.ALTSUBJECT_MATCH_KEY);
-            if (!TextUtils.isEmpty(eapParam) && !setEapAltSubjectMatch(eapParam)) {
+            if (!TextUtils.isEmpty(eapParam)
+                    && !setIfChanged("eapAltSubjectMatch", eapParam, this::setEapAltSubjectMatch)) {
                 Log.e(TAG, ssid + ": failed to set eap alt subject match: " + eapParam);
                 return false;
             }
             /** EAP Domain Suffix Match */
             eapParam = eapConfig.getFieldValue(WifiEnterpriseConfig.DOM_SUFFIX_MATCH_KEY);
-            if (!TextUtils.isEmpty(eapParam) && !setEapDomainSuffixMatch(eapParam)) {
+            if (!TextUtils.isEmpty(eapParam)
+                    && !setIfChanged("eapDomainSuffixMatch", eapParam,
+                            this::setEapDomainSuffixMatch)) {
                 Log.e(TAG, ssid + ": failed to set eap domain suffix match: " + eapParam);
                 return false;
             }
             /** EAP CA Path*/
             eapParam = eapConfig.getFieldValue(WifiEnterpriseConfig.CA_PATH_KEY);
-            if (!TextUtils.isEmpty(eapParam) && !setEapCAPath(eapParam)) {
+            if (!TextUtils.isEmpty(eapParam)
+                    && !setIfChanged("eapCAPath", eapParam, this::setEapCAPath)) {
                 Log.e(TAG, ssid + ": failed to set eap ca path: " + eapParam);
                 return false;
             }
 
             /** EAP Proactive Key Caching */
             eapParam = eapConfig.getFieldValue(WifiEnterpriseConfig.OPP_KEY_CACHING);
-            if (!TextUtils.isEmpty(eapParam)
-                    && !setEapProactiveKeyCaching(eapParam.equals("1") ? true : false)) {
+            if (!TextUtils.isEmpty(eapParam) && !setIfChanged("eapProactiveKeyCaching", eapParam,
+                    param -> setEapProactiveKeyCaching(param.equals("1") ? true : false))) {
                 Log.e(TAG, ssid + ": failed to set proactive key caching: " + eapParam);
                 return false;
             }
@@ -787,14 +913,15 @@ public class SupplicantStaNetworkHal {
              * For older HAL compatibility, omit this step to avoid breaking
              * connection flow.
              */
-            if (getV1_3StaNetwork() != null && !setOcsp(eapConfig.getOcsp())) {
+            if (getV1_3StaNetwork() != null
+                    && !setIfChanged("ocsp", eapConfig.getOcsp(), this::setOcsp)) {
                 Log.e(TAG, "failed to set ocsp");
                 return false;
             }
             /** EAP ERP */
             eapParam = eapConfig.getFieldValue(WifiEnterpriseConfig.EAP_ERP);
             if (!TextUtils.isEmpty(eapParam) && eapParam.equals("1")) {
-                if (!setEapErp(true)) {
+                if (!setIfChanged("eapErp", true, this::setEapErp)) {
                     Log.e(TAG, ssid + ": failed to set eap erp");
                     return false;
                 }
@@ -1465,7 +1592,11 @@ public class SupplicantStaNetworkHal {
     public boolean setBssid(String bssidStr) {
         synchronized (mLock) {
             try {
-                return setBssid(NativeUtil.macAddressToByteArray(bssidStr));
+                byte[] bssid = NativeUtil.macAddressToByteArray(bssidStr);
+                if (!setBssid(bssid)) return false;
+                // Keep track of the BSSID so that the next save resets it if needed.
+                if (!mSavedValues.isEmpty()) mSavedValues.put("bssid", bssid);
+                return true;
             } catch (IllegalArgumentException e) {
                 Log.e(TAG, "Illegal argument " + bssidStr, e);
                 return false;
@@ -3687,6 +3818,7 @@ public class SupplicantStaNetworkHal {
      */
     private boolean checkStatusAndLogFailure(SupplicantStatus status, final String methodStr) {
         synchronized (mLock) {
+            mNumHalCalls++;
             if (status.code != SupplicantStatusCode.SUCCESS) {
                 Log.e(getTag(), "ISupplicantStaNetwork." + methodStr + " failed: " + status);
                 return false;
@@ -3707,6 +3839,7 @@ public class SupplicantStaNetworkHal {
             android.hardware.wifi.supplicant.V1_4.SupplicantStatus status,
             final String methodStr) {
         synchronized (mLock) {
+            mNumHalCalls++;
             if (status.code
                     != android.hardware.wifi.supplicant.V1_4.SupplicantStatusCode.SUCCESS) {
                 Log.e(TAG, "ISupplicantStaNetwork." + methodStr + " failed: " + status);
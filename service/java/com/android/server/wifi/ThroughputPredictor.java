@@ -27,6 +27,7 @@ import android.net.wifi.WifiInfo;
 import android.net.wifi.nl80211.DeviceWiphyCapabilities;
 import android.util.Log;
 
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.wifi.resources.R;
 
 /**
@@ -101,6 +102,54 @@ public class ThroughputPredictor {
     private static final int MAX_NUM_SPATIAL_STREAM_LEGACY = 1;
 
     private static final int B_MODE_MAX_MBPS = 11;
+
+    // Precomputed PHY rate and airtime fraction tables. The PHY rate only depends on the PHY
+    // configuration (wifi standard and channel width), the number of spatial streams and the SNR,
+    // and it saturates outside of [SNR_DB_TO_BIT_PER_TONE_LUT_MIN, TABLE_SNR_DB_MAX], so looking
+    // it up gives the same result as computing it.
+    @VisibleForTesting
+    static final int TABLE_MISS = Integer.MIN_VALUE;
+    private static final int TABLE_SNR_DB_MAX =
+            (MAX_BITS_PER_TONE_11AX + SNR_DB_TO_BIT_PER_TONE_HIGH_SNR_SCALE - 1)
+                    / SNR_DB_TO_BIT_PER_TONE_HIGH_SNR_SCALE;
+    private static final int TABLE_NUM_SNR_DB =
+            TABLE_SNR_DB_MAX - SNR_DB_TO_BIT_PER_TONE_LUT_MIN + 1;
+    private static final int MAX_CHANNEL_WIDTH_FACTOR = 3;
+    // PHY configurations: {numTonePerSym, channelWidthFactor, maxBitsPerTone, symDurationNs,
+    // maxNumSpatialStream}, indexed by getPhyConfigIndex().
+    private static final int[][] PHY_CONFIGS = {
+            {NUM_TONE_PER_SYM_LEGACY, 0, MAX_BITS_PER_TONE_LEGACY, SYM_DURATION_LEGACY_NS,
+                    MAX_NUM_SPATIAL_STREAM_LEGACY},
+            {NUM_TONE_PER_SYM_11N_20MHZ, 0, MAX_BITS_PER_TONE_11N, SYM_DURATION_11N_NS,
+                    MAX_NUM_SPATIAL_STREAM_11N},
+            {NUM_TONE_PER_SYM_11N_40MHZ, 1, MAX_BITS_PER_TONE_11N, SYM_DURATION_11N_NS,
+                    MAX_NUM_SPATIAL_STREAM_11N},
+            {NUM_TONE_PER_SYM_11AC_20MHZ, 0, MAX_BITS_PER_TONE_11AC, SYM_DURATION_11AC_NS,
+                    MAX_NUM_SPATIAL_STREAM_11AC},
+            {NUM_TONE_PER_SYM_11AC_40MHZ, 1, MAX_BITS_PER_TONE_11AC, SYM_DURATION_11AC_NS,
+                    MAX_NUM_SPATIAL_STREAM_11AC},
+            {NUM_TONE_PER_SYM_11AC_80MHZ, 2, MAX_BITS_PER_TONE_11AC, SYM_DURATION_11AC_NS,
+                    MAX_NUM_SPATIAL_STREAM_11AC},
+            {NUM_TONE_PER_SYM_11AC_160MHZ, 3, MAX_BITS_PER_TONE_11AC, SYM_DURATION_11AC_NS,
+                    MAX_NUM_SPATIAL_STREAM_11AC},
+            {NUM_TONE_PER_SYM_11AX_20MHZ, 0, MAX_BITS_PER_TONE_11AX, SYM_DURATION_11AX_NS,
+                    MAX_NUM_SPATIAL_STREAM_11AX},
+            {NUM_TONE_PER_SYM_11AX_40MHZ, 1, MAX_BITS_PER_TONE_11AX, SYM_DURATION_11AX_NS,
+                    MAX_NUM_SPATIAL_STREAM_11AX},
+            {NUM_TONE_PER_SYM_11AX_80MHZ, 2, MAX_BITS_PER_TONE_11AX, SYM_DURATION_11AX_NS,
+                    MAX_NUM_SPATIAL_STREAM_11AX},
+            {NUM_TONE_PER_SYM_11AX_160MHZ, 3, MAX_BITS_PER_TONE_11AX, SYM_DURATION_11AX_NS,
+                    MAX_NUM_SPATIAL_STREAM_11AX}};
+    private static final int PHY_CONFIG_NUM_TONE_PER_SYM = 0;
+    private static final int PHY_CONFIG_CHANNEL_WIDTH_FACTOR = 1;
+    private static final int PHY_CONFIG_MAX_BITS_PER_TONE = 2;
+    private static final int PHY_CONFIG_SYM_DURATION_NS = 3;
+    private static final int PHY_CONFIG_MAX_NUM_SPATIAL_STREAM = 4;
+    // PHY rate in Mbps indexed by [phyConfig][numSpatialStream - 1][snrDb - LUT_MIN]
+    private static final int[][][] PHY_RATE_MBPS_TABLE = buildPhyRateTable();
+    // Airtime fraction indexed by [channelWidthFactor][channelUtilization]
+    private static final int[][] AIR_TIME_FRACTION_TABLE = buildAirTimeFractionTable();
+
     private final Context mContext;
 
     ThroughputPredictor(Context context) {
@@ -268,6 +317,54 @@ public class ThroughputPredictor {
 
     private int predictThroughputInternal(@WifiStandard int wifiStandard, boolean is11bMode,
             int channelWidth, int rssiDbm, int maxNumSpatialStream,  int channelUtilization) {
+        // The computation is only traced in verbose mode.
+        if (!mVerboseLoggingEnabled) {
+            int throughputMbps = predictThroughputFromTable(wifiStandard, is11bMode, channelWidth,
+                    rssiDbm, maxNumSpatialStream, channelUtilization);
+            if (throughputMbps != TABLE_MISS) {
+                return throughputMbps;
+            }
+        }
+        return calculateThroughput(wifiStandard, is11bMode, channelWidth, rssiDbm,
+                maxNumSpatialStream, channelUtilization);
+    }
+
+    /**
+     * Look up the throughput in the precomputed tables.
+     * @return predicted throughput in Mbps, or {@link #TABLE_MISS} if the inputs are out of the
+     * range of the tables.
+     */
+    @VisibleForTesting
+    static int predictThroughputFromTable(@WifiStandard int wifiStandard, boolean is11bMode,
+            int channelWidth, int rssiDbm, int maxNumSpatialStream, int channelUtilization) {
+        int phyConfigIndex = getPhyConfigIndex(wifiStandard, channelWidth);
+        if (phyConfigIndex < 0 || maxNumSpatialStream < 1
+                || !isValidUtilizationRatio(channelUtilization)) {
+            return TABLE_MISS;
+        }
+        int[] phyConfig = PHY_CONFIGS[phyConfigIndex];
+        int channelWidthFactor = phyConfig[PHY_CONFIG_CHANNEL_WIDTH_FACTOR];
+        int numSpatialStream = Math.min(maxNumSpatialStream,
+                phyConfig[PHY_CONFIG_MAX_NUM_SPATIAL_STREAM]);
+        int snrDb = rssiDbm - getNoiseFloorDbm(channelWidthFactor);
+        int snrIndex = Math.max(Math.min(snrDb, TABLE_SNR_DB_MAX), SNR_DB_TO_BIT_PER_TONE_LUT_MIN)
+                - SNR_DB_TO_BIT_PER_TONE_LUT_MIN;
+        int phyRateMbps = PHY_RATE_MBPS_TABLE[phyConfigIndex][numSpatialStream - 1][snrIndex];
+        int airTimeFraction = AIR_TIME_FRACTION_TABLE[channelWidthFactor][channelUtilization];
+        int throughputMbps = (phyRateMbps * airTimeFraction) / MAX_CHANNEL_UTILIZATION;
+        if (is11bMode) {
+            throughputMbps = Math.min(throughputMbps, B_MODE_MAX_MBPS);
+        }
+        return throughputMbps;
+    }
+
+    /**
+     * Compute the throughput without the precomputed tables.
+     * @return predicted throughput in Mbps
+     */
+    @VisibleForTesting
+    int calculateThroughput(@WifiStandard int wifiStandard, boolean is11bMode,
+            int channelWidth, int rssiDbm, int maxNumSpatialStream,  int channelUtilization) {
 
         // channel bandwidth in MHz = 20MHz * (2 ^ channelWidthFactor);
         int channelWidthFactor;
@@ -333,20 +430,19 @@ public class ThroughputPredictor {
             maxBitsPerTone = MAX_BITS_PER_TONE_11AX;
             symDurationNs = SYM_DURATION_11AX_NS;
         }
-        // noiseFloorDbBoost = 10 * log10 * (2 ^ channelWidthFactor)
-        int noiseFloorDbBoost = TWO_IN_DB * channelWidthFactor;
-        int noiseFloorDbm = NOISE_FLOOR_20MHZ_DBM + noiseFloorDbBoost + SNR_MARGIN_DB;
-        int snrDb  = rssiDbm - noiseFloorDbm;
+        int snrDb  = rssiDbm - getNoiseFloorDbm(channelWidthFactor);
 
         int bitPerTone = calculateBitPerTone(snrDb);
         bitPerTone = Math.min(bitPerTone, maxBitsPerTone);
 
-        long bitPerToneTotal = bitPerTone * maxNumSpatialStream;
-        long numBitPerSym = bitPerToneTotal * numTonePerSym;
-        int phyRateMbps =  (int) ((numBitPerSym * MICRO_TO_NANO_RATIO)
-                / (symDurationNs * BIT_PER_TONE_SCALE));
+        int phyRateMbps = calculatePhyRateMbps(bitPerTone, maxNumSpatialStream, numTonePerSym,
+                symDurationNs);
 
         int airTimeFraction = calculateAirTimeFraction(channelUtilization, channelWidthFactor);
+        if (mVerboseLoggingEnabled) {
+            Log.d(TAG, " airTime20: " + (MAX_CHANNEL_UTILIZATION - channelUtilization)
+                    + " airTime: " + airTimeFraction);
+        }
 
         int throughputMbps = (phyRateMbps * airTimeFraction) / MAX_CHANNEL_UTILIZATION;
 
@@ -369,6 +465,82 @@ public class ThroughputPredictor {
         return throughputMbps;
     }
 
+    // Index of the PHY configuration of the given wifi standard and channel width in
+    // PHY_CONFIGS, or -1 if it isn't in the precomputed tables.
+    private static int getPhyConfigIndex(@WifiStandard int wifiStandard, int channelWidth) {
+        switch (wifiStandard) {
+            case ScanResult.WIFI_STANDARD_LEGACY:
+                return 0;
+            case ScanResult.WIFI_STANDARD_11N:
+                return channelWidth == ScanResult.CHANNEL_WIDTH_20MHZ ? 1 : 2;
+            case ScanResult.WIFI_STANDARD_11AC:
+                return 3 + getChannelWidthFactor(channelWidth);
+            case ScanResult.WIFI_STANDARD_11AX:
+                return 7 + getChannelWidthFactor(channelWidth);
+            default:
+                return -1;
+        }
+    }
+
+    // channel bandwidth in MHz = 20MHz * (2 ^ channelWidthFactor), for 11ac and 11ax
+    private static int getChannelWidthFactor(int channelWidth) {
+        switch (channelWidth) {
+            case ScanResult.CHANNEL_WIDTH_20MHZ:
+                return 0;
+            case ScanResult.CHANNEL_WIDTH_40MHZ:
+                return 1;
+            case ScanResult.CHANNEL_WIDTH_80MHZ:
+                return 2;
+            default:
+                return 3;
+        }
+    }
+
+    private static int getNoiseFloorDbm(int channelWidthFactor) {
+        // noiseFloorDbBoost = 10 * log10 * (2 ^ channelWidthFactor)
+        int noiseFloorDbBoost = TWO_IN_DB * channelWidthFactor;
+        return NOISE_FLOOR_20MHZ_DBM + noiseFloorDbBoost + SNR_MARGIN_DB;
+    }
+
+    private static int calculatePhyRateMbps(int bitPerTone, int numSpatialStream,
+            int numTonePerSym, int symDurationNs) {
+        long bitPerToneTotal = bitPerTone * numSpatialStream;
+        long numBitPerSym = bitPerToneTotal * numTonePerSym;
+        return (int) ((numBitPerSym * MICRO_TO_NANO_RATIO)
+                / (symDurationNs * BIT_PER_TONE_SCALE));
+    }
+
+    private static int[][][] buildPhyRateTable() {
+        int[][][] table = new int[PHY_CONFIGS.length][][];
+        for (int i = 0; i < PHY_CONFIGS.length; i++) {
+            int[] phyConfig = PHY_CONFIGS[i];
+            int maxNumSpatialStream = phyConfig[PHY_CONFIG_MAX_NUM_SPATIAL_STREAM];
+            table[i] = new int[maxNumSpatialStream][TABLE_NUM_SNR_DB];
+            for (int nss = 1; nss <= maxNumSpatialStream; nss++) {
+                for (int j = 0; j < TABLE_NUM_SNR_DB; j++) {
+                    int bitPerTone = Math.min(
+                            calculateBitPerTone(j + SNR_DB_TO_BIT_PER_TONE_LUT_MIN),
+                            phyConfig[PHY_CONFIG_MAX_BITS_PER_TONE]);
+                    table[i][nss - 1][j] = calculatePhyRateMbps(bitPerTone, nss,
+                            phyConfig[PHY_CONFIG_NUM_TONE_PER_SYM],
+                            phyConfig[PHY_CONFIG_SYM_DURATION_NS]);
+                }
+            }
+        }
+        return table;
+    }
+
+    private static int[][] buildAirTimeFractionTable() {
+        int[][] table = new int[MAX_CHANNEL_WIDTH_FACTOR + 1][MAX_CHANNEL_UTILIZATION + 1];
+        for (int factor = 0; factor <= MAX_CHANNEL_WIDTH_FACTOR; factor++) {
+            for (int utilization = MIN_CHANNEL_UTILIZATION;
+                    utilization <= MAX_CHANNEL_UTILIZATION; utilization++) {
+                table[factor][utilization] = calculateAirTimeFraction(utilization, factor);
+            }
+        }
+        return table;
+    }
+
     // Calculate the number of bits per tone based on the input of SNR in dB
     // The output is scaled up by BIT_PER_TONE_SCALE for integer representation
     private static int calculateBitPerTone(int snrDb) {
@@ -426,7 +598,7 @@ public class ThroughputPredictor {
     // Calculate the available airtime fraction value which is multiplied by
     // MAX_CHANNEL_UTILIZATION for integer representation. It is calculated as
     // (1 - channelUtilization / MAX_CHANNEL_UTILIZATION) * MAX_CHANNEL_UTILIZATION
-    private int calculateAirTimeFraction(int channelUtilization, int channelWidthFactor) {
+    private static int calculateAirTimeFraction(int channelUtilization, int channelWidthFactor) {
         int airTimeFraction20MHz = MAX_CHANNEL_UTILIZATION - channelUtilization;
         int airTimeFraction = airTimeFraction20MHz;
         // For the cases of 40MHz or above, need to take
@@ -436,9 +608,6 @@ public class ThroughputPredictor {
             airTimeFraction *= airTimeFraction;
             airTimeFraction /= MAX_CHANNEL_UTILIZATION;
         }
-        if (mVerboseLoggingEnabled) {
-            Log.d(TAG, " airTime20: " + airTimeFraction20MHz + " airTime: " + airTimeFraction);
-        }
         return airTimeFraction;
     }
 }
@@ -104,6 +104,8 @@ public class WakeupController {
 
     /** Whether the WakeupController is currently active. */
     private boolean mIsActive = false;
+    /** Whether {@link #mIsActive} has changed since it was last written to the store. */
+    private boolean mHasNewDataToSerialize = false;
 
     /**
      *  The number of scans that have been handled by the controller since last
@@ -195,6 +197,7 @@ public class WakeupController {
         if (mIsActive != isActive) {
             Log.d(TAG, "Setting active to " + isActive);
             mIsActive = isActive;
+            mHasNewDataToSerialize = true;
             mWifiConfigManager.saveToStore(false /* forceWrite */);
         }
     }
@@ -352,7 +355,7 @@ public class WakeupController {
     /** Returns a filtered set of saved networks from WifiConfigManager & suggestions
      * from WifiNetworkSuggestionsManager. */
     private Set<ScanResultMatchInfo> getGoodSavedNetworksAndSuggestions() {
-        List<WifiConfiguration> savedNetworks = mWifiConfigManager.getSavedNetworks(
+        List<WifiConfiguration> savedNetworks = mWifiConfigManager.getSavedNetworksSnapshot(
                 Process.WIFI_UID);
 
         Set<ScanResultMatchInfo> goodNetworks = new HashSet<>(savedNetworks.size());
@@ -481,6 +484,8 @@ public class WakeupController {
 
         @Override
         public Boolean getData() {
+            // Clear the flag after writing to disk.
+            mHasNewDataToSerialize = false;
             return mIsActive;
         }
 
@@ -488,6 +493,11 @@ public class WakeupController {
         public void setData(Boolean data) {
             mIsActive = data;
         }
+
+        @Override
+        public boolean hasNewDataToSerialize() {
+            return mHasNewDataToSerialize;
+        }
     }
 
     public void resetNotification() {
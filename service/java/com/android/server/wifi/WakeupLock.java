@@ -52,6 +52,8 @@ public class WakeupLock {
     private long mLockTimestamp;
     private boolean mIsInitialized;
     private int mNumScans;
+    /** Whether the locked networks have changed since they were last written to the store. */
+    private boolean mHasNewDataToSerialize;
 
     public WakeupLock(WifiConfigManager wifiConfigManager, WifiWakeMetrics wifiWakeMetrics,
                       Clock clock) {
@@ -79,6 +81,7 @@ public class WakeupLock {
 
         Log.d(TAG, "Lock set. Number of networks: " + mLockedNetworks.size());
 
+        mHasNewDataToSerialize = true;
         mWifiConfigManager.saveToStore(false /* forceWrite */);
     }
 
@@ -160,6 +163,7 @@ public class WakeupLock {
         }
 
         if (hasChanged) {
+            mHasNewDataToSerialize = true;
             mWifiConfigManager.saveToStore(false /* forceWrite */);
         }
 
@@ -206,6 +210,7 @@ public class WakeupLock {
         }
 
         if (hasChanged) {
+            mHasNewDataToSerialize = true;
             mWifiConfigManager.saveToStore(false /* forceWrite */);
         }
 
@@ -278,6 +283,8 @@ public class WakeupLock {
 
         @Override
         public Set<ScanResultMatchInfo> getData() {
+            // Clear the flag after writing to disk.
+            mHasNewDataToSerialize = false;
             return mLockedNetworks.keySet();
         }
 
@@ -290,5 +297,10 @@ public class WakeupLock {
             // lock is considered initialized if loaded from store
             mIsInitialized = true;
         }
+
+        @Override
+        public boolean hasNewDataToSerialize() {
+            return mHasNewDataToSerialize;
+        }
     }
 }
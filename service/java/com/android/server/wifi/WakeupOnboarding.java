@@ -60,6 +60,8 @@ public class WakeupOnboarding {
 
     private boolean mIsOnboarded;
     private int mTotalNotificationsShown;
+    /** Whether the onboarding state has changed since it was last written to the store. */
+    private boolean mHasNewDataToSerialize;
     private long mLastShownTimestamp = NOT_SHOWN_TIMESTAMP;
     private boolean mIsNotificationShowing;
 
@@ -144,6 +146,7 @@ public class WakeupOnboarding {
         if (mTotalNotificationsShown >= NOTIFICATIONS_UNTIL_ONBOARDED) {
             setOnboarded();
         } else {
+            mHasNewDataToSerialize = true;
             mWifiConfigManager.saveToStore(false /* forceWrite */);
         }
     }
@@ -183,6 +186,7 @@ public class WakeupOnboarding {
         }
         Log.d(TAG, "Setting user as onboarded.");
         mIsOnboarded = true;
+        mHasNewDataToSerialize = true;
         mWifiConfigManager.saveToStore(false /* forceWrite */);
     }
 
@@ -200,6 +204,8 @@ public class WakeupOnboarding {
 
         @Override
         public Boolean getData() {
+            // Clear the flag after writing to disk.
+            mHasNewDataToSerialize = false;
             return mIsOnboarded;
         }
 
@@ -207,12 +213,19 @@ public class WakeupOnboarding {
         public void setData(Boolean data) {
             mIsOnboarded = data;
         }
+
+        @Override
+        public boolean hasNewDataToSerialize() {
+            return mHasNewDataToSerialize;
+        }
     }
 
     private class NotificationsDataSource implements WakeupConfigStoreData.DataSource<Integer> {
 
         @Override
         public Integer getData() {
+            // Clear the flag after writing to disk.
+            mHasNewDataToSerialize = false;
             return mTotalNotificationsShown;
         }
 
@@ -220,5 +233,10 @@ public class WakeupOnboarding {
         public void setData(Integer data) {
             mTotalNotificationsShown = data;
         }
+
+        @Override
+        public boolean hasNewDataToSerialize() {
+            return mHasNewDataToSerialize;
+        }
     }
 }
@@ -47,6 +47,7 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
@@ -130,6 +131,12 @@ public class WifiBlocklistMonitor {
 
     // Map of bssid to BssidStatus
     private Map<String, BssidStatus> mBssidStatusMap = new ArrayMap<>();
+    // Map of ssid to the BssidStatus of its BSSIDs, a secondary index of mBssidStatusMap
+    private Map<String, List<BssidStatus>> mBssidStatusesBySsid = new ArrayMap<>();
+    // BssidStatus in the blocklist, ordered by the time they get unblocked. An entry must be
+    // removed from the queue before its blocklist end time is changed.
+    private PriorityQueue<BssidStatus> mBlocklistExpiryQueue = new PriorityQueue<>(
+            (o1, o2) -> Long.compare(o1.blocklistEndTimeMs, o2.blocklistEndTimeMs));
     private Set<String> mDisabledSsids = new ArraySet<>();
 
     // Internal logger to make sure imporatant logs do not get lost.
@@ -245,7 +252,11 @@ public class WifiBlocklistMonitor {
 
     private void addToBlocklist(@NonNull BssidStatus entry, long durationMs,
             @FailureReason int reason, int rssi) {
+        if (entry.isInBlocklist) {
+            mBlocklistExpiryQueue.remove(entry);
+        }
         entry.setAsBlocked(durationMs, reason, rssi);
+        mBlocklistExpiryQueue.add(entry);
         localLog(TAG + " addToBlocklist: bssid=" + entry.bssid + ", ssid=" + entry.ssid
                 + ", durationMs=" + durationMs + ", reason=" + getFailureReasonString(reason)
                 + ", rssi=" + rssi);
@@ -275,11 +286,46 @@ public class WifiBlocklistMonitor {
                         + status.ssid + " to " + ssid);
             }
             status = new BssidStatus(bssid, ssid);
-            mBssidStatusMap.put(bssid, status);
+            putBssidStatus(status);
         }
         return status;
     }
 
+    private void putBssidStatus(@NonNull BssidStatus status) {
+        BssidStatus prevStatus = mBssidStatusMap.put(status.bssid, status);
+        if (prevStatus != null) {
+            removeFromSsidIndex(prevStatus);
+            if (prevStatus.isInBlocklist) {
+                mBlocklistExpiryQueue.remove(prevStatus);
+            }
+        }
+        List<BssidStatus> statuses = mBssidStatusesBySsid.get(status.ssid);
+        if (statuses == null) {
+            statuses = new ArrayList<>();
+            mBssidStatusesBySsid.put(status.ssid, statuses);
+        }
+        statuses.add(status);
+    }
+
+    private void removeBssidStatus(@NonNull BssidStatus status) {
+        mBssidStatusMap.remove(status.bssid);
+        removeFromSsidIndex(status);
+        if (status.isInBlocklist) {
+            mBlocklistExpiryQueue.remove(status);
+        }
+    }
+
+    private void removeFromSsidIndex(@NonNull BssidStatus status) {
+        List<BssidStatus> statuses = mBssidStatusesBySsid.get(status.ssid);
+        if (statuses == null) {
+            return;
+        }
+        statuses.remove(status);
+        if (statuses.isEmpty()) {
+            mBssidStatusesBySsid.remove(status.ssid);
+        }
+    }
+
     private boolean isValidNetworkAndFailureReason(String bssid, String ssid,
             @FailureReason int reasonCode) {
         if (bssid == null || ssid == null || WifiManager.UNKNOWN_SSID.equals(ssid)
@@ -513,7 +559,7 @@ public class WifiBlocklistMonitor {
          **/
         if (status.isInBlocklist) {
             mBssidBlocklistMonitorLogger.logBssidUnblocked(status, "Network validation success");
-            mBssidStatusMap.remove(bssid);
+            removeBssidStatus(status);
         }
     }
 
@@ -544,20 +590,21 @@ public class WifiBlocklistMonitor {
      * @param ssid
      */
     public void clearBssidBlocklistForSsid(@NonNull String ssid) {
-        int prevSize = mBssidStatusMap.size();
-        mBssidStatusMap.entrySet().removeIf(e -> {
-            BssidStatus status = e.getValue();
-            if (status.ssid == null) {
-                return false;
-            }
-            if (status.ssid.equals(ssid)) {
-                mBssidBlocklistMonitorLogger.logBssidUnblocked(
-                        status, "clearBssidBlocklistForSsid");
-                return true;
+        if (ssid == null) {
+            return;
+        }
+        List<BssidStatus> statuses = mBssidStatusesBySsid.remove(ssid);
+        if (statuses == null) {
+            return;
+        }
+        for (BssidStatus status : statuses) {
+            mBssidBlocklistMonitorLogger.logBssidUnblocked(status, "clearBssidBlocklistForSsid");
+            mBssidStatusMap.remove(status.bssid);
+            if (status.isInBlocklist) {
+                mBlocklistExpiryQueue.remove(status);
             }
-            return false;
-        });
-        int diff = prevSize - mBssidStatusMap.size();
+        }
+        int diff = statuses.size();
         if (diff > 0) {
             localLog(TAG + " clearBssidBlocklistForSsid: SSID=" + ssid
                     + ", num BSSIDs cleared=" + diff);
@@ -574,6 +621,8 @@ public class WifiBlocklistMonitor {
                 mBssidBlocklistMonitorLogger.logBssidUnblocked(status, "clearBssidBlocklist");
             }
             mBssidStatusMap.clear();
+            mBssidStatusesBySsid.clear();
+            mBlocklistExpiryQueue.clear();
             localLog(TAG + " clearBssidBlocklist: num BSSIDs cleared="
                     + (prevSize - mBssidStatusMap.size()));
         }
@@ -585,17 +634,28 @@ public class WifiBlocklistMonitor {
      * @return the number of BSSIDs currently in the blocklist for the |ssid|.
      */
     public int updateAndGetNumBlockedBssidsForSsid(@NonNull String ssid) {
-        return (int) updateAndGetBssidBlocklistInternal()
-                .filter(entry -> ssid.equals(entry.ssid)).count();
+        removeExpiredBlocklistEntries();
+        return (int) getBlockedBssidStatusesForSsid(ssid).count();
     }
 
     private int getNumBlockedBssidsForSsids(@NonNull Set<String> ssids) {
-        if (ssids.isEmpty()) {
-            return 0;
+        int numBlockedBssids = 0;
+        for (String ssid : ssids) {
+            numBlockedBssids += getBlockedBssidStatusesForSsid(ssid).count();
         }
-        return (int) mBssidStatusMap.values().stream()
-                .filter(entry -> entry.isInBlocklist && ssids.contains(entry.ssid))
-                .count();
+        return numBlockedBssids;
+    }
+
+    /**
+     * Gets the BssidStatus of the BSSIDs of the SSID that are in the blocklist, without removing
+     * expired entries.
+     */
+    private Stream<BssidStatus> getBlockedBssidStatusesForSsid(String ssid) {
+        List<BssidStatus> statuses = mBssidStatusesBySsid.get(ssid);
+        if (statuses == null) {
+            return Stream.empty();
+        }
+        return statuses.stream().filter(entry -> entry.isInBlocklist);
     }
 
     /**
@@ -632,8 +692,7 @@ public class WifiBlocklistMonitor {
         if (ssid == null) {
             return Collections.emptySet();
         }
-        return mBssidStatusMap.values().stream()
-                .filter(entry -> entry.isInBlocklist && ssid.equals(entry.ssid))
+        return getBlockedBssidStatusesForSsid(ssid)
                 .map(entry -> entry.blockReason)
                 .collect(Collectors.toSet());
     }
@@ -661,7 +720,7 @@ public class WifiBlocklistMonitor {
                     && scanResult.level - status.lastRssi >= MIN_RSSI_DIFF_TO_UNBLOCK_BSSID) {
                 mBssidBlocklistMonitorLogger.logBssidUnblocked(
                         status, "rssi significantly improved");
-                mBssidStatusMap.remove(status.bssid);
+                removeBssidStatus(status);
             }
         }
     }
@@ -676,21 +735,24 @@ public class WifiBlocklistMonitor {
      * @return Stream of BssidStatus for BSSIDs that are in the blocklist.
      */
     private Stream<BssidStatus> updateAndGetBssidBlocklistInternal() {
-        Stream.Builder<BssidStatus> builder = Stream.builder();
+        removeExpiredBlocklistEntries();
+        return mBlocklistExpiryQueue.stream();
+    }
+
+    /**
+     * Removes the BssidStatus entries whose blocklist duration expired. Only the expiring entries
+     * at the head of the expiry queue are visited.
+     */
+    private void removeExpiredBlocklistEntries() {
         long curTime = mClock.getWallClockMillis();
-        mBssidStatusMap.entrySet().removeIf(e -> {
-            BssidStatus status = e.getValue();
-            if (status.isInBlocklist) {
-                if (status.blocklistEndTimeMs < curTime) {
-                    mBssidBlocklistMonitorLogger.logBssidUnblocked(
-                            status, "updateAndGetBssidBlocklistInternal");
-                    return true;
-                }
-                builder.accept(status);
-            }
-            return false;
-        });
-        return builder.build();
+        while (!mBlocklistExpiryQueue.isEmpty()
+                && mBlocklistExpiryQueue.peek().blocklistEndTimeMs < curTime) {
+            BssidStatus status = mBlocklistExpiryQueue.poll();
+            mBssidBlocklistMonitorLogger.logBssidUnblocked(
+                    status, "updateAndGetBssidBlocklistInternal");
+            mBssidStatusMap.remove(status.bssid);
+            removeFromSsidIndex(status);
+        }
     }
 
     /**
@@ -702,8 +764,9 @@ public class WifiBlocklistMonitor {
         if (!mConnectivityHelper.isFirmwareRoamingSupported()) {
             return;
         }
-        ArrayList<String> bssidBlocklist = updateAndGetBssidBlocklistInternal()
-                .filter(entry -> ssids.contains(entry.ssid))
+        removeExpiredBlocklistEntries();
+        ArrayList<String> bssidBlocklist = ssids.stream()
+                .flatMap(ssid -> getBlockedBssidStatusesForSsid(ssid))
                 .sorted((o1, o2) -> (int) (o2.blocklistEndTimeMs - o1.blocklistEndTimeMs))
                 .map(entry -> entry.bssid)
                 .collect(Collectors.toCollection(ArrayList::new));
@@ -198,6 +198,8 @@ public class WifiCarrierInfoManager {
             new ArrayList<>();
     private final List<OnCarrierOffloadDisabledListener> mOnCarrierOffloadDisabledListeners =
             new ArrayList<>();
+    private final List<OnActiveSubscriptionsChangedListener>
+            mOnActiveSubscriptionsChangedListeners = new ArrayList<>();
     private final SparseArray<SimInfo> mSubIdToSimInfoSparseArray = new SparseArray<>();
 
     private List<SubscriptionInfo> mActiveSubInfos = null;
@@ -307,6 +309,17 @@ public class WifiCarrierInfoManager {
         void onCarrierOffloadDisabled(int subscriptionId, boolean merged);
     }
 
+    /**
+     * Interface for other modules to listen to the changes of the active subscriptions.
+     */
+    public interface OnActiveSubscriptionsChangedListener {
+
+        /**
+         * Invoke when the active subscriptions or their SIM info changed.
+         */
+        void onActiveSubscriptionsChanged();
+    }
+
     /**
      * Module to interact with the wifi config store.
      */
@@ -453,6 +466,10 @@ public class WifiCarrierInfoManager {
             if (mVerboseLogEnabled) {
                 Log.v(TAG, "active subscription changes: " + mActiveSubInfos);
             }
+            for (OnActiveSubscriptionsChangedListener listener
+                    : mOnActiveSubscriptionsChangedListeners) {
+                listener.onActiveSubscriptionsChanged();
+            }
         }
     }
 
@@ -1645,6 +1662,14 @@ public class WifiCarrierInfoManager {
         mOnCarrierOffloadDisabledListeners.add(listener);
     }
 
+    /**
+     * Add a listener to monitor the changes of the active subscriptions.
+     */
+    public void addOnActiveSubscriptionsChangedListener(
+            OnActiveSubscriptionsChangedListener listener) {
+        mOnActiveSubscriptionsChangedListeners.add(listener);
+    }
+
     /**
      * remove a {@link OnCarrierOffloadDisabledListener}.
      */
@@ -47,6 +47,7 @@ import android.util.ArraySet;
 import android.util.LocalLog;
 import android.util.Log;
 import android.util.Pair;
+import android.util.SparseArray;
 
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.net.module.util.MacAddressUtils;
@@ -166,6 +167,10 @@ public class WifiConfigManager {
      */
     @VisibleForTesting
     public static final int SCAN_CACHE_ENTRIES_TRIM_SIZE = 128;
+    /**
+     * Max number of target UIDs to keep a saved networks snapshot for.
+     */
+    private static final int MAX_SAVED_NETWORKS_SNAPSHOTS = 8;
     /**
      * Link networks only if they have less than this number of scan cache entries.
      */
@@ -272,6 +277,19 @@ public class WifiConfigManager {
      * Map of configured networks with network id as the key.
      */
     private final ConfigurationMap mConfiguredNetworks;
+    /**
+     * Read-only snapshots of the saved networks with the passwords masked, per target UID.
+     * They are shared by the callers of {@link #getSavedNetworksSnapshot(int)} as long as the
+     * generation of {@link #mConfiguredNetworks} doesn't change.
+     */
+    private final SparseArray<List<WifiConfiguration>> mSavedNetworksSnapshots =
+            new SparseArray<>();
+    private long mSavedNetworksSnapshotsGeneration = -1;
+    /**
+     * Generation of {@link #mConfiguredNetworks} last handed to the network list store data, used
+     * to skip serializing the network lists when they have not changed.
+     */
+    private long mStoredNetworksGeneration = -1;
     /**
      * Stores a map of NetworkId to ScanDetailCache.
      */
@@ -293,6 +311,7 @@ public class WifiConfigManager {
      * will get used.
      */
     private final Map<String, String> mRandomizedMacAddressMapping;
+    private boolean mRandomizedMacAddressMappingModified = false;
 
     /**
      * Store the network update listeners.
@@ -518,6 +537,7 @@ public class WifiConfigManager {
             } catch (IllegalArgumentException e) {
                 Log.e(TAG, "Error creating randomized MAC address from stored value.");
                 mRandomizedMacAddressMapping.remove(config.getNetworkKey());
+                mRandomizedMacAddressMappingModified = true;
             }
         }
         MacAddress result = mMacAddressUtil.calculatePersistentMac(config.getNetworkKey(),
@@ -703,7 +723,7 @@ public class WifiConfigManager {
     private List<WifiConfiguration> getConfiguredNetworks(
             boolean savedOnly, boolean maskPasswords, int targetUid) {
         List<WifiConfiguration> networks = new ArrayList<>();
-        for (WifiConfiguration config : getInternalConfiguredNetworks()) {
+        for (WifiConfiguration config : getInternalConfiguredNetworksForRead()) {
             if (savedOnly && (config.ephemeral || config.isPasspoint())) {
                 continue;
             }
@@ -743,6 +763,29 @@ public class WifiConfigManager {
         return getConfiguredNetworks(true, true, targetUid);
     }
 
+    /**
+     * Retrieves a read-only snapshot of the saved networks with the passwords masked.
+     *
+     * Unlike {@link #getSavedNetworks(int)}, the returned configurations are shared with the other
+     * callers until the configured networks change, so they must not be modified.
+     *
+     * @param targetUid Target UID for MAC address reading, see {@link #getSavedNetworks(int)}.
+     * @return Unmodifiable list of WifiConfiguration objects representing the networks.
+     */
+    public List<WifiConfiguration> getSavedNetworksSnapshot(int targetUid) {
+        if (mConfiguredNetworks.getGeneration() != mSavedNetworksSnapshotsGeneration
+                || mSavedNetworksSnapshots.size() >= MAX_SAVED_NETWORKS_SNAPSHOTS) {
+            mSavedNetworksSnapshots.clear();
+        }
+        List<WifiConfiguration> snapshot = mSavedNetworksSnapshots.get(targetUid);
+        if (snapshot == null) {
+            snapshot = Collections.unmodifiableList(getConfiguredNetworks(true, true, targetUid));
+            mSavedNetworksSnapshots.put(targetUid, snapshot);
+            mSavedNetworksSnapshotsGeneration = mConfiguredNetworks.getGeneration();
+        }
+        return snapshot;
+    }
+
     /**
      * Retrieves the configured network corresponding to the provided networkId with password
      * masked.
@@ -751,7 +794,7 @@ public class WifiConfigManager {
      * @return WifiConfiguration object if found, null otherwise.
      */
     public WifiConfiguration getConfiguredNetwork(int networkId) {
-        WifiConfiguration config = getInternalConfiguredNetwork(networkId);
+        WifiConfiguration config = getInternalConfiguredNetworkForRead(networkId);
         if (config == null) {
             return null;
         }
@@ -768,7 +811,7 @@ public class WifiConfigManager {
      * @return WifiConfiguration object if found, null otherwise.
      */
     public WifiConfiguration getConfiguredNetwork(String configKey) {
-        WifiConfiguration config = getInternalConfiguredNetwork(configKey);
+        WifiConfiguration config = getInternalConfiguredNetworkForRead(configKey);
         if (config == null) {
             return null;
         }
@@ -788,7 +831,7 @@ public class WifiConfigManager {
      * @return WifiConfiguration object if found, null otherwise.
      */
     public WifiConfiguration getConfiguredNetworkWithPassword(int networkId) {
-        WifiConfiguration config = getInternalConfiguredNetwork(networkId);
+        WifiConfiguration config = getInternalConfiguredNetworkForRead(networkId);
         if (config == null) {
             return null;
         }
@@ -808,7 +851,7 @@ public class WifiConfigManager {
      * @return Copy of WifiConfiguration object if found, null otherwise.
      */
     public WifiConfiguration getConfiguredNetworkWithoutMasking(int networkId) {
-        WifiConfiguration config = getInternalConfiguredNetwork(networkId);
+        WifiConfiguration config = getInternalConfiguredNetworkForRead(networkId);
         if (config == null) {
             return null;
         }
@@ -817,12 +860,32 @@ public class WifiConfigManager {
 
     /**
      * Helper method to retrieve all the internal WifiConfiguration objects corresponding to all
-     * the networks in our database.
+     * the networks in our database, which may then be modified in place.
      */
     private Collection<WifiConfiguration> getInternalConfiguredNetworks() {
+        mConfiguredNetworks.onConfigurationsModifiedInPlace();
         return mConfiguredNetworks.valuesForCurrentUser();
     }
 
+    /**
+     * Helper method to retrieve all the internal WifiConfiguration objects corresponding to all
+     * the networks in our database, only to read them.
+     */
+    private Collection<WifiConfiguration> getInternalConfiguredNetworksForRead() {
+        return mConfiguredNetworks.valuesForCurrentUser();
+    }
+
+    /**
+     * Helper method to hand out an internal WifiConfiguration object which may then be modified
+     * in place, so that the state derived from the configured networks is rebuilt.
+     */
+    private WifiConfiguration handOutInternalConfiguredNetwork(WifiConfiguration config) {
+        if (config != null) {
+            mConfiguredNetworks.onConfigurationsModifiedInPlace();
+        }
+        return config;
+    }
+
     private WifiConfiguration getInternalConfiguredNetworkByUpgradableType(
             WifiConfiguration config) {
         WifiConfiguration internalConfig = null;
@@ -866,12 +929,12 @@ public class WifiConfigManager {
     private WifiConfiguration getInternalConfiguredNetwork(WifiConfiguration config) {
         WifiConfiguration internalConfig = mConfiguredNetworks.getForCurrentUser(config.networkId);
         if (internalConfig != null) {
-            return internalConfig;
+            return handOutInternalConfiguredNetwork(internalConfig);
         }
         internalConfig = mConfiguredNetworks.getByConfigKeyForCurrentUser(
                 config.getProfileKey());
         if (internalConfig != null) {
-            return internalConfig;
+            return handOutInternalConfiguredNetwork(internalConfig);
         }
         internalConfig = getInternalConfiguredNetworkByUpgradableType(config);
         if (internalConfig == null) {
@@ -879,14 +942,22 @@ public class WifiConfigManager {
                     + " or configKey " + config.getProfileKey()
                     + " or upgradable security type check");
         }
-        return internalConfig;
+        return handOutInternalConfiguredNetwork(internalConfig);
     }
 
     /**
      * Helper method to retrieve the internal WifiConfiguration object corresponding to the
-     * provided network ID in our database.
+     * provided network ID in our database, which may then be modified in place.
      */
     private WifiConfiguration getInternalConfiguredNetwork(int networkId) {
+        return handOutInternalConfiguredNetwork(getInternalConfiguredNetworkForRead(networkId));
+    }
+
+    /**
+     * Helper method to retrieve the internal WifiConfiguration object corresponding to the
+     * provided network ID in our database, only to read it.
+     */
+    private WifiConfiguration getInternalConfiguredNetworkForRead(int networkId) {
         if (networkId == WifiConfiguration.INVALID_NETWORK_ID) {
             return null;
         }
@@ -899,9 +970,17 @@ public class WifiConfigManager {
 
     /**
      * Helper method to retrieve the internal WifiConfiguration object corresponding to the
-     * provided configKey in our database.
+     * provided configKey in our database, which may then be modified in place.
      */
     private WifiConfiguration getInternalConfiguredNetwork(String configKey) {
+        return handOutInternalConfiguredNetwork(getInternalConfiguredNetworkForRead(configKey));
+    }
+
+    /**
+     * Helper method to retrieve the internal WifiConfiguration object corresponding to the
+     * provided configKey in our database, only to read it.
+     */
+    private WifiConfiguration getInternalConfiguredNetworkForRead(String configKey) {
         WifiConfiguration internalConfig =
                 mConfiguredNetworks.getByConfigKeyForCurrentUser(configKey);
         if (internalConfig == null) {
@@ -2306,7 +2385,7 @@ public class WifiConfigManager {
         if (mLastSelectedNetworkId == WifiConfiguration.INVALID_NETWORK_ID) {
             return "";
         }
-        WifiConfiguration config = getInternalConfiguredNetwork(mLastSelectedNetworkId);
+        WifiConfiguration config = getInternalConfiguredNetworkForRead(mLastSelectedNetworkId);
         if (config == null) {
             return "";
         }
@@ -2408,7 +2487,9 @@ public class WifiConfigManager {
     public WifiConfiguration getSavedNetworkForScanResult(@NonNull ScanResult scanResult) {
         WifiConfiguration config = null;
         try {
-            config = mConfiguredNetworks.getByScanResultForCurrentUser(scanResult);
+            // The callers may modify the returned configuration in place.
+            config = handOutInternalConfiguredNetwork(
+                    mConfiguredNetworks.getByScanResultForCurrentUser(scanResult));
         } catch (IllegalArgumentException e) {
             Log.e(TAG, "Failed to lookup network from config map", e);
         }
@@ -2489,6 +2570,8 @@ public class WifiConfigManager {
                     result.level = (int) ((double) result.level * (1 - alpha)
                                         + (double) previousRssi * alpha);
                 }
+                // Re-index the updated scan detail.
+                scanDetailCache.put(scanDetail);
                 if (mVerboseLoggingEnabled) {
                     Log.v(TAG, "Updating scan detail cache freq=" + result.frequency
                             + " BSSID=" + result.BSSID
@@ -2690,8 +2773,8 @@ public class WifiConfigManager {
      * Retrieves a list of all the saved hidden networks for scans
      *
      * Hidden network list sent to the firmware has limited size. If there are a lot of saved
-     * networks, this list will be truncated and we might end up not sending the networks
-     * with the highest chance of connecting to the firmware.
+     * networks, {@link HiddenNetworkScanScheduler} rotates through them across scans, and
+     * probes the networks with the highest chance of connecting more often.
      * So, re-sort the network list based on the frequency of connection to those networks
      * and whether it was last seen in the scan results.
      *
@@ -3050,6 +3133,7 @@ public class WifiConfigManager {
         mUserTemporarilyDisabledList.clear();
         mNonCarrierMergedNetworksStatusTracker.clear();
         mRandomizedMacAddressMapping.clear();
+        mRandomizedMacAddressMappingModified = true;
         mScanDetailCaches.clear();
         clearLastSelectedNetwork();
     }
@@ -3113,7 +3197,11 @@ public class WifiConfigManager {
             if (null != existingConfiguration) {
                 Log.d(TAG, "Merging network from shared store "
                         + configuration.getProfileKey());
+                String profileKey = existingConfiguration.getProfileKey();
                 mergeWithInternalWifiConfiguration(existingConfiguration, configuration);
+                if (!profileKey.equals(existingConfiguration.getProfileKey())) {
+                    mConfiguredNetworks.onProfileKeyChanged(existingConfiguration);
+                }
                 continue;
             }
 
@@ -3130,6 +3218,7 @@ public class WifiConfigManager {
             }
         }
         mRandomizedMacAddressMapping.putAll(macAddressMapping);
+        mRandomizedMacAddressMappingModified = true;
     }
 
     /**
@@ -3150,7 +3239,11 @@ public class WifiConfigManager {
             if (null != existingConfiguration) {
                 Log.d(TAG, "Merging network from user store "
                         + configuration.getProfileKey());
+                String profileKey = existingConfiguration.getProfileKey();
                 mergeWithInternalWifiConfiguration(existingConfiguration, configuration);
+                if (!profileKey.equals(existingConfiguration.getProfileKey())) {
+                    mConfiguredNetworks.onProfileKeyChanged(existingConfiguration);
+                }
                 continue;
             }
 
@@ -3340,6 +3433,7 @@ public class WifiConfigManager {
         ArrayList<WifiConfiguration> userConfigurations = new ArrayList<>();
         // List of network IDs for legacy Passpoint configuration to be removed.
         List<Integer> legacyPasspointNetId = new ArrayList<>();
+        boolean mostRecentlyConnectedChanged = false;
         for (WifiConfiguration config : mConfiguredNetworks.valuesForAllUsers()) {
             // Ignore ephemeral networks and non-legacy Passpoint configurations.
             if (config.ephemeral || (config.isPasspoint() && !config.isLegacyPasspointConfig)) {
@@ -3359,8 +3453,12 @@ public class WifiConfigManager {
                 continue;
             }
 
-            config.isMostRecentlyConnected =
+            boolean isMostRecentlyConnected =
                     mLruConnectionTracker.isMostRecentlyConnected(config);
+            if (config.isMostRecentlyConnected != isMostRecentlyConnected) {
+                config.isMostRecentlyConnected = isMostRecentlyConnected;
+                mostRecentlyConnectedChanged = true;
+            }
 
             // We push all shared networks & private networks not belonging to the current
             // user to the shared store. Ideally, private networks for other users should
@@ -3377,15 +3475,26 @@ public class WifiConfigManager {
             }
         }
 
+        if (mostRecentlyConnectedChanged) {
+            mConfiguredNetworks.onConfigurationsModifiedInPlace();
+        }
+
         // Remove the configurations for migrated Passpoint configurations.
         for (int networkId : legacyPasspointNetId) {
             mConfiguredNetworks.remove(networkId);
         }
 
-        // Setup store data for write.
-        mNetworkListSharedStoreData.setConfigurations(sharedConfigurations);
-        mNetworkListUserStoreData.setConfigurations(userConfigurations);
-        mRandomizedMacStoreData.setMacMapping(mRandomizedMacAddressMapping);
+        // Setup store data for write, only handing over the data which changed since the last
+        // write so that unchanged sections are not serialized again.
+        if (mConfiguredNetworks.getGeneration() != mStoredNetworksGeneration) {
+            mNetworkListSharedStoreData.setConfigurations(sharedConfigurations);
+            mNetworkListUserStoreData.setConfigurations(userConfigurations);
+            mStoredNetworksGeneration = mConfiguredNetworks.getGeneration();
+        }
+        if (mRandomizedMacAddressMappingModified) {
+            mRandomizedMacStoreData.setMacMapping(mRandomizedMacAddressMapping);
+            mRandomizedMacAddressMappingModified = false;
+        }
 
         try {
             mWifiConfigStore.write(forceWrite);
@@ -3417,7 +3526,7 @@ public class WifiConfigManager {
         mLocalLog.dump(fd, pw, args);
         pw.println("WifiConfigManager - Log End ----");
         pw.println("WifiConfigManager - Configured networks Begin ----");
-        for (WifiConfiguration network : getInternalConfiguredNetworks()) {
+        for (WifiConfiguration network : getInternalConfiguredNetworksForRead()) {
             pw.println(network);
         }
         pw.println("WifiConfigManager - Configured networks End ----");
@@ -3660,7 +3769,7 @@ public class WifiConfigManager {
             int maxAgeMillis) {
         List<ScanResult> results = new ArrayList<>();
         long timeNowMs = mClock.getWallClockMillis();
-        for (WifiConfiguration config : getInternalConfiguredNetworks()) {
+        for (WifiConfiguration config : getInternalConfiguredNetworksForRead()) {
             ScanDetailCache scanDetailCache = getScanDetailCacheForNetwork(config.networkId);
             if (scanDetailCache == null) {
                 continue;
@@ -3722,7 +3831,7 @@ public class WifiConfigManager {
      * @return Copy of WifiConfiguration object if found, null otherwise.
      */
     private WifiConfiguration getConfiguredNetworkWithoutMasking(String configKey) {
-        WifiConfiguration config = getInternalConfiguredNetwork(configKey);
+        WifiConfiguration config = getInternalConfiguredNetworkForRead(configKey);
         if (config == null) {
             return null;
         }
@@ -3750,7 +3859,7 @@ public class WifiConfigManager {
      * @return HashMap of config key to unmasked WifiConfiguration
      */
     public Map<String, WifiConfiguration> getLinkedNetworksWithoutMasking(int networkId) {
-        WifiConfiguration internalConfig = getInternalConfiguredNetwork(networkId);
+        WifiConfiguration internalConfig = getInternalConfiguredNetworkForRead(networkId);
         if (internalConfig == null) {
             return null;
         }
@@ -59,8 +59,11 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -218,17 +221,51 @@ public class WifiConfigStore {
             new AlarmManager.OnAlarmListener() {
                 public void onAlarm() {
                     try {
-                        writeBufferedData();
+                        writeBufferedDataAsync();
                     } catch (IOException e) {
                         Log.wtf(TAG, "Buffered write failed", e);
                     }
                 }
             };
 
+    /**
+     * Handler instance to perform the buffered file writes on, or null to write the files on the
+     * calling thread. Forced writes are always performed on the calling thread.
+     */
+    private final Handler mIoHandler;
+    /**
+     * Store files with data pending to be written on {@link #mIoHandler}. Guarded by itself.
+     */
+    private final Set<StoreFile> mAsyncWriteStoreFiles = new LinkedHashSet<>();
+    /**
+     * Flag to indicate if {@link #mAsyncWriteRunnable} is posted to {@link #mIoHandler}.
+     * Guarded by {@link #mAsyncWriteStoreFiles}.
+     */
+    private boolean mAsyncWritePosted = false;
+    /**
+     * Failure of the last write performed on {@link #mIoHandler}, to be reported to the caller of
+     * the next write. Guarded by {@link #mAsyncWriteStoreFiles}.
+     */
+    private IOException mAsyncWriteFailure;
+    /**
+     * Lock held while writing the store files, so that the writes on the calling thread wait for
+     * any write in progress on {@link #mIoHandler}.
+     */
+    private final Object mWriteLock = new Object();
+    /**
+     * Runnable performing the pending file writes on {@link #mIoHandler}.
+     */
+    private final Runnable mAsyncWriteRunnable = () -> writeAsyncData();
+
     /**
      * List of data containers.
      */
     private final List<StoreData> mStoreDataList;
+    /**
+     * Serialized XML section of each data container, from its last serialization. A section is
+     * only serialized again when the data container has new data to serialize.
+     */
+    private final Map<StoreData, byte[]> mSerializedSections = new HashMap<>();
 
     /**
      * Create a new instance of WifiConfigStore.
@@ -244,9 +281,33 @@ public class WifiConfigStore {
      */
     public WifiConfigStore(Context context, Handler handler, Clock clock, WifiMetrics wifiMetrics,
             List<StoreFile> sharedStores) {
+        this(context, handler, null, clock, wifiMetrics, sharedStores);
+    }
+
+    /**
+     * Create a new instance of WifiConfigStore which performs the file writes on a separate
+     * thread.
+     * The data is still serialized on the calling thread when {@link #write(boolean)} is invoked,
+     * only the file writes are handed off to |ioHandler|. Store data serialized before a pending
+     * write was performed is superseded by the newer data, so back to back writes are coalesced
+     * into a single write per store file.
+     *
+     * @param context     context to use for retrieving the alarm manager.
+     * @param handler     handler instance to post alarm timeouts to.
+     * @param ioHandler   handler instance to perform the file writes on, or null to write the
+     *                    files on the calling thread.
+     * @param clock       clock instance to retrieve timestamps for alarms.
+     * @param wifiMetrics Metrics instance.
+     * @param sharedStores List of {@link StoreFile} instances pointing to the shared store files.
+     *                     This should be retrieved using {@link #createSharedFiles(boolean)}
+     *                     method.
+     */
+    public WifiConfigStore(Context context, Handler handler, @Nullable Handler ioHandler,
+            Clock clock, WifiMetrics wifiMetrics, List<StoreFile> sharedStores) {
 
         mAlarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
         mEventHandler = handler;
+        mIoHandler = ioHandler;
         mClock = clock;
         mWifiMetrics = wifiMetrics;
         mStoreDataList = new ArrayList<>();
@@ -267,6 +328,7 @@ public class WifiConfigStore {
     public void setUserStores(@NonNull List<StoreFile> userStores) {
         Preconditions.checkNotNull(userStores);
         mUserStores = userStores;
+        mSerializedSections.clear();
     }
 
     /**
@@ -399,7 +461,9 @@ public class WifiConfigStore {
      * shared configurations to shared config store.
      *
      * @param forceSync boolean to force write the config stores now. if false, the writes are
-     *                  buffered and written after the configured interval.
+     *                  buffered and written after the configured interval. If an I/O handler was
+     *                  provided, the buffered writes are performed asynchronously on it, and a
+     *                  failure of those is reported by the next invocation of this method.
      */
     public void write(boolean forceSync)
             throws XmlPullParserException, IOException {
@@ -431,11 +495,12 @@ public class WifiConfigStore {
             } else {
                 startBufferedWriteAlarm();
             }
-        } else if (forceSync && mBufferedWritePending) {
+        } else if (forceSync && (mBufferedWritePending || hasAsyncWritePending())) {
             // no new data to write, but there is a pending buffered write. So, |forceSync| should
             // flush that out.
             writeBufferedData();
         }
+        throwAsyncWriteFailure();
     }
 
     /**
@@ -445,6 +510,9 @@ public class WifiConfigStore {
      * This method also computes the integrity of the data being written and serializes the computed
      * {@link EncryptedData} to the output.
      *
+     * The document is assembled from the serialized section of each {@link StoreData}, and only
+     * the sections of the {@link StoreData} clients which have new data are serialized again.
+     *
      * @param storeFile StoreFile that we want to write to.
      * @return byte[] of serialized bytes
      * @throws XmlPullParserException
@@ -462,16 +530,56 @@ public class WifiConfigStore {
         XmlUtil.writeDocumentStart(out, XML_TAG_DOCUMENT_HEADER);
         // Next version.
         XmlUtil.writeNextValue(out, XML_TAG_VERSION, CURRENT_CONFIG_STORE_DATA_VERSION);
+        // Flush the header out before appending the sections to the same stream.
+        out.flush();
         for (StoreData storeData : storeDataList) {
-            String tag = storeData.getName();
-            XmlUtil.writeNextSectionStart(out, tag);
-            storeData.serializeData(out, storeFile.getEncryptionUtil());
-            XmlUtil.writeNextSectionEnd(out, tag);
+            outputStream.write(getSerializedSection(storeData, storeFile.getEncryptionUtil()));
         }
         XmlUtil.writeDocumentEnd(out, XML_TAG_DOCUMENT_HEADER);
         return outputStream.toByteArray();
     }
 
+    /**
+     * Retrieve the serialized XML section of the provided {@link StoreData}. The section is
+     * serialized again only if the {@link StoreData} has new data to serialize or was not
+     * serialized since the last read.
+     *
+     * @param storeData StoreData to serialize.
+     * @param encryptionUtil Utility to help encrypt any credential data.
+     * @return byte[] of serialized bytes of the section
+     * @throws XmlPullParserException
+     * @throws IOException
+     */
+    private byte[] getSerializedSection(@NonNull StoreData storeData,
+            @Nullable WifiConfigStoreEncryptionUtil encryptionUtil)
+            throws XmlPullParserException, IOException {
+        byte[] sectionBytes = mSerializedSections.get(storeData);
+        if (sectionBytes != null && !storeData.hasNewDataToSerialize()) {
+            return sectionBytes;
+        }
+        long serializeStartTime = mClock.getElapsedSinceBootMillis();
+        final XmlSerializer out = new FastXmlSerializer();
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        out.setOutput(outputStream, StandardCharsets.UTF_8.name());
+
+        String tag = storeData.getName();
+        XmlUtil.writeNextSectionStart(out, tag);
+        storeData.serializeData(out, encryptionUtil);
+        XmlUtil.writeNextSectionEnd(out, tag);
+        out.flush();
+        sectionBytes = outputStream.toByteArray();
+        mSerializedSections.put(storeData, sectionBytes);
+
+        long serializeTime = mClock.getElapsedSinceBootMillis() - serializeStartTime;
+        try {
+            mWifiMetrics.noteWifiConfigStoreSectionSerializeDuration(tag,
+                    toIntExact(serializeTime));
+        } catch (ArithmeticException e) {
+            // Silently ignore on any overflow errors.
+        }
+        return sectionBytes;
+    }
+
     /**
      * Helper method to start a buffered write alarm if one doesn't already exist.
      */
@@ -496,19 +604,20 @@ public class WifiConfigStore {
 
     /**
      * Helper method to actually perform the writes to the file. This flushes out any write data
-     * being buffered in the respective stores and cancels any pending buffer write alarms.
+     * being buffered in the respective stores, including the writes pending on
+     * {@link #mIoHandler}, and cancels any pending buffer write alarms.
      */
     private void writeBufferedData() throws IOException {
         stopBufferedWriteAlarm();
 
         long writeStartTime = mClock.getElapsedSinceBootMillis();
-        for (StoreFile sharedStoreFile : mSharedStores) {
-            sharedStoreFile.writeBufferedRawData();
-        }
-        if (mUserStores != null) {
-            for (StoreFile userStoreFile : mUserStores) {
-                userStoreFile.writeBufferedRawData();
+        synchronized (mWriteLock) {
+            Set<StoreFile> storeFiles = takeAsyncWriteStoreFiles();
+            storeFiles.addAll(mSharedStores);
+            if (mUserStores != null) {
+                storeFiles.addAll(mUserStores);
             }
+            writeStoreFiles(storeFiles);
         }
         long writeTime = mClock.getElapsedSinceBootMillis() - writeStartTime;
         try {
@@ -519,6 +628,130 @@ public class WifiConfigStore {
         Log.d(TAG, "Writing to stores completed in " + writeTime + " ms.");
     }
 
+    /**
+     * Helper method to perform the buffered writes when the buffer write alarm fires. The writes
+     * are handed off to {@link #mIoHandler} if one was provided.
+     */
+    private void writeBufferedDataAsync() throws IOException {
+        if (mIoHandler == null) {
+            writeBufferedData();
+            return;
+        }
+        stopBufferedWriteAlarm();
+        synchronized (mAsyncWriteStoreFiles) {
+            mAsyncWriteStoreFiles.addAll(mSharedStores);
+            if (mUserStores != null) {
+                mAsyncWriteStoreFiles.addAll(mUserStores);
+            }
+            if (!mAsyncWritePosted) {
+                mIoHandler.post(mAsyncWriteRunnable);
+                mAsyncWritePosted = true;
+            }
+        }
+    }
+
+    /**
+     * Helper method to perform the pending writes on {@link #mIoHandler}. Each store file writes
+     * the latest data buffered when the write starts. On failure, the store files are kept
+     * pending, to be written again by the next write.
+     */
+    private void writeAsyncData() {
+        long writeStartTime = mClock.getElapsedSinceBootMillis();
+        synchronized (mWriteLock) {
+            Set<StoreFile> storeFiles;
+            synchronized (mAsyncWriteStoreFiles) {
+                storeFiles = new LinkedHashSet<>(mAsyncWriteStoreFiles);
+                mAsyncWriteStoreFiles.clear();
+                mAsyncWritePosted = false;
+            }
+            // The pending writes may have been performed on the calling thread in the meantime.
+            if (storeFiles.isEmpty()) return;
+            try {
+                writeStoreFiles(storeFiles);
+            } catch (IOException e) {
+                Log.e(TAG, "Asynchronous writing to stores failed", e);
+                synchronized (mAsyncWriteStoreFiles) {
+                    mAsyncWriteFailure = e;
+                }
+                return;
+            }
+        }
+        long writeTime = mClock.getElapsedSinceBootMillis() - writeStartTime;
+        try {
+            mWifiMetrics.noteWifiConfigStoreWriteDuration(toIntExact(writeTime));
+        } catch (ArithmeticException e) {
+            // Silently ignore on any overflow errors.
+        }
+        Log.d(TAG, "Asynchronous writing to stores completed in " + writeTime + " ms.");
+    }
+
+    /**
+     * Helper method to write the provided store files. Must be invoked with {@link #mWriteLock}
+     * held. If any write fails, all the provided store files are added back to the writes pending
+     * on {@link #mIoHandler}, since the ones not written yet still hold their data.
+     */
+    private void writeStoreFiles(Set<StoreFile> storeFiles) throws IOException {
+        try {
+            for (StoreFile storeFile : storeFiles) {
+                storeFile.writeBufferedRawData();
+            }
+        } catch (IOException e) {
+            synchronized (mAsyncWriteStoreFiles) {
+                mAsyncWriteStoreFiles.addAll(storeFiles);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Helper method to take over the writes pending on {@link #mIoHandler}, along with any
+     * failure of them not reported yet. Must be invoked with {@link #mWriteLock} held, so that
+     * no write is in progress on {@link #mIoHandler}.
+     */
+    private Set<StoreFile> takeAsyncWriteStoreFiles() {
+        synchronized (mAsyncWriteStoreFiles) {
+            Set<StoreFile> storeFiles = new LinkedHashSet<>(mAsyncWriteStoreFiles);
+            mAsyncWriteStoreFiles.clear();
+            mAsyncWriteFailure = null;
+            return storeFiles;
+        }
+    }
+
+    /**
+     * Helper method to check if there are writes pending on {@link #mIoHandler}.
+     */
+    private boolean hasAsyncWritePending() {
+        synchronized (mAsyncWriteStoreFiles) {
+            return !mAsyncWriteStoreFiles.isEmpty();
+        }
+    }
+
+    /**
+     * Helper method to rethrow the failure of the writes performed on {@link #mIoHandler} since
+     * the last invocation, if any.
+     */
+    private void throwAsyncWriteFailure() throws IOException {
+        IOException failure;
+        synchronized (mAsyncWriteStoreFiles) {
+            failure = mAsyncWriteFailure;
+            mAsyncWriteFailure = null;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Helper method to wait for any write in progress on {@link #mIoHandler}, and perform the
+     * pending ones on the calling thread. This ensures that the store files are read back with
+     * the data last written to them.
+     */
+    private void flushAsyncWrites() throws IOException {
+        synchronized (mWriteLock) {
+            writeStoreFiles(takeAsyncWriteStoreFiles());
+        }
+    }
+
     /**
      * Note: This is a copy of {@link AtomicFile#readFully()} modified to use the passed in
      * {@link InputStream} which was returned using {@link AtomicFile#openRead()}.
@@ -648,6 +881,8 @@ public class WifiConfigStore {
      * shared configurations from the shared config store.
      */
     public void read() throws XmlPullParserException, IOException {
+        // Make sure the writes handed off to the I/O handler are done before reading back.
+        flushAsyncWrites();
         // Reset both share and user store data.
         for (StoreFile sharedStoreFile : mSharedStores) {
             resetStoreData(sharedStoreFile);
@@ -680,6 +915,8 @@ public class WifiConfigStore {
     public void switchUserStoresAndRead(@NonNull List<StoreFile> userStores)
             throws XmlPullParserException, IOException {
         Preconditions.checkNotNull(userStores);
+        // Make sure the writes handed off to the I/O handler are done before switching.
+        flushAsyncWrites();
         // Reset user store data.
         if (mUserStores != null) {
             for (StoreFile userStoreFile : mUserStores) {
@@ -705,6 +942,7 @@ public class WifiConfigStore {
     private void resetStoreData(@NonNull StoreFile storeFile) {
         for (StoreData storeData: retrieveStoreDataListForStoreFile(storeFile)) {
             storeData.resetData();
+            mSerializedSections.remove(storeData);
         }
     }
 
@@ -852,9 +1090,15 @@ public class WifiConfigStore {
          */
         private final AtomicFile mAtomicFile;
         /**
-         * This is an intermediate buffer to store the data to be written.
+         * This is an intermediate buffer to store the data to be written. Guarded by this
+         * instance, since the data may be written to the file on a separate thread.
          */
         private byte[] mWriteData;
+        /**
+         * Lock held while writing to the file, so that writes from different threads don't
+         * interleave.
+         */
+        private final Object mFileWriteLock = new Object();
         /**
          * Store the file name for setting the file permissions/logging purposes.
          */
@@ -922,7 +1166,7 @@ public class WifiConfigStore {
          *
          * @param data raw data to be written to the file.
          */
-        public void storeRawDataToWrite(byte[] data) {
+        public synchronized void storeRawDataToWrite(byte[] data) {
             mWriteData = data;
         }
 
@@ -933,22 +1177,34 @@ public class WifiConfigStore {
          * even when an exception is encountered.
          */
         public void writeBufferedRawData() throws IOException {
-            if (mWriteData == null) return; // No data to write for this file.
-            // Write the data to the atomic file.
-            FileOutputStream out = null;
-            try {
-                out = mAtomicFile.startWrite();
-                FileUtils.chmod(mFileName, FILE_MODE);
-                out.write(mWriteData);
-                mAtomicFile.finishWrite(out);
-            } catch (IOException e) {
-                if (out != null) {
-                    mAtomicFile.failWrite(out);
+            synchronized (mFileWriteLock) {
+                byte[] writeData;
+                synchronized (this) {
+                    writeData = mWriteData;
+                    // Reset the pending write data, newer data may be stored during the write.
+                    mWriteData = null;
+                }
+                if (writeData == null) return; // No data to write for this file.
+                // Write the data to the atomic file.
+                FileOutputStream out = null;
+                try {
+                    out = mAtomicFile.startWrite();
+                    FileUtils.chmod(mFileName, FILE_MODE);
+                    out.write(writeData);
+                    mAtomicFile.finishWrite(out);
+                } catch (IOException e) {
+                    if (out != null) {
+                        mAtomicFile.failWrite(out);
+                    }
+                    synchronized (this) {
+                        // Keep the data to retry on the next write, unless it was superseded.
+                        if (mWriteData == null) {
+                            mWriteData = writeData;
+                        }
+                    }
+                    throw e;
                 }
-                throw e;
             }
-            // Reset the pending write data after write.
-            mWriteData = null;
         }
     }
 
@@ -152,6 +152,7 @@ public class WifiConnectivityManager {
     private final ScoringParams mScoringParams;
     private final LocalLog mLocalLog;
     private final WifiGlobals mWifiGlobals;
+    private final HiddenNetworkScanScheduler mHiddenNetworkScanScheduler;
     /**
      * Keeps connection attempts within the last {@link #MAX_CONNECTION_ATTEMPTS_TIME_INTERVAL_MS}
      * milliseconds.
@@ -1015,7 +1016,8 @@ public class WifiConnectivityManager {
             PasspointManager passpointManager,
             DeviceConfigFacade deviceConfigFacade,
             ActiveModeWarden activeModeWarden,
-            WifiGlobals wifiGlobals) {
+            WifiGlobals wifiGlobals,
+            HiddenNetworkScanScheduler hiddenNetworkScanScheduler) {
         mContext = context;
         mScoringParams = scoringParams;
         mConfigManager = configManager;
@@ -1035,6 +1037,7 @@ public class WifiConnectivityManager {
         mDeviceConfigFacade = deviceConfigFacade;
         mActiveModeWarden = activeModeWarden;
         mWifiGlobals = wifiGlobals;
+        mHiddenNetworkScanScheduler = hiddenNetworkScanScheduler;
 
         mAlarmManager = context.getSystemService(AlarmManager.class);
         mPowerManager = mContext.getSystemService(PowerManager.class);
@@ -1814,10 +1817,14 @@ public class WifiConnectivityManager {
                             | WifiScanner.REPORT_EVENT_AFTER_EACH_SCAN;
         settings.numBssidsPerScan = 0;
         settings.hiddenNetworks.clear();
+        List<ScanSettings.HiddenNetwork> hiddenNetworks = new ArrayList<>();
         // retrieve the list of hidden network SSIDs from saved network to scan for
-        settings.hiddenNetworks.addAll(mConfigManager.retrieveHiddenNetworkList());
+        hiddenNetworks.addAll(mConfigManager.retrieveHiddenNetworkList());
         // retrieve the list of hidden network SSIDs from Network suggestion to scan for
-        settings.hiddenNetworks.addAll(mWifiNetworkSuggestionsManager.retrieveHiddenNetworkList());
+        hiddenNetworks.addAll(mWifiNetworkSuggestionsManager.retrieveHiddenNetworkList());
+        // rotate through the hidden networks if they don't all fit in one scan
+        settings.hiddenNetworks.addAll(
+                mHiddenNetworkScanScheduler.selectHiddenNetworksForScan(hiddenNetworks));
 
         SingleScanListener singleScanListener =
                 new SingleScanListener(isFullBandScan);
@@ -2570,5 +2577,6 @@ public class WifiConnectivityManager {
         pw.println("WifiConnectivityManager - Log End ----");
         mOpenNetworkNotifier.dump(fd, pw, args);
         mWifiBlocklistMonitor.dump(fd, pw, args);
+        mHiddenNetworkScanScheduler.dump(pw);
     }
 }
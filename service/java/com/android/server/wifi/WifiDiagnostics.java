@@ -703,7 +703,7 @@ public class WifiDiagnostics {
                     ByteArrayRingBuffer data = mRingBufferData.get(buffer.name);
                     byte[][] buffers = new byte[data.getNumBuffers()][];
                     for (int i = 0; i < data.getNumBuffers(); i++) {
-                        buffers[i] = data.getBuffer(i).clone();
+                        buffers[i] = data.getBuffer(i);
                     }
                     report.ringBuffers.put(buffer.name, buffers);
                 }
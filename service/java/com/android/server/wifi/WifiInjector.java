@@ -139,6 +139,7 @@ public class WifiInjector {
     private final HandlerThread mWifiP2pServiceHandlerThread;
     private final HandlerThread mPasspointProvisionerHandlerThread;
     private final HandlerThread mWifiDiagnosticsHandlerThread;
+    private final HandlerThread mWifiConfigStoreIoHandlerThread;
     private final WifiTrafficPoller mWifiTrafficPoller;
     private final WifiCountryCode mCountryCode;
     private final BackupManagerProxy mBackupManagerProxy = new BackupManagerProxy();
@@ -195,6 +196,7 @@ public class WifiInjector {
     private final WifiDiagnostics mWifiDiagnostics;
     private final WifiDataStall mWifiDataStall;
     private final WifiScoreCard mWifiScoreCard;
+    private final HiddenNetworkScanScheduler mHiddenNetworkScanScheduler;
     private final WifiNetworkSuggestionsManager mWifiNetworkSuggestionsManager;
     private final DppMetrics mDppMetrics;
     private final DppManager mDppManager;
@@ -282,6 +284,8 @@ public class WifiInjector {
         mPasspointProvisionerHandlerThread =
                 new HandlerThread("PasspointProvisionerHandlerThread");
         mPasspointProvisionerHandlerThread.start();
+        mWifiConfigStoreIoHandlerThread = new HandlerThread("WifiConfigStoreIo");
+        mWifiConfigStoreIoHandlerThread.start();
         WifiAwareMetrics awareMetrics = new WifiAwareMetrics(mClock);
         RttMetrics rttMetrics = new RttMetrics(mClock);
         mWifiP2pMetrics = new WifiP2pMetrics(mClock);
@@ -333,7 +337,8 @@ public class WifiInjector {
         mKeyStore = keyStore;
         mWifiKeyStore = new WifiKeyStore(mContext, mKeyStore, mFrameworkFacade);
         // New config store
-        mWifiConfigStore = new WifiConfigStore(mContext, wifiHandler, mClock, mWifiMetrics,
+        mWifiConfigStore = new WifiConfigStore(mContext, wifiHandler,
+                new Handler(mWifiConfigStoreIoHandlerThread.getLooper()), mClock, mWifiMetrics,
                 WifiConfigStore.createSharedFiles(mFrameworkFacade.isNiapModeOn(mContext)));
         mWifiCarrierInfoManager = new WifiCarrierInfoManager(makeTelephonyManager(),
                 subscriptionManager, this, mFrameworkFacade, mContext,
@@ -342,6 +347,7 @@ public class WifiInjector {
         mWifiScoreCard = new WifiScoreCard(mClock, l2KeySeed, mDeviceConfigFacade,
                 mFrameworkFacade, mContext);
         mWifiMetrics.setWifiScoreCard(mWifiScoreCard);
+        mHiddenNetworkScanScheduler = new HiddenNetworkScanScheduler(mWifiScoreCard);
         mLruConnectionTracker = new LruConnectionTracker(MAX_RECENTLY_CONNECTED_NETWORK,
                 mContext);
         mWifiConnectivityHelper = new WifiConnectivityHelper(this);
@@ -463,7 +469,7 @@ public class WifiInjector {
                 mWifiMetrics, wifiHandler,
                 mClock, mConnectivityLocalLog, mWifiScoreCard, mWifiBlocklistMonitor,
                 mWifiChannelUtilizationScan, mPasspointManager, mDeviceConfigFacade,
-                mActiveModeWarden, mWifiGlobals);
+                mActiveModeWarden, mWifiGlobals, mHiddenNetworkScanScheduler);
         mMboOceController = new MboOceController(makeTelephonyManager(), mActiveModeWarden);
         mCountryCode = new WifiCountryCode(mContext, mActiveModeWarden,
                 mCmiMonitor, mWifiNative, mSettingsConfigStore);
@@ -678,6 +684,10 @@ public class WifiInjector {
         return mWifiScoreCard;
     }
 
+    public HiddenNetworkScanScheduler getHiddenNetworkScanScheduler() {
+        return mHiddenNetworkScanScheduler;
+    }
+
     public TelephonyManager makeTelephonyManager() {
         return mContext.getSystemService(TelephonyManager.class);
     }
@@ -121,6 +121,7 @@ import com.android.server.wifi.proto.nano.WifiMetricsProto.WifiUsabilityStats;
 import com.android.server.wifi.proto.nano.WifiMetricsProto.WifiUsabilityStatsEntry;
 import com.android.server.wifi.rtt.RttMetrics;
 import com.android.server.wifi.scanner.KnownBandsChannelHelper;
+import com.android.server.wifi.util.ConcurrentCounter;
 import com.android.server.wifi.util.InformationElementUtil;
 import com.android.server.wifi.util.IntCounter;
 import com.android.server.wifi.util.IntHistogram;
@@ -219,6 +220,10 @@ public class WifiMetrics {
     //   >= 300
     private static final int[] WIFI_CONFIG_STORE_IO_DURATION_BUCKET_RANGES_MS =
             {50, 100, 150, 200, 300};
+    private static final int[] NETWORK_SELECTION_DURATION_BUCKET_RANGES_MS =
+            {5, 10, 20, 50, 100, 200};
+    private static final int[] WIFI_CONFIG_STORE_SERIALIZE_DURATION_BUCKET_RANGES_MS =
+            {1, 5, 10, 20, 50};
     // Minimum time wait before generating a LABEL_GOOD stats after score breaching low.
     public static final int MIN_SCORE_BREACH_TO_GOOD_STATS_WAIT_TIME_MS = 60 * 1000; // 1 minute
     // Maximum time that a score breaching low event stays valid.
@@ -293,6 +298,19 @@ public class WifiMetrics {
      * together at dump-time
      */
     private final WifiMetricsProto.WifiLog mWifiLogProto = new WifiMetricsProto.WifiLog();
+    // Scan counters are incremented from the scanning and binder threads, so they don't take mLock.
+    // They are copied into mWifiLogProto when consolidating it.
+    private final ConcurrentCounter mNonEmptyScanResultCount = new ConcurrentCounter();
+    private final ConcurrentCounter mEmptyScanResultCount = new ConcurrentCounter();
+    private final ConcurrentCounter mBackgroundScanCount = new ConcurrentCounter();
+    private final ConcurrentCounter mOneshotScanCount = new ConcurrentCounter();
+    private final ConcurrentCounter mOneshotScanWithDfsCount = new ConcurrentCounter();
+    private final ConcurrentCounter mConnectivityOneshotScanCount = new ConcurrentCounter();
+    private final ConcurrentCounter mExternalAppOneshotScanCount = new ConcurrentCounter();
+    private final ConcurrentCounter mExternalForegroundAppScanThrottledCount =
+            new ConcurrentCounter();
+    private final ConcurrentCounter mExternalBackgroundAppScanThrottledCount =
+            new ConcurrentCounter();
     /**
      * Session information that gets logged for every Wifi connection attempt.
      */
@@ -466,6 +484,16 @@ public class WifiMetrics {
     /** WifiConfigStore write duration histogram. */
     private SparseIntArray mWifiConfigStoreWriteDurationHistogram = new SparseIntArray();
 
+    /** WifiConfigStore section serialization duration histograms, keyed by section name. */
+    private final Map<String, SparseIntArray> mWifiConfigStoreSectionSerializeDurationHistograms =
+            new ArrayMap<>();
+
+    /** Network selection scan result filtering duration histogram. */
+    private SparseIntArray mNetworkSelectionFilterDurationHistogram = new SparseIntArray();
+
+    /** Network selection candidate nomination duration histogram. */
+    private SparseIntArray mNetworkSelectionNominationDurationHistogram = new SparseIntArray();
+
     /** New  API surface metrics */
     private final WifiNetworkRequestApiLog mWifiNetworkRequestApiLog =
             new WifiNetworkRequestApiLog();
@@ -2237,9 +2265,7 @@ public class WifiMetrics {
      */
     public void incrementNonEmptyScanResultCount() {
         if (DBG) Log.v(TAG, "incrementNonEmptyScanResultCount");
-        synchronized (mLock) {
-            mWifiLogProto.numNonEmptyScanResults++;
-        }
+        mNonEmptyScanResultCount.increment();
     }
 
     /**
@@ -2247,9 +2273,7 @@ public class WifiMetrics {
      */
     public void incrementEmptyScanResultCount() {
         if (DBG) Log.v(TAG, "incrementEmptyScanResultCount");
-        synchronized (mLock) {
-            mWifiLogProto.numEmptyScanResults++;
-        }
+        mEmptyScanResultCount.increment();
     }
 
     /**
@@ -2257,27 +2281,21 @@ public class WifiMetrics {
      */
     public void incrementBackgroundScanCount() {
         if (DBG) Log.v(TAG, "incrementBackgroundScanCount");
-        synchronized (mLock) {
-            mWifiLogProto.numBackgroundScans++;
-        }
+        mBackgroundScanCount.increment();
     }
 
     /**
      * Get Background scan count
      */
     public int getBackgroundScanCount() {
-        synchronized (mLock) {
-            return mWifiLogProto.numBackgroundScans;
-        }
+        return mBackgroundScanCount.get();
     }
 
     /**
      * Increment oneshot scan count, and the associated WifiSystemScanStateCount entry
      */
     public void incrementOneshotScanCount() {
-        synchronized (mLock) {
-            mWifiLogProto.numOneshotScans++;
-        }
+        mOneshotScanCount.increment();
         incrementWifiSystemScanStateCount(mWifiState, mScreenOn);
     }
 
@@ -2285,71 +2303,55 @@ public class WifiMetrics {
      * Increment the count of oneshot scans that include DFS channels.
      */
     public void incrementOneshotScanWithDfsCount() {
-        synchronized (mLock) {
-            mWifiLogProto.numOneshotHasDfsChannelScans++;
-        }
+        mOneshotScanWithDfsCount.increment();
     }
 
     /**
      * Increment connectivity oneshot scan count.
      */
     public void incrementConnectivityOneshotScanCount() {
-        synchronized (mLock) {
-            mWifiLogProto.numConnectivityOneshotScans++;
-        }
+        mConnectivityOneshotScanCount.increment();
     }
 
     /**
      * Get oneshot scan count
      */
     public int getOneshotScanCount() {
-        synchronized (mLock) {
-            return mWifiLogProto.numOneshotScans;
-        }
+        return mOneshotScanCount.get();
     }
 
     /**
      * Get connectivity oneshot scan count
      */
     public int getConnectivityOneshotScanCount() {
-        synchronized (mLock) {
-            return mWifiLogProto.numConnectivityOneshotScans;
-        }
+        return mConnectivityOneshotScanCount.get();
     }
 
     /**
      * Get the count of oneshot scan requests that included DFS channels.
      */
     public int getOneshotScanWithDfsCount() {
-        synchronized (mLock) {
-            return mWifiLogProto.numOneshotHasDfsChannelScans;
-        }
+        return mOneshotScanWithDfsCount.get();
     }
 
     /**
      * Increment oneshot scan count for external apps.
      */
     public void incrementExternalAppOneshotScanRequestsCount() {
-        synchronized (mLock) {
-            mWifiLogProto.numExternalAppOneshotScanRequests++;
-        }
+        mExternalAppOneshotScanCount.increment();
     }
     /**
      * Increment oneshot scan throttle count for external foreground apps.
      */
     public void incrementExternalForegroundAppOneshotScanRequestsThrottledCount() {
-        synchronized (mLock) {
-            mWifiLogProto.numExternalForegroundAppOneshotScanRequestsThrottled++;
-        }
+        mExternalForegroundAppScanThrottledCount.increment();
     }
 
     /**
      * Increment oneshot scan throttle count for external background apps.
      */
     public void incrementExternalBackgroundAppOneshotScanRequestsThrottledCount() {
-        synchronized (mLock) {
-            mWifiLogProto.numExternalBackgroundAppOneshotScanRequestsThrottled++;
-        }
+        mExternalBackgroundAppScanThrottledCount.increment();
     }
 
     private String returnCodeToString(int scanReturnCode) {
@@ -3679,23 +3681,23 @@ public class WifiMetrics {
                 pw.println("mWifiLogProto.numNetworksAddedByApps="
                         + mWifiLogProto.numNetworksAddedByApps);
                 pw.println("mWifiLogProto.numNonEmptyScanResults="
-                        + mWifiLogProto.numNonEmptyScanResults);
+                        + mNonEmptyScanResultCount);
                 pw.println("mWifiLogProto.numEmptyScanResults="
-                        + mWifiLogProto.numEmptyScanResults);
+                        + mEmptyScanResultCount);
                 pw.println("mWifiLogProto.numConnecitvityOneshotScans="
-                        + mWifiLogProto.numConnectivityOneshotScans);
+                        + mConnectivityOneshotScanCount);
                 pw.println("mWifiLogProto.numOneshotScans="
-                        + mWifiLogProto.numOneshotScans);
+                        + mOneshotScanCount);
                 pw.println("mWifiLogProto.numOneshotHasDfsChannelScans="
-                        + mWifiLogProto.numOneshotHasDfsChannelScans);
+                        + mOneshotScanWithDfsCount);
                 pw.println("mWifiLogProto.numBackgroundScans="
-                        + mWifiLogProto.numBackgroundScans);
+                        + mBackgroundScanCount);
                 pw.println("mWifiLogProto.numExternalAppOneshotScanRequests="
-                        + mWifiLogProto.numExternalAppOneshotScanRequests);
+                        + mExternalAppOneshotScanCount);
                 pw.println("mWifiLogProto.numExternalForegroundAppOneshotScanRequestsThrottled="
-                        + mWifiLogProto.numExternalForegroundAppOneshotScanRequestsThrottled);
+                        + mExternalForegroundAppScanThrottledCount);
                 pw.println("mWifiLogProto.numExternalBackgroundAppOneshotScanRequestsThrottled="
-                        + mWifiLogProto.numExternalBackgroundAppOneshotScanRequestsThrottled);
+                        + mExternalBackgroundAppScanThrottledCount);
                 pw.println("mWifiLogProto.meteredNetworkStatsSaved=");
                 pw.println(mMeteredNetworkStatsBuilder.toProto(false));
                 pw.println("mWifiLogProto.meteredNetworkStatsSuggestion=");
@@ -4212,6 +4214,15 @@ public class WifiMetrics {
                         + mWifiConfigStoreReadDurationHistogram.toString());
                 pw.println("mWifiConfigStoreWriteDurationHistogram:"
                         + mWifiConfigStoreWriteDurationHistogram.toString());
+                for (Map.Entry<String, SparseIntArray> entry
+                        : mWifiConfigStoreSectionSerializeDurationHistograms.entrySet()) {
+                    pw.println("mWifiConfigStoreSectionSerializeDurationHistogram["
+                            + entry.getKey() + "]:" + entry.getValue().toString());
+                }
+                pw.println("mNetworkSelectionFilterDurationHistogram:"
+                        + mNetworkSelectionFilterDurationHistogram.toString());
+                pw.println("mNetworkSelectionNominationDurationHistogram:"
+                        + mNetworkSelectionNominationDurationHistogram.toString());
 
                 pw.println("mLinkProbeSuccessRssiCounts:" + mLinkProbeSuccessRssiCounts);
                 pw.println("mLinkProbeFailureRssiCounts:" + mLinkProbeFailureRssiCounts);
@@ -4585,6 +4596,18 @@ public class WifiMetrics {
     private void consolidateProto() {
         List<WifiMetricsProto.RssiPollCount> rssis = new ArrayList<>();
         synchronized (mLock) {
+            mWifiLogProto.numNonEmptyScanResults = mNonEmptyScanResultCount.get();
+            mWifiLogProto.numEmptyScanResults = mEmptyScanResultCount.get();
+            mWifiLogProto.numBackgroundScans = mBackgroundScanCount.get();
+            mWifiLogProto.numOneshotScans = mOneshotScanCount.get();
+            mWifiLogProto.numOneshotHasDfsChannelScans = mOneshotScanWithDfsCount.get();
+            mWifiLogProto.numConnectivityOneshotScans = mConnectivityOneshotScanCount.get();
+            mWifiLogProto.numExternalAppOneshotScanRequests =
+                    mExternalAppOneshotScanCount.get();
+            mWifiLogProto.numExternalForegroundAppOneshotScanRequestsThrottled =
+                    mExternalForegroundAppScanThrottledCount.get();
+            mWifiLogProto.numExternalBackgroundAppOneshotScanRequestsThrottled =
+                    mExternalBackgroundAppScanThrottledCount.get();
             mWifiLogProto.connectionEvent = mConnectionEventList
                     .stream()
                     // Exclude active un-ended connection events
@@ -5183,6 +5206,19 @@ public class WifiMetrics {
             mMakeBeforeBreakLingeringDurationSeconds.clear();
             mWifiScoreCounts.clear();
             mWifiUsabilityScoreCounts.clear();
+            // Only clear the reported counts, to keep the concurrent increments made since.
+            mNonEmptyScanResultCount.subtract(mWifiLogProto.numNonEmptyScanResults);
+            mEmptyScanResultCount.subtract(mWifiLogProto.numEmptyScanResults);
+            mBackgroundScanCount.subtract(mWifiLogProto.numBackgroundScans);
+            mOneshotScanCount.subtract(mWifiLogProto.numOneshotScans);
+            mOneshotScanWithDfsCount.subtract(mWifiLogProto.numOneshotHasDfsChannelScans);
+            mConnectivityOneshotScanCount.subtract(mWifiLogProto.numConnectivityOneshotScans);
+            mExternalAppOneshotScanCount.subtract(
+                    mWifiLogProto.numExternalAppOneshotScanRequests);
+            mExternalForegroundAppScanThrottledCount.subtract(
+                    mWifiLogProto.numExternalForegroundAppOneshotScanRequestsThrottled);
+            mExternalBackgroundAppScanThrottledCount.subtract(
+                    mWifiLogProto.numExternalBackgroundAppOneshotScanRequestsThrottled);
             mWifiLogProto.clear();
             mScanResultRssiTimestampMillis = -1;
             mSoftApManagerReturnCodeCounts.clear();
@@ -5246,6 +5282,9 @@ public class WifiMetrics {
             mMeteredNetworkStatsBuilder.clear();
             mWifiConfigStoreReadDurationHistogram.clear();
             mWifiConfigStoreWriteDurationHistogram.clear();
+            mWifiConfigStoreSectionSerializeDurationHistograms.clear();
+            mNetworkSelectionFilterDurationHistogram.clear();
+            mNetworkSelectionNominationDurationHistogram.clear();
             mLinkProbeSuccessRssiCounts.clear();
             mLinkProbeFailureRssiCounts.clear();
             mLinkProbeSuccessLinkSpeedCounts.clear();
@@ -7045,6 +7084,42 @@ public class WifiMetrics {
         }
     }
 
+    /**
+     * Update the serialization duration of a wifi config store section.
+     *
+     * @param sectionName Name of the serialized section
+     * @param timeMs Time it took to serialize the section, in milliseconds
+     */
+    public void noteWifiConfigStoreSectionSerializeDuration(String sectionName, int timeMs) {
+        synchronized (mLock) {
+            SparseIntArray histogram =
+                    mWifiConfigStoreSectionSerializeDurationHistograms.get(sectionName);
+            if (histogram == null) {
+                histogram = new SparseIntArray();
+                mWifiConfigStoreSectionSerializeDurationHistograms.put(sectionName, histogram);
+            }
+            MetricsUtils.addValueToLinearHistogram(timeMs, histogram,
+                    WIFI_CONFIG_STORE_SERIALIZE_DURATION_BUCKET_RANGES_MS);
+        }
+    }
+
+    /**
+     * Update the durations of the stages of a network selection.
+     *
+     * @param filterTimeMs Time it took to filter the scan results, in milliseconds
+     * @param nominationTimeMs Time it took to nominate the candidates, in milliseconds
+     */
+    public void noteNetworkSelectionDuration(int filterTimeMs, int nominationTimeMs) {
+        synchronized (mLock) {
+            MetricsUtils.addValueToLinearHistogram(filterTimeMs,
+                    mNetworkSelectionFilterDurationHistogram,
+                    NETWORK_SELECTION_DURATION_BUCKET_RANGES_MS);
+            MetricsUtils.addValueToLinearHistogram(nominationTimeMs,
+                    mNetworkSelectionNominationDurationHistogram,
+                    NETWORK_SELECTION_DURATION_BUCKET_RANGES_MS);
+        }
+    }
+
     /**
      * Logs the decision of a network selection algorithm when compared against another network
      * selection algorithm.
@@ -48,6 +48,8 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -101,6 +103,9 @@ public class WifiNetworkSelector {
     private final List<Pair<ScanDetail, WifiConfiguration>> mConnectableNetworks =
             new ArrayList<>();
     private List<ScanDetail> mFilteredNetworks = new ArrayList<>();
+    // Throughput predicted for the filtered scan results during the current network selection,
+    // so that it is computed once per scan result whichever the number of nominations.
+    private final Map<ScanDetail, Integer> mPredictedThroughputMbps = new IdentityHashMap<>();
     private final WifiScoreCard mWifiScoreCard;
     private final ScoringParams mScoringParams;
     private final WifiInjector mWifiInjector;
@@ -805,6 +810,7 @@ public class WifiNetworkSelector {
             boolean oemPaidNetworkAllowed, boolean oemPrivateNetworkAllowed) {
         mFilteredNetworks.clear();
         mConnectableNetworks.clear();
+        mPredictedThroughputMbps.clear();
         if (scanDetails.size() == 0) {
             localLog("Empty connectivity scan result");
             return null;
@@ -826,8 +832,12 @@ public class WifiNetworkSelector {
         }
 
         // Filter out unwanted networks.
+        long filterStartTimeMs = mClock.getElapsedSinceBootMillis();
         mFilteredNetworks = filterScanResults(scanDetails, bssidBlocklist, cmmStates);
+        long nominationStartTimeMs = mClock.getElapsedSinceBootMillis();
         if (mFilteredNetworks.size() == 0) {
+            mWifiMetrics.noteNetworkSelectionDuration(
+                    (int) (nominationStartTimeMs - filterStartTimeMs), 0);
             return null;
         }
 
@@ -855,7 +865,8 @@ public class WifiNetworkSelector {
                         bssid, currentNetwork.networkId,
                         params.getSecurityType());
                 ScanDetail scanDetail = findScanDetailForBssid(mFilteredNetworks, currentBssid);
-                int predictedTputMbps = (scanDetail == null) ? 0 : predictThroughput(scanDetail);
+                int predictedTputMbps =
+                        (scanDetail == null) ? 0 : getPredictedThroughputMbps(scanDetail);
                 wifiCandidates.add(key, currentNetwork,
                         NetworkNominator.NOMINATOR_ID_CURRENT,
                         cmmState.wifiInfo.getRssi(),
@@ -870,10 +881,12 @@ public class WifiNetworkSelector {
         // Update all configured networks before initiating network selection.
         updateConfiguredNetworks();
 
+        // The nominators only read the filtered networks, share a single view between them.
+        List<ScanDetail> filteredNetworks = Collections.unmodifiableList(mFilteredNetworks);
         for (NetworkNominator registeredNominator : mNominators) {
             localLog("About to run " + registeredNominator.getName() + " :");
             registeredNominator.nominateNetworks(
-                    new ArrayList<>(mFilteredNetworks),
+                    filteredNetworks,
                     untrustedNetworkAllowed, oemPaidNetworkAllowed, oemPrivateNetworkAllowed,
                     (scanDetail, config) -> {
                         WifiCandidates.Key key = wifiCandidates.keyFromScanDetailAndConfig(
@@ -894,7 +907,7 @@ public class WifiNetworkSelector {
                                     calculateLastSelectionWeight(config.networkId),
                                     metered,
                                     isFromCarrierOrPrivilegedApp(config),
-                                    predictThroughput(scanDetail));
+                                    getPredictedThroughputMbps(scanDetail));
                             if (added) {
                                 mConnectableNetworks.add(Pair.create(scanDetail, config));
                                 mWifiConfigManager.updateScanDetailForNetwork(
@@ -909,6 +922,9 @@ public class WifiNetworkSelector {
             localLog("Connectable: " + mConnectableNetworks.size()
                     + " Candidates: " + wifiCandidates.size());
         }
+        mWifiMetrics.noteNetworkSelectionDuration(
+                (int) (nominationStartTimeMs - filterStartTimeMs),
+                (int) (mClock.getElapsedSinceBootMillis() - nominationStartTimeMs));
         return wifiCandidates.getCandidates();
     }
 
@@ -1174,6 +1190,19 @@ public class WifiNetworkSelector {
         return ans;
     }
 
+    /**
+     * Returns the throughput predicted for the provided scan result, computing it only once per
+     * scan result during a network selection.
+     */
+    private int getPredictedThroughputMbps(@NonNull ScanDetail scanDetail) {
+        Integer predictedTputMbps = mPredictedThroughputMbps.get(scanDetail);
+        if (predictedTputMbps == null) {
+            predictedTputMbps = predictThroughput(scanDetail);
+            mPredictedThroughputMbps.put(scanDetail, predictedTputMbps);
+        }
+        return predictedTputMbps;
+    }
+
     private int predictThroughput(@NonNull ScanDetail scanDetail) {
         if (scanDetail.getScanResult() == null || scanDetail.getNetworkDetail() == null) {
             return 0;
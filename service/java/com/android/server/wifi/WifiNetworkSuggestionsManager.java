@@ -131,10 +131,6 @@ public class WifiNetworkSuggestionsManager {
     @Retention(RetentionPolicy.SOURCE)
     public @interface UserActionCode { }
 
-    /**
-     * Limit number of hidden networks attach to scan
-     */
-    private static final int NUMBER_OF_HIDDEN_NETWORK_FOR_ONE_SCAN = 100;
     /**
      * Expiration timeout for user notification in milliseconds. (15 min)
      */
@@ -426,6 +422,14 @@ public class WifiNetworkSuggestionsManager {
      */
     private final List<OnSuggestionUpdateListener> mListeners = new ArrayList<>();
 
+    /**
+     * Scan results last matched with suggestions, and their match info indexed by quoted SSID,
+     * so that the match info is only computed once per scan result.
+     */
+    private final List<ScanResult> mIndexedScanResults = new ArrayList<>();
+    private final Map<String, List<Pair<ScanResultMatchInfo, ScanResult>>>
+            mScanResultMatchInfoIndex = new HashMap<>();
+
     /**
      * Intent filter for processing notification actions.
      */
@@ -1898,7 +1902,7 @@ public class WifiNetworkSuggestionsManager {
 
     /**
      * Get hidden network from active network suggestions.
-     * Todo(): Now limit by a fixed number, maybe we can try rotation?
+     * The networks to probe in each scan are selected by {@link HiddenNetworkScanScheduler}.
      * @return set of WifiConfigurations
      */
     public List<WifiScanner.ScanSettings.HiddenNetwork> retrieveHiddenNetworkList() {
@@ -1910,9 +1914,6 @@ public class WifiNetworkSuggestionsManager {
                 hiddenNetworks.add(
                         new WifiScanner.ScanSettings.HiddenNetwork(
                                 ewns.wns.wifiConfiguration.SSID));
-                if (hiddenNetworks.size() >= NUMBER_OF_HIDDEN_NETWORK_FOR_ONE_SCAN) {
-                    return hiddenNetworks;
-                }
             }
         }
         return hiddenNetworks;
@@ -2370,15 +2371,51 @@ public class WifiNetworkSuggestionsManager {
             return new ArrayList<>();
         }
         List<ScanResult> filteredScanResult = new ArrayList<>();
-        for (ScanResult scanResult : scanResults) {
-            if (matchInfoFromConfigration.equals(ScanResultMatchInfo.fromScanResult(scanResult))) {
-                filteredScanResult.add(scanResult);
+        List<Pair<ScanResultMatchInfo, ScanResult>> scanResultsWithSsid =
+                getScanResultMatchInfoIndex(scanResults).get(wifiConfiguration.SSID);
+        if (scanResultsWithSsid == null) {
+            return filteredScanResult;
+        }
+        for (Pair<ScanResultMatchInfo, ScanResult> pair : scanResultsWithSsid) {
+            if (matchInfoFromConfigration.equals(pair.first)) {
+                filteredScanResult.add(pair.second);
             }
         }
 
         return filteredScanResult;
     }
 
+    /**
+     * Get the match info of the scan results indexed by quoted SSID. The index is reused as long
+     * as the same scan result objects are passed, e.g. the scan results of
+     * {@link ScanRequestProxy#getScanResults()} until the next scan.
+     */
+    private Map<String, List<Pair<ScanResultMatchInfo, ScanResult>>> getScanResultMatchInfoIndex(
+            @NonNull List<ScanResult> scanResults) {
+        if (isSameScanResults(scanResults, mIndexedScanResults)) {
+            return mScanResultMatchInfoIndex;
+        }
+        mScanResultMatchInfoIndex.clear();
+        for (ScanResult scanResult : scanResults) {
+            ScanResultMatchInfo matchInfo = ScanResultMatchInfo.fromScanResult(scanResult);
+            if (matchInfo == null) continue;
+            mScanResultMatchInfoIndex.computeIfAbsent(matchInfo.networkSsid,
+                    k -> new ArrayList<>()).add(Pair.create(matchInfo, scanResult));
+        }
+        mIndexedScanResults.clear();
+        mIndexedScanResults.addAll(scanResults);
+        return mScanResultMatchInfoIndex;
+    }
+
+    private static boolean isSameScanResults(List<ScanResult> scanResults,
+            List<ScanResult> otherScanResults) {
+        if (scanResults.size() != otherScanResults.size()) return false;
+        for (int i = 0; i < scanResults.size(); i++) {
+            if (scanResults.get(i) != otherScanResults.get(i)) return false;
+        }
+        return true;
+    }
+
     /**
      * Add the suggestion update event listener
      */
@@ -621,6 +621,17 @@ public class WifiScoreCard {
         return lookupBssid(ssid, bssid).lastConnectionTimestampMs;
     }
 
+    /**
+     * Returns the number of connection attempts to the network with this SSID, in the current
+     * and the previous build, or 0 if the network is not known.
+     */
+    public int getConnectionAttemptCount(String ssid) {
+        PerNetwork perNetwork = mApForNetwork.get(ssid);
+        if (perNetwork == null) return 0;
+        return perNetwork.getStatsCurrBuild().getCount(CNT_CONNECTION_ATTEMPT)
+                + perNetwork.getStatsPrevBuild().getCount(CNT_CONNECTION_ATTEMPT);
+    }
+
     /**
      * Increment the blocklist streak count for a failure reason on an AP.
      * @return the updated count
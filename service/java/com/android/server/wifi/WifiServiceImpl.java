@@ -124,6 +124,7 @@ import android.telephony.SubscriptionManager;
 import android.telephony.TelephonyManager;
 import android.text.TextUtils;
 import android.util.Log;
+import android.util.Pair;
 
 import androidx.annotation.RequiresApi;
 
@@ -477,6 +478,8 @@ public class WifiServiceImpl extends BaseWifiService {
                 // "missing" SIM issue
                 mSimRequiredNotifier.dismissSimRequiredNotification();
             }
+            // The SIM based Passpoint providers may match differently with the new SIM.
+            mPasspointManager.onSimStateChanged();
             if (resetReason != RESET_SIM_REASON_SIM_INSERTED) {
                 mWifiConfigManager.resetSimNetworks();
                 mWifiNetworkSuggestionsManager.resetSimNetworkSuggestions();
@@ -2495,8 +2498,9 @@ public class WifiServiceImpl extends BaseWifiService {
             targetConfigUid = callingUid; // expose only those configs created by the Carrier App
         }
         int finalTargetConfigUid = targetConfigUid;
-        List<WifiConfiguration> configs = mWifiThreadRunner.call(
-                () -> mWifiConfigManager.getSavedNetworks(finalTargetConfigUid),
+        List<WifiConfiguration> configs = mWifiThreadRunner.callCoalesced(
+                "getConfiguredNetworks", finalTargetConfigUid,
+                () -> mWifiConfigManager.getSavedNetworksSnapshot(finalTargetConfigUid),
                 Collections.emptyList());
         if (isTargetSdkLessThanQOrPrivileged && !callerNetworksOnly) {
             return new ParceledListSlice<>(
@@ -3158,7 +3162,8 @@ public class WifiServiceImpl extends BaseWifiService {
         }
         long ident = Binder.clearCallingIdentity();
         try {
-            WifiInfo wifiInfo = mWifiThreadRunner.call(
+            WifiInfo wifiInfo = mWifiThreadRunner.callCoalesced("getConnectionInfo",
+                    Pair.create(uid, callingPackage),
                     () -> getClientModeManagerIfSecondaryCmmRequestedByCallerPresent(
                             uid, callingPackage)
                             .syncRequestConnectionInfo(), new WifiInfo());
@@ -3216,9 +3221,8 @@ public class WifiServiceImpl extends BaseWifiService {
         try {
             mWifiPermissionsUtil.enforceCanAccessScanResults(callingPackage, callingFeatureId,
                     uid, null);
-            List<ScanResult> scanResults = mWifiThreadRunner.call(
-                    mScanRequestProxy::getScanResults, Collections.emptyList());
-            return scanResults;
+            // The scan results snapshot is thread-safe, no need to post to the wifi thread.
+            return mScanRequestProxy.getScanResults();
         } catch (SecurityException e) {
             Log.w(TAG, "Permission violation - getScanResults not allowed for uid="
                     + uid + ", packageName=" + callingPackage + ", reason=" + e);
@@ -3798,7 +3802,7 @@ public class WifiServiceImpl extends BaseWifiService {
     private void updateWifiMetrics() {
         mWifiThreadRunner.run(() -> {
             mWifiMetrics.updateSavedNetworks(
-                    mWifiConfigManager.getSavedNetworks(Process.WIFI_UID));
+                    mWifiConfigManager.getSavedNetworksSnapshot(Process.WIFI_UID));
             mActiveModeWarden.updateMetrics();
             mPasspointManager.updateMetrics();
         });
@@ -3902,10 +3906,13 @@ public class WifiServiceImpl extends BaseWifiService {
             mWifiInjector.getWifiLastResortWatchdog().dump(fd, pw, args);
             mWifiInjector.getAdaptiveConnectivityEnabledSettingObserver().dump(fd, pw, args);
             mWifiInjector.getWifiGlobals().dump(fd, pw, args);
+            mWifiInjector.getSupplicantStaIfaceHal().dump(pw);
             mWifiInjector.getSarManager().dump(fd, pw, args);
             pw.println();
             mLastCallerInfoManager.dump(pw);
             pw.println();
+            mWifiThreadRunner.dump(pw);
+            pw.println();
             mWifiInjector.getLinkProbeManager().dump(fd, pw, args);
         }
     }
@@ -4088,7 +4095,7 @@ public class WifiServiceImpl extends BaseWifiService {
         }
         // Delete all Wifi SSIDs
         List<WifiConfiguration> networks = mWifiThreadRunner.call(
-                () -> mWifiConfigManager.getSavedNetworks(Process.WIFI_UID),
+                () -> mWifiConfigManager.getSavedNetworksSnapshot(Process.WIFI_UID),
                 Collections.emptyList());
         for (WifiConfiguration network : networks) {
             removeNetwork(network.networkId, packageName);
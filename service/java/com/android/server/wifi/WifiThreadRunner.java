@@ -21,11 +21,20 @@ import android.annotation.Nullable;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.SystemClock;
+import android.util.ArrayMap;
 import android.util.Log;
+import android.util.Pair;
 
+import com.android.internal.annotations.GuardedBy;
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.server.wifi.util.GeneralUtil.Mutable;
 
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Supplier;
 
 import javax.annotation.concurrent.ThreadSafe;
@@ -49,6 +58,37 @@ public class WifiThreadRunner {
 
     private final Handler mHandler;
 
+    private final Object mLock = new Object();
+    /** Pending asynchronous calls, keyed by call site and arguments. */
+    @GuardedBy("mLock")
+    private final Map<Pair<String, Object>, CompletableFuture<?>> mPendingCalls = new ArrayMap<>();
+    /** Statistics of the asynchronous calls, keyed by call site. */
+    @GuardedBy("mLock")
+    private final Map<String, CallSiteStats> mCallSiteStats = new ArrayMap<>();
+
+    /** Statistics of the asynchronous calls from a call site. */
+    private static class CallSiteStats {
+        public int numCalls;
+        public int numCoalescedCalls;
+        public int numTimeouts;
+        public int maxQueueDepth;
+        public long totalQueueLatencyMs;
+        public long maxQueueLatencyMs;
+        public long totalRunLatencyMs;
+        public long maxRunLatencyMs;
+        public int numRuns;
+
+        @Override
+        public String toString() {
+            return "calls=" + numCalls + " coalesced=" + numCoalescedCalls
+                    + " timeouts=" + numTimeouts + " maxQueueDepth=" + maxQueueDepth
+                    + " avgQueueLatencyMs=" + (numRuns == 0 ? 0 : totalQueueLatencyMs / numRuns)
+                    + " maxQueueLatencyMs=" + maxQueueLatencyMs
+                    + " avgRunLatencyMs=" + (numRuns == 0 ? 0 : totalRunLatencyMs / numRuns)
+                    + " maxRunLatencyMs=" + maxRunLatencyMs;
+        }
+    }
+
     public WifiThreadRunner(Handler handler) {
         mHandler = handler;
     }
@@ -94,6 +134,117 @@ public class WifiThreadRunner {
         }
     }
 
+    /**
+     * Asynchronously runs code on the main Wifi thread and returns a future of its value.
+     *
+     * A call with the same call site and arguments as a call which is still waiting to run on the
+     * main Wifi thread is coalesced with it, and gets the same future. The supplier must therefore
+     * only depend on its call site and arguments, and the value must not be modified by the
+     * callers. If the call didn't start running on the main Wifi thread within |timeoutMillis|,
+     * it is skipped and the future completes with a {@link TimeoutException}.
+     *
+     * @param <T> the return type, which must be the same for all calls from a call site
+     * @param callSite name of the call site, used for coalescing calls and for the statistics
+     * @param args arguments of the call which the supplier depends on, used for coalescing calls
+     * @param supplier the lambda that should be run on the main Wifi thread
+     * @param timeoutMillis max wait time for the lambda to start running on the main Wifi thread
+     * @return future of the value retrieved from the Wifi thread
+     */
+    @NonNull
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> callAsync(@NonNull String callSite, @Nullable Object args,
+            @NonNull Supplier<T> supplier, long timeoutMillis) {
+        if (Looper.myLooper() == mHandler.getLooper()
+                || Thread.currentThread() == mDispatchThread) {
+            return CompletableFuture.completedFuture(supplier.get());
+        }
+        Pair<String, Object> key = Pair.create(callSite, args);
+        CompletableFuture<T> future;
+        CallSiteStats stats;
+        long enqueueTimeMs = SystemClock.uptimeMillis();
+        synchronized (mLock) {
+            stats = mCallSiteStats.computeIfAbsent(callSite, k -> new CallSiteStats());
+            stats.numCalls++;
+            CompletableFuture<T> pendingFuture = (CompletableFuture<T>) mPendingCalls.get(key);
+            if (pendingFuture != null) {
+                stats.numCoalescedCalls++;
+                return pendingFuture;
+            }
+            future = new CompletableFuture<>();
+            mPendingCalls.put(key, future);
+            stats.maxQueueDepth = Math.max(stats.maxQueueDepth, mPendingCalls.size());
+        }
+        Runnable runnable = () -> {
+            long startTimeMs = SystemClock.uptimeMillis();
+            synchronized (mLock) {
+                // Calls made from now on may observe a newer state, so don't coalesce them.
+                mPendingCalls.remove(key, future);
+                if (startTimeMs - enqueueTimeMs > timeoutMillis) {
+                    stats.numTimeouts++;
+                }
+            }
+            if (startTimeMs - enqueueTimeMs > timeoutMillis) {
+                future.completeExceptionally(new TimeoutException(callSite + " timed out"));
+                return;
+            }
+            try {
+                future.complete(supplier.get());
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+            long endTimeMs = SystemClock.uptimeMillis();
+            synchronized (mLock) {
+                stats.numRuns++;
+                stats.totalQueueLatencyMs += startTimeMs - enqueueTimeMs;
+                stats.maxQueueLatencyMs =
+                        Math.max(stats.maxQueueLatencyMs, startTimeMs - enqueueTimeMs);
+                stats.totalRunLatencyMs += endTimeMs - startTimeMs;
+                stats.maxRunLatencyMs = Math.max(stats.maxRunLatencyMs, endTimeMs - startTimeMs);
+            }
+        };
+        if (!mHandler.post(runnable)) {
+            synchronized (mLock) {
+                mPendingCalls.remove(key, future);
+            }
+            future.completeExceptionally(new IllegalStateException("Failed to post " + callSite));
+        }
+        return future;
+    }
+
+    /**
+     * Runs code on the main Wifi thread and returns its value, coalescing the call with an
+     * identical pending call if any. See {@link #callAsync(String, Object, Supplier, long)}.
+     * <b>Blocks</b> the calling thread until the value is available, or until
+     * {@link #RUN_WITH_SCISSORS_TIMEOUT_MILLIS} expired. Unlike {@link #call(Supplier, Object)},
+     * a call which could not start running before the timeout is not run later.
+     *
+     * @param <T> the return type, which must be the same for all calls from a call site
+     * @param callSite name of the call site, used for coalescing calls and for the statistics
+     * @param args arguments of the call which the supplier depends on, used for coalescing calls
+     * @param supplier the lambda that should be run on the main Wifi thread
+     * @param valueToReturnOnTimeout If the lambda provided could not be run within the timeout,
+     *                 or threw an exception, will return this provided value instead.
+     * @return value retrieved from Wifi thread, or |valueToReturnOnTimeout| if the call failed.
+     */
+    @Nullable
+    public <T> T callCoalesced(@NonNull String callSite, @Nullable Object args,
+            @NonNull Supplier<T> supplier, T valueToReturnOnTimeout) {
+        CompletableFuture<T> future =
+                callAsync(callSite, args, supplier, RUN_WITH_SCISSORS_TIMEOUT_MILLIS);
+        try {
+            return future.get(RUN_WITH_SCISSORS_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Log.e(TAG, "WifiThreadRunner.callCoalesced() failed for " + callSite, e.getCause());
+        } catch (InterruptedException | TimeoutException e) {
+            Log.e(TAG, "WifiThreadRunner.callCoalesced() timed out for " + callSite,
+                    new Throwable("Caller thread Stack trace:"));
+        }
+        if (mTimeoutsAreErrors) {
+            throw new RuntimeException("WifiThreadRunner.callCoalesced() timed out!");
+        }
+        return valueToReturnOnTimeout;
+    }
+
     /**
      * Runs a Runnable on the main Wifi thread and <b>blocks</b> the calling thread until the
      * Runnable completes execution on the main Wifi thread.
@@ -120,6 +271,19 @@ public class WifiThreadRunner {
         }
     }
 
+    /**
+     * Dump the statistics of the asynchronous calls.
+     */
+    public void dump(PrintWriter pw) {
+        pw.println("Dump of WifiThreadRunner");
+        synchronized (mLock) {
+            pw.println("Pending calls: " + mPendingCalls.size());
+            for (Map.Entry<String, CallSiteStats> entry : mCallSiteStats.entrySet()) {
+                pw.println(entry.getKey() + ": " + entry.getValue());
+            }
+        }
+    }
+
     /**
      * Sets whether or not a RuntimeError should be thrown when a timeout occurs.
      *
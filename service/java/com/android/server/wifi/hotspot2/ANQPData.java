@@ -40,6 +40,8 @@ public class ANQPData {
     private final Clock mClock;
     private final Map<Constants.ANQPElementType, ANQPElement> mANQPElements;
     private long mExpiryTime;
+    // Incremented every time the elements of this entry are updated.
+    private int mGeneration;
 
     public ANQPData(Clock clock, Map<Constants.ANQPElementType, ANQPElement> anqpElements) {
         mClock = clock;
@@ -74,6 +76,16 @@ public class ANQPData {
     public void update(Map<Constants.ANQPElementType, ANQPElement> anqpElements) {
         mANQPElements.putAll(anqpElements);
         mExpiryTime = mClock.getElapsedSinceBootMillis() + DATA_LIFETIME_MILLISECONDS;
+        mGeneration++;
+    }
+
+    /**
+     * Return the generation of this entry, which changes every time the elements are updated.
+     *
+     * @return The generation of the entry
+     */
+    public int getGeneration() {
+        return mGeneration;
     }
 
     /**
@@ -85,6 +97,15 @@ public class ANQPData {
         return Collections.unmodifiableMap(mANQPElements);
     }
 
+    /**
+     * Return the time at which this entry expires.
+     *
+     * @return The expiry time in milliseconds since boot
+     */
+    public long getExpiryTime() {
+        return mExpiryTime;
+    }
+
     /**
      * Check if this entry is expired at the specified time.
      *
@@ -16,20 +16,27 @@
 
 package com.android.server.wifi.hotspot2;
 
+import android.annotation.Nullable;
+
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.server.wifi.Clock;
+import com.android.server.wifi.DeviceConfigFacade;
 import com.android.server.wifi.hotspot2.anqp.ANQPElement;
 import com.android.server.wifi.hotspot2.anqp.Constants;
 
 import java.io.PrintWriter;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.PriorityQueue;
 
 /**
  * Cache for storing ANQP data.  This is simply a data cache, all the logic related to
  * ANQP data query will be handled elsewhere (e.g. the consumer of the cache).
+ *
+ * The cache is bounded, the least recently used entry is evicted when the maximum size is
+ * reached. Expired entries are tracked in a queue ordered by expiry time, so that a sweep only
+ * visits the entries that expired.
  */
 public class AnqpCache {
     @VisibleForTesting
@@ -37,15 +44,54 @@ public class AnqpCache {
 
     private long mLastSweep;
     private Clock mClock;
+    private final DeviceConfigFacade mDeviceConfigFacade;
+
+    // Access ordered map, the eldest entry is the least recently used.
+    private final LinkedHashMap<ANQPNetworkKey, ANQPData> mANQPCache;
+
+    /**
+     * Element of the expiry queue. The queue may contain stale elements for entries which
+     * were evicted, replaced or updated; they are dropped when reaching the head of the queue.
+     */
+    private static class ExpiryEntry implements Comparable<ExpiryEntry> {
+        final ANQPNetworkKey mKey;
+        final ANQPData mData;
+        final long mExpiryTime;
+
+        ExpiryEntry(ANQPNetworkKey key, ANQPData data) {
+            mKey = key;
+            mData = data;
+            mExpiryTime = data.getExpiryTime();
+        }
+
+        @Override
+        public int compareTo(ExpiryEntry other) {
+            return Long.compare(mExpiryTime, other.mExpiryTime);
+        }
+    }
 
-    private final Map<ANQPNetworkKey, ANQPData> mANQPCache;
+    private final PriorityQueue<ExpiryEntry> mExpiryQueue = new PriorityQueue<>();
+    private long mEvictionCount;
+    private long mExpiredCount;
 
     public AnqpCache(Clock clock) {
+        this(clock, null);
+    }
+
+    public AnqpCache(Clock clock, @Nullable DeviceConfigFacade deviceConfigFacade) {
         mClock = clock;
-        mANQPCache = new HashMap<>();
+        mDeviceConfigFacade = deviceConfigFacade;
+        mANQPCache = new LinkedHashMap<>(16, 0.75f, true);
         mLastSweep = mClock.getElapsedSinceBootMillis();
     }
 
+    private int getMaxSize() {
+        if (mDeviceConfigFacade == null) {
+            return DeviceConfigFacade.DEFAULT_ANQP_CACHE_MAX_SIZE;
+        }
+        return Math.max(1, mDeviceConfigFacade.getAnqpCacheMaxSize());
+    }
+
     /**
      * Add an ANQP entry associated with the given key.
      *
@@ -56,6 +102,8 @@ public class AnqpCache {
             Map<Constants.ANQPElementType, ANQPElement> anqpElements) {
         ANQPData data = new ANQPData(mClock, anqpElements);
         mANQPCache.put(key, data);
+        mExpiryQueue.add(new ExpiryEntry(key, data));
+        trimToMaxSize();
     }
 
     /**
@@ -68,12 +116,14 @@ public class AnqpCache {
      */
     public void addOrUpdateEntry(ANQPNetworkKey key,
             Map<Constants.ANQPElementType, ANQPElement> anqpElements) {
-        if (!mANQPCache.containsKey(key)) {
+        ANQPData data = mANQPCache.get(key);
+        if (data == null) {
             // Create a new entry
             addEntry(key, anqpElements);
             return;
         }
-        mANQPCache.get(key).update(anqpElements);
+        data.update(anqpElements);
+        mExpiryQueue.add(new ExpiryEntry(key, data));
     }
 
     /**
@@ -96,24 +146,24 @@ public class AnqpCache {
             return;
         }
 
-        // Get all expired keys.
-        List<ANQPNetworkKey> expiredKeys = new ArrayList<>();
-        for (Map.Entry<ANQPNetworkKey, ANQPData> entry : mANQPCache.entrySet()) {
-            if (entry.getValue().expired(now)) {
-                expiredKeys.add(entry.getKey());
+        // Remove all expired entries, skipping stale queue elements. The entry is only removed
+        // if it still maps to the queued data, without a lookup which would mark it as used.
+        while (!mExpiryQueue.isEmpty() && mExpiryQueue.peek().mExpiryTime <= now) {
+            ExpiryEntry expiryEntry = mExpiryQueue.poll();
+            if (expiryEntry.mData.expired(now)
+                    && mANQPCache.remove(expiryEntry.mKey, expiryEntry.mData)) {
+                mExpiredCount++;
             }
         }
-
-        // Remove all expired entries.
-        for (ANQPNetworkKey key : expiredKeys) {
-            mANQPCache.remove(key);
-        }
+        compactExpiryQueueIfNeeded();
         mLastSweep = now;
     }
 
     public void dump(PrintWriter out) {
         out.println("Last sweep " + Utils.toHMS(mClock.getElapsedSinceBootMillis() - mLastSweep)
                 + " ago.");
+        out.println("Occupancy " + mANQPCache.size() + "/" + getMaxSize()
+                + ", evicted " + mEvictionCount + ", expired " + mExpiredCount);
         for (Map.Entry<ANQPNetworkKey, ANQPData> entry : mANQPCache.entrySet()) {
             out.println(entry.getKey() + ": " + entry.getValue());
         }
@@ -124,6 +174,48 @@ public class AnqpCache {
      */
     public void flush() {
         mANQPCache.clear();
+        mExpiryQueue.clear();
         mLastSweep = mClock.getElapsedSinceBootMillis();
     }
+
+    /**
+     * Return the number of entries in the cache.
+     */
+    @VisibleForTesting
+    public int size() {
+        return mANQPCache.size();
+    }
+
+    /**
+     * Return the number of entries evicted because the cache was full.
+     */
+    @VisibleForTesting
+    public long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    private void trimToMaxSize() {
+        int maxSize = getMaxSize();
+        Iterator<ANQPNetworkKey> iterator = mANQPCache.keySet().iterator();
+        while (mANQPCache.size() > maxSize && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            mEvictionCount++;
+        }
+        compactExpiryQueueIfNeeded();
+    }
+
+    /**
+     * Drop the stale elements of the expiry queue when they outnumber the live ones, to keep
+     * the queue size proportional to the cache size.
+     */
+    private void compactExpiryQueueIfNeeded() {
+        if (mExpiryQueue.size() <= 2 * mANQPCache.size() + 16) {
+            return;
+        }
+        mExpiryQueue.clear();
+        for (Map.Entry<ANQPNetworkKey, ANQPData> entry : mANQPCache.entrySet()) {
+            mExpiryQueue.add(new ExpiryEntry(entry.getKey(), entry.getValue()));
+        }
+    }
 }
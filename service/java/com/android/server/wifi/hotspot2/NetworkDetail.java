@@ -17,7 +17,6 @@ import java.nio.CharBuffer;
 import java.nio.charset.CharacterCodingException;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -27,6 +26,34 @@ public class NetworkDetail {
 
     private static final String TAG = "NetworkDetail";
 
+    // Shared parsers standing for absent information elements, these are never populated.
+    private static final InformationElementUtil.BssLoad ABSENT_BSS_LOAD =
+            new InformationElementUtil.BssLoad();
+    private static final InformationElementUtil.Interworking ABSENT_INTERWORKING =
+            new InformationElementUtil.Interworking();
+    private static final InformationElementUtil.RoamingConsortium ABSENT_ROAMING_CONSORTIUM =
+            new InformationElementUtil.RoamingConsortium();
+    private static final InformationElementUtil.Vsa ABSENT_VSA =
+            new InformationElementUtil.Vsa();
+    private static final InformationElementUtil.HtOperation ABSENT_HT_OPERATION =
+            new InformationElementUtil.HtOperation();
+    private static final InformationElementUtil.VhtOperation ABSENT_VHT_OPERATION =
+            new InformationElementUtil.VhtOperation();
+    private static final InformationElementUtil.HeOperation ABSENT_HE_OPERATION =
+            new InformationElementUtil.HeOperation();
+    private static final InformationElementUtil.HtCapabilities ABSENT_HT_CAPABILITIES =
+            new InformationElementUtil.HtCapabilities();
+    private static final InformationElementUtil.VhtCapabilities ABSENT_VHT_CAPABILITIES =
+            new InformationElementUtil.VhtCapabilities();
+    private static final InformationElementUtil.HeCapabilities ABSENT_HE_CAPABILITIES =
+            new InformationElementUtil.HeCapabilities();
+    private static final InformationElementUtil.ExtendedCapabilities
+            ABSENT_EXTENDED_CAPABILITIES = new InformationElementUtil.ExtendedCapabilities();
+    private static final InformationElementUtil.TrafficIndicationMap
+            ABSENT_TRAFFIC_INDICATION_MAP = new InformationElementUtil.TrafficIndicationMap();
+    private static final InformationElementUtil.SupportedRates ABSENT_SUPPORTED_RATES =
+            new InformationElementUtil.SupportedRates();
+
     public enum Ant {
         Private,
         PrivateWithGuest,
@@ -142,91 +169,121 @@ public class NetworkDetail {
         boolean isHiddenSsid = false;
         byte[] ssidOctets = null;
 
-        InformationElementUtil.BssLoad bssLoad = new InformationElementUtil.BssLoad();
-
-        InformationElementUtil.Interworking interworking =
-                new InformationElementUtil.Interworking();
-
-        InformationElementUtil.RoamingConsortium roamingConsortium =
-                new InformationElementUtil.RoamingConsortium();
-
-        InformationElementUtil.Vsa vsa = new InformationElementUtil.Vsa();
-
-        InformationElementUtil.HtOperation htOperation = new InformationElementUtil.HtOperation();
-        InformationElementUtil.VhtOperation vhtOperation =
-                new InformationElementUtil.VhtOperation();
-        InformationElementUtil.HeOperation heOperation = new InformationElementUtil.HeOperation();
-
-        InformationElementUtil.HtCapabilities htCapabilities =
-                new InformationElementUtil.HtCapabilities();
-        InformationElementUtil.VhtCapabilities vhtCapabilities =
-                new InformationElementUtil.VhtCapabilities();
-        InformationElementUtil.HeCapabilities heCapabilities =
-                new InformationElementUtil.HeCapabilities();
-
-        InformationElementUtil.ExtendedCapabilities extendedCapabilities =
-                new InformationElementUtil.ExtendedCapabilities();
-
-        InformationElementUtil.TrafficIndicationMap trafficIndicationMap =
-                new InformationElementUtil.TrafficIndicationMap();
-
-        InformationElementUtil.SupportedRates supportedRates =
-                new InformationElementUtil.SupportedRates();
-        InformationElementUtil.SupportedRates extendedSupportedRates =
-                new InformationElementUtil.SupportedRates();
+        // Parsers are only allocated for the elements present in the scan result, the absent
+        // ones are substituted with the shared defaults below after the elements are parsed.
+        InformationElementUtil.BssLoad bssLoad = null;
+        InformationElementUtil.Interworking interworking = null;
+        InformationElementUtil.RoamingConsortium roamingConsortium = null;
+        InformationElementUtil.Vsa vsa = null;
+        InformationElementUtil.HtOperation htOperation = null;
+        InformationElementUtil.VhtOperation vhtOperation = null;
+        InformationElementUtil.HeOperation heOperation = null;
+        InformationElementUtil.HtCapabilities htCapabilities = null;
+        InformationElementUtil.VhtCapabilities vhtCapabilities = null;
+        InformationElementUtil.HeCapabilities heCapabilities = null;
+        InformationElementUtil.ExtendedCapabilities extendedCapabilities = null;
+        InformationElementUtil.TrafficIndicationMap trafficIndicationMap = null;
+        InformationElementUtil.SupportedRates supportedRates = null;
+        InformationElementUtil.SupportedRates extendedSupportedRates = null;
+        boolean erpPresent = false;
 
         RuntimeException exception = null;
 
-        ArrayList<Integer> iesFound = new ArrayList<Integer>();
         try {
             for (ScanResult.InformationElement ie : infoElements) {
-                iesFound.add(ie.id);
                 switch (ie.id) {
                     case ScanResult.InformationElement.EID_SSID:
                         ssidOctets = ie.bytes;
                         break;
                     case ScanResult.InformationElement.EID_BSS_LOAD:
+                        if (bssLoad == null) {
+                            bssLoad = new InformationElementUtil.BssLoad();
+                        }
                         bssLoad.from(ie);
                         break;
                     case ScanResult.InformationElement.EID_HT_OPERATION:
+                        if (htOperation == null) {
+                            htOperation = new InformationElementUtil.HtOperation();
+                        }
                         htOperation.from(ie);
                         break;
                     case ScanResult.InformationElement.EID_VHT_OPERATION:
+                        if (vhtOperation == null) {
+                            vhtOperation = new InformationElementUtil.VhtOperation();
+                        }
                         vhtOperation.from(ie);
                         break;
                     case ScanResult.InformationElement.EID_HT_CAPABILITIES:
+                        if (htCapabilities == null) {
+                            htCapabilities = new InformationElementUtil.HtCapabilities();
+                        }
                         htCapabilities.from(ie);
                         break;
                     case ScanResult.InformationElement.EID_VHT_CAPABILITIES:
+                        if (vhtCapabilities == null) {
+                            vhtCapabilities = new InformationElementUtil.VhtCapabilities();
+                        }
                         vhtCapabilities.from(ie);
                         break;
                     case ScanResult.InformationElement.EID_INTERWORKING:
+                        if (interworking == null) {
+                            interworking = new InformationElementUtil.Interworking();
+                        }
                         interworking.from(ie);
                         break;
                     case ScanResult.InformationElement.EID_ROAMING_CONSORTIUM:
+                        if (roamingConsortium == null) {
+                            roamingConsortium = new InformationElementUtil.RoamingConsortium();
+                        }
                         roamingConsortium.from(ie);
                         break;
                     case ScanResult.InformationElement.EID_VSA:
+                        if (vsa == null) {
+                            vsa = new InformationElementUtil.Vsa();
+                        }
                         vsa.from(ie);
                         break;
                     case ScanResult.InformationElement.EID_EXTENDED_CAPS:
+                        if (extendedCapabilities == null) {
+                            extendedCapabilities =
+                                    new InformationElementUtil.ExtendedCapabilities();
+                        }
                         extendedCapabilities.from(ie);
                         break;
                     case ScanResult.InformationElement.EID_TIM:
+                        if (trafficIndicationMap == null) {
+                            trafficIndicationMap =
+                                    new InformationElementUtil.TrafficIndicationMap();
+                        }
                         trafficIndicationMap.from(ie);
                         break;
                     case ScanResult.InformationElement.EID_SUPPORTED_RATES:
+                        if (supportedRates == null) {
+                            supportedRates = new InformationElementUtil.SupportedRates();
+                        }
                         supportedRates.from(ie);
                         break;
                     case ScanResult.InformationElement.EID_EXTENDED_SUPPORTED_RATES:
+                        if (extendedSupportedRates == null) {
+                            extendedSupportedRates = new InformationElementUtil.SupportedRates();
+                        }
                         extendedSupportedRates.from(ie);
                         break;
+                    case ScanResult.InformationElement.EID_ERP:
+                        erpPresent = true;
+                        break;
                     case ScanResult.InformationElement.EID_EXTENSION_PRESENT:
                         switch(ie.idExt) {
                             case ScanResult.InformationElement.EID_EXT_HE_OPERATION:
+                                if (heOperation == null) {
+                                    heOperation = new InformationElementUtil.HeOperation();
+                                }
                                 heOperation.from(ie);
                                 break;
                             case ScanResult.InformationElement.EID_EXT_HE_CAPABILITIES:
+                                if (heCapabilities == null) {
+                                    heCapabilities = new InformationElementUtil.HeCapabilities();
+                                }
                                 heCapabilities.from(ie);
                                 break;
                             default:
@@ -245,6 +302,45 @@ public class NetworkDetail {
             }
             exception = e;
         }
+        if (bssLoad == null) {
+            bssLoad = ABSENT_BSS_LOAD;
+        }
+        if (interworking == null) {
+            interworking = ABSENT_INTERWORKING;
+        }
+        if (roamingConsortium == null) {
+            roamingConsortium = ABSENT_ROAMING_CONSORTIUM;
+        }
+        if (vsa == null) {
+            vsa = ABSENT_VSA;
+        }
+        if (htOperation == null) {
+            htOperation = ABSENT_HT_OPERATION;
+        }
+        if (heOperation == null) {
+            heOperation = ABSENT_HE_OPERATION;
+        }
+        if (htCapabilities == null) {
+            htCapabilities = ABSENT_HT_CAPABILITIES;
+        }
+        if (vhtCapabilities == null) {
+            vhtCapabilities = ABSENT_VHT_CAPABILITIES;
+        }
+        if (heCapabilities == null) {
+            heCapabilities = ABSENT_HE_CAPABILITIES;
+        }
+        if (extendedCapabilities == null) {
+            extendedCapabilities = ABSENT_EXTENDED_CAPABILITIES;
+        }
+        if (trafficIndicationMap == null) {
+            trafficIndicationMap = ABSENT_TRAFFIC_INDICATION_MAP;
+        }
+        if (supportedRates == null) {
+            supportedRates = ABSENT_SUPPORTED_RATES;
+        }
+        if (extendedSupportedRates == null) {
+            extendedSupportedRates = ABSENT_SUPPORTED_RATES;
+        }
         if (ssidOctets != null) {
             /*
              * Strict use of the "UTF-8 SSID" bit by APs appears to be spotty at best even if the
@@ -313,9 +409,15 @@ public class NetworkDetail {
                 centerFreq1 = heOperation.getCenterFreq1();
             } else if (heOperation.isVhtInfoPresent()) {
                 // VHT Operation Info could be included inside the HE Operation IE
+                if (vhtOperation == null) {
+                    vhtOperation = new InformationElementUtil.VhtOperation();
+                }
                 vhtOperation.from(heOperation.getVhtInfoElement());
             }
         }
+        if (vhtOperation == null) {
+            vhtOperation = ABSENT_VHT_OPERATION;
+        }
 
         // Proceed to VHT Operation IE if parameters were not obtained from HE Operation IE
         // Not operating in 6GHz
@@ -370,7 +472,7 @@ public class NetworkDetail {
             mMaxRate = maxRateA > maxRateB ? maxRateA : maxRateB;
             mWifiMode = InformationElementUtil.WifiMode.determineMode(mPrimaryFreq, mMaxRate,
                     heOperation.isPresent(), vhtOperation.isPresent(), htOperation.isPresent(),
-                    iesFound.contains(ScanResult.InformationElement.EID_ERP));
+                    erpPresent);
         } else {
             mWifiMode = 0;
             mMaxRate = 0;
@@ -390,8 +492,7 @@ public class NetworkDetail {
                     + ", HE: " + String.valueOf(heOperation.isPresent())
                     + ", VHT: " + String.valueOf(vhtOperation.isPresent())
                     + ", HT: " + String.valueOf(htOperation.isPresent())
-                    + ", ERP: " + String.valueOf(
-                    iesFound.contains(ScanResult.InformationElement.EID_ERP))
+                    + ", ERP: " + String.valueOf(erpPresent)
                     + ", SupportedRates: " + supportedRates.toString()
                     + " ExtendedSupportedRates: " + extendedSupportedRates.toString());
         }
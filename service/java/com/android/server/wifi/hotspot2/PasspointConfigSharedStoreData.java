@@ -70,6 +70,11 @@ public class PasspointConfigSharedStoreData implements WifiConfigStore.StoreData
          * @param providerIndex The provider index used for provider creation
          */
         void setProviderIndex(long providerIndex);
+
+        /**
+         * Whether there is new data to serialize to the store file.
+         */
+        boolean hasNewDataToSerialize();
     }
 
     PasspointConfigSharedStoreData(DataSource dataSource) {
@@ -105,8 +110,7 @@ public class PasspointConfigSharedStoreData implements WifiConfigStore.StoreData
 
     @Override
     public boolean hasNewDataToSerialize() {
-        // always persist.
-        return true;
+        return mDataSource.hasNewDataToSerialize();
     }
 
     @Override
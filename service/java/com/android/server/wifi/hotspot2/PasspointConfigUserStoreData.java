@@ -101,6 +101,11 @@ public class PasspointConfigUserStoreData implements WifiConfigStore.StoreData {
          * @param providers The list of providers
          */
         void setProviders(List<PasspointProvider> providers);
+
+        /**
+         * Whether there is new data to serialize to the store file.
+         */
+        boolean hasNewDataToSerialize();
     }
 
     PasspointConfigUserStoreData(WifiKeyStore keyStore,
@@ -140,8 +145,7 @@ public class PasspointConfigUserStoreData implements WifiConfigStore.StoreData {
 
     @Override
     public boolean hasNewDataToSerialize() {
-        // always persist.
-        return true;
+        return mDataSource.hasNewDataToSerialize();
     }
 
     @Override
@@ -78,6 +78,7 @@ import java.security.cert.PKIXParameters;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -123,6 +124,8 @@ public class PasspointManager {
     private final PasspointObjectFactory mObjectFactory;
 
     private final Map<String, PasspointProvider> mProviders;
+    private final PasspointMatchIndex mMatchIndex;
+    private final PasspointMatchCache mMatchCache;
     private final AnqpCache mAnqpCache;
     private final ANQPRequestManager mAnqpRequestManager;
     private final WifiConfigManager mWifiConfigManager;
@@ -142,6 +145,9 @@ public class PasspointManager {
     // Counter used for assigning unique identifier to each provider.
     private long mProviderIndex;
     private boolean mVerboseLoggingEnabled = false;
+    // Indicate that the providers or the provider index changed since they were last written.
+    private boolean mHasNewUserDataToSerialize = false;
+    private boolean mHasNewSharedDataToSerialize = false;
 
     private class CallbackHandler implements PasspointEventHandler.Callbacks {
         private final Context mContext;
@@ -196,6 +202,8 @@ public class PasspointManager {
     private class UserDataSourceHandler implements PasspointConfigUserStoreData.DataSource {
         @Override
         public List<PasspointProvider> getProviders() {
+            // Clear the flag after writing to disk.
+            mHasNewUserDataToSerialize = false;
             List<PasspointProvider> providers = new ArrayList<>();
             for (Map.Entry<String, PasspointProvider> entry : mProviders.entrySet()) {
                 providers.add(entry.getValue());
@@ -206,15 +214,23 @@ public class PasspointManager {
         @Override
         public void setProviders(List<PasspointProvider> providers) {
             mProviders.clear();
+            mMatchIndex.clear();
+            mMatchCache.onProvidersChanged();
             for (PasspointProvider provider : providers) {
                 provider.enableVerboseLogging(mVerboseLoggingEnabled);
                 mProviders.put(provider.getConfig().getUniqueId(), provider);
+                mMatchIndex.addProvider(provider.getConfig().getUniqueId(), provider.getConfig());
                 if (provider.getPackageName() != null) {
                     startTrackingAppOpsChange(provider.getPackageName(),
                             provider.getCreatorUid());
                 }
             }
         }
+
+        @Override
+        public boolean hasNewDataToSerialize() {
+            return mHasNewUserDataToSerialize;
+        }
     }
 
     /**
@@ -224,6 +240,8 @@ public class PasspointManager {
     private class SharedDataSourceHandler implements PasspointConfigSharedStoreData.DataSource {
         @Override
         public long getProviderIndex() {
+            // Clear the flag after writing to disk.
+            mHasNewSharedDataToSerialize = false;
             return mProviderIndex;
         }
 
@@ -231,6 +249,11 @@ public class PasspointManager {
         public void setProviderIndex(long providerIndex) {
             mProviderIndex = providerIndex;
         }
+
+        @Override
+        public boolean hasNewDataToSerialize() {
+            return mHasNewSharedDataToSerialize;
+        }
     }
 
     /**
@@ -289,7 +312,7 @@ public class PasspointManager {
                 .forEach(provider -> {
                     provider.setUserConnectChoice(null, 0);
                 });
-        mWifiConfigManager.saveToStore(true);
+        saveToStore();
     }
 
     private void onUserConnectChoiceSet(List<WifiConfiguration> networks, String choiceKey,
@@ -304,7 +327,7 @@ public class PasspointManager {
         if (provider != null) {
             provider.setUserConnectChoice(null, 0);
         }
-        mWifiConfigManager.saveToStore(true);
+        saveToStore();
     }
 
     /**
@@ -329,6 +352,12 @@ public class PasspointManager {
                 Collectors.toMap(entry -> entry.getKey(), entry -> entry.getValue()));
     }
 
+    private void saveToStore() {
+        // Set the flag to let WifiConfigStore that we have new data to write.
+        mHasNewUserDataToSerialize = true;
+        mWifiConfigManager.saveToStore(true /* forceWrite */);
+    }
+
     private void startTrackingAppOpsChange(@NonNull String packageName, int uid) {
         // The package is already registered.
         if (mAppOpsChangedListenerPerApp.containsKey(packageName)) return;
@@ -362,7 +391,9 @@ public class PasspointManager {
         mKeyStore = keyStore;
         mObjectFactory = objectFactory;
         mProviders = new HashMap<>();
-        mAnqpCache = objectFactory.makeAnqpCache(clock);
+        mMatchIndex = new PasspointMatchIndex();
+        mMatchCache = new PasspointMatchCache();
+        mAnqpCache = objectFactory.makeAnqpCache(clock, wifiInjector.getDeviceConfigFacade());
         mAnqpRequestManager = objectFactory.makeANQPRequestManager(mPasspointEventHandler, clock);
         mWifiConfigManager = wifiConfigManager;
         mWifiMetrics = wifiMetrics;
@@ -380,6 +411,8 @@ public class PasspointManager {
         mClock = clock;
         mWifiConfigManager.addOnNetworkUpdateListener(
                 new PasspointManager.OnNetworkUpdateListener());
+        mWifiCarrierInfoManager.addOnActiveSubscriptionsChangedListener(
+                () -> mMatchCache.onProvidersChanged());
         mWifiPermissionsUtil = wifiPermissionsUtil;
     }
 
@@ -471,6 +504,7 @@ public class PasspointManager {
         PasspointProvider newProvider = mObjectFactory.makePasspointProvider(config, mKeyStore,
                 mWifiCarrierInfoManager, mProviderIndex++, uid, packageName, isFromSuggestion,
                 mClock);
+        mHasNewSharedDataToSerialize = true;
         newProvider.setTrusted(isTrusted);
 
         boolean metricsNoRootCa = false;
@@ -520,6 +554,7 @@ public class PasspointManager {
                     + " and unique ID: " + config.getUniqueId());
             old.uninstallCertsAndKeys();
             mProviders.remove(config.getUniqueId());
+            mMatchIndex.removeProvider(config.getUniqueId());
             // Keep the user connect choice and AnonymousIdentity
             newProvider.setUserConnectChoice(old.getConnectChoice(), old.getConnectChoiceRssi());
             newProvider.setAnonymousIdentity(old.getAnonymousIdentity());
@@ -535,7 +570,9 @@ public class PasspointManager {
         }
         newProvider.enableVerboseLogging(mVerboseLoggingEnabled);
         mProviders.put(config.getUniqueId(), newProvider);
-        mWifiConfigManager.saveToStore(true /* forceWrite */);
+        mMatchIndex.addProvider(config.getUniqueId(), newProvider.getConfig());
+        mMatchCache.onProvidersChanged();
+        saveToStore();
         if (!isFromSuggestion && newProvider.getPackageName() != null) {
             startTrackingAppOpsChange(newProvider.getPackageName(), uid);
         }
@@ -576,8 +613,10 @@ public class PasspointManager {
                 provider.getWifiConfig().getProfileKey());
         String uniqueId = provider.getConfig().getUniqueId();
         mProviders.remove(uniqueId);
+        mMatchIndex.removeProvider(uniqueId);
+        mMatchCache.onProvidersChanged();
         mWifiConfigManager.removeConnectChoiceFromAllNetworks(uniqueId);
-        mWifiConfigManager.saveToStore(true /* forceWrite */);
+        saveToStore();
 
         // Stop monitoring the package if there is no Passpoint profile installed by the package
         if (mAppOpsChangedListenerPerApp.containsKey(packageName)
@@ -672,7 +711,7 @@ public class PasspointManager {
                         provider.getPackageName(), provider.isFromSuggestion());
             }
 
-            mWifiConfigManager.saveToStore(true);
+            saveToStore();
             return true;
         }
 
@@ -696,7 +735,7 @@ public class PasspointManager {
             }
         }
         if (found) {
-            mWifiConfigManager.saveToStore(true);
+            saveToStore();
         }
         return found;
     }
@@ -727,7 +766,7 @@ public class PasspointManager {
             }
         }
         if (found) {
-            mWifiConfigManager.saveToStore(true);
+            saveToStore();
         }
         return found;
     }
@@ -755,7 +794,7 @@ public class PasspointManager {
             }
         }
         if (found) {
-            mWifiConfigManager.saveToStore(true);
+            saveToStore();
         }
         return found;
     }
@@ -873,10 +912,7 @@ public class PasspointManager {
             ScanResult scanResult, boolean anqpRequestAllowed) {
         List<Pair<PasspointProvider, PasspointMatch>> allMatches = new ArrayList<>();
 
-        // Retrieve the relevant information elements, mainly Roaming Consortium IE and Hotspot 2.0
-        // Vendor Specific IE.
-        InformationElementUtil.RoamingConsortium roamingConsortium =
-                InformationElementUtil.getRoamingConsortiumIE(scanResult.informationElements);
+        // Retrieve the Hotspot 2.0 Vendor Specific IE needed to build the ANQP network key.
         InformationElementUtil.Vsa vsa = InformationElementUtil.getHS2VendorSpecificIE(
                 scanResult.informationElements);
 
@@ -891,6 +927,17 @@ public class PasspointManager {
         ANQPNetworkKey anqpKey = ANQPNetworkKey.buildKey(scanResult.SSID, bssid, scanResult.hessid,
                 vsa.anqpDomainID);
         ANQPData anqpEntry = mAnqpCache.getEntry(anqpKey);
+        if (anqpEntry != null) {
+            List<Pair<PasspointProvider, PasspointMatch>> cachedMatches =
+                    mMatchCache.get(anqpKey, bssid, scanResult.timestamp, anqpEntry);
+            if (cachedMatches != null) {
+                return cachedMatches;
+            }
+        }
+
+        // Retrieve the Roaming Consortium IE.
+        InformationElementUtil.RoamingConsortium roamingConsortium =
+                InformationElementUtil.getRoamingConsortiumIE(scanResult.informationElements);
         if (anqpEntry == null) {
             if (anqpRequestAllowed) {
                 mAnqpRequestManager.requestANQPElements(bssid, anqpKey,
@@ -900,11 +947,14 @@ public class PasspointManager {
             return allMatches;
         }
         boolean anyProviderUpdated = false;
-        for (Map.Entry<String, PasspointProvider> entry : mProviders.entrySet()) {
-            PasspointProvider provider = entry.getValue();
+        boolean anyProviderBlocked = false;
+        for (PasspointProvider provider : getMatchCandidates(anqpEntry, roamingConsortium)) {
             if (provider.tryUpdateCarrierId()) {
                 anyProviderUpdated = true;
             }
+            if (provider.isReauthBlocked()) {
+                anyProviderBlocked = true;
+            }
             if (mVerboseLoggingEnabled) {
                 Log.d(TAG, "Matching provider " + provider.getConfig().getHomeSp().getFqdn()
                         + " with "
@@ -918,7 +968,12 @@ public class PasspointManager {
             }
         }
         if (anyProviderUpdated) {
-            mWifiConfigManager.saveToStore(true);
+            saveToStore();
+        }
+        // A block is lifted once its delay has passed, so the results depending on it can't be
+        // cached.
+        if (!anyProviderBlocked) {
+            mMatchCache.put(anqpKey, bssid, scanResult.timestamp, anqpEntry, allMatches);
         }
         if (allMatches.size() != 0) {
             for (Pair<PasspointProvider, PasspointMatch> match : allMatches) {
@@ -935,6 +990,32 @@ public class PasspointManager {
         return allMatches;
     }
 
+    /**
+     * Return the providers that could match an AP with the given ANQP data, looked up in the
+     * provider match index. All the providers are returned when the AP doesn't advertise any
+     * element that the index can be looked up with.
+     */
+    private @NonNull Collection<PasspointProvider> getMatchCandidates(@NonNull ANQPData anqpEntry,
+            @Nullable InformationElementUtil.RoamingConsortium roamingConsortium) {
+        Set<String> candidateIds = mMatchIndex.getCandidates(anqpEntry.getElements(),
+                roamingConsortium);
+        if (candidateIds == null) {
+            return mProviders.values();
+        }
+        List<PasspointProvider> candidates = new ArrayList<>(candidateIds.size());
+        for (String uniqueId : candidateIds) {
+            PasspointProvider provider = mProviders.get(uniqueId);
+            if (provider != null) {
+                candidates.add(provider);
+            }
+        }
+        if (mVerboseLoggingEnabled) {
+            Log.d(TAG, "Match index selected " + candidates.size() + " out of "
+                    + mProviders.size() + " providers");
+        }
+        return candidates;
+    }
+
     /**
      * Add a legacy Passpoint configuration represented by a {@link WifiConfiguration} to the
      * current {@link PasspointManager}.
@@ -1213,6 +1294,7 @@ public class PasspointManager {
         if (!provider.getHasEverConnected()) {
             // First successful connection using this provider.
             provider.setHasEverConnected(true);
+            mHasNewUserDataToSerialize = true;
         }
     }
 
@@ -1246,6 +1328,8 @@ public class PasspointManager {
         }
         pw.println("PasspointManager - Providers End ---");
         pw.println("PasspointManager - Next provider ID to be assigned " + mProviderIndex);
+        mMatchIndex.dump(pw);
+        mMatchCache.dump(pw);
         mAnqpCache.dump(pw);
         mAnqpRequestManager.dump(pw);
     }
@@ -1297,6 +1381,10 @@ public class PasspointManager {
                 enterpriseConfig.getClientCertificateAlias(), null, false, false, mClock);
         provider.enableVerboseLogging(mVerboseLoggingEnabled);
         mProviders.put(passpointConfig.getUniqueId(), provider);
+        mMatchIndex.addProvider(passpointConfig.getUniqueId(), provider.getConfig());
+        mMatchCache.onProvidersChanged();
+        mHasNewUserDataToSerialize = true;
+        mHasNewSharedDataToSerialize = true;
         return true;
     }
 
@@ -1377,6 +1465,7 @@ public class PasspointManager {
         mAnqpRequestManager.clear();
         mAnqpCache.flush();
         mProviders.values().stream().forEach(p -> p.clearProviderBlock());
+        mMatchCache.onProvidersChanged();
     }
 
     private PKIXParameters mInjectedPKIXParameters;
@@ -1539,6 +1628,7 @@ public class PasspointManager {
         PasspointProvider provider = mProviders.get(passpointUniqueId);
         if (provider != null) {
             provider.blockBssOrEss(bssid, isEss, delay);
+            mMatchCache.onProvidersChanged();
         }
     }
 
@@ -1552,16 +1642,25 @@ public class PasspointManager {
         PasspointProvider provider = mProviders.get(configuration.getProfileKey());
         if (provider != null) {
             provider.setAnonymousIdentity(configuration.enterpriseConfig.getAnonymousIdentity());
-            mWifiConfigManager.saveToStore(true);
+            saveToStore();
         }
     }
 
+    /**
+     * Invalidates the cached provider matches when a SIM is inserted or removed, or the default
+     * data SIM changed.
+     */
+    public void onSimStateChanged() {
+        mMatchCache.onProvidersChanged();
+    }
+
     /**
      * Resets all sim networks state.
      */
     public void resetSimPasspointNetwork() {
         mProviders.values().stream().forEach(p -> p.setAnonymousIdentity(null));
-        mWifiConfigManager.saveToStore(true);
+        mMatchCache.onProvidersChanged();
+        saveToStore();
     }
 
     /**
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.hotspot2;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.util.Pair;
+
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Cache of the provider match results of a scan result, so that the different consumers of
+ * a scan (network selection, OSU provider and scan result matching, suggestions) don't
+ * re-run the provider matching for the same AP.
+ *
+ * An entry is identified by the ANQP network key, the BSSID and the timestamp of the scan
+ * result, so a new scan of the same AP is always a miss. An entry is only valid for the
+ * {@link ANQPData} instance and generation it was computed with, and for the provider set
+ * generation it was computed with. Changes to the providers must be reported with
+ * {@link #onProvidersChanged()}.
+ *
+ * NOTE: This class is not thread safe and should only be used from the main Wifi thread.
+ */
+public class PasspointMatchCache {
+    private static final String TAG = "PasspointMatchCache";
+
+    @VisibleForTesting
+    public static final int MAX_ENTRIES = 512;
+
+    private static class Key {
+        final ANQPNetworkKey mAnqpKey;
+        final long mBssid;
+        final long mTimestamp;
+
+        Key(ANQPNetworkKey anqpKey, long bssid, long timestamp) {
+            mAnqpKey = anqpKey;
+            mBssid = bssid;
+            mTimestamp = timestamp;
+        }
+
+        @Override
+        public boolean equals(Object thatObject) {
+            if (this == thatObject) {
+                return true;
+            }
+            if (!(thatObject instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) thatObject;
+            return mBssid == that.mBssid && mTimestamp == that.mTimestamp
+                    && Objects.equals(mAnqpKey, that.mAnqpKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mAnqpKey, mBssid, mTimestamp);
+        }
+    }
+
+    private static class Entry {
+        final ANQPData mAnqpData;
+        final int mAnqpGeneration;
+        final long mProviderGeneration;
+        final List<Pair<PasspointProvider, PasspointMatch>> mMatches;
+
+        Entry(ANQPData anqpData, long providerGeneration,
+                List<Pair<PasspointProvider, PasspointMatch>> matches) {
+            mAnqpData = anqpData;
+            mAnqpGeneration = anqpData.getGeneration();
+            mProviderGeneration = providerGeneration;
+            mMatches = matches;
+        }
+    }
+
+    private final Map<Key, Entry> mCache = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private long mProviderGeneration;
+    private long mHits;
+    private long mMisses;
+
+    /**
+     * Get the cached match results for the given scan result.
+     *
+     * @param anqpKey The ANQP network key of the AP
+     * @param bssid The BSSID of the AP
+     * @param timestamp The timestamp of the scan result
+     * @param anqpData The ANQP data currently cached for the AP
+     * @return A copy of the cached match results, or null if not cached or stale
+     */
+    public @Nullable List<Pair<PasspointProvider, PasspointMatch>> get(
+            @NonNull ANQPNetworkKey anqpKey, long bssid, long timestamp,
+            @NonNull ANQPData anqpData) {
+        Key key = new Key(anqpKey, bssid, timestamp);
+        Entry entry = mCache.get(key);
+        if (entry == null) {
+            mMisses++;
+            return null;
+        }
+        if (entry.mAnqpData != anqpData || entry.mAnqpGeneration != anqpData.getGeneration()
+                || entry.mProviderGeneration != mProviderGeneration) {
+            mCache.remove(key);
+            mMisses++;
+            return null;
+        }
+        mHits++;
+        return new ArrayList<>(entry.mMatches);
+    }
+
+    /**
+     * Cache the match results for the given scan result.
+     *
+     * @param anqpKey The ANQP network key of the AP
+     * @param bssid The BSSID of the AP
+     * @param timestamp The timestamp of the scan result
+     * @param anqpData The ANQP data the results were computed with
+     * @param matches The match results
+     */
+    public void put(@NonNull ANQPNetworkKey anqpKey, long bssid, long timestamp,
+            @NonNull ANQPData anqpData,
+            @NonNull List<Pair<PasspointProvider, PasspointMatch>> matches) {
+        mCache.put(new Key(anqpKey, bssid, timestamp),
+                new Entry(anqpData, mProviderGeneration, new ArrayList<>(matches)));
+    }
+
+    /**
+     * Invalidate all the cached results after the providers, or any state they match with,
+     * changed.
+     */
+    public void onProvidersChanged() {
+        mProviderGeneration++;
+        mCache.clear();
+    }
+
+    @VisibleForTesting
+    public long getHitCount() {
+        return mHits;
+    }
+
+    @VisibleForTesting
+    public long getMissCount() {
+        return mMisses;
+    }
+
+    /**
+     * Dump the state of the cache.
+     */
+    public void dump(PrintWriter pw) {
+        pw.println(TAG + ": entries=" + mCache.size() + " hits=" + mHits + " misses=" + mMisses
+                + " providerGeneration=" + mProviderGeneration);
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.hotspot2;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.net.wifi.hotspot2.PasspointConfiguration;
+import android.net.wifi.hotspot2.pps.Credential;
+import android.net.wifi.hotspot2.pps.HomeSp;
+import android.text.TextUtils;
+
+import com.android.server.wifi.IMSIParameter;
+import com.android.server.wifi.hotspot2.anqp.ANQPElement;
+import com.android.server.wifi.hotspot2.anqp.CellularNetwork;
+import com.android.server.wifi.hotspot2.anqp.Constants.ANQPElementType;
+import com.android.server.wifi.hotspot2.anqp.DomainNameElement;
+import com.android.server.wifi.hotspot2.anqp.NAIRealmData;
+import com.android.server.wifi.hotspot2.anqp.NAIRealmElement;
+import com.android.server.wifi.hotspot2.anqp.RoamingConsortiumElement;
+import com.android.server.wifi.hotspot2.anqp.ThreeGPPNetworkElement;
+import com.android.server.wifi.util.InformationElementUtil.RoamingConsortium;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index over the matching keys of the installed Passpoint providers, used to select the
+ * providers that could possibly match a given AP before running the full
+ * {@link PasspointProvider#match} on them.
+ *
+ * The index contains:
+ * - A domain label tree (reversed labels) holding each provider's FQDN, Other Home Partner
+ *   FQDNs and credential NAI realm. An AP domain or realm can only match a provider if one of
+ *   the provider's domains is a suffix of it, see {@link DomainMatcher#arg2SubdomainOfArg1}.
+ * - A Roaming Consortium OI map holding the Home OIs and Roaming Consortium OIs.
+ * - A PLMN (MCC-MNC) map holding the 5 and 6 digit prefixes of the IMSI of SIM credentials.
+ *
+ * The candidates returned by {@link #getCandidates} is a superset of the providers that
+ * {@link PasspointProvider#match} would report as Home or Roaming provider, the final match
+ * decision is still done by the provider.
+ *
+ * NOTE: This class is not thread safe and should only be used from the main Wifi thread.
+ */
+public class PasspointMatchIndex {
+    private static final String TAG = "PasspointMatchIndex";
+
+    /**
+     * Node of the domain label tree.
+     */
+    private static class Label {
+        private final Map<String, Label> mSubLabels = new HashMap<>();
+        private final Set<String> mUniqueIds = new HashSet<>();
+
+        boolean isEmpty() {
+            return mSubLabels.isEmpty() && mUniqueIds.isEmpty();
+        }
+    }
+
+    /**
+     * Keys a provider was indexed with, kept to be able to remove the provider.
+     */
+    private static class IndexKeys {
+        final List<List<String>> mDomains = new ArrayList<>();
+        final Set<Long> mOis = new HashSet<>();
+        final Set<String> mPlmns = new HashSet<>();
+        boolean mAlwaysCandidate;
+        boolean mMatchAllOis;
+    }
+
+    private final Label mDomainRoot = new Label();
+    private final Map<Long, Set<String>> mOiIndex = new HashMap<>();
+    private final Map<String, Set<String>> mPlmnIndex = new HashMap<>();
+    // Providers that can't be indexed and need to be evaluated for every AP.
+    private final Set<String> mAlwaysCandidates = new HashSet<>();
+    // Providers requiring all their Home OIs to be matched.
+    private final Set<String> mMatchAllOiProviders = new HashSet<>();
+    private final Map<String, IndexKeys> mIndexedProviders = new HashMap<>();
+
+    /**
+     * Add the provider identified by the given unique identifier to the index. An existing
+     * entry for the same identifier is replaced.
+     *
+     * @param uniqueId The unique identifier of the provider
+     * @param config The configuration of the provider
+     */
+    public void addProvider(@NonNull String uniqueId, @NonNull PasspointConfiguration config) {
+        removeProvider(uniqueId);
+        IndexKeys keys = new IndexKeys();
+        HomeSp homeSp = config.getHomeSp();
+        Credential credential = config.getCredential();
+        if (homeSp != null) {
+            addDomain(keys, homeSp.getFqdn());
+            if (homeSp.getOtherHomePartners() != null) {
+                for (String otherHomePartner : homeSp.getOtherHomePartners()) {
+                    addDomain(keys, otherHomePartner);
+                }
+            }
+            if (homeSp.getMatchAllOis() != null) {
+                keys.mMatchAllOis = true;
+                // An empty list of OIs to match trivially matches any Roaming Consortium.
+                if (homeSp.getMatchAllOis().length == 0) {
+                    keys.mAlwaysCandidate = true;
+                }
+                addOis(keys, homeSp.getMatchAllOis());
+            } else {
+                addOis(keys, homeSp.getMatchAnyOis());
+            }
+            addOis(keys, homeSp.getRoamingConsortiumOis());
+        }
+        if (credential != null) {
+            addDomain(keys, credential.getRealm());
+            if (credential.getSimCredential() != null) {
+                addPlmns(keys, credential.getSimCredential().getImsi());
+            }
+        }
+
+        for (List<String> labels : keys.mDomains) {
+            Label label = mDomainRoot;
+            for (String labelString : labels) {
+                label = label.mSubLabels.computeIfAbsent(labelString, k -> new Label());
+            }
+            label.mUniqueIds.add(uniqueId);
+        }
+        for (long oi : keys.mOis) {
+            mOiIndex.computeIfAbsent(oi, k -> new HashSet<>()).add(uniqueId);
+        }
+        for (String plmn : keys.mPlmns) {
+            mPlmnIndex.computeIfAbsent(plmn, k -> new HashSet<>()).add(uniqueId);
+        }
+        if (keys.mAlwaysCandidate) {
+            mAlwaysCandidates.add(uniqueId);
+        }
+        if (keys.mMatchAllOis) {
+            mMatchAllOiProviders.add(uniqueId);
+        }
+        mIndexedProviders.put(uniqueId, keys);
+    }
+
+    /**
+     * Remove the provider identified by the given unique identifier from the index.
+     *
+     * @param uniqueId The unique identifier of the provider
+     */
+    public void removeProvider(@NonNull String uniqueId) {
+        IndexKeys keys = mIndexedProviders.remove(uniqueId);
+        if (keys == null) {
+            return;
+        }
+        for (List<String> labels : keys.mDomains) {
+            removeDomain(mDomainRoot, labels, 0, uniqueId);
+        }
+        for (long oi : keys.mOis) {
+            removeFromIndex(mOiIndex, oi, uniqueId);
+        }
+        for (String plmn : keys.mPlmns) {
+            removeFromIndex(mPlmnIndex, plmn, uniqueId);
+        }
+        mAlwaysCandidates.remove(uniqueId);
+        mMatchAllOiProviders.remove(uniqueId);
+    }
+
+    /**
+     * Remove all the providers from the index.
+     */
+    public void clear() {
+        mDomainRoot.mSubLabels.clear();
+        mDomainRoot.mUniqueIds.clear();
+        mOiIndex.clear();
+        mPlmnIndex.clear();
+        mAlwaysCandidates.clear();
+        mMatchAllOiProviders.clear();
+        mIndexedProviders.clear();
+    }
+
+    /**
+     * Return the number of providers in the index.
+     */
+    public int size() {
+        return mIndexedProviders.size();
+    }
+
+    /**
+     * Return the unique identifiers of the providers that could match the AP described by the
+     * given ANQP elements and Roaming Consortium information element.
+     *
+     * @param anqpElements ANQP elements from the AP
+     * @param roamingConsortiumFromAp Roaming Consortium information element from the AP
+     * @return The set of candidate provider unique identifiers, or null if the AP doesn't
+     *         advertise any element that can be looked up in the index
+     */
+    public @Nullable Set<String> getCandidates(
+            @NonNull Map<ANQPElementType, ANQPElement> anqpElements,
+            @Nullable RoamingConsortium roamingConsortiumFromAp) {
+        DomainNameElement domainNameElement =
+                (DomainNameElement) anqpElements.get(ANQPElementType.ANQPDomName);
+        NAIRealmElement naiRealmElement =
+                (NAIRealmElement) anqpElements.get(ANQPElementType.ANQPNAIRealm);
+        RoamingConsortiumElement roamingConsortiumElement =
+                (RoamingConsortiumElement) anqpElements.get(ANQPElementType.ANQPRoamingConsortium);
+        ThreeGPPNetworkElement threeGPPNetworkElement =
+                (ThreeGPPNetworkElement) anqpElements.get(ANQPElementType.ANQP3GPPNetwork);
+        long[] apOis = roamingConsortiumFromAp == null
+                ? null : roamingConsortiumFromAp.getRoamingConsortiums();
+        if (domainNameElement == null && naiRealmElement == null
+                && roamingConsortiumElement == null && threeGPPNetworkElement == null
+                && apOis == null) {
+            return null;
+        }
+
+        Set<String> candidates = new LinkedHashSet<>(mAlwaysCandidates);
+        if (domainNameElement != null) {
+            for (String domain : domainNameElement.getDomains()) {
+                if (TextUtils.isEmpty(domain)) {
+                    continue;
+                }
+                List<String> labels = Utils.splitDomain(domain);
+                lookupDomain(labels, candidates);
+                // 3GPP network domains (wlan.mnc*.mcc*.3gppnetwork.org) are matched against
+                // the SIM credential.
+                addAllFromIndex(mPlmnIndex, Utils.getMccMnc(labels), candidates);
+            }
+        }
+        if (naiRealmElement != null) {
+            for (NAIRealmData realmData : naiRealmElement.getRealmDataList()) {
+                for (String realm : realmData.getRealms()) {
+                    if (!TextUtils.isEmpty(realm)) {
+                        lookupDomain(Utils.splitDomain(realm), candidates);
+                    }
+                }
+            }
+        }
+        if (roamingConsortiumElement != null) {
+            for (long oi : roamingConsortiumElement.getOIs()) {
+                addAllFromIndex(mOiIndex, oi, candidates);
+            }
+        }
+        if (apOis != null) {
+            for (long oi : apOis) {
+                addAllFromIndex(mOiIndex, oi, candidates);
+            }
+            // An AP advertising the Roaming Consortium element without any OI trivially
+            // satisfies the "match all" requirement, see PasspointProvider#matchOis.
+            if (apOis.length == 0) {
+                candidates.addAll(mMatchAllOiProviders);
+            }
+        }
+        if (threeGPPNetworkElement != null) {
+            for (CellularNetwork network : threeGPPNetworkElement.getNetworks()) {
+                for (String plmn : network.getPlmns()) {
+                    addAllFromIndex(mPlmnIndex, plmn, candidates);
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Dump the state of the index.
+     */
+    public void dump(PrintWriter pw) {
+        pw.println(TAG + ": providers=" + mIndexedProviders.size()
+                + " OIs=" + mOiIndex.size()
+                + " PLMNs=" + mPlmnIndex.size()
+                + " alwaysCandidates=" + mAlwaysCandidates.size());
+    }
+
+    private void lookupDomain(List<String> labels, Set<String> candidates) {
+        Label label = mDomainRoot;
+        for (String labelString : labels) {
+            label = label.mSubLabels.get(labelString);
+            if (label == null) {
+                return;
+            }
+            candidates.addAll(label.mUniqueIds);
+        }
+    }
+
+    private static boolean removeDomain(Label label, List<String> labels, int index,
+            String uniqueId) {
+        if (index == labels.size()) {
+            label.mUniqueIds.remove(uniqueId);
+            return label.isEmpty();
+        }
+        Label subLabel = label.mSubLabels.get(labels.get(index));
+        if (subLabel != null && removeDomain(subLabel, labels, index + 1, uniqueId)) {
+            label.mSubLabels.remove(labels.get(index));
+        }
+        return label.isEmpty();
+    }
+
+    private static <K> void addAllFromIndex(Map<K, Set<String>> index, @Nullable K key,
+            Set<String> candidates) {
+        if (key == null) {
+            return;
+        }
+        Set<String> uniqueIds = index.get(key);
+        if (uniqueIds != null) {
+            candidates.addAll(uniqueIds);
+        }
+    }
+
+    private static <K> void removeFromIndex(Map<K, Set<String>> index, K key, String uniqueId) {
+        Set<String> uniqueIds = index.get(key);
+        if (uniqueIds == null) {
+            return;
+        }
+        uniqueIds.remove(uniqueId);
+        if (uniqueIds.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    private static void addDomain(IndexKeys keys, String domain) {
+        if (TextUtils.isEmpty(domain)) {
+            return;
+        }
+        keys.mDomains.add(Utils.splitDomain(domain));
+    }
+
+    private static void addOis(IndexKeys keys, long[] ois) {
+        if (ois == null) {
+            return;
+        }
+        for (long oi : ois) {
+            keys.mOis.add(oi);
+        }
+    }
+
+    private static void addPlmns(IndexKeys keys, String imsi) {
+        IMSIParameter imsiParameter = IMSIParameter.build(imsi);
+        if (imsiParameter == null) {
+            // Malformed IMSI never matches any PLMN.
+            return;
+        }
+        String digits = imsiParameter.isFullImsi() ? imsi : imsi.substring(0, imsi.length() - 1);
+        if (digits.length() >= IMSIParameter.MCC_MNC_LENGTH_5) {
+            keys.mPlmns.add(digits.substring(0, IMSIParameter.MCC_MNC_LENGTH_5));
+        }
+        if (digits.length() >= IMSIParameter.MCC_MNC_LENGTH_6) {
+            keys.mPlmns.add(digits.substring(0, IMSIParameter.MCC_MNC_LENGTH_6));
+        }
+    }
+}
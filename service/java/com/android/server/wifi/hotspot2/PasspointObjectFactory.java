@@ -20,6 +20,7 @@ import android.content.Context;
 import android.net.wifi.hotspot2.PasspointConfiguration;
 
 import com.android.server.wifi.Clock;
+import com.android.server.wifi.DeviceConfigFacade;
 import com.android.server.wifi.WifiCarrierInfoManager;
 import com.android.server.wifi.WifiInjector;
 import com.android.server.wifi.WifiKeyStore;
@@ -100,10 +101,11 @@ public class PasspointObjectFactory{
      * Create a AnqpCache instance.
      *
      * @param clock Instance of {@link Clock}
+     * @param deviceConfigFacade Instance of {@link DeviceConfigFacade}
      * @return {@link AnqpCache}
      */
-    public AnqpCache makeAnqpCache(Clock clock) {
-        return new AnqpCache(clock);
+    public AnqpCache makeAnqpCache(Clock clock, DeviceConfigFacade deviceConfigFacade) {
+        return new AnqpCache(clock, deviceConfigFacade);
     }
 
     /**
@@ -1122,6 +1122,16 @@ public class PasspointProvider {
         mBlockedBssids.clear();
     }
 
+    /**
+     * Checks if this provider or any of its BSSes is blocked until its reauthentication delay
+     * passed.
+     *
+     * @return true if blocked, false otherwise
+     */
+    public boolean isReauthBlocked() {
+        return mReauthDelay != 0 && mClock.getElapsedSinceBootMillis() < mReauthDelay;
+    }
+
     /**
      * Checks if this provider is blocked or if there are any BSSes blocked
      *
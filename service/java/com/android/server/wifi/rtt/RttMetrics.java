@@ -83,6 +83,11 @@ public class RttMetrics {
     private static final int[] MEASUREMENT_DURATION_HISTOGRAM_AWARE =
             {2 * 1000, 4 * 1000, 6 * 1000, 8 * 1000};
 
+    // Histogram for the latency of a request from being queued until its results are delivered.
+    // Indicates 6 buckets with 1000 ms interval.
+    private static final int[] REQUEST_LATENCY_HISTOGRAM =
+            {1 * 1000, 2 * 1000, 3 * 1000, 4 * 1000, 5 * 1000};
+
     private static final int PEER_AP = 0;
     private static final int PEER_AWARE = 1;
 
@@ -90,6 +95,10 @@ public class RttMetrics {
     private SparseIntArray mOverallStatusHistogram = new SparseIntArray();
     private SparseIntArray mMeasurementDurationApOnlyHistogram = new SparseIntArray();
     private SparseIntArray mMeasurementDurationWithAwareHistogram = new SparseIntArray();
+    private int mNumBatchedOperations = 0;
+    private SparseIntArray mNumRequestsPerOperationHistogram = new SparseIntArray();
+    private SparseIntArray mNumPeersPerOperationHistogram = new SparseIntArray();
+    private SparseIntArray mRequestLatencyHistogram = new SparseIntArray();
     private PerPeerTypeInfo[] mPerPeerTypeInfo;
 
     public RttMetrics(Clock clock) {
@@ -265,6 +274,40 @@ public class RttMetrics {
                 DISTANCE_MM_HISTOGRAM);
     }
 
+    /**
+     * Record metrics for a ranging operation dispatched to the HAL when requests of multiple
+     * clients may be merged into a single operation.
+     *
+     * @param numRequests Number of requests merged into the operation
+     * @param numPeers Number of (unique) peers ranged by the operation
+     */
+    public void recordBatchedRangingOperation(int numRequests, int numPeers) {
+        if (VDBG) {
+            Log.v(TAG, "recordBatchedRangingOperation: numRequests=" + numRequests
+                    + ", numPeers=" + numPeers);
+        }
+
+        synchronized (mLock) {
+            if (numRequests > 1) {
+                mNumBatchedOperations++;
+            }
+            mNumRequestsPerOperationHistogram.put(numRequests,
+                    mNumRequestsPerOperationHistogram.get(numRequests) + 1);
+            mNumPeersPerOperationHistogram.put(numPeers,
+                    mNumPeersPerOperationHistogram.get(numPeers) + 1);
+        }
+    }
+
+    /**
+     * Record the latency of a request, from being queued until its results are delivered.
+     */
+    public void recordRequestLatency(int latencyMs) {
+        synchronized (mLock) {
+            addValueToLinearHistogram(latencyMs, mRequestLatencyHistogram,
+                    REQUEST_LATENCY_HISTOGRAM);
+        }
+    }
+
     /**
      * Consolidate all metrics into the proto.
      */
@@ -281,6 +324,14 @@ public class RttMetrics {
             log.histogramMeasurementDurationWithAware = genericBucketsToRttBuckets(
                     linearHistogramToGenericBuckets(mMeasurementDurationWithAwareHistogram,
                             MEASUREMENT_DURATION_HISTOGRAM_AWARE));
+            log.numBatchedOperations = mNumBatchedOperations;
+            log.histogramNumRequestsPerOperation = consolidateNumPeersPerRequest(
+                    mNumRequestsPerOperationHistogram);
+            log.histogramNumPeersPerOperation = consolidateNumPeersPerRequest(
+                    mNumPeersPerOperationHistogram);
+            log.histogramRequestLatency = genericBucketsToRttBuckets(
+                    linearHistogramToGenericBuckets(mRequestLatencyHistogram,
+                            REQUEST_LATENCY_HISTOGRAM));
 
             consolidatePeerType(log.rttToAp, mPerPeerTypeInfo[PEER_AP]);
             consolidatePeerType(log.rttToAware, mPerPeerTypeInfo[PEER_AWARE]);
@@ -385,6 +436,10 @@ public class RttMetrics {
             pw.println("mMeasurementDurationApOnlyHistogram" + mMeasurementDurationApOnlyHistogram);
             pw.println("mMeasurementDurationWithAwareHistogram"
                     + mMeasurementDurationWithAwareHistogram);
+            pw.println("mNumBatchedOperations:" + mNumBatchedOperations);
+            pw.println("mNumRequestsPerOperationHistogram:" + mNumRequestsPerOperationHistogram);
+            pw.println("mNumPeersPerOperationHistogram:" + mNumPeersPerOperationHistogram);
+            pw.println("mRequestLatencyHistogram:" + mRequestLatencyHistogram);
             pw.println("AP:" + mPerPeerTypeInfo[PEER_AP]);
             pw.println("AWARE:" + mPerPeerTypeInfo[PEER_AWARE]);
         }
@@ -401,6 +456,10 @@ public class RttMetrics {
             mPerPeerTypeInfo[PEER_AWARE] = new PerPeerTypeInfo();
             mMeasurementDurationApOnlyHistogram.clear();
             mMeasurementDurationWithAwareHistogram.clear();
+            mNumBatchedOperations = 0;
+            mNumRequestsPerOperationHistogram.clear();
+            mNumPeersPerOperationHistogram.clear();
+            mRequestLatencyHistogram.clear();
         }
     }
 
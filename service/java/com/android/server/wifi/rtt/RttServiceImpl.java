@@ -69,10 +69,14 @@ import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Implementation of the IWifiRttManager AIDL interface and of the RttService state manager.
@@ -92,6 +96,7 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
     private ActivityManager mActivityManager;
     private PowerManager mPowerManager;
     private int mBackgroundProcessExecGapMs;
+    private boolean mMultiClientBatchingEnabled;
     private long mLastRequestTimestamp;
 
     private RttServiceSynchronized mRttServiceSynchronized;
@@ -282,6 +287,8 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
 
             mBackgroundProcessExecGapMs = mContext.getResources().getInteger(
                     R.integer.config_wifiRttBackgroundExecGapMs);
+            mMultiClientBatchingEnabled = mContext.getResources().getBoolean(
+                    R.bool.config_wifiRttMultiClientBatchingEnabled);
 
             intentFilter = new IntentFilter();
             intentFilter.addAction(LocationManager.MODE_CHANGED_ACTION);
@@ -568,8 +575,9 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
         }
 
         private void cancelRanging(RttRequestInfo rri) {
+            RangingRequest request = rri.mergedRequest != null ? rri.mergedRequest : rri.request;
             ArrayList<byte[]> macAddresses = new ArrayList<>();
-            for (ResponderConfig peer : rri.request.mRttPeers) {
+            for (ResponderConfig peer : request.mRttPeers) {
                 macAddresses.add(peer.macAddress.toByteArray());
             }
 
@@ -595,6 +603,8 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
                             + e);
                 }
                 rri.binder.unlinkToDeath(rri.dr, 0);
+                failBatchedRequests(rri, WifiMetricsProto.WifiRttLog.OVERALL_RTT_NOT_AVAILABLE,
+                        RangingResultCallback.STATUS_CODE_FAIL_RTT_NOT_AVAILABLE);
             }
             mRttRequestQueue.clear();
             mRangingTimeoutMessage.cancel();
@@ -618,16 +628,24 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
             while (it.hasNext()) {
                 RttRequestInfo rri = it.next();
 
-                boolean match = rri.uid == uid; // original UID will never be 0
-                if (rri.workSource != null && workSource != null) {
-                    rri.workSource.remove(workSource);
-                    if (rri.workSource.isEmpty()) {
-                        match = true;
+                // requests merged into a dispatched command are dropped without cancelling the
+                // command, which is still needed by the other requests
+                Iterator<RttRequestInfo> batchedIt = rri.batchedRequests.iterator();
+                while (batchedIt.hasNext()) {
+                    RttRequestInfo batchedRri = batchedIt.next();
+                    if (isClientRequest(batchedRri, uid, workSource)) {
+                        batchedIt.remove();
+                        batchedRri.binder.unlinkToDeath(batchedRri.dr, 0);
                     }
                 }
 
-                if (match) {
-                    if (!rri.dispatchedToNative) {
+                if (isClientRequest(rri, uid, workSource)) {
+                    if (!rri.batchedRequests.isEmpty()) {
+                        Log.d(TAG, "Client death - handing over RTT operation in progress: cmdId="
+                                + rri.cmdId);
+                        it.set(takeOverBatchedCommand(rri));
+                        rri.binder.unlinkToDeath(rri.dr, 0);
+                    } else if (!rri.dispatchedToNative) {
                         it.remove();
                         rri.binder.unlinkToDeath(rri.dr, 0);
                     } else {
@@ -651,6 +669,55 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
             }
         }
 
+        /**
+         * Returns whether the request belongs to the specified client. A workSource specification
+         * is cleared from the request's workSource, which then belongs to the client only if no
+         * other uids remain in it.
+         */
+        private boolean isClientRequest(RttRequestInfo rri, int uid, WorkSource workSource) {
+            boolean match = rri.uid == uid; // original UID will never be 0
+            if (rri.workSource != null && workSource != null) {
+                rri.workSource.remove(workSource);
+                if (rri.workSource.isEmpty()) {
+                    match = true;
+                }
+            }
+            return match;
+        }
+
+        /**
+         * Hands the dispatched command of a request over to the first of the requests merged into
+         * it, so that the results are still delivered to the remaining requests.
+         *
+         * @return the request now owning the command
+         */
+        private RttRequestInfo takeOverBatchedCommand(RttRequestInfo rri) {
+            RttRequestInfo newOwner = rri.batchedRequests.remove(0);
+            newOwner.cmdId = rri.cmdId;
+            newOwner.dispatchedToNative = rri.dispatchedToNative;
+            newOwner.mergedRequest = rri.mergedRequest;
+            newOwner.batchedRequests = rri.batchedRequests;
+            rri.batchedRequests = new ArrayList<>();
+            return newOwner;
+        }
+
+        /**
+         * Fails all the requests merged into the command of the specified request.
+         */
+        private void failBatchedRequests(RttRequestInfo rri, int overallStatus, int statusCode) {
+            for (RttRequestInfo batchedRri : rri.batchedRequests) {
+                try {
+                    mRttMetrics.recordOverallStatus(overallStatus);
+                    batchedRri.callback.onRangingFailure(statusCode);
+                } catch (RemoteException e) {
+                    Log.e(TAG, "RttServiceSynchronized.failBatchedRequests: callback failed -- "
+                            + e);
+                }
+                batchedRri.binder.unlinkToDeath(batchedRri.dr, 0);
+            }
+            rri.batchedRequests.clear();
+        }
+
         private void timeoutRangingRequest() {
             if (VDBG) {
                 Log.v(TAG, "RttServiceSynchronized.timeoutRangingRequest mRttRequestQueue="
@@ -673,6 +740,8 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
             } catch (RemoteException e) {
                 Log.e(TAG, "RttServiceSynchronized.timeoutRangingRequest: callback failed: " + e);
             }
+            failBatchedRequests(rri, WifiMetricsProto.WifiRttLog.OVERALL_TIMEOUT,
+                    RangingResultCallback.STATUS_CODE_FAIL);
             executeNextRangingRequestIfPossible(true);
         }
 
@@ -706,6 +775,7 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
             newRequest.request = request;
             newRequest.callback = callback;
             newRequest.isCalledFromPrivilegedContext = isCalledFromPrivilegedContext;
+            newRequest.queuedTimeMs = mClock.getElapsedSinceBootMillis();
             mRttRequestQueue.add(newRequest);
 
             if (VDBG) {
@@ -721,17 +791,9 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
             SparseIntArray counts = new SparseIntArray();
 
             for (RttRequestInfo rri : mRttRequestQueue) {
-                for (int i = 0; i < rri.workSource.size(); ++i) {
-                    int uid = rri.workSource.getUid(i);
-                    counts.put(uid, counts.get(uid) + 1);
-                }
-
-                final List<WorkChain> workChains = rri.workSource.getWorkChains();
-                if (workChains != null) {
-                    for (int i = 0; i < workChains.size(); ++i) {
-                        final int uid = workChains.get(i).getAttributionUid();
-                        counts.put(uid, counts.get(uid) + 1);
-                    }
+                countRequestor(rri, counts);
+                for (RttRequestInfo batchedRri : rri.batchedRequests) {
+                    countRequestor(batchedRri, counts);
                 }
             }
 
@@ -757,6 +819,21 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
             return true;
         }
 
+        private void countRequestor(RttRequestInfo rri, SparseIntArray counts) {
+            for (int i = 0; i < rri.workSource.size(); ++i) {
+                int uid = rri.workSource.getUid(i);
+                counts.put(uid, counts.get(uid) + 1);
+            }
+
+            final List<WorkChain> workChains = rri.workSource.getWorkChains();
+            if (workChains != null) {
+                for (int i = 0; i < workChains.size(); ++i) {
+                    final int uid = workChains.get(i).getAttributionUid();
+                    counts.put(uid, counts.get(uid) + 1);
+                }
+            }
+        }
+
         private void executeNextRangingRequestIfPossible(boolean popFirst) {
             if (VDBG) Log.v(TAG, "executeNextRangingRequestIfPossible: popFirst=" + popFirst);
 
@@ -767,6 +844,9 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
                 } else {
                     RttRequestInfo topOfQueueRequest = mRttRequestQueue.remove(0);
                     topOfQueueRequest.binder.unlinkToDeath(topOfQueueRequest.dr, 0);
+                    for (RttRequestInfo batchedRri : topOfQueueRequest.batchedRequests) {
+                        batchedRri.binder.unlinkToDeath(batchedRri.dr, 0);
+                    }
                 }
             }
 
@@ -832,7 +912,13 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
 
             nextRequest.cmdId = mNextCommandId++;
             mLastRequestTimestamp = mClock.getWallClockMillis();
-            if (mRttNative.rangeRequest(nextRequest.cmdId, nextRequest.request,
+            RangingRequest request = nextRequest.request;
+            if (mMultiClientBatchingEnabled) {
+                request = batchCompatibleRequests(nextRequest);
+                mRttMetrics.recordBatchedRangingOperation(1 + nextRequest.batchedRequests.size(),
+                        request.mRttPeers.size());
+            }
+            if (mRttNative.rangeRequest(nextRequest.cmdId, request,
                     nextRequest.isCalledFromPrivilegedContext)) {
                 long timeout = HAL_RANGING_TIMEOUT_MS;
                 for (ResponderConfig responderConfig : nextRequest.request.mRttPeers) {
@@ -852,11 +938,96 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
                     Log.e(TAG, "RttServiceSynchronized.startRanging: HAL request failed, callback "
                             + "failed -- " + e);
                 }
+                failBatchedRequests(nextRequest, WifiMetricsProto.WifiRttLog.OVERALL_HAL_FAILURE,
+                        RangingResultCallback.STATUS_CODE_FAIL);
                 executeNextRangingRequestIfPossible(true);
             }
             nextRequest.dispatchedToNative = true;
         }
 
+        /**
+         * Merges the pending requests of other clients which are compatible with the specified
+         * request into a single HAL command, up to the maximum number of peers of a request. The
+         * merged requests are removed from the queue and attached to the specified request.
+         *
+         * Requests are compatible if they range to APs only (Aware peers have a different timeout
+         * and need translation), are made from the same privilege context with the same burst
+         * size, and request any common peer with the same configuration.
+         *
+         * @return the request to dispatch to the HAL
+         */
+        private RangingRequest batchCompatibleRequests(RttRequestInfo rri) {
+            if (!isBatchable(rri)) {
+                return rri.request;
+            }
+
+            Map<MacAddress, ResponderConfig> peers = new LinkedHashMap<>();
+            for (ResponderConfig peer : rri.request.mRttPeers) {
+                peers.putIfAbsent(peer.macAddress, peer);
+            }
+            ListIterator<RttRequestInfo> it = mRttRequestQueue.listIterator();
+            while (it.hasNext()) {
+                RttRequestInfo candidate = it.next();
+                if (candidate == rri || candidate.dispatchedToNative || !isBatchable(candidate)
+                        || candidate.isCalledFromPrivilegedContext
+                                != rri.isCalledFromPrivilegedContext
+                        || candidate.request.mRttBurstSize != rri.request.mRttBurstSize) {
+                    continue;
+                }
+                int numNewPeers = 0;
+                boolean compatible = true;
+                for (ResponderConfig peer : candidate.request.mRttPeers) {
+                    ResponderConfig existingPeer = peers.get(peer.macAddress);
+                    if (existingPeer == null) {
+                        numNewPeers++;
+                    } else if (!existingPeer.equals(peer)) {
+                        compatible = false;
+                        break;
+                    }
+                }
+                if (!compatible || peers.size() + numNewPeers > RangingRequest.getMaxPeers()) {
+                    continue;
+                }
+                if (!preExecThrottleCheck(candidate.workSource)) {
+                    // will be failed once it reaches the top of the queue
+                    continue;
+                }
+
+                for (ResponderConfig peer : candidate.request.mRttPeers) {
+                    peers.putIfAbsent(peer.macAddress, peer);
+                }
+                it.remove();
+                candidate.cmdId = rri.cmdId;
+                candidate.dispatchedToNative = true;
+                rri.batchedRequests.add(candidate);
+            }
+
+            if (rri.batchedRequests.isEmpty()) {
+                return rri.request;
+            }
+            RangingRequest.Builder builder = new RangingRequest.Builder();
+            builder.setRttBurstSize(rri.request.mRttBurstSize);
+            for (ResponderConfig peer : peers.values()) {
+                builder.addResponder(peer);
+            }
+            rri.mergedRequest = builder.build();
+            if (VDBG) {
+                Log.v(TAG, "batchCompatibleRequests: rri=" + rri + ", mergedRequest="
+                        + rri.mergedRequest);
+            }
+            return rri.mergedRequest;
+        }
+
+        private boolean isBatchable(RttRequestInfo rri) {
+            for (ResponderConfig peer : rri.request.mRttPeers) {
+                if (peer.responderType == ResponderConfig.RESPONDER_AWARE
+                        || peer.peerHandle != null || peer.macAddress == null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
         /**
          * Perform pre-execution throttling checks:
          * - If all uids in ws are in background then check last execution and block if request is
@@ -1059,36 +1230,74 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
                 return;
             }
 
+            int measurementDuration = (int) (mClock.getWallClockMillis() - mLastRequestTimestamp);
+            boolean batched = topOfQueueRequest.mergedRequest != null;
+            dispatchRangingResults(topOfQueueRequest, results, batched, measurementDuration);
+            for (RttRequestInfo batchedRri : topOfQueueRequest.batchedRequests) {
+                dispatchRangingResults(batchedRri, results, batched, measurementDuration);
+            }
+
+            executeNextRangingRequestIfPossible(true);
+        }
+
+        /**
+         * Delivers the results of a (possibly merged) command to one of the requests it was
+         * dispatched for. Only the results for the peers of the request are delivered.
+         */
+        private void dispatchRangingResults(RttRequestInfo rri, List<RangingResult> results,
+                boolean batched, int measurementDuration) {
+            if (batched) {
+                results = filterResultsForRequest(rri.request, results);
+            }
             boolean permissionGranted = mWifiPermissionsUtil.checkCallersLocationPermission(
-                    topOfQueueRequest.callingPackage, topOfQueueRequest.callingFeatureId,
-                    topOfQueueRequest.uid, /* coarseForTargetSdkLessThanQ */ false, null)
+                    rri.callingPackage, rri.callingFeatureId,
+                    rri.uid, /* coarseForTargetSdkLessThanQ */ false, null)
                     && mWifiPermissionsUtil.isLocationModeEnabled();
             try {
                 if (permissionGranted) {
-                    List<RangingResult> finalResults = postProcessResults(topOfQueueRequest.request,
-                            results, topOfQueueRequest.isCalledFromPrivilegedContext);
+                    List<RangingResult> finalResults = postProcessResults(rri.request,
+                            results, rri.isCalledFromPrivilegedContext);
                     mRttMetrics.recordOverallStatus(WifiMetricsProto.WifiRttLog.OVERALL_SUCCESS);
-                    mRttMetrics.recordResult(topOfQueueRequest.request, results,
-                            (int) (mClock.getWallClockMillis() - mLastRequestTimestamp));
+                    mRttMetrics.recordResult(rri.request, results, measurementDuration);
+                    if (mMultiClientBatchingEnabled) {
+                        mRttMetrics.recordRequestLatency(
+                                (int) (mClock.getElapsedSinceBootMillis() - rri.queuedTimeMs));
+                    }
                     if (VDBG) {
                         Log.v(TAG, "RttServiceSynchronized.onRangingResults: finalResults="
                                 + finalResults);
                     }
-                    topOfQueueRequest.callback.onRangingResults(finalResults);
+                    rri.callback.onRangingResults(finalResults);
                 } else {
                     Log.w(TAG, "RttServiceSynchronized.onRangingResults: location permission "
                             + "revoked - not forwarding results");
                     mRttMetrics.recordOverallStatus(
                             WifiMetricsProto.WifiRttLog.OVERALL_LOCATION_PERMISSION_MISSING);
-                    topOfQueueRequest.callback.onRangingFailure(
-                            RangingResultCallback.STATUS_CODE_FAIL);
+                    rri.callback.onRangingFailure(RangingResultCallback.STATUS_CODE_FAIL);
                 }
             } catch (RemoteException e) {
                 Log.e(TAG,
                         "RttServiceSynchronized.onRangingResults: callback exception -- " + e);
             }
+        }
 
-            executeNextRangingRequestIfPossible(true);
+        /**
+         * Returns the results for the peers of the request, out of the results of a merged
+         * command.
+         */
+        private List<RangingResult> filterResultsForRequest(RangingRequest request,
+                List<RangingResult> results) {
+            Set<MacAddress> macAddresses = new HashSet<>();
+            for (ResponderConfig peer : request.mRttPeers) {
+                macAddresses.add(peer.macAddress);
+            }
+            List<RangingResult> filteredResults = new ArrayList<>();
+            for (RangingResult result : results) {
+                if (result != null && macAddresses.contains(result.getMacAddress())) {
+                    filteredResults.add(result);
+                }
+            }
+            return filteredResults;
         }
 
         /*
@@ -1179,6 +1388,7 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
             pw.println("  mRttRequesterInfo: " + mRttRequesterInfo);
             pw.println("  mRttRequestQueue: " + mRttRequestQueue);
             pw.println("  mRangingTimeoutMessage: " + mRangingTimeoutMessage);
+            pw.println("  mMultiClientBatchingEnabled: " + mMultiClientBatchingEnabled);
             mRttMetrics.dump(fd, pw, args);
             mRttNative.dump(fd, pw, args);
         }
@@ -1198,6 +1408,12 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
         public int cmdId = 0; // uninitialized cmdId value
         public boolean dispatchedToNative = false;
         public boolean peerHandlesTranslated = false;
+        public long queuedTimeMs;
+
+        // Requests of other clients merged into the command dispatched for this request, and the
+        // merged request dispatched to the HAL (null if nothing was merged).
+        public List<RttRequestInfo> batchedRequests = new ArrayList<>();
+        public RangingRequest mergedRequest;
 
         @Override
         public String toString() {
@@ -1208,7 +1424,8 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
                     request.toString()).append(", callback=").append(callback).append(
                     ", cmdId=").append(cmdId).append(", peerHandlesTranslated=").append(
                     peerHandlesTranslated).append(", isCalledFromPrivilegedContext=").append(
-                    isCalledFromPrivilegedContext).toString();
+                    isCalledFromPrivilegedContext).append(", batchedRequests=").append(
+                    batchedRequests).toString();
         }
     }
 
@@ -16,15 +16,28 @@
 
 package com.android.server.wifi.util;
 
-import java.util.ArrayList;
-
 /**
  * A ring buffer where each element of the ring is itself a byte array.
+ *
+ * The data of all the elements is stored back to back in a single preallocated circular byte
+ * array, and the offset and length of each element are kept in a circular index. Appending an
+ * element copies it into the ring without allocating, except for the occasional growth of the
+ * index.
  */
 public class ByteArrayRingBuffer {
-    private ArrayList<byte[]> mArrayList;
+    private static final int INITIAL_INDEX_CAPACITY = 16;
+
+    private byte[] mBuffer;
     private int mMaxBytes;
     private int mBytesUsed;
+    // Position of the first byte of the oldest element in |mBuffer|.
+    private int mHead;
+
+    // Circular index of the elements, oldest first.
+    private int[] mOffsets;
+    private int[] mLengths;
+    private int mFirstIndex;
+    private int mNumBuffers;
 
     /**
      * Creates a ring buffer that holds at most |maxBytes| of data. The overhead for each element
@@ -35,14 +48,16 @@ public class ByteArrayRingBuffer {
         if (maxBytes < 1) {
             throw new IllegalArgumentException();
         }
-        mArrayList = new ArrayList<byte[]>();
+        mBuffer = new byte[maxBytes];
         mMaxBytes = maxBytes;
         mBytesUsed = 0;
+        mOffsets = new int[INITIAL_INDEX_CAPACITY];
+        mLengths = new int[INITIAL_INDEX_CAPACITY];
     }
 
     /**
-     * Adds |newData| to the ring buffer. Removes existing entries to make room, if necessary.
-     * Existing entries are removed in FIFO order.
+     * Adds a copy of |newData| to the ring buffer. Removes existing entries to make room, if
+     * necessary. Existing entries are removed in FIFO order.
      * <p><b>Note:</b> will fail if |newData| itself exceeds the size limit for this buffer.
      * Will first remove all existing entries in this case. (This guarantees that the ring buffer
      * always represents a contiguous sequence of data.)
@@ -55,18 +70,39 @@ public class ByteArrayRingBuffer {
             return false;
         }
 
-        mArrayList.add(newData);
+        int offset = wrap(mHead + mBytesUsed);
+        int firstPart = Math.min(newData.length, mMaxBytes - offset);
+        System.arraycopy(newData, 0, mBuffer, offset, firstPart);
+        System.arraycopy(newData, firstPart, mBuffer, 0, newData.length - firstPart);
+
+        if (mNumBuffers == mOffsets.length) {
+            growIndex();
+        }
+        int index = indexOf(mNumBuffers);
+        mOffsets[index] = offset;
+        mLengths[index] = newData.length;
+        mNumBuffers++;
         mBytesUsed += newData.length;
         return true;
     }
 
     /**
-     * Returns the |i|-th element of the ring. The element retains its position in the ring.
+     * Returns a copy of the |i|-th element of the ring. The element retains its position in the
+     * ring.
      * @param i
      * @return the requested element
      */
     public byte[] getBuffer(int i) {
-        return mArrayList.get(i);
+        if (i < 0 || i >= mNumBuffers) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + mNumBuffers);
+        }
+        int index = indexOf(i);
+        int offset = mOffsets[index];
+        byte[] data = new byte[mLengths[index]];
+        int firstPart = Math.min(data.length, mMaxBytes - offset);
+        System.arraycopy(mBuffer, offset, data, 0, firstPart);
+        System.arraycopy(mBuffer, 0, data, firstPart, data.length - firstPart);
+        return data;
     }
 
     /**
@@ -74,7 +110,7 @@ public class ByteArrayRingBuffer {
      * @return the number of elements present
      */
     public int getNumBuffers() {
-        return mArrayList.size();
+        return mNumBuffers;
     }
 
     /**
@@ -83,17 +119,58 @@ public class ByteArrayRingBuffer {
      */
     public void resize(int maxBytes) {
         pruneToSize(maxBytes);
+        if (maxBytes == mMaxBytes) {
+            return;
+        }
+
+        // Move the remaining elements to the start of a new buffer of the requested size.
+        byte[] newBuffer = new byte[Math.max(maxBytes, 0)];
+        int firstPart = Math.min(mBytesUsed, mMaxBytes - mHead);
+        System.arraycopy(mBuffer, mHead, newBuffer, 0, firstPart);
+        System.arraycopy(mBuffer, 0, newBuffer, firstPart, mBytesUsed - firstPart);
+        for (int i = 0; i < mNumBuffers; i++) {
+            int index = indexOf(i);
+            int offset = mOffsets[index] - mHead;
+            mOffsets[index] = offset < 0 ? offset + mMaxBytes : offset;
+        }
+        mBuffer = newBuffer;
         mMaxBytes = maxBytes;
+        mHead = 0;
     }
 
     private void pruneToSize(int sizeBytes) {
-        int newBytesUsed = mBytesUsed;
-        int i = 0;
-        while (i < mArrayList.size() && newBytesUsed > sizeBytes) {
-            newBytesUsed -= mArrayList.get(i).length;
-            i++;
+        while (mNumBuffers > 0 && mBytesUsed > sizeBytes) {
+            int length = mLengths[mFirstIndex];
+            mBytesUsed -= length;
+            mHead = wrap(mHead + length);
+            mFirstIndex = mFirstIndex + 1 == mOffsets.length ? 0 : mFirstIndex + 1;
+            mNumBuffers--;
+        }
+        if (mNumBuffers == 0) {
+            mHead = 0;
+            mFirstIndex = 0;
+        }
+    }
+
+    private void growIndex() {
+        int[] newOffsets = new int[mOffsets.length * 2];
+        int[] newLengths = new int[mLengths.length * 2];
+        for (int i = 0; i < mNumBuffers; i++) {
+            int index = indexOf(i);
+            newOffsets[i] = mOffsets[index];
+            newLengths[i] = mLengths[index];
         }
-        mArrayList.subList(0, i).clear();
-        mBytesUsed = newBytesUsed;
+        mOffsets = newOffsets;
+        mLengths = newLengths;
+        mFirstIndex = 0;
+    }
+
+    private int indexOf(int i) {
+        int index = mFirstIndex + i;
+        return index >= mOffsets.length ? index - mOffsets.length : index;
+    }
+
+    private int wrap(int position) {
+        return position >= mMaxBytes ? position - mMaxBytes : position;
     }
 }
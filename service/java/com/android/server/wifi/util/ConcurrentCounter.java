@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.util;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counter which can be incremented concurrently from multiple threads without locking.
+ *
+ * The count is spread over {@link LongAdder} cells, so concurrent increments don't contend with
+ * each other, and only reading the count sums the cells. A count which was reported can be
+ * subtracted with {@link #subtract(int)} instead of resetting the counter, so that the increments
+ * made between reading and clearing the count are not lost.
+ */
+public class ConcurrentCounter {
+    private final LongAdder mCount = new LongAdder();
+
+    /**
+     * Increments the count by 1.
+     */
+    public void increment() {
+        mCount.increment();
+    }
+
+    /**
+     * Increments the count by <code>count</code>.
+     */
+    public void add(int count) {
+        mCount.add(count);
+    }
+
+    /**
+     * Returns the current count, saturated to the int range of the metrics protos.
+     */
+    public int get() {
+        long count = mCount.sum();
+        return (int) Math.max(Math.min(count, Integer.MAX_VALUE), Integer.MIN_VALUE);
+    }
+
+    /**
+     * Subtracts a count previously returned by {@link #get()} after it was reported.
+     */
+    public void subtract(int reportedCount) {
+        mCount.add(-reportedCount);
+    }
+
+    @Override
+    public String toString() {
+        return Integer.toString(get());
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.util;
+
+/**
+ * Kalman filter estimating a value and its rate of change from noisy measurements of the value,
+ * modelling the rate of change as constant apart from a random acceleration.
+ *
+ * This is the two state special case of {@link KalmanFilter}, with the state transition
+ * F = [1, dt; 0, 1], the process noise Q = G * G' * a^2 for G = [dt^2 / 2; dt] and the
+ * observation model H = [1, 0]. The matrix operations are written out in closed form, so
+ * filtering doesn't allocate.
+ */
+public class ConstantVelocityKalmanFilter {
+    private final double mAccelerationVariance;
+    private boolean mInitialized;
+    // State estimate x = [value; rate]
+    private double mValue;
+    private double mRate;
+    // A posteriori error covariance P
+    private double mP00;
+    private double mP01;
+    private double mP10;
+    private double mP11;
+
+    /**
+     * @param accelerationStandardDeviation standard deviation of the modelled acceleration
+     */
+    public ConstantVelocityKalmanFilter(double accelerationStandardDeviation) {
+        mAccelerationVariance = accelerationStandardDeviation * accelerationStandardDeviation;
+    }
+
+    /**
+     * Discards the state estimate.
+     */
+    public void reset() {
+        mInitialized = false;
+    }
+
+    /**
+     * Returns true if the filter holds a state estimate.
+     */
+    public boolean isInitialized() {
+        return mInitialized;
+    }
+
+    /**
+     * Sets the state estimate to the given value with a zero rate of change.
+     *
+     * @param value initial value
+     * @param variance variance of the initial value
+     */
+    public void initialize(double value, double variance) {
+        mValue = value;
+        mRate = 0.0;
+        mP00 = variance;
+        mP01 = 0.0;
+        mP10 = 0.0;
+        mP11 = 0.0;
+        mInitialized = true;
+    }
+
+    /**
+     * Performs the prediction phase of the filter, advancing the state estimate by a time step.
+     *
+     * @param dt time step
+     */
+    public void predict(double dt) {
+        mValue += dt * mRate;
+
+        // P = F * P * F' + Q
+        double fp00 = mP00 + dt * mP10;
+        double fp01 = mP01 + dt * mP11;
+        double g0 = 0.5 * dt * dt;
+        double g1 = dt;
+        mP00 = fp00 + dt * fp01 + g0 * g0 * mAccelerationVariance;
+        mP01 = fp01 + g0 * g1 * mAccelerationVariance;
+        mP10 = mP10 + dt * mP11 + g1 * g0 * mAccelerationVariance;
+        mP11 = mP11 + g1 * g1 * mAccelerationVariance;
+    }
+
+    /**
+     * Updates the state estimate to incorporate a new measurement of the value.
+     *
+     * @param measurement measured value
+     * @param variance variance of the measurement
+     * @throws ArithmeticException if the innovation covariance is singular
+     */
+    public void update(double measurement, double variance) {
+        double y = measurement - mValue;
+        double s = mP00 + variance;
+        if (s == 0.0) throw new ArithmeticException("Singular matrix");
+        // K = P * H' / S
+        double k0 = mP00 / s;
+        double k1 = mP10 / s;
+        mValue += k0 * y;
+        mRate += k1 * y;
+
+        // P = P - K * H * P
+        double p00 = mP00;
+        double p01 = mP01;
+        mP00 -= k0 * p00;
+        mP01 -= k0 * p01;
+        mP10 -= k1 * p00;
+        mP11 -= k1 * p01;
+    }
+
+    /**
+     * Returns the estimated value.
+     */
+    public double getValue() {
+        return mValue;
+    }
+
+    /**
+     * Returns the estimated rate of change of the value.
+     */
+    public double getRate() {
+        return mRate;
+    }
+
+    /**
+     * Returns the value extrapolated by a time step, without changing the state estimate.
+     *
+     * @param dt time step
+     */
+    public double forecast(double dt) {
+        return mValue + dt * mRate;
+    }
+
+    @Override
+    public String toString() {
+        if (!mInitialized) return "{}";
+        return "{x: [" + mValue + ", " + mRate + "]"
+                + " P: [" + mP00 + ", " + mP01 + "; " + mP10 + ", " + mP11 + "]"
+                + "}";
+    }
+}
@@ -21,6 +21,7 @@ import static com.android.dx.mockito.inline.extended.ExtendedMockito.mockitoSess
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Mockito.*;
 
 import android.content.pm.UserInfo;
@@ -43,8 +44,11 @@ import org.mockito.MockitoSession;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 /**
@@ -54,6 +58,11 @@ import java.util.Set;
 public class ConfigurationMapTest extends WifiBaseTest {
     private static final int SYSTEM_MANAGE_PROFILE_USER_ID = 12;
     private static final String TEST_BSSID = "0a:08:5c:67:89:01";
+    private static final int[] TEST_USER_IDS = {UserHandle.USER_SYSTEM, 10, 11,
+            SYSTEM_MANAGE_PROFILE_USER_ID};
+    private static final String[] TEST_SSIDS = {"\"red\"", "\"green\"", "\"blue\""};
+    private static final int[] TEST_SECURITIES = {WifiConfigurationTestUtil.SECURITY_NONE,
+            WifiConfigurationTestUtil.SECURITY_PSK};
     private static final List<WifiConfiguration> CONFIGS = Arrays.asList(
             WifiConfigurationTestUtil.generateWifiConfig(
                     0, 1000000, "\"red\"", true, true, null, null,
@@ -415,4 +424,94 @@ public class ConfigurationMapTest extends WifiBaseTest {
         mConfigs.put(config);
         assertNull(mConfigs.getByScanResultForCurrentUser(scanResult));
     }
+
+    private WifiConfiguration generateRandomWifiConfig(Random random, int networkId) {
+        return WifiConfigurationTestUtil.generateWifiConfig(networkId,
+                UserHandle.getUid(TEST_USER_IDS[random.nextInt(TEST_USER_IDS.length)], 1000),
+                TEST_SSIDS[random.nextInt(TEST_SSIDS.length)], random.nextBoolean(), true, null,
+                null, TEST_SECURITIES[random.nextInt(TEST_SECURITIES.length)]);
+    }
+
+    private boolean isVisibleToCurrentUser(WifiConfiguration config) {
+        final UserHandle currentUser = UserHandle.of(mCurrentUserId);
+        final UserHandle creatorUser = UserHandle.getUserHandleForUid(config.creatorUid);
+        return config.shared || currentUser.equals(creatorUser)
+                || mUserManager.isSameProfileGroup(currentUser, creatorUser);
+    }
+
+    /**
+     * Verifies that {@link ConfigurationMap#getByConfigKeyForCurrentUser(String)} returns a
+     * network configuration of the current user with the profile key if there is any, and null
+     * otherwise.
+     */
+    private void verifyGetByConfigKey(Collection<WifiConfiguration> configsForCurrentUser,
+            Set<String> keys) {
+        for (String key : keys) {
+            WifiConfiguration expectedConfig = null;
+            for (WifiConfiguration config : configsForCurrentUser) {
+                if (key.equals(config.getProfileKey())) {
+                    expectedConfig = config;
+                    break;
+                }
+            }
+            WifiConfiguration config = mConfigs.getByConfigKeyForCurrentUser(key);
+            if (expectedConfig == null) {
+                assertNull(key, config);
+            } else {
+                assertNotNull(key, config);
+                assertEquals(key, config.getProfileKey());
+                assertSame(config, mConfigs.getForCurrentUser(config.networkId));
+            }
+        }
+    }
+
+    /**
+     * Verifies that the profile key lookups stay consistent with the network configurations of
+     * the current user across a random sequence of put(), remove(), user switches and in place
+     * modifications of the network configurations.
+     */
+    @Test
+    public void testGetByConfigKeyConsistentWithRandomOperations() {
+        final Random random = new Random(0xC0FFEE);
+        final Map<Integer, WifiConfiguration> configsForCurrentUser = new HashMap<>();
+        final Set<String> keys = new HashSet<>();
+        final int numNetworkIds = 12;
+
+        for (int i = 0; i < 2000; i++) {
+            final int networkId = random.nextInt(numNetworkIds);
+            final int operation = random.nextInt(10);
+            if (operation < 5) {
+                WifiConfiguration config = generateRandomWifiConfig(random, networkId);
+                mConfigs.put(config);
+                if (isVisibleToCurrentUser(config)) {
+                    configsForCurrentUser.put(networkId, config);
+                }
+                keys.add(config.getProfileKey());
+            } else if (operation < 7) {
+                mConfigs.remove(networkId);
+                configsForCurrentUser.remove(networkId);
+            } else if (operation < 9) {
+                // Modify a network configuration in place.
+                WifiConfiguration config = mConfigs.getForCurrentUser(networkId);
+                if (config != null) {
+                    config.SSID = TEST_SSIDS[random.nextInt(TEST_SSIDS.length)];
+                    config.shared = random.nextBoolean();
+                    mConfigs.onProfileKeyChanged(config);
+                    keys.add(config.getProfileKey());
+                }
+            } else {
+                // Switch the user and add the network configurations back, like WifiConfigManager.
+                List<WifiConfiguration> configs = new ArrayList<>(mConfigs.valuesForAllUsers());
+                switchUser(TEST_USER_IDS[random.nextInt(TEST_USER_IDS.length)]);
+                configsForCurrentUser.clear();
+                for (WifiConfiguration config : configs) {
+                    mConfigs.put(config);
+                    if (isVisibleToCurrentUser(config)) {
+                        configsForCurrentUser.put(config.networkId, config);
+                    }
+                }
+            }
+            verifyGetByConfigKey(configsForCurrentUser.values(), keys);
+        }
+    }
 }
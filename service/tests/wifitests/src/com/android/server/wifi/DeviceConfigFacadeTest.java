@@ -221,6 +221,8 @@ public class DeviceConfigFacadeTest extends WifiBaseTest {
                 mDeviceConfigFacade.getTrafficStatsThresholdMaxKbyte());
         assertEquals(DeviceConfigFacade.DEFAULT_BANDWIDTH_ESTIMATOR_TIME_CONSTANT_LARGE_SEC,
                 mDeviceConfigFacade.getBandwidthEstimatorLargeTimeConstantSec());
+        assertEquals(DeviceConfigFacade.DEFAULT_ANQP_CACHE_MAX_SIZE,
+                mDeviceConfigFacade.getAnqpCacheMaxSize());
     }
 
     /**
@@ -344,6 +346,8 @@ public class DeviceConfigFacadeTest extends WifiBaseTest {
                 anyInt())).thenReturn(5000);
         when(DeviceConfig.getInt(anyString(), eq("bandwidth_estimator_time_constant_large_sec"),
                 anyInt())).thenReturn(30);
+        when(DeviceConfig.getInt(anyString(), eq("anqp_cache_max_size"),
+                anyInt())).thenReturn(200);
         mOnPropertiesChangedListenerCaptor.getValue().onPropertiesChanged(null);
 
         // Verifying fields are updated to the new values
@@ -409,5 +413,6 @@ public class DeviceConfigFacadeTest extends WifiBaseTest {
         assertEquals(true, mDeviceConfigFacade.allowEnhancedMacRandomizationOnOpenSsids());
         assertEquals(5000, mDeviceConfigFacade.getTrafficStatsThresholdMaxKbyte());
         assertEquals(30, mDeviceConfigFacade.getBandwidthEstimatorLargeTimeConstantSec());
+        assertEquals(200, mDeviceConfigFacade.getAnqpCacheMaxSize());
     }
 }
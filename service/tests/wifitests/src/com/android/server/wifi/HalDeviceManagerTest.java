@@ -1289,6 +1289,99 @@ public class HalDeviceManagerTest extends WifiBaseTest {
         assertTrue(mDut.isItPossibleToCreateIface(IfaceType.P2P, TEST_WORKSOURCE_1));
     }
 
+    /**
+     * Validate that the static chip information is retrieved from the HAL once for repeated
+     * queries, and again after the chip is reconfigured. The capabilities of a chip older than
+     * v1.5 are not retrieved again either.
+     */
+    @Test
+    public void testStaticChipInfoRetrievedOnceUntilChipReconfigured() throws Exception {
+        TestChipV1 chipMock = new TestChipV1();
+        chipMock.initialize();
+        mInOrder = inOrder(mServiceManagerMock, mWifiMock, mWifiMockV15, chipMock.chip,
+                mManagerStatusListenerMock);
+        executeAndValidateInitializationSequence();
+        executeAndValidateStartupSequence();
+
+        assertTrue(mDut.isItPossibleToCreateIface(IfaceType.STA, TEST_WORKSOURCE_0));
+        assertTrue(mDut.isItPossibleToCreateIface(IfaceType.AP, TEST_WORKSOURCE_0));
+        assertTrue(mDut.isItPossibleToCreateIface(IfaceType.P2P, TEST_WORKSOURCE_0));
+        verify(chipMock.chip).getAvailableModes(any(IWifiChip.getAvailableModesCallback.class));
+        // Both the modes and the unsupported capabilities are reused by the last 2 queries.
+        assertEquals(4, mDut.getNumHalCallsSaved());
+
+        // Reconfiguring the chip to create the STA interface invalidates the static info.
+        IWifiIface staIface = validateInterfaceSequence(chipMock,
+                false, // chipModeValid
+                -1000, // chipModeId (only used if chipModeValid is true)
+                HDM_CREATE_IFACE_STA, // ifaceTypeToCreate
+                "wlan0", // ifaceName
+                TestChipV1.STA_CHIP_MODE_ID, // finalChipMode
+                null, // tearDownList
+                mock(InterfaceDestroyedListener.class), // destroyedListener
+                TEST_WORKSOURCE_0 // requestorWs
+        );
+        collector.checkThat("STA created", staIface, IsNull.notNullValue());
+        assertEquals(6, mDut.getNumHalCallsSaved());
+
+        assertTrue(mDut.isItPossibleToCreateIface(IfaceType.P2P, TEST_WORKSOURCE_0));
+        verify(chipMock.chip, times(2)).getAvailableModes(
+                any(IWifiChip.getAvailableModesCallback.class));
+        assertEquals(6, mDut.getNumHalCallsSaved());
+    }
+
+    /**
+     * Validate that the chip capabilities are not cached when they can't be retrieved, and are
+     * retrieved again after an interface is created.
+     */
+    @Test
+    public void testChipCapabilitiesNotCachedOnFailureAndRefreshedOnIfaceCreation()
+            throws Exception {
+        TestChipV5 chipMock = new TestChipV5();
+        setupWifiChipV15(chipMock);
+        chipMock.initialize();
+        mInOrder = inOrder(mServiceManagerMock, mWifiMock, mWifiMockV15, chipMock.chip,
+                mWifiChipV15, mManagerStatusListenerMock);
+        executeAndValidateInitializationSequence();
+        executeAndValidateStartupSequence();
+
+        doAnswer(new MockAnswerUtil.AnswerWithArguments() {
+            public void answer(
+                    android.hardware.wifi.V1_5.IWifiChip.getCapabilities_1_5Callback cb) {
+                cb.onValues(mStatusFail, 0);
+            }
+        }).doAnswer(new GetCapabilities_1_5Answer(chipMock))
+                .when(mWifiChipV15).getCapabilities_1_5(any(
+                        android.hardware.wifi.V1_5.IWifiChip.getCapabilities_1_5Callback.class));
+        clearInvocations(mWifiChipV15);
+
+        // The failed query is retried, and the successful one is cached.
+        assertTrue(mDut.isItPossibleToCreateIface(IfaceType.STA, TEST_WORKSOURCE_0));
+        assertTrue(mDut.isItPossibleToCreateIface(IfaceType.STA, TEST_WORKSOURCE_0));
+        assertTrue(mDut.isItPossibleToCreateIface(IfaceType.STA, TEST_WORKSOURCE_0));
+        verify(mWifiChipV15, times(2)).getCapabilities_1_5(any(
+                android.hardware.wifi.V1_5.IWifiChip.getCapabilities_1_5Callback.class));
+
+        // Creating the STA interface, without reconfiguring the chip, invalidates them.
+        IWifiIface staIface = validateInterfaceSequence(chipMock,
+                true, // chipModeValid
+                TestChipV5.CHIP_MODE_ID, // chipModeId (only used if chipModeValid is true)
+                HDM_CREATE_IFACE_STA, // ifaceTypeToCreate
+                "wlan0", // ifaceName
+                TestChipV5.CHIP_MODE_ID, // finalChipMode
+                null, // tearDownList
+                mock(InterfaceDestroyedListener.class), // destroyedListener
+                TEST_WORKSOURCE_0 // requestorWs
+        );
+        collector.checkThat("STA created", staIface, IsNull.notNullValue());
+        verify(mWifiChipV15, times(2)).getCapabilities_1_5(any(
+                android.hardware.wifi.V1_5.IWifiChip.getCapabilities_1_5Callback.class));
+
+        assertTrue(mDut.isItPossibleToCreateIface(IfaceType.AP, TEST_WORKSOURCE_0));
+        verify(mWifiChipV15, times(3)).getCapabilities_1_5(any(
+                android.hardware.wifi.V1_5.IWifiChip.getCapabilities_1_5Callback.class));
+    }
+
     @Test
     public void testIsItPossibleToCreateIfaceTestChipV1ForR() throws Exception {
         assumeFalse(SdkLevel.isAtLeastS());
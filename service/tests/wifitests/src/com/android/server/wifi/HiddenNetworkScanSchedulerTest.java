@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import static com.android.server.wifi.HiddenNetworkScanScheduler.MAX_HIDDEN_NETWORKS_PER_SCAN;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+import android.net.wifi.WifiScanner.ScanSettings.HiddenNetwork;
+
+import androidx.test.filters.SmallTest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unit tests for {@link com.android.server.wifi.HiddenNetworkScanScheduler}.
+ */
+@SmallTest
+public class HiddenNetworkScanSchedulerTest extends WifiBaseTest {
+    private static final int NUM_HIDDEN_NETWORKS = 3 * MAX_HIDDEN_NETWORKS_PER_SCAN;
+
+    @Mock WifiScoreCard mWifiScoreCard;
+    private HiddenNetworkScanScheduler mScheduler;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(mWifiScoreCard.getConnectionAttemptCount(anyString())).thenReturn(0);
+        mScheduler = new HiddenNetworkScanScheduler(mWifiScoreCard);
+    }
+
+    private List<HiddenNetwork> createHiddenNetworks(int numNetworks) {
+        List<HiddenNetwork> hiddenNetworks = new ArrayList<>();
+        for (int i = 0; i < numNetworks; i++) {
+            hiddenNetworks.add(new HiddenNetwork("\"hidden" + i + "\""));
+        }
+        return hiddenNetworks;
+    }
+
+    /**
+     * Verify that all the hidden networks are probed in order when they fit in one scan, and
+     * that duplicates are removed.
+     */
+    @Test
+    public void selectAllHiddenNetworksWhenUnderLimit() {
+        List<HiddenNetwork> hiddenNetworks = createHiddenNetworks(MAX_HIDDEN_NETWORKS_PER_SCAN);
+        List<HiddenNetwork> candidates = new ArrayList<>(hiddenNetworks);
+        candidates.add(new HiddenNetwork(hiddenNetworks.get(0).ssid));
+
+        List<HiddenNetwork> selected = mScheduler.selectHiddenNetworksForScan(candidates);
+        assertEquals(hiddenNetworks, selected);
+        assertEquals(1.0, mScheduler.getProbeCoverage(), 0);
+        assertEquals(0, mScheduler.getMaxScansSinceProbed());
+    }
+
+    /**
+     * Verify that the hidden networks are rotated across scans when they don't fit in one scan,
+     * with the highest priority networks probed more often.
+     */
+    @Test
+    public void rotateHiddenNetworksOverLimit() {
+        List<HiddenNetwork> hiddenNetworks = createHiddenNetworks(NUM_HIDDEN_NETWORKS);
+        // The last network is connected to frequently.
+        String frequentSsid = hiddenNetworks.get(NUM_HIDDEN_NETWORKS - 1).ssid;
+        when(mWifiScoreCard.getConnectionAttemptCount(frequentSsid)).thenReturn(10);
+
+        Map<String, Integer> numProbes = new HashMap<>();
+        int numScans = 30;
+        for (int i = 0; i < numScans; i++) {
+            List<HiddenNetwork> selected = mScheduler.selectHiddenNetworksForScan(hiddenNetworks);
+            assertEquals(MAX_HIDDEN_NETWORKS_PER_SCAN, selected.size());
+            for (HiddenNetwork hiddenNetwork : selected) {
+                numProbes.merge(hiddenNetwork.ssid, 1, Integer::sum);
+            }
+            if (i == 0) {
+                // The most recently connected networks are probed first.
+                assertEquals(hiddenNetworks.get(0), selected.get(0));
+            }
+        }
+
+        // Every network is probed, and none is starved.
+        assertEquals(NUM_HIDDEN_NETWORKS, numProbes.size());
+        assertEquals(1.0, mScheduler.getProbeCoverage(), 0);
+        assertTrue(mScheduler.getMaxScansSinceProbed() < NUM_HIDDEN_NETWORKS);
+        assertTrue(mScheduler.getFairnessIndex() > 0.9);
+        // Higher priority networks are probed more often.
+        int lowPriorityProbes = numProbes.get(hiddenNetworks.get(NUM_HIDDEN_NETWORKS - 2).ssid);
+        assertTrue(numProbes.get(frequentSsid) > lowPriorityProbes);
+        assertTrue(numProbes.get(hiddenNetworks.get(0).ssid) > lowPriorityProbes);
+    }
+
+    /**
+     * Verify that a new hidden network is probed soon, without starving the others.
+     */
+    @Test
+    public void newHiddenNetworkIsProbedSoon() {
+        List<HiddenNetwork> hiddenNetworks = createHiddenNetworks(NUM_HIDDEN_NETWORKS);
+        for (int i = 0; i < 10; i++) {
+            mScheduler.selectHiddenNetworksForScan(hiddenNetworks);
+        }
+        HiddenNetwork newNetwork = new HiddenNetwork("\"newHidden\"");
+        hiddenNetworks.add(newNetwork);
+
+        boolean probed = false;
+        for (int i = 0; i < NUM_HIDDEN_NETWORKS / MAX_HIDDEN_NETWORKS_PER_SCAN + 1; i++) {
+            probed |= mScheduler.selectHiddenNetworksForScan(hiddenNetworks).contains(newNetwork);
+        }
+        assertTrue(probed);
+        assertEquals(1.0, mScheduler.getProbeCoverage(), 0);
+    }
+}
@@ -93,6 +93,78 @@ public class ScanDetailCacheTest {
         assertEquals(s4, mScanDetailCache.getScanDetail(TEST_BSSID_4));
     }
 
+    /**
+     * Verify that trimming the cache evicts the oldest entries.
+     */
+    @Test
+    public void testTrimEvictsOldestEntries() {
+        for (int i = 0; i < TEST_MAX_SIZE; i++) {
+            setClockTime(1000 * (TEST_MAX_SIZE - i));
+            mScanDetailCache.put(createScanDetailForNetwork(mWifiConfiguration,
+                    String.format("0a:08:5c:67:89:%02x", i), TEST_RSSI, TEST_FREQUENCY));
+        }
+        assertEquals(TEST_MAX_SIZE, mScanDetailCache.size());
+
+        setClockTime(1000 * (TEST_MAX_SIZE + 1));
+        ScanDetail newest = createScanDetailForNetwork(mWifiConfiguration, "0a:08:5c:67:89:ff",
+                TEST_RSSI, TEST_FREQUENCY);
+        mScanDetailCache.put(newest);
+
+        // The first two entries put are the most recent ones, they are the only ones kept.
+        assertEquals(TEST_TRIM_SIZE + 1, mScanDetailCache.size());
+        assertNotNull(mScanDetailCache.getScanDetail("0a:08:5c:67:89:00"));
+        assertNotNull(mScanDetailCache.getScanDetail("0a:08:5c:67:89:01"));
+        assertEquals(newest.getScanResult(), mScanDetailCache.getMostRecentScanResult());
+    }
+
+    /**
+     * Verify that replacing the ScanDetail of a BSSID in a full cache doesn't trim it.
+     */
+    @Test
+    public void testReplaceEntryInFullCacheDoesNotTrim() {
+        for (int i = 0; i < TEST_MAX_SIZE; i++) {
+            setClockTime(1000 * i);
+            mScanDetailCache.put(createScanDetailForNetwork(mWifiConfiguration,
+                    String.format("0a:08:5c:67:89:%02x", i), TEST_RSSI, TEST_FREQUENCY));
+        }
+        setClockTime(1000 * TEST_MAX_SIZE);
+        ScanDetail replacement = createScanDetailForNetwork(mWifiConfiguration,
+                "0a:08:5c:67:89:00", TEST_RSSI, TEST_FREQUENCY);
+        mScanDetailCache.put(replacement);
+
+        assertEquals(TEST_MAX_SIZE, mScanDetailCache.size());
+        assertEquals(replacement.getScanResult(), mScanDetailCache.getMostRecentScanResult());
+    }
+
+    /**
+     * Verify that a ScanDetail updated in place is re-indexed when put again, and that removed
+     * entries are no longer returned.
+     */
+    @Test
+    public void testReindexAndRemove() {
+        setClockTime(1000);
+        ScanDetail s1 = createScanDetailForNetwork(mWifiConfiguration, TEST_BSSID_1,
+                TEST_RSSI_2, TEST_FREQUENCY);
+        ScanDetail s2 = createScanDetailForNetwork(mWifiConfiguration, TEST_BSSID_2,
+                TEST_RSSI, TEST_FREQUENCY);
+        mScanDetailCache.put(s1);
+        mScanDetailCache.put(s2);
+        assertEquals(s2.getScanResult(), mScanDetailCache.getMostRecentScanResult());
+
+        // Update the RSSI of s1 in place, it is only taken into account once put again.
+        s1.getScanResult().level = TEST_RSSI + 5;
+        assertEquals(s2.getScanResult(), mScanDetailCache.getMostRecentScanResult());
+        mScanDetailCache.put(s1);
+        assertEquals(2, mScanDetailCache.size());
+        assertEquals(s1.getScanResult(), mScanDetailCache.getMostRecentScanResult());
+
+        mScanDetailCache.remove(TEST_BSSID_1);
+        assertEquals(s2.getScanResult(), mScanDetailCache.getMostRecentScanResult());
+        mScanDetailCache.remove(TEST_BSSID_2);
+        assertNull(mScanDetailCache.getMostRecentScanResult());
+        assertTrue(mScanDetailCache.isEmpty());
+    }
+
     private void setClockTime(long millis) {
         when(mClock.getUptimeSinceBootMillis()).thenReturn(millis);
         when(mClock.getWallClockMillis()).thenReturn(millis);
@@ -92,6 +92,7 @@ public class ScanRequestProxyTest extends WifiBaseTest {
     @Mock private Clock mClock;
     @Mock private WifiSettingsConfigStore mWifiSettingsConfigStore;
     @Mock private WifiNetworkSuggestionsManager mWifiNetworkSuggestionsManager;
+    @Mock private WifiScoreCard mWifiScoreCard;
     @Mock private IScanResultsCallback mScanResultsCallback;
     @Mock private IScanResultsCallback mAnotherScanResultsCallback;
     @Mock private TestLooper mLooper;
@@ -127,6 +128,8 @@ public class ScanRequestProxyTest extends WifiBaseTest {
         when(mWifiInjector.getWifiScanner()).thenReturn(mWifiScanner);
         when(mWifiInjector.getWifiNetworkSuggestionsManager())
                 .thenReturn(mWifiNetworkSuggestionsManager);
+        when(mWifiInjector.getHiddenNetworkScanScheduler())
+                .thenReturn(new HiddenNetworkScanScheduler(mWifiScoreCard));
         when(mWifiConfigManager.retrieveHiddenNetworkList()).thenReturn(TEST_HIDDEN_NETWORKS_LIST);
         when(mWifiNetworkSuggestionsManager.retrieveHiddenNetworkList())
                 .thenReturn(TEST_HIDDEN_NETWORKS_LIST_NS);
@@ -345,6 +348,78 @@ public class ScanRequestProxyTest extends WifiBaseTest {
         verifyScanMetricsDataWasSet();
     }
 
+    /**
+     * Verify that the same unmodifiable scan results snapshot is returned until new scan results
+     * are received.
+     */
+    @Test
+    public void testScanResultsSnapshotSharedUntilNewResults() {
+        testStartScanSuccess();
+        mGlobalScanListenerArgumentCaptor.getValue().onResults(mTestScanDatas1);
+
+        List<ScanResult> scanResults = mScanRequestProxy.getScanResults();
+        assertSame(scanResults, mScanRequestProxy.getScanResults());
+        try {
+            scanResults.clear();
+            fail("Scan results snapshot should not be modifiable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        mGlobalScanListenerArgumentCaptor.getValue().onResults(mTestScanDatas2);
+        assertNotSame(scanResults, mScanRequestProxy.getScanResults());
+        ScanTestUtil.assertScanResultsEqualsAnyOrder(
+                mTestScanDatas1[0].getResults(),
+                scanResults.stream().toArray(ScanResult[]::new));
+        ScanTestUtil.assertScanResultsEqualsAnyOrder(
+                mTestScanDatas2[0].getResults(),
+                mScanRequestProxy.getScanResults().stream().toArray(ScanResult[]::new));
+
+        // Disabling scanning clears the snapshot.
+        mScanRequestProxy.enableScanning(false, false);
+        assertTrue(mScanRequestProxy.getScanResults().isEmpty());
+    }
+
+    /**
+     * Verify the security types of the networks in range are looked up from the last scan
+     * results.
+     */
+    @Test
+    public void testSecurityOnlyNetworkInRange() {
+        ScanResult[] scanResults = mTestScanDatas1[0].getResults();
+        setSsidAndCapabilities(scanResults[0], "psk", "[WPA2-PSK-CCMP][ESS]");
+        setSsidAndCapabilities(scanResults[1], "transition", "[RSN-PSK+SAE-CCMP][ESS]");
+        setSsidAndCapabilities(scanResults[2], "sae", "[RSN-SAE-CCMP][ESS]");
+        setSsidAndCapabilities(scanResults[3], "open", "[ESS]");
+        setSsidAndCapabilities(scanResults[4], "owe", "[RSN-OWE-CCMP][ESS]");
+        setSsidAndCapabilities(scanResults[5], "eap", "[RSN-EAP/SHA1-CCMP][ESS]");
+        testStartScanSuccess();
+        mGlobalScanListenerArgumentCaptor.getValue().onResults(mTestScanDatas1);
+
+        assertTrue(mScanRequestProxy.isWpa2PersonalOnlyNetworkInRange("\"psk\""));
+        assertFalse(mScanRequestProxy.isWpa3PersonalOnlyNetworkInRange("\"psk\""));
+        assertFalse(mScanRequestProxy.isWpa2PersonalOnlyNetworkInRange("\"transition\""));
+        assertFalse(mScanRequestProxy.isWpa3PersonalOnlyNetworkInRange("\"transition\""));
+        assertTrue(mScanRequestProxy.isWpa3PersonalOnlyNetworkInRange("\"sae\""));
+        assertTrue(mScanRequestProxy.isOpenOnlyNetworkInRange("\"open\""));
+        assertFalse(mScanRequestProxy.isOweOnlyNetworkInRange("\"open\""));
+        assertTrue(mScanRequestProxy.isOweOnlyNetworkInRange("\"owe\""));
+        assertFalse(mScanRequestProxy.isOpenOnlyNetworkInRange("\"owe\""));
+        assertTrue(mScanRequestProxy.isWpa2EnterpriseOnlyNetworkInRange("\"eap\""));
+        assertFalse(mScanRequestProxy.isWpa3EnterpriseOnlyNetworkInRange("\"eap\""));
+        assertFalse(mScanRequestProxy.isWpa2PersonalOnlyNetworkInRange("\"unknown\""));
+
+        // Disabling scanning clears the scan results.
+        mScanRequestProxy.enableScanning(false, false);
+        assertFalse(mScanRequestProxy.isWpa2PersonalOnlyNetworkInRange("\"psk\""));
+    }
+
+    private static void setSsidAndCapabilities(ScanResult scanResult, String ssid,
+            String capabilities) {
+        scanResult.SSID = ssid;
+        scanResult.capabilities = capabilities;
+    }
+
     /**
      * Verify a successful scan request and processing of scan failure.
      */
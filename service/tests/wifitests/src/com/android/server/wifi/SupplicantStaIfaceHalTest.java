@@ -102,6 +102,8 @@ import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
@@ -538,6 +540,57 @@ public class SupplicantStaIfaceHalTest extends WifiBaseTest {
                 .addNetwork(any(ISupplicantStaIface.addNetworkCallback.class));
     }
 
+    /**
+     * Tests that the recently used networks are kept provisioned in supplicant when the
+     * provisioned network cache is enabled, and that the least recently used one is evicted.
+     */
+    @Test
+    public void connectToProvisionedNetworkDoesNotAddNetworkToSupplicant() throws Exception {
+        when(mWifiGlobals.getSupplicantProvisionedNetworkCacheSize()).thenReturn(2);
+        when(mSupplicantStaNetworkMock.getNetworkId()).thenReturn(SUPPLICANT_NETWORK_ID);
+        when(mSupplicantStaNetworkMock.setBssid(any())).thenReturn(true);
+        executeAndValidateInitializationSequence();
+        WifiConfiguration configA = executeAndValidateConnectSequence(
+                SUPPLICANT_NETWORK_ID, false);
+        WifiConfiguration configB = new WifiConfiguration(configA);
+        configB.SSID = "\"AnDifferentSSID\"";
+        configB.networkId = SUPPLICANT_NETWORK_ID + 1;
+
+        // Connecting to another network keeps the previous one provisioned.
+        reset(mISupplicantStaIfaceMock);
+        setupMocksForConnectSequence(true /*haveExistingNetwork*/);
+        assertTrue(mDut.connectToNetwork(WLAN0_IFACE_NAME, configB));
+        verify(mISupplicantStaIfaceMock, never()).removeNetwork(anyInt());
+        verify(mISupplicantStaIfaceMock)
+                .addNetwork(any(ISupplicantStaIface.addNetworkCallback.class));
+
+        // Connecting back to the first network only selects it.
+        reset(mISupplicantStaIfaceMock);
+        setupMocksForConnectSequence(true /*haveExistingNetwork*/);
+        assertTrue(mDut.connectToNetwork(WLAN0_IFACE_NAME, configA));
+        verify(mISupplicantStaIfaceMock, never()).removeNetwork(anyInt());
+        verify(mISupplicantStaIfaceMock, never())
+                .addNetwork(any(ISupplicantStaIface.addNetworkCallback.class));
+        verify(mSupplicantStaNetworkMock, times(2))
+                .saveWifiConfiguration(any(WifiConfiguration.class));
+        verify(mSupplicantStaNetworkMock, times(3)).select();
+
+        // Connecting to a third network evicts the least recently used one.
+        WifiConfiguration configC = new WifiConfiguration(configA);
+        configC.SSID = "\"AnotherSSID\"";
+        configC.networkId = SUPPLICANT_NETWORK_ID + 2;
+        reset(mISupplicantStaIfaceMock);
+        setupMocksForConnectSequence(true /*haveExistingNetwork*/);
+        assertTrue(mDut.connectToNetwork(WLAN0_IFACE_NAME, configC));
+        verify(mISupplicantStaIfaceMock).removeNetwork(SUPPLICANT_NETWORK_ID);
+        verify(mISupplicantStaIfaceMock)
+                .addNetwork(any(ISupplicantStaIface.addNetworkCallback.class));
+
+        StringWriter sw = new StringWriter();
+        mDut.dump(new PrintWriter(sw));
+        assertTrue(sw.toString().contains("hits=1 misses=3"));
+    }
+
     @Test
     public void connectToNetworkWithSameNetworkButDifferentBssidUpdatesNetworkFromSupplicant()
             throws Exception {
@@ -24,9 +24,11 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeTrue;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyByte;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.clearInvocations;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
@@ -292,6 +294,44 @@ public class SupplicantStaNetworkHalTest extends WifiBaseTest {
                 NativeUtil.removeEnclosingQuotes(config.preSharedKey));
     }
 
+    /**
+     * Tests that saving a WifiConfiguration again only sets the changed network variables, and
+     * fails if the security type changed.
+     */
+    @Test
+    public void testWifiConfigurationSaveOnlySetsChangedVariables() throws Exception {
+        WifiConfiguration config = WifiConfigurationTestUtil.createPskNetwork();
+        // Assume that the default params is used for this test.
+        config.getNetworkSelectionStatus().setCandidateSecurityParams(
+                config.getDefaultSecurityParams());
+        assertTrue(mSupplicantNetwork.saveWifiConfiguration(config));
+        assertTrue(mSupplicantNetwork.getNumHalCallsForLastSave() > 0);
+
+        // Nothing changed.
+        clearInvocations(mISupplicantStaNetworkMock);
+        assertTrue(mSupplicantNetwork.saveWifiConfiguration(config));
+        assertEquals(0, mSupplicantNetwork.getNumHalCallsForLastSave());
+        verify(mISupplicantStaNetworkMock, never()).setSsid(any(ArrayList.class));
+        verify(mISupplicantStaNetworkMock, never()).setPskPassphrase(anyString());
+
+        // Only the passphrase changed.
+        config.preSharedKey = "\"new_passphrase\"";
+        assertTrue(mSupplicantNetwork.saveWifiConfiguration(config));
+        assertEquals(1, mSupplicantNetwork.getNumHalCallsForLastSave());
+        verify(mISupplicantStaNetworkMock).setPskPassphrase("new_passphrase");
+        verify(mISupplicantStaNetworkMock, never()).setSsid(any(ArrayList.class));
+        verify(mISupplicantStaNetworkMock, never()).setKeyMgmt(anyInt());
+        assertEquals("new_passphrase", mSupplicantVariables.pskPassphrase);
+
+        // The network cannot be updated to another security type.
+        WifiConfiguration openConfig = new WifiConfiguration(config);
+        openConfig.setSecurityParams(WifiConfiguration.SECURITY_TYPE_OPEN);
+        openConfig.preSharedKey = null;
+        openConfig.getNetworkSelectionStatus().setCandidateSecurityParams(
+                openConfig.getDefaultSecurityParams());
+        assertFalse(mSupplicantNetwork.saveWifiConfiguration(openConfig));
+    }
+
     /**
      * Tests the saving/loading of WifiConfiguration to wpa_supplicant.
      */
@@ -21,11 +21,13 @@ import static com.android.server.wifi.util.InformationElementUtil.BssLoad.MAX_CH
 import static com.android.server.wifi.util.InformationElementUtil.BssLoad.MIN_CHANNEL_UTILIZATION;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.validateMockitoUsage;
 import static org.mockito.Mockito.when;
 
 import android.content.Context;
 import android.net.wifi.ScanResult;
+import android.net.wifi.WifiInfo;
 import android.net.wifi.nl80211.DeviceWiphyCapabilities;
 
 import androidx.test.filters.SmallTest;
@@ -392,4 +394,56 @@ public class ThroughputPredictorTest extends WifiBaseTest {
         assertEquals(2881, mThroughputPredictor.predictRxThroughput(mConnectionCap,
                 -10, 5180, INVALID));
     }
+
+    @Test
+    public void verifyTableAgreesWithCalculation() {
+        int[] standards = {ScanResult.WIFI_STANDARD_LEGACY, ScanResult.WIFI_STANDARD_11N,
+                ScanResult.WIFI_STANDARD_11AC, ScanResult.WIFI_STANDARD_11AX};
+        int[] channelWidths = {ScanResult.CHANNEL_WIDTH_20MHZ, ScanResult.CHANNEL_WIDTH_40MHZ,
+                ScanResult.CHANNEL_WIDTH_80MHZ, ScanResult.CHANNEL_WIDTH_160MHZ,
+                ScanResult.CHANNEL_WIDTH_80MHZ_PLUS_MHZ};
+        for (int standard : standards) {
+            for (int channelWidth : channelWidths) {
+                for (int nss = 1; nss <= 10; nss++) {
+                    for (int rssi = -127; rssi <= 0; rssi += 3) {
+                        for (int utilization = MIN_CHANNEL_UTILIZATION;
+                                utilization <= MAX_CHANNEL_UTILIZATION; utilization += 5) {
+                            int tableMbps = ThroughputPredictor.predictThroughputFromTable(
+                                    standard, false, channelWidth, rssi, nss, utilization);
+                            int calculatedMbps = mThroughputPredictor.calculateThroughput(
+                                    standard, false, channelWidth, rssi, nss, utilization);
+                            assertTrue(tableMbps != ThroughputPredictor.TABLE_MISS);
+                            assertTrue(Math.abs(tableMbps - calculatedMbps) <= 1);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void verifyTableMissFallsBackToCalculation() {
+        assertEquals(ThroughputPredictor.TABLE_MISS, ThroughputPredictor.predictThroughputFromTable(
+                ScanResult.WIFI_STANDARD_11AC, false, ScanResult.CHANNEL_WIDTH_20MHZ, -50, 1,
+                INVALID));
+        assertEquals(ThroughputPredictor.TABLE_MISS, ThroughputPredictor.predictThroughputFromTable(
+                ScanResult.WIFI_STANDARD_UNKNOWN, false, ScanResult.CHANNEL_WIDTH_20MHZ, -50, 1,
+                0));
+
+        mConnectionCap.wifiStandard = ScanResult.WIFI_STANDARD_UNKNOWN;
+        mConnectionCap.channelBandwidth = ScanResult.CHANNEL_WIDTH_20MHZ;
+        mConnectionCap.maxNumberTxSpatialStreams = 1;
+        assertEquals(WifiInfo.LINK_SPEED_UNKNOWN,
+                mThroughputPredictor.predictMaxTxThroughput(mConnectionCap));
+    }
+
+    @Test
+    public void verifyVerboseLoggingCalculatesThroughput() {
+        mThroughputPredictor.enableVerboseLogging(true);
+        mConnectionCap.wifiStandard = ScanResult.WIFI_STANDARD_11AC;
+        mConnectionCap.channelBandwidth = ScanResult.CHANNEL_WIDTH_20MHZ;
+        mConnectionCap.maxNumberTxSpatialStreams = 2;
+        assertEquals(131, mThroughputPredictor.predictTxThroughput(mConnectionCap,
+                -50, 2437, 80));
+    }
 }
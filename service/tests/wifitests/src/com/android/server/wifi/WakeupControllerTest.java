@@ -134,7 +134,8 @@ public class WakeupControllerTest extends WifiBaseTest {
         // Saved network needed to start wake.
         WifiConfiguration openNetwork = WifiConfigurationTestUtil.createOpenNetwork();
         openNetwork.getNetworkSelectionStatus().setHasEverConnected(true);
-        when(mWifiConfigManager.getSavedNetworks(anyInt())).thenReturn(Arrays.asList(openNetwork));
+        when(mWifiConfigManager.getSavedNetworksSnapshot(anyInt()))
+                .thenReturn(Arrays.asList(openNetwork));
 
         mLooper = new TestLooper();
 
@@ -306,7 +307,8 @@ public class WakeupControllerTest extends WifiBaseTest {
      */
     @Test
     public void startDoesNotSetWakeupLockWhenNoSavedNetworksOrSuggestions() {
-        when(mWifiConfigManager.getSavedNetworks(anyInt())).thenReturn(Collections.emptyList());
+        when(mWifiConfigManager.getSavedNetworksSnapshot(anyInt()))
+                .thenReturn(Collections.emptyList());
         initializeWakeupController(false /* enabled */);
         mWakeupController.start();
         verify(mWakeupLock, never()).setLock(any());
@@ -394,7 +396,7 @@ public class WakeupControllerTest extends WifiBaseTest {
         openNetwork.getNetworkSelectionStatus().setHasEverConnected(true);
         WifiConfiguration wepNetwork = WifiConfigurationTestUtil.createWepNetwork();
         wepNetwork.getNetworkSelectionStatus().setHasEverConnected(true);
-        when(mWifiConfigManager.getSavedNetworks(anyInt()))
+        when(mWifiConfigManager.getSavedNetworksSnapshot(anyInt()))
                 .thenReturn(Arrays.asList(openNetwork, wepNetwork));
 
         // scan results from most recent scan
@@ -469,7 +471,7 @@ public class WakeupControllerTest extends WifiBaseTest {
         // saved config + suggestion
         WifiConfiguration openNetwork = WifiConfigurationTestUtil.createOpenNetwork(quotedSsid1);
         openNetwork.getNetworkSelectionStatus().setHasEverConnected(true);
-        when(mWifiConfigManager.getSavedNetworks(anyInt()))
+        when(mWifiConfigManager.getSavedNetworksSnapshot(anyInt()))
                 .thenReturn(Arrays.asList(openNetwork));
 
         WifiConfiguration oweNetwork = WifiConfigurationTestUtil.createOweNetwork(quotedSsid2);
@@ -513,7 +515,7 @@ public class WakeupControllerTest extends WifiBaseTest {
         openNetwork.getNetworkSelectionStatus().setHasEverConnected(true);
         openNetwork.getNetworkSelectionStatus().setHasNeverDetectedCaptivePortal(false);
         openNetwork.validatedInternetAccess = false;
-        when(mWifiConfigManager.getSavedNetworks(anyInt()))
+        when(mWifiConfigManager.getSavedNetworksSnapshot(anyInt()))
                 .thenReturn(Arrays.asList(openNetwork));
 
         initializeWakeupController(true);
@@ -534,7 +536,7 @@ public class WakeupControllerTest extends WifiBaseTest {
         openNetwork.getNetworkSelectionStatus().setHasEverConnected(true);
         openNetwork.getNetworkSelectionStatus().setHasNeverDetectedCaptivePortal(false);
         openNetwork.validatedInternetAccess = true;
-        when(mWifiConfigManager.getSavedNetworks(anyInt()))
+        when(mWifiConfigManager.getSavedNetworksSnapshot(anyInt()))
                 .thenReturn(Arrays.asList(openNetwork));
 
         initializeWakeupController(true);
@@ -558,7 +560,7 @@ public class WakeupControllerTest extends WifiBaseTest {
                 .createOpenNetwork(ScanResultUtil.createQuotedSSID(ssid24));
         openNetwork24.getNetworkSelectionStatus().setHasEverConnected(true);
 
-        when(mWifiConfigManager.getSavedNetworks(anyInt()))
+        when(mWifiConfigManager.getSavedNetworksSnapshot(anyInt()))
                 .thenReturn(Arrays.asList(openNetworkDfs, openNetwork24));
 
         // scan results from most recent scan
@@ -587,7 +589,7 @@ public class WakeupControllerTest extends WifiBaseTest {
         WifiConfiguration openNetwork = WifiConfigurationTestUtil
                 .createOpenNetwork(ScanResultUtil.createQuotedSSID(SAVED_SSID));
         openNetwork.getNetworkSelectionStatus().setHasEverConnected(true);
-        when(mWifiConfigManager.getSavedNetworks(anyInt()))
+        when(mWifiConfigManager.getSavedNetworksSnapshot(anyInt()))
                 .thenReturn(Collections.singletonList(openNetwork));
 
         initializeWakeupController(true /* enabled */);
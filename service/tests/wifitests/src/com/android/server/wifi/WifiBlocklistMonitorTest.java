@@ -844,6 +844,51 @@ public class WifiBlocklistMonitorTest {
         assertEquals(0, mWifiBlocklistMonitor.updateAndGetBssidBlocklist().size());
     }
 
+    /**
+     * Verify that BSSIDs expire from the blocklist in the order of their blocklist end time,
+     * including after being blocked again or moving to another SSID, and that the per-SSID
+     * queries only account for the BSSIDs of the SSID.
+     */
+    @Test
+    public void testBlocklistExpiryOrderAndPerSsidQueries() {
+        when(mClock.getWallClockMillis()).thenReturn(0L);
+        mWifiBlocklistMonitor.blockBssidForDurationMs(TEST_BSSID_1, TEST_SSID_1, 1000L,
+                TEST_FRAMEWORK_BLOCK_REASON, TEST_GOOD_RSSI);
+        mWifiBlocklistMonitor.blockBssidForDurationMs(TEST_BSSID_2, TEST_SSID_1, 3000L,
+                TEST_FRAMEWORK_BLOCK_REASON, TEST_GOOD_RSSI);
+        mWifiBlocklistMonitor.blockBssidForDurationMs(TEST_BSSID_3, TEST_SSID_2, 2000L,
+                TEST_FRAMEWORK_BLOCK_REASON, TEST_GOOD_RSSI);
+        // Block TEST_BSSID_1 again for longer than the other BSSIDs
+        mWifiBlocklistMonitor.blockBssidForDurationMs(TEST_BSSID_1, TEST_SSID_1, 5000L,
+                TEST_FRAMEWORK_BLOCK_REASON, TEST_GOOD_RSSI);
+
+        when(mClock.getWallClockMillis()).thenReturn(1500L);
+        assertEquals(Set.of(TEST_BSSID_1, TEST_BSSID_2, TEST_BSSID_3),
+                mWifiBlocklistMonitor.updateAndGetBssidBlocklist());
+        assertEquals(2, mWifiBlocklistMonitor.updateAndGetNumBlockedBssidsForSsid(TEST_SSID_1));
+        assertEquals(1, mWifiBlocklistMonitor.updateAndGetNumBlockedBssidsForSsid(TEST_SSID_2));
+
+        when(mClock.getWallClockMillis()).thenReturn(2500L);
+        assertEquals(Set.of(TEST_BSSID_1, TEST_BSSID_2),
+                mWifiBlocklistMonitor.updateAndGetBssidBlocklist());
+        assertEquals(0, mWifiBlocklistMonitor.updateAndGetNumBlockedBssidsForSsid(TEST_SSID_2));
+        assertTrue(mWifiBlocklistMonitor.getFailureReasonsForSsid(TEST_SSID_2).isEmpty());
+
+        // TEST_BSSID_2 now belongs to TEST_SSID_2
+        mWifiBlocklistMonitor.blockBssidForDurationMs(TEST_BSSID_2, TEST_SSID_2, 1000L,
+                TEST_FRAMEWORK_BLOCK_REASON, TEST_GOOD_RSSI);
+        assertEquals(1, mWifiBlocklistMonitor.updateAndGetNumBlockedBssidsForSsid(TEST_SSID_1));
+        assertEquals(1, mWifiBlocklistMonitor.updateAndGetNumBlockedBssidsForSsid(TEST_SSID_2));
+
+        when(mClock.getWallClockMillis()).thenReturn(4000L);
+        assertEquals(Set.of(TEST_BSSID_1), mWifiBlocklistMonitor.updateAndGetBssidBlocklist());
+        assertEquals(0, mWifiBlocklistMonitor.updateAndGetNumBlockedBssidsForSsid(TEST_SSID_2));
+
+        when(mClock.getWallClockMillis()).thenReturn(5001L);
+        assertEquals(0, mWifiBlocklistMonitor.updateAndGetBssidBlocklist().size());
+        assertEquals(0, mWifiBlocklistMonitor.updateAndGetNumBlockedBssidsForSsid(TEST_SSID_1));
+    }
+
     /**
      * Verify that invalid inputs are handled and result in no-op.
      */
@@ -20,7 +20,9 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.any;
@@ -938,6 +940,50 @@ public class WifiConfigManagerTest extends WifiBaseTest {
         assertEquals(ephemeralNetwork.networkId, wifiConfigCaptor.getValue().networkId);
     }
 
+    /**
+     * Verifies that {@link WifiConfigManager#getSavedNetworksSnapshot(int)} returns the same
+     * read-only masked configurations until the configured networks change.
+     */
+    @Test
+    public void testGetSavedNetworksSnapshot() throws Exception {
+        WifiConfiguration pskNetwork = WifiConfigurationTestUtil.createPskNetwork();
+        int networkId = verifyAddNetworkToWifiConfigManager(pskNetwork).getNetworkId();
+
+        List<WifiConfiguration> snapshot =
+                mWifiConfigManager.getSavedNetworksSnapshot(Process.WIFI_UID);
+        assertEquals(1, snapshot.size());
+        assertEquals(WifiConfigManager.PASSWORD_MASK, snapshot.get(0).preSharedKey);
+        assertSame(snapshot, mWifiConfigManager.getSavedNetworksSnapshot(Process.WIFI_UID));
+        try {
+            snapshot.clear();
+            fail("Snapshot must not be modifiable");
+        } catch (UnsupportedOperationException e) {
+            // Expected
+        }
+
+        // Snapshots are kept per target UID.
+        List<WifiConfiguration> otherUidSnapshot =
+                mWifiConfigManager.getSavedNetworksSnapshot(Process.INVALID_UID);
+        assertNotEquals(snapshot.get(0).getRandomizedMacAddress(),
+                otherUidSnapshot.get(0).getRandomizedMacAddress());
+        assertSame(snapshot, mWifiConfigManager.getSavedNetworksSnapshot(Process.WIFI_UID));
+
+        // Reading the networks doesn't change the snapshot, updating them in place does.
+        assertNotNull(mWifiConfigManager.getConfiguredNetwork(networkId));
+        assertEquals(1, mWifiConfigManager.getConfiguredNetworks().size());
+        assertSame(snapshot, mWifiConfigManager.getSavedNetworksSnapshot(Process.WIFI_UID));
+        assertTrue(mWifiConfigManager.setNetworkValidatedInternetAccess(networkId, true));
+        List<WifiConfiguration> updatedSnapshot =
+                mWifiConfigManager.getSavedNetworksSnapshot(Process.WIFI_UID);
+        assertNotSame(snapshot, updatedSnapshot);
+        assertTrue(updatedSnapshot.get(0).validatedInternetAccess);
+        snapshot = updatedSnapshot;
+
+        verifyRemoveNetworkFromWifiConfigManager(pskNetwork);
+        assertTrue(mWifiConfigManager.getSavedNetworksSnapshot(Process.WIFI_UID).isEmpty());
+        assertEquals(1, snapshot.size());
+    }
+
     private void addSinglePasspointNetwork(boolean isHomeProviderNetwork) throws Exception {
         ArgumentCaptor<WifiConfiguration> wifiConfigCaptor =
                 ArgumentCaptor.forClass(WifiConfiguration.class);
@@ -3411,16 +3457,9 @@ public class WifiConfigManagerTest extends WifiBaseTest {
                 add(user2Network);
             }
         };
-        // Capture the first written data triggered for saving the old user's network
-        // configurations.
-        writtenNetworkList = captureWriteNetworksListStoreData();
-        WifiConfigurationTestUtil.assertConfigurationsEqualForConfigManagerAddOrUpdate(
-                sharedNetworks, writtenNetworkList.first);
-        WifiConfigurationTestUtil.assertConfigurationsEqualForConfigManagerAddOrUpdate(
-                userNetworks, writtenNetworkList.second);
-
-        // Now capture the next written data triggered after the switch and ensure that user 2's
-        // network is now in user store data.
+        // The old user's network configurations have not changed since the last write, so they
+        // are not handed to the store data again. Capture the data written after the switch and
+        // ensure that user 2's network is now in user store data.
         writtenNetworkList = captureWriteNetworksListStoreData();
         WifiConfigurationTestUtil.assertConfigurationsEqualForConfigManagerAddOrUpdate(
                 expectedSharedNetworks, writtenNetworkList.first);
@@ -6018,6 +6057,28 @@ public class WifiConfigManagerTest extends WifiBaseTest {
         assertTrue(sharedNetwork.get(1).isMostRecentlyConnected);
     }
 
+    /**
+     * Verify that saving to store without any change to the configured networks since the last
+     * save does not hand the network lists to the store data again, so that their sections are
+     * not serialized again.
+     */
+    @Test
+    public void testSaveToStoreSkipsUnchangedNetworkLists() {
+        WifiConfiguration testNetwork = WifiConfigurationTestUtil.createOpenNetwork();
+        verifyAddNetworkToWifiConfigManager(testNetwork);
+        clearInvocations(mWifiConfigStore, mNetworkListSharedStoreData, mNetworkListUserStoreData);
+
+        mWifiConfigManager.saveToStore(true);
+        verify(mNetworkListSharedStoreData, never()).setConfigurations(any());
+        verify(mNetworkListUserStoreData, never()).setConfigurations(any());
+        verify(mWifiConfigStore).write(true);
+
+        // Updating the network after connection modifies it and saves to store.
+        mWifiConfigManager.updateNetworkAfterConnect(testNetwork.networkId, false, TEST_RSSI);
+        verify(mNetworkListSharedStoreData).setConfigurations(any());
+        verify(mNetworkListUserStoreData).setConfigurations(any());
+    }
+
     /**
      * Verify scan comparator gives the most recently connected network highest priority
      */
@@ -6550,6 +6611,9 @@ public class WifiConfigManagerTest extends WifiBaseTest {
         assertTrue(mergedNetwork.isSecurityType(upgradableSecurityType));
         assertFalse(mergedNetwork.getSecurityParams(upgradableSecurityType)
                 .isAddedByAutoUpgrade());
+        // The merge may change the profile key of the network, it should be found by the new one.
+        assertEquals(mergedNetwork.networkId, mWifiConfigManager.getConfiguredNetwork(
+                mergedNetwork.getProfileKey()).networkId);
     }
 
     /**
@@ -63,8 +63,10 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 /**
@@ -415,6 +417,207 @@ public class WifiConfigStoreTest extends WifiBaseTest {
         assertEquals("asdfa", mUserStoreData.getData());
     }
 
+    /**
+     * Tests a write with only one of the sections of a store file having new data.
+     * Expected behaviour: Only the section with new data should be serialized again, and the
+     * other section should be written from its previous serialization.
+     */
+    @Test
+    public void testWriteOnlySerializesSectionsWithNewData() throws Exception {
+        MockStoreData otherSharedStoreData =
+                new MockStoreData(WifiConfigStore.STORE_FILE_SHARED_GENERAL, "TestHeader2");
+        mWifiConfigStore.registerStoreData(mSharedStoreData);
+        mWifiConfigStore.registerStoreData(otherSharedStoreData);
+
+        mSharedStoreData.setData("abcds");
+        otherSharedStoreData.setData("asdfa");
+        mWifiConfigStore.write(true);
+
+        // Change the data of the first section without indicating new data.
+        mSharedStoreData.setHasAnyNewData(false);
+        mSharedStoreData.setData(TEST_SHARE_DATA);
+        otherSharedStoreData.setData(TEST_USER_DATA);
+        mWifiConfigStore.write(true);
+
+        verify(mWifiMetrics).noteWifiConfigStoreSectionSerializeDuration(
+                eq(mSharedStoreData.getName()), anyInt());
+        verify(mWifiMetrics, times(2)).noteWifiConfigStoreSectionSerializeDuration(
+                eq(otherSharedStoreData.getName()), anyInt());
+
+        mWifiConfigStore.read();
+        assertEquals("abcds", mSharedStoreData.getData());
+        assertEquals(TEST_USER_DATA, otherSharedStoreData.getData());
+    }
+
+    /**
+     * Tests writes of a store file with a {@link RandomizedMacStoreData} whose MAC address
+     * mapping has not been set again since the first write.
+     * Expected behaviour: The MAC address map section should only be serialized by the first
+     * write, and the later write should reuse its previous serialization.
+     */
+    @Test
+    public void testWriteDoesNotSerializeUnchangedRandomizedMacStoreData() throws Exception {
+        RandomizedMacStoreData randomizedMacStoreData = new RandomizedMacStoreData();
+        mWifiConfigStore.registerStoreData(mSharedStoreData);
+        mWifiConfigStore.registerStoreData(randomizedMacStoreData);
+
+        Map<String, String> macMapping = new HashMap<>();
+        macMapping.put("\"TestSsid\"NONE", "02:00:00:00:00:01");
+        randomizedMacStoreData.setMacMapping(macMapping);
+        mSharedStoreData.setData("abcds");
+        mWifiConfigStore.write(true);
+        assertFalse(randomizedMacStoreData.hasNewDataToSerialize());
+
+        mSharedStoreData.setData(TEST_SHARE_DATA);
+        mWifiConfigStore.write(true);
+
+        verify(mWifiMetrics).noteWifiConfigStoreSectionSerializeDuration(
+                eq(randomizedMacStoreData.getName()), anyInt());
+        verify(mWifiMetrics, times(2)).noteWifiConfigStoreSectionSerializeDuration(
+                eq(mSharedStoreData.getName()), anyInt());
+
+        mWifiConfigStore.read();
+        assertEquals(TEST_SHARE_DATA, mSharedStoreData.getData());
+        assertEquals(macMapping, randomizedMacStoreData.getMacMapping());
+    }
+
+    /**
+     * Tests the buffered writes with an I/O handler.
+     * Expected behaviour: The writes should be performed on the I/O handler, and back to back
+     * writes should be coalesced into a single write of the latest data.
+     */
+    @Test
+    public void testBufferedWritesOnIoHandlerAreCoalesced() throws Exception {
+        TestLooper ioLooper = createWifiConfigStoreWithIoHandler();
+
+        mSharedStoreData.setData("abcds");
+        mUserStoreData.setData("asdfa");
+        mWifiConfigStore.write(false);
+        mAlarmManager.dispatch(WifiConfigStore.BUFFERED_WRITE_ALARM_TAG);
+        mLooper.dispatchAll();
+        mUserStoreData.setData(TEST_USER_DATA);
+        mSharedStoreData.setData(TEST_SHARE_DATA);
+        mWifiConfigStore.write(false);
+        mAlarmManager.dispatch(WifiConfigStore.BUFFERED_WRITE_ALARM_TAG);
+        mLooper.dispatchAll();
+
+        assertFalse(mAlarmManager.isPending(WifiConfigStore.BUFFERED_WRITE_ALARM_TAG));
+        assertFalse(mSharedStore.isStoreWritten());
+        assertFalse(mUserStore.isStoreWritten());
+        verify(mWifiMetrics, never()).noteWifiConfigStoreWriteDuration(anyInt());
+
+        assertEquals(1, ioLooper.dispatchAll());
+        assertTrue(mSharedStore.isStoreWritten());
+        assertTrue(mUserStore.isStoreWritten());
+        verify(mWifiMetrics).noteWifiConfigStoreWriteDuration(anyInt());
+
+        // Verify the latest data was written.
+        mWifiConfigStore.read();
+        assertEquals(TEST_USER_DATA, mUserStoreData.getData());
+        assertEquals(TEST_SHARE_DATA, mSharedStoreData.getData());
+    }
+
+    /**
+     * Tests the force write with an I/O handler, while a buffered write is pending on it.
+     * Expected behaviour: The force write should be performed on the calling thread, along with
+     * the pending buffered write.
+     */
+    @Test
+    public void testForceWriteWithIoHandlerIsSynchronous() throws Exception {
+        TestLooper ioLooper = createWifiConfigStoreWithIoHandler();
+
+        mSharedStoreData.setData(TEST_SHARE_DATA);
+        mWifiConfigStore.write(false);
+        mAlarmManager.dispatch(WifiConfigStore.BUFFERED_WRITE_ALARM_TAG);
+        mLooper.dispatchAll();
+        mUserStoreData.setData(TEST_USER_DATA);
+        mWifiConfigStore.write(true);
+
+        assertTrue(mSharedStore.isStoreWritten());
+        assertTrue(mUserStore.isStoreWritten());
+        verify(mWifiMetrics).noteWifiConfigStoreWriteDuration(anyInt());
+
+        // The write posted to the I/O handler has nothing left to write.
+        ioLooper.dispatchAll();
+        verify(mWifiMetrics).noteWifiConfigStoreWriteDuration(anyInt());
+    }
+
+    /**
+     * Tests the read and user switch with an I/O handler, while a buffered write is pending on
+     * it.
+     * Expected behaviour: The pending write should be performed before reading the store files.
+     */
+    @Test
+    public void testReadWithIoHandlerFlushesPendingWrites() throws Exception {
+        createWifiConfigStoreWithIoHandler();
+
+        mSharedStoreData.setData(TEST_SHARE_DATA);
+        mUserStoreData.setData(TEST_USER_DATA);
+        mWifiConfigStore.write(false);
+        mAlarmManager.dispatch(WifiConfigStore.BUFFERED_WRITE_ALARM_TAG);
+        mLooper.dispatchAll();
+
+        mWifiConfigStore.read();
+        assertTrue(mSharedStore.isStoreWritten());
+        assertTrue(mUserStore.isStoreWritten());
+        assertEquals(TEST_USER_DATA, mUserStoreData.getData());
+        assertEquals(TEST_SHARE_DATA, mSharedStoreData.getData());
+
+        mUserStoreData.setData("asdfa");
+        mWifiConfigStore.write(false);
+        mAlarmManager.dispatch(WifiConfigStore.BUFFERED_WRITE_ALARM_TAG);
+        mLooper.dispatchAll();
+
+        mWifiConfigStore.switchUserStoresAndRead(mUserStores);
+        assertTrue(mUserStore.isStoreWritten());
+        assertEquals("asdfa", mUserStoreData.getData());
+    }
+
+    /**
+     * Tests a failure of the write performed on the I/O handler.
+     * Expected behaviour: The failure should be reported by the next write, and the data should
+     * be written again by the next force write.
+     */
+    @Test
+    public void testAsyncWriteFailureIsReportedOnNextWrite() throws Exception {
+        TestLooper ioLooper = createWifiConfigStoreWithIoHandler();
+
+        mSharedStoreData.setData(TEST_SHARE_DATA);
+        mWifiConfigStore.write(false);
+        mAlarmManager.dispatch(WifiConfigStore.BUFFERED_WRITE_ALARM_TAG);
+        mLooper.dispatchAll();
+        mSharedStore.setWriteFailure(true);
+        ioLooper.dispatchAll();
+        assertFalse(mSharedStore.isStoreWritten());
+
+        try {
+            mWifiConfigStore.write(false);
+            fail("Expected IOException");
+        } catch (IOException e) {
+            // Expected.
+        }
+
+        mSharedStore.setWriteFailure(false);
+        mWifiConfigStore.write(true);
+        assertTrue(mSharedStore.isStoreWritten());
+    }
+
+    /**
+     * Creates a WifiConfigStore writing the buffered data on a separate I/O handler, and reads the
+     * user stores.
+     *
+     * @return the looper of the I/O handler.
+     */
+    private TestLooper createWifiConfigStoreWithIoHandler() throws Exception {
+        TestLooper ioLooper = new TestLooper();
+        mWifiConfigStore = new WifiConfigStore(mContext, new Handler(mLooper.getLooper()),
+                new Handler(ioLooper.getLooper()), mClock, mWifiMetrics,
+                Arrays.asList(mSharedStore, mSharedSoftApStore));
+        mWifiConfigStore.registerStoreData(mSharedStoreData);
+        mWifiConfigStore.registerStoreData(mUserStoreData);
+        mWifiConfigStore.switchUserStoresAndRead(mUserStores);
+        return ioLooper;
+    }
 
     /**
      * Tests the read API behaviour after a write to the store files.
@@ -1059,6 +1262,7 @@ public class WifiConfigStoreTest extends WifiBaseTest {
     private class MockStoreFile extends StoreFile {
         private byte[] mStoreBytes;
         private boolean mStoreWritten;
+        private boolean mWriteFailure;
 
         MockStoreFile(@WifiConfigStore.StoreFileId int fileId) {
             super(new File("MockStoreFile"), fileId, UserHandle.ALL, mEncryptionUtil);
@@ -1076,7 +1280,10 @@ public class WifiConfigStoreTest extends WifiBaseTest {
         }
 
         @Override
-        public void writeBufferedRawData() {
+        public void writeBufferedRawData() throws IOException {
+            if (mWriteFailure) {
+                throw new IOException("Write failure");
+            }
             if (!ArrayUtils.isEmpty(mStoreBytes)) {
                 mStoreWritten = true;
             }
@@ -1089,6 +1296,10 @@ public class WifiConfigStoreTest extends WifiBaseTest {
         public boolean isStoreWritten() {
             return mStoreWritten;
         }
+
+        public void setWriteFailure(boolean writeFailure) {
+            mWriteFailure = writeFailure;
+        }
     }
 
     /**
@@ -1099,11 +1310,17 @@ public class WifiConfigStoreTest extends WifiBaseTest {
         private static final String XML_TAG_TEST_DATA = "TestData";
 
         private @WifiConfigStore.StoreFileId int mFileId;
+        private String mName;
         private String mData;
         private boolean mHasAnyNewData = true;
 
         MockStoreData(@WifiConfigStore.StoreFileId int fileId) {
+            this(fileId, XML_TAG_TEST_HEADER);
+        }
+
+        MockStoreData(@WifiConfigStore.StoreFileId int fileId, String name) {
             mFileId = fileId;
+            mName = name;
         }
 
         @Override
@@ -1134,7 +1351,7 @@ public class WifiConfigStoreTest extends WifiBaseTest {
 
         @Override
         public String getName() {
-            return XML_TAG_TEST_HEADER;
+            return mName;
         }
 
         @Override
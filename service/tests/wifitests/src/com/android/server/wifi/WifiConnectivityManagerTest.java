@@ -475,7 +475,8 @@ public class WifiConnectivityManagerTest extends WifiBaseTest {
                 mWifiLastResortWatchdog, mOpenNetworkNotifier,
                 mWifiMetrics, new Handler(mLooper.getLooper()), mClock,
                 mLocalLog, mWifiScoreCard, mWifiBlocklistMonitor, mWifiChannelUtilization,
-                mPasspointManager, mDeviceConfigFacade, mActiveModeWarden, mWifiGlobals);
+                mPasspointManager, mDeviceConfigFacade, mActiveModeWarden, mWifiGlobals,
+                new HiddenNetworkScanScheduler(mWifiScoreCard));
         verify(mActiveModeWarden, atLeastOnce()).registerModeChangeCallback(
                 mModeChangeCallbackCaptor.capture());
         verify(mContext, atLeastOnce()).registerReceiver(
@@ -1058,6 +1058,46 @@ public class WifiNetworkSelectorTest extends WifiBaseTest {
         verify(mWifiMetrics, atLeastOnce()).setNetworkSelectorExperimentId(anyInt());
     }
 
+    /**
+     * Verify that the throughput of a scan result nominated by multiple nominators is only
+     * predicted once, and that the network selection durations are reported.
+     */
+    @Test
+    public void testThroughputPredictedOncePerScanResult() {
+        mWifiNetworkSelector.registerNetworkNominator(new PlaceholderNominator(0,
+                WifiNetworkSelector.NetworkNominator.NOMINATOR_ID_SCORED));
+        mWifiNetworkSelector.registerNetworkNominator(new PlaceholderNominator(0,
+                WifiNetworkSelector.NetworkNominator.NOMINATOR_ID_SAVED));
+
+        String[] ssids = {"\"test1\"", "\"test2\""};
+        String[] bssids = {"6c:f3:7f:ae:8c:f3", "6c:f3:7f:ae:8c:f4"};
+        int[] freqs = {2437, 5180};
+        String[] caps = {"[WPA2-PSK][ESS]", "[WPA2-PSK][ESS]"};
+        int[] levels = {mThresholdMinimumRssi2G + RSSI_BUMP, mThresholdMinimumRssi5G + RSSI_BUMP};
+        int[] securities = {SECURITY_PSK, SECURITY_PSK};
+        // VHT cap IE
+        byte[] iesBytes = {(byte) 0x92, (byte) 0x01, (byte) 0x80, (byte) 0x33, (byte) 0xaa,
+                (byte) 0xff, (byte) 0x00, (byte) 0x00, (byte) 0xaa, (byte) 0xff, (byte) 0x00,
+                (byte) 0x00};
+        byte[][] iesByteStream = {iesBytes, iesBytes};
+        ScanDetailsAndWifiConfigs scanDetailsAndConfigs =
+                WifiNetworkSelectorTestUtil.setupScanDetailsAndConfigStore(ssids, bssids,
+                        freqs, caps, levels, securities, mWifiConfigManager, mClock, iesByteStream);
+        when(mThroughputPredictor.predictThroughput(any(), anyInt(), anyInt(), anyInt(),
+                anyInt(), anyInt(), anyInt(), anyInt(), anyBoolean())).thenReturn(100);
+
+        List<WifiCandidates.Candidate> candidates = mWifiNetworkSelector.getCandidatesFromScan(
+                scanDetailsAndConfigs.getScanDetails(), new HashSet<>(),
+                Arrays.asList(new ClientModeManagerState(TEST_IFACE_NAME, false, true, mWifiInfo)),
+                false, true, true);
+
+        assertEquals(1, candidates.size());
+        assertEquals(100, candidates.get(0).getPredictedThroughputMbps());
+        verify(mThroughputPredictor).predictThroughput(any(), anyInt(), anyInt(), anyInt(),
+                anyInt(), anyInt(), anyInt(), anyInt(), anyBoolean());
+        verify(mWifiMetrics).noteNetworkSelectionDuration(anyInt(), anyInt());
+    }
+
     /**
      * Wifi network selector does not perform network selection when current network has high
      * quality but no active stream
@@ -4068,6 +4068,49 @@ public class WifiNetworkSuggestionsManagerTest extends WifiBaseTest {
         }
     }
 
+    /**
+     * Verify that suggestions with the same SSID only match the scan results of their security
+     * type, and that the match info of the scan results is only computed once when the same scan
+     * results are matched again.
+     */
+    @Test
+    public void getMatchingScanResultsTestWithSameScanResultsMatchedTwice() {
+        String ssid = WifiConfigurationTestUtil.createOpenNetwork().SSID;
+        WifiNetworkSuggestion openSuggestion = createWifiNetworkSuggestion(
+                WifiConfigurationTestUtil.createOpenNetwork(ssid),
+                null, false, false, true, true, DEFAULT_PRIORITY_GROUP);
+        WifiNetworkSuggestion pskSuggestion = createWifiNetworkSuggestion(
+                WifiConfigurationTestUtil.createPskNetwork(ssid),
+                null, false, false, true, true, DEFAULT_PRIORITY_GROUP);
+        List<WifiNetworkSuggestion> suggestions = List.of(openSuggestion, pskSuggestion);
+        ScanResult openScanResult =
+                createScanDetailForNetwork(openSuggestion.wifiConfiguration).getScanResult();
+        ScanResult pskScanResult =
+                createScanDetailForNetwork(pskSuggestion.wifiConfiguration).getScanResult();
+        ScanResult otherScanResult = createScanDetailForNetwork(
+                WifiConfigurationTestUtil.createOpenNetwork()).getScanResult();
+        List<ScanResult> allSrList = List.of(openScanResult, pskScanResult, otherScanResult);
+
+        MockitoSession session = ExtendedMockito.mockitoSession().strictness(Strictness.LENIENT)
+                .spyStatic(ScanResultMatchInfo.class).startMocking();
+        try {
+            for (int i = 0; i < 2; i++) {
+                Map<WifiNetworkSuggestion, List<ScanResult>> result =
+                        mWifiNetworkSuggestionsManager.getMatchingScanResults(
+                                suggestions, allSrList);
+                assertEquals(2, result.size());
+                assertEquals(List.of(openScanResult), result.get(openSuggestion));
+                assertEquals(List.of(pskScanResult), result.get(pskSuggestion));
+            }
+            for (ScanResult scanResult : allSrList) {
+                ExtendedMockito.verify(
+                        () -> ScanResultMatchInfo.fromScanResult(scanResult), times(1));
+            }
+        } finally {
+            session.finishMocking();
+        }
+    }
+
     /**
      * Verify when matching a SIM-Based network without IMSI protection, framework will mark it
      * auto-join disable and send notification. If user click on allow, will restore the auto-join
@@ -64,6 +64,7 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.junit.Assume.assumeTrue;
+import static org.mockito.AdditionalAnswers.returnsLastArg;
 import static org.mockito.AdditionalAnswers.returnsSecondArg;
 import static org.mockito.AdditionalMatchers.aryEq;
 import static org.mockito.ArgumentMatchers.notNull;
@@ -375,6 +376,7 @@ public class WifiServiceImplTest extends WifiBaseTest {
     @Mock OpenNetworkNotifier mOpenNetworkNotifier;
     @Mock WifiNotificationManager mWifiNotificationManager;
     @Mock SarManager mSarManager;
+    @Mock SupplicantStaIfaceHal mSupplicantStaIfaceHal;
     @Mock SelfRecovery mSelfRecovery;
     @Mock LastCallerInfoManager mLastCallerInfoManager;
     @Mock BuildProperties mBuildProperties;
@@ -506,6 +508,7 @@ public class WifiServiceImplTest extends WifiBaseTest {
         when(mClientSoftApCallback.asBinder()).thenReturn(mAppBinder);
         when(mAnotherSoftApCallback.asBinder()).thenReturn(mAnotherAppBinder);
         when(mWifiInjector.getSarManager()).thenReturn(mSarManager);
+        when(mWifiInjector.getSupplicantStaIfaceHal()).thenReturn(mSupplicantStaIfaceHal);
         mClientModeManagers = Arrays.asList(mClientModeManager, mock(ClientModeManager.class));
         when(mActiveModeWarden.getClientModeManagers()).thenReturn(mClientModeManagers);
         when(mWifiInjector.getSelfRecovery()).thenReturn(mSelfRecovery);
@@ -612,6 +615,7 @@ public class WifiServiceImplTest extends WifiBaseTest {
         when(mockRunner.call(any(), any())).then(returnsSecondArg());
         when(mockRunner.call(any(), any(int.class))).then(returnsSecondArg());
         when(mockRunner.call(any(), any(boolean.class))).then(returnsSecondArg());
+        when(mockRunner.callCoalesced(any(), any(), any(), any())).then(returnsLastArg());
         when(mockRunner.post(any())).thenReturn(false);
 
         when(mWifiInjector.getWifiThreadRunner()).thenReturn(mockRunner);
@@ -2489,7 +2493,7 @@ public class WifiServiceImplTest extends WifiBaseTest {
      */
     @Test
     public void testConfiguredNetworkListAreEmptyFromAppWithoutPermission() throws Exception {
-        when(mWifiConfigManager.getSavedNetworks(anyInt()))
+        when(mWifiConfigManager.getSavedNetworksSnapshot(anyInt()))
                 .thenReturn(TEST_WIFI_CONFIGURATION_LIST);
 
         // no permission = target SDK=Q && not a carrier app
@@ -2508,7 +2512,7 @@ public class WifiServiceImplTest extends WifiBaseTest {
      */
     @Test
     public void testConfiguredNetworkListAreEmptyOnSecurityException() throws Exception {
-        when(mWifiConfigManager.getSavedNetworks(anyInt()))
+        when(mWifiConfigManager.getSavedNetworksSnapshot(anyInt()))
                 .thenReturn(TEST_WIFI_CONFIGURATION_LIST);
 
         doThrow(new SecurityException()).when(mWifiPermissionsUtil).enforceCanAccessScanResults(
@@ -2527,7 +2531,7 @@ public class WifiServiceImplTest extends WifiBaseTest {
      */
     @Test
     public void testConfiguredNetworkListAreVisibleFromPermittedApp() throws Exception {
-        when(mWifiConfigManager.getSavedNetworks(anyInt()))
+        when(mWifiConfigManager.getSavedNetworksSnapshot(anyInt()))
                 .thenReturn(TEST_WIFI_CONFIGURATION_LIST);
 
         when(mContext.checkPermission(eq(android.Manifest.permission.NETWORK_SETTINGS),
@@ -2538,7 +2542,7 @@ public class WifiServiceImplTest extends WifiBaseTest {
                 mWifiServiceImpl.getConfiguredNetworks(TEST_PACKAGE, TEST_FEATURE_ID, false);
         mLooper.stopAutoDispatchAndIgnoreExceptions();
 
-        verify(mWifiConfigManager).getSavedNetworks(eq(Process.WIFI_UID));
+        verify(mWifiConfigManager).getSavedNetworksSnapshot(eq(Process.WIFI_UID));
         WifiConfigurationTestUtil.assertConfigurationsEqualForBackup(
                 TEST_WIFI_CONFIGURATION_LIST, configs.getList());
     }
@@ -2564,7 +2568,7 @@ public class WifiServiceImplTest extends WifiBaseTest {
                 2, 1200000, "\"blue\"", false, true, null, null, SECURITY_NONE);
         WifiConfiguration nonCallerNetwork1 = WifiConfigurationTestUtil.generateWifiConfig(
                 3, 1100000, "\"cyan\"", true, true, null, null, SECURITY_NONE);
-        when(mWifiConfigManager.getSavedNetworks(anyInt())).thenReturn(Arrays.asList(
+        when(mWifiConfigManager.getSavedNetworksSnapshot(anyInt())).thenReturn(Arrays.asList(
                 callerNetwork0, callerNetwork1, nonCallerNetwork0, nonCallerNetwork1));
 
         // Caller does NOT need to have location permission to be able to retrieve its own networks.
@@ -2665,10 +2669,11 @@ public class WifiServiceImplTest extends WifiBaseTest {
     }
 
     /**
-     * Ensure that we handle scan results failure when posting the runnable to handler fails.
+     * Ensure that scan results are returned without posting to the wifi thread, even when posting
+     * the runnable to handler would fail.
      */
     @Test
-    public void testGetScanResultsFailureInRunWithScissors() {
+    public void testGetScanResultsDoesNotRunWithScissors() {
         mWifiServiceImpl = makeWifiServiceImplWithMockRunnerWhichTimesOut();
 
         ScanResult[] scanResults =
@@ -2680,13 +2685,12 @@ public class WifiServiceImplTest extends WifiBaseTest {
 
         String packageName = "test.com";
         String featureId = "test.com.featureId";
-        mLooper.startAutoDispatch();
         List<ScanResult> retrievedScanResultList = mWifiServiceImpl.getScanResults(packageName,
                 featureId);
-        mLooper.stopAutoDispatchAndIgnoreExceptions();
-        verify(mScanRequestProxy, never()).getScanResults();
+        verify(mScanRequestProxy).getScanResults();
 
-        assertTrue(retrievedScanResultList.isEmpty());
+        ScanTestUtil.assertScanResultsEquals(scanResults,
+                retrievedScanResultList.toArray(new ScanResult[retrievedScanResultList.size()]));
     }
 
     /**
@@ -5434,6 +5438,7 @@ public class WifiServiceImplTest extends WifiBaseTest {
 
         verify(mWifiConfigManager, never()).resetSimNetworks();
         verify(mPasspointManager, never()).resetSimPasspointNetwork();
+        verify(mPasspointManager).onSimStateChanged();
         verify(mWifiNetworkSuggestionsManager, never()).resetSimNetworkSuggestions();
         verify(mWifiConfigManager, never()).stopRestrictingAutoJoinToSubscriptionId();
         verify(mSimRequiredNotifier).dismissSimRequiredNotification();
@@ -5618,7 +5623,7 @@ public class WifiServiceImplTest extends WifiBaseTest {
         credential.setRealm("example.com");
         config.setCredential(credential);
 
-        when(mWifiConfigManager.getSavedNetworks(anyInt()))
+        when(mWifiConfigManager.getSavedNetworksSnapshot(anyInt()))
                 .thenReturn(Arrays.asList(network));
         when(mPasspointManager.getProviderConfigs(anyInt(), anyBoolean()))
                 .thenReturn(Arrays.asList(config));
@@ -5658,7 +5663,7 @@ public class WifiServiceImplTest extends WifiBaseTest {
             fail();
         } catch (SecurityException e) {
         }
-        verify(mWifiConfigManager, never()).getSavedNetworks(anyInt());
+        verify(mWifiConfigManager, never()).getSavedNetworksSnapshot(anyInt());
         verify(mPasspointManager, never()).getProviderConfigs(anyInt(), anyBoolean());
     }
 
@@ -8227,7 +8232,7 @@ public class WifiServiceImplTest extends WifiBaseTest {
         long featureFlags = WifiManager.WIFI_FEATURE_WPA3_SAE | WifiManager.WIFI_FEATURE_OWE;
         List<WifiConfiguration> testConfigs = setupMultiTypeConfigs(
                 featureFlags, true, true);
-        when(mWifiConfigManager.getSavedNetworks(anyInt()))
+        when(mWifiConfigManager.getSavedNetworksSnapshot(anyInt()))
                 .thenReturn(testConfigs);
         when(mWifiConfigManager.getConfiguredNetworksWithPasswords())
                 .thenReturn(testConfigs);
@@ -8258,7 +8263,7 @@ public class WifiServiceImplTest extends WifiBaseTest {
         long featureFlags = WifiManager.WIFI_FEATURE_WPA3_SAE | WifiManager.WIFI_FEATURE_OWE;
         List<WifiConfiguration> testConfigs = setupMultiTypeConfigs(
                 featureFlags, false, false);
-        when(mWifiConfigManager.getSavedNetworks(anyInt()))
+        when(mWifiConfigManager.getSavedNetworksSnapshot(anyInt()))
                 .thenReturn(testConfigs);
         when(mWifiConfigManager.getConfiguredNetworksWithPasswords())
                 .thenReturn(testConfigs);
@@ -8289,7 +8294,7 @@ public class WifiServiceImplTest extends WifiBaseTest {
         long featureFlags = 0L;
         List<WifiConfiguration> testConfigs = setupMultiTypeConfigs(
                 featureFlags, true, true);
-        when(mWifiConfigManager.getSavedNetworks(anyInt()))
+        when(mWifiConfigManager.getSavedNetworksSnapshot(anyInt()))
                 .thenReturn(testConfigs);
         when(mWifiConfigManager.getConfiguredNetworksWithPasswords())
                 .thenReturn(testConfigs);
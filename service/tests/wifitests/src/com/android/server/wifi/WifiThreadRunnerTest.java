@@ -24,6 +24,7 @@ import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import android.os.Handler;
@@ -37,6 +38,11 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.mockito.Spy;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Supplier;
 
 @SmallTest
@@ -140,4 +146,82 @@ public class WifiThreadRunnerTest {
         verify(mHandler).post(mRunnable);
         verify(mRunnable, never()).run();
     }
+
+    @Test
+    public void callCoalescedSuccess_returnExpectedValue() {
+        Integer result = mWifiThreadRunner.callCoalesced("test", null, mSupplier,
+                VALUE_ON_TIMEOUT);
+
+        assertThat(result).isEqualTo(RESULT);
+        verify(mSupplier).get();
+    }
+
+    @Test
+    public void callCoalescedFailure_returnValueOnTimeout() {
+        doReturn(false).when(mHandler).post(any());
+
+        Integer result = mWifiThreadRunner.callCoalesced("test", null, mSupplier,
+                VALUE_ON_TIMEOUT);
+
+        assertThat(result).isEqualTo(VALUE_ON_TIMEOUT);
+        verify(mSupplier, never()).get();
+    }
+
+    @Test
+    public void callAsync_coalescesIdenticalPendingCalls() throws Exception {
+        CountDownLatch latch = blockHandlerThread();
+
+        CompletableFuture<Integer> future1 = mWifiThreadRunner.callAsync("test", 1, mSupplier,
+                TimeUnit.SECONDS.toMillis(10));
+        CompletableFuture<Integer> future2 = mWifiThreadRunner.callAsync("test", 1, mSupplier,
+                TimeUnit.SECONDS.toMillis(10));
+        CompletableFuture<Integer> future3 = mWifiThreadRunner.callAsync("test", 2, mSupplier,
+                TimeUnit.SECONDS.toMillis(10));
+        assertThat(future2).isSameInstanceAs(future1);
+        assertThat(future3).isNotSameInstanceAs(future1);
+
+        latch.countDown();
+        assertThat(future1.get(10, TimeUnit.SECONDS)).isEqualTo(RESULT);
+        assertThat(future3.get(10, TimeUnit.SECONDS)).isEqualTo(RESULT);
+        verify(mSupplier, times(2)).get();
+
+        // Calls made after the pending call ran are not coalesced with it.
+        CompletableFuture<Integer> future4 = mWifiThreadRunner.callAsync("test", 1, mSupplier,
+                TimeUnit.SECONDS.toMillis(10));
+        assertThat(future4).isNotSameInstanceAs(future1);
+        assertThat(future4.get(10, TimeUnit.SECONDS)).isEqualTo(RESULT);
+    }
+
+    @Test
+    public void callAsync_skipsCallNotRunBeforeTimeout() throws Exception {
+        CountDownLatch latch = blockHandlerThread();
+
+        CompletableFuture<Integer> future = mWifiThreadRunner.callAsync("test", null, mSupplier,
+                0);
+        Thread.sleep(10);
+        latch.countDown();
+
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            throw new AssertionError("Call should have timed out");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(TimeoutException.class);
+        }
+        verify(mSupplier, never()).get();
+    }
+
+    /**
+     * Blocks the handler thread until the returned latch is counted down.
+     */
+    private CountDownLatch blockHandlerThread() {
+        CountDownLatch latch = new CountDownLatch(1);
+        mHandler.post(() -> {
+            try {
+                latch.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                // Unblock.
+            }
+        });
+        return latch;
+    }
 }
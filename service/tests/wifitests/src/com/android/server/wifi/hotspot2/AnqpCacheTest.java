@@ -16,6 +16,7 @@
 
 package com.android.server.wifi.hotspot2;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
@@ -26,6 +27,7 @@ import static org.mockito.MockitoAnnotations.initMocks;
 import androidx.test.filters.SmallTest;
 
 import com.android.server.wifi.Clock;
+import com.android.server.wifi.DeviceConfigFacade;
 import com.android.server.wifi.WifiBaseTest;
 import com.android.server.wifi.hotspot2.anqp.ANQPElement;
 import com.android.server.wifi.hotspot2.anqp.Constants;
@@ -61,7 +63,10 @@ public class AnqpCacheTest extends WifiBaseTest {
     private static final String TEST_VENUE_URL2 = "https://www.android.com/";
     private static final String TEST_VENUE_URL3 = "https://support.google.com/";
 
+    private static final long CACHE_UPDATE_TIME_MILLISECONDS = 120000L;
+
     @Mock Clock mClock;
+    @Mock DeviceConfigFacade mDeviceConfigFacade;
     AnqpCache mCache;
 
     /**
@@ -131,6 +136,80 @@ public class AnqpCacheTest extends WifiBaseTest {
         assertNull(mCache.getEntry(ENTRY_KEY));
     }
 
+    /**
+     * Verify that the least recently used entry is evicted when the cache is full.
+     */
+    @Test
+    public void evictLeastRecentlyUsedEntryWhenFull() throws Exception {
+        when(mDeviceConfigFacade.getAnqpCacheMaxSize()).thenReturn(2);
+        mCache = new AnqpCache(mClock, mDeviceConfigFacade);
+        ANQPNetworkKey key1 = new ANQPNetworkKey("test1", 0L, 0L, 1);
+        ANQPNetworkKey key2 = new ANQPNetworkKey("test2", 0L, 0L, 1);
+        ANQPNetworkKey key3 = new ANQPNetworkKey("test3", 0L, 0L, 1);
+        mCache.addEntry(key1, null);
+        mCache.addEntry(key2, null);
+        // Access the first entry so that the second one becomes the least recently used.
+        assertNotNull(mCache.getEntry(key1));
+        mCache.addEntry(key3, null);
+
+        assertEquals(2, mCache.size());
+        assertEquals(1, mCache.getEvictionCount());
+        assertNotNull(mCache.getEntry(key1));
+        assertNull(mCache.getEntry(key2));
+        assertNotNull(mCache.getEntry(key3));
+    }
+
+    /**
+     * Verify that an entry whose lifetime was extended by an update is not swept at its
+     * original expiry time.
+     */
+    @Test
+    public void sweepKeepsUpdatedEntry() throws Exception {
+        mCache.addEntry(ENTRY_KEY, null);
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(CACHE_UPDATE_TIME_MILLISECONDS);
+        mCache.addOrUpdateEntry(ENTRY_KEY, new HashMap<>());
+
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(ANQPData.DATA_LIFETIME_MILLISECONDS);
+        mCache.sweep();
+        assertNotNull(mCache.getEntry(ENTRY_KEY));
+
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(
+                CACHE_UPDATE_TIME_MILLISECONDS + ANQPData.DATA_LIFETIME_MILLISECONDS);
+        mCache.sweep();
+        assertNull(mCache.getEntry(ENTRY_KEY));
+    }
+
+    /**
+     * Verify that a sweep does not mark the entries it checks as recently used, so that it does
+     * not change which entry is evicted when the cache is full.
+     */
+    @Test
+    public void sweepDoesNotChangeEvictionOrder() throws Exception {
+        when(mDeviceConfigFacade.getAnqpCacheMaxSize()).thenReturn(2);
+        mCache = new AnqpCache(mClock, mDeviceConfigFacade);
+        ANQPNetworkKey key1 = new ANQPNetworkKey("test1", 0L, 0L, 1);
+        ANQPNetworkKey key2 = new ANQPNetworkKey("test2", 0L, 0L, 1);
+        ANQPNetworkKey key3 = new ANQPNetworkKey("test3", 0L, 0L, 1);
+        mCache.addEntry(key1, null);
+        // Extend the lifetime of the first entry, then add the second one which becomes the most
+        // recently used.
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(CACHE_UPDATE_TIME_MILLISECONDS);
+        mCache.addOrUpdateEntry(key1, new HashMap<>());
+        mCache.addEntry(key2, null);
+
+        // The sweep checks the first entry at its original expiry time, and keeps it.
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(ANQPData.DATA_LIFETIME_MILLISECONDS);
+        mCache.sweep();
+        assertEquals(2, mCache.size());
+
+        // The first entry is still the least recently used one.
+        mCache.addEntry(key3, null);
+        assertEquals(1, mCache.getEvictionCount());
+        assertNull(mCache.getEntry(key1));
+        assertNotNull(mCache.getEntry(key2));
+        assertNotNull(mCache.getEntry(key3));
+    }
+
     private URL createUrlFromString(String stringUrl) {
         URL url;
         try {
@@ -238,7 +238,7 @@ public class PasspointManagerTest extends WifiBaseTest {
     @Before
     public void setUp() throws Exception {
         initMocks(this);
-        when(mObjectFactory.makeAnqpCache(mClock)).thenReturn(mAnqpCache);
+        when(mObjectFactory.makeAnqpCache(eq(mClock), any())).thenReturn(mAnqpCache);
         when(mObjectFactory.makeANQPRequestManager(any(), eq(mClock)))
                 .thenReturn(mAnqpRequestManager);
         when(mObjectFactory.makeOsuNetworkConnection(any(Context.class)))
@@ -1214,6 +1214,52 @@ public class PasspointManagerTest extends WifiBaseTest {
             session.finishMocking();
         }
     }
+    /**
+     * Verify that the provider matches of a scan result are cached until the SIM state changes,
+     * and are not cached while a provider is blocked.
+     */
+    @Test
+    public void getAllMatchingProvidersCachedUntilSimStateChangedOrBlocked() {
+        // static mocking
+        MockitoSession session =
+                com.android.dx.mockito.inline.extended.ExtendedMockito.mockitoSession().mockStatic(
+                        InformationElementUtil.class).startMocking();
+        try {
+            PasspointProvider provider = addTestProvider(TEST_FQDN + 0, TEST_FRIENDLY_NAME,
+                    TEST_PACKAGE, false, null);
+            ANQPData entry = new ANQPData(mClock, null);
+            InformationElementUtil.Vsa vsa = new InformationElementUtil.Vsa();
+            vsa.anqpDomainID = TEST_ANQP_DOMAIN_ID2;
+
+            when(mAnqpCache.getEntry(TEST_ANQP_KEY2)).thenReturn(entry);
+            when(InformationElementUtil.getHS2VendorSpecificIE(isNull())).thenReturn(vsa);
+            when(provider.match(anyMap(), isNull(), any(ScanResult.class)))
+                    .thenReturn(PasspointMatch.HomeProvider);
+            ScanResult scanResult = createTestScanResult();
+
+            assertEquals(1, mManager.getAllMatchedProviders(scanResult).size());
+            assertEquals(1, mManager.getAllMatchedProviders(scanResult).size());
+            verify(provider, times(1)).match(anyMap(), isNull(), any(ScanResult.class));
+
+            mManager.onSimStateChanged();
+            assertEquals(1, mManager.getAllMatchedProviders(scanResult).size());
+            verify(provider, times(2)).match(anyMap(), isNull(), any(ScanResult.class));
+
+            // The matches computed while the provider is blocked are not cached.
+            mManager.onSimStateChanged();
+            when(provider.isReauthBlocked()).thenReturn(true);
+            when(provider.match(anyMap(), isNull(), any(ScanResult.class)))
+                    .thenReturn(PasspointMatch.None);
+            assertTrue(mManager.getAllMatchedProviders(scanResult).isEmpty());
+            when(provider.isReauthBlocked()).thenReturn(false);
+            when(provider.match(anyMap(), isNull(), any(ScanResult.class)))
+                    .thenReturn(PasspointMatch.HomeProvider);
+            assertEquals(1, mManager.getAllMatchedProviders(scanResult).size());
+        } finally {
+            session.finishMocking();
+        }
+    }
+
     /**
      * Verify that an expected map of FQDN and a list of ScanResult will be returned when provided
      * scanResults are matched to installed Passpoint profiles.
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.hotspot2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import android.util.Pair;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.wifi.Clock;
+import com.android.server.wifi.WifiBaseTest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Unit tests for {@link com.android.server.wifi.hotspot2.PasspointMatchCache}.
+ */
+@SmallTest
+public class PasspointMatchCacheTest extends WifiBaseTest {
+    private static final ANQPNetworkKey TEST_ANQP_KEY = new ANQPNetworkKey("test", 0L, 0L, 1);
+    private static final long TEST_BSSID = 0x123456L;
+    private static final long TEST_TIMESTAMP = 1000L;
+
+    @Mock Clock mClock;
+    private PasspointMatchCache mCache;
+    private List<Pair<PasspointProvider, PasspointMatch>> mMatches;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(0L);
+        mCache = new PasspointMatchCache();
+        mMatches = Arrays.asList(
+                Pair.create(mock(PasspointProvider.class), PasspointMatch.HomeProvider));
+    }
+
+    /**
+     * Verify that cached results are returned for the same scan result and ANQP data.
+     */
+    @Test
+    public void getCachedResults() {
+        ANQPData anqpData = new ANQPData(mClock, null);
+        assertNull(mCache.get(TEST_ANQP_KEY, TEST_BSSID, TEST_TIMESTAMP, anqpData));
+        mCache.put(TEST_ANQP_KEY, TEST_BSSID, TEST_TIMESTAMP, anqpData, mMatches);
+
+        assertEquals(mMatches, mCache.get(TEST_ANQP_KEY, TEST_BSSID, TEST_TIMESTAMP, anqpData));
+        assertEquals(1, mCache.getHitCount());
+        assertEquals(1, mCache.getMissCount());
+
+        // A new scan of the same AP is a miss.
+        assertNull(mCache.get(TEST_ANQP_KEY, TEST_BSSID, TEST_TIMESTAMP + 1, anqpData));
+    }
+
+    /**
+     * Verify that cached results are invalidated when the ANQP data is updated or replaced.
+     */
+    @Test
+    public void invalidateOnAnqpDataChange() {
+        ANQPData anqpData = new ANQPData(mClock, null);
+        mCache.put(TEST_ANQP_KEY, TEST_BSSID, TEST_TIMESTAMP, anqpData, mMatches);
+        assertNull(mCache.get(TEST_ANQP_KEY, TEST_BSSID, TEST_TIMESTAMP,
+                new ANQPData(mClock, null)));
+
+        mCache.put(TEST_ANQP_KEY, TEST_BSSID, TEST_TIMESTAMP, anqpData, mMatches);
+        anqpData.update(new HashMap<>());
+        assertNull(mCache.get(TEST_ANQP_KEY, TEST_BSSID, TEST_TIMESTAMP, anqpData));
+    }
+
+    /**
+     * Verify that cached results are invalidated when the providers changed.
+     */
+    @Test
+    public void invalidateOnProvidersChanged() {
+        ANQPData anqpData = new ANQPData(mClock, null);
+        mCache.put(TEST_ANQP_KEY, TEST_BSSID, TEST_TIMESTAMP, anqpData, mMatches);
+        mCache.onProvidersChanged();
+        assertNull(mCache.get(TEST_ANQP_KEY, TEST_BSSID, TEST_TIMESTAMP, anqpData));
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.hotspot2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.net.wifi.hotspot2.PasspointConfiguration;
+import android.net.wifi.hotspot2.pps.Credential;
+import android.net.wifi.hotspot2.pps.HomeSp;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.wifi.WifiBaseTest;
+import com.android.server.wifi.hotspot2.anqp.ANQPElement;
+import com.android.server.wifi.hotspot2.anqp.CellularNetwork;
+import com.android.server.wifi.hotspot2.anqp.Constants.ANQPElementType;
+import com.android.server.wifi.hotspot2.anqp.DomainNameElement;
+import com.android.server.wifi.hotspot2.anqp.NAIRealmData;
+import com.android.server.wifi.hotspot2.anqp.NAIRealmElement;
+import com.android.server.wifi.hotspot2.anqp.RoamingConsortiumElement;
+import com.android.server.wifi.hotspot2.anqp.ThreeGPPNetworkElement;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Unit tests for {@link com.android.server.wifi.hotspot2.PasspointMatchIndex}.
+ */
+@SmallTest
+public class PasspointMatchIndexTest extends WifiBaseTest {
+    private static final String TEST_ID_1 = "id1";
+    private static final String TEST_ID_2 = "id2";
+    private static final String TEST_FQDN = "test.com";
+    private static final String TEST_FQDN_2 = "other.org";
+    private static final String TEST_REALM = "realm.net";
+    private static final long TEST_OI = 0x1234L;
+    private static final String TEST_IMSI = "123456*";
+
+    private PasspointMatchIndex mIndex;
+
+    @Before
+    public void setUp() throws Exception {
+        mIndex = new PasspointMatchIndex();
+    }
+
+    private static PasspointConfiguration createConfig(String fqdn, String realm, long[] ois,
+            String imsi) {
+        PasspointConfiguration config = new PasspointConfiguration();
+        HomeSp homeSp = new HomeSp();
+        homeSp.setFqdn(fqdn);
+        homeSp.setRoamingConsortiumOis(ois);
+        config.setHomeSp(homeSp);
+        Credential credential = new Credential();
+        credential.setRealm(realm);
+        if (imsi != null) {
+            Credential.SimCredential simCredential = new Credential.SimCredential();
+            simCredential.setImsi(imsi);
+            credential.setSimCredential(simCredential);
+        }
+        config.setCredential(credential);
+        return config;
+    }
+
+    private static Map<ANQPElementType, ANQPElement> domainElements(String... domains) {
+        Map<ANQPElementType, ANQPElement> elements = new HashMap<>();
+        elements.put(ANQPElementType.ANQPDomName, new DomainNameElement(Arrays.asList(domains)));
+        return elements;
+    }
+
+    /**
+     * Verify that a provider is a candidate for APs advertising its FQDN or a sub-domain of it.
+     */
+    @Test
+    public void matchDomainAndSubDomain() {
+        mIndex.addProvider(TEST_ID_1, createConfig(TEST_FQDN, null, null, null));
+        mIndex.addProvider(TEST_ID_2, createConfig(TEST_FQDN_2, null, null, null));
+
+        assertEquals(Collections.singleton(TEST_ID_1),
+                mIndex.getCandidates(domainElements(TEST_FQDN), null));
+        assertEquals(Collections.singleton(TEST_ID_1),
+                mIndex.getCandidates(domainElements("hotspot." + TEST_FQDN), null));
+        assertTrue(mIndex.getCandidates(domainElements("com"), null).isEmpty());
+        assertTrue(mIndex.getCandidates(domainElements("unknown.com"), null).isEmpty());
+    }
+
+    /**
+     * Verify that providers are looked up by NAI realm.
+     */
+    @Test
+    public void matchNaiRealm() {
+        mIndex.addProvider(TEST_ID_1, createConfig(TEST_FQDN, TEST_REALM, null, null));
+        Map<ANQPElementType, ANQPElement> elements = new HashMap<>();
+        elements.put(ANQPElementType.ANQPNAIRealm, new NAIRealmElement(Arrays.asList(
+                new NAIRealmData(Arrays.asList(TEST_REALM), Collections.emptyList()))));
+
+        assertEquals(Collections.singleton(TEST_ID_1), mIndex.getCandidates(elements, null));
+    }
+
+    /**
+     * Verify that providers are looked up by Roaming Consortium OI from the ANQP element.
+     */
+    @Test
+    public void matchRoamingConsortiumOi() {
+        mIndex.addProvider(TEST_ID_1, createConfig(TEST_FQDN, null, new long[] {TEST_OI}, null));
+        Map<ANQPElementType, ANQPElement> elements = new HashMap<>();
+        elements.put(ANQPElementType.ANQPRoamingConsortium,
+                new RoamingConsortiumElement(Arrays.asList(TEST_OI)));
+
+        assertEquals(Collections.singleton(TEST_ID_1), mIndex.getCandidates(elements, null));
+
+        elements.put(ANQPElementType.ANQPRoamingConsortium,
+                new RoamingConsortiumElement(Arrays.asList(TEST_OI + 1)));
+        assertTrue(mIndex.getCandidates(elements, null).isEmpty());
+    }
+
+    /**
+     * Verify that SIM credential providers are looked up by the PLMNs of the 3GPP network
+     * element and of the 3GPP network domain name.
+     */
+    @Test
+    public void matchPlmn() {
+        mIndex.addProvider(TEST_ID_1, createConfig(TEST_FQDN, null, null, TEST_IMSI));
+        Map<ANQPElementType, ANQPElement> elements = new HashMap<>();
+        elements.put(ANQPElementType.ANQP3GPPNetwork, new ThreeGPPNetworkElement(Arrays.asList(
+                new CellularNetwork(Arrays.asList("123456")))));
+        assertEquals(Collections.singleton(TEST_ID_1), mIndex.getCandidates(elements, null));
+
+        assertEquals(Collections.singleton(TEST_ID_1), mIndex.getCandidates(
+                domainElements("wlan.mnc456.mcc123.3gppnetwork.org"), null));
+        assertTrue(mIndex.getCandidates(
+                domainElements("wlan.mnc457.mcc123.3gppnetwork.org"), null).isEmpty());
+    }
+
+    /**
+     * Verify that removing or replacing a provider updates the index.
+     */
+    @Test
+    public void removeAndReplaceProvider() {
+        mIndex.addProvider(TEST_ID_1, createConfig(TEST_FQDN, null, null, null));
+        mIndex.addProvider(TEST_ID_1, createConfig(TEST_FQDN_2, null, null, null));
+        assertEquals(1, mIndex.size());
+        assertTrue(mIndex.getCandidates(domainElements(TEST_FQDN), null).isEmpty());
+        assertEquals(Collections.singleton(TEST_ID_1),
+                mIndex.getCandidates(domainElements(TEST_FQDN_2), null));
+
+        mIndex.removeProvider(TEST_ID_1);
+        assertEquals(0, mIndex.size());
+        assertTrue(mIndex.getCandidates(domainElements(TEST_FQDN_2), null).isEmpty());
+    }
+
+    /**
+     * Verify that null is returned when the AP doesn't advertise any element the index can be
+     * looked up with.
+     */
+    @Test
+    public void noIndexableElementReturnsNull() {
+        mIndex.addProvider(TEST_ID_1, createConfig(TEST_FQDN, null, null, null));
+        Set<String> candidates = mIndex.getCandidates(new HashMap<>(), null);
+        assertNull(candidates);
+    }
+}
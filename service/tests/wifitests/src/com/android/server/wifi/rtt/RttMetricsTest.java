@@ -584,6 +584,48 @@ public class RttMetricsTest extends WifiBaseTest {
                 log.histogramRequestIntervalMs.length, equalTo(histogramRequestIntervalMsLength));
     }
 
+    /**
+     * Verify that recordBatchedRangingOperation() and recordRequestLatency() record valid metrics.
+     */
+    @Test
+    public void testRecordBatchedRangingOperation() {
+        WifiMetricsProto.WifiRttLog log;
+
+        mDut.recordBatchedRangingOperation(1, 2);
+        mDut.recordBatchedRangingOperation(3, 5);
+        mDut.recordBatchedRangingOperation(3, 4);
+        mDut.recordRequestLatency(500);
+        mDut.recordRequestLatency(700);
+        mDut.recordRequestLatency(2500);
+
+        log = mDut.consolidateProto();
+
+        collector.checkThat("numBatchedOperations", log.numBatchedOperations, equalTo(2));
+        collector.checkThat("histogramNumRequestsPerOperation.length",
+                log.histogramNumRequestsPerOperation.length, equalTo(2));
+        collector.checkThat("histogramNumRequestsPerOperation[1].start",
+                log.histogramNumRequestsPerOperation[1].start, equalTo(3L));
+        collector.checkThat("histogramNumRequestsPerOperation[1].count",
+                log.histogramNumRequestsPerOperation[1].count, equalTo(2));
+        collector.checkThat("histogramNumPeersPerOperation.length",
+                log.histogramNumPeersPerOperation.length, equalTo(3));
+        collector.checkThat("histogramRequestLatency.length",
+                log.histogramRequestLatency.length, equalTo(2));
+        collector.checkThat("histogramRequestLatency[0].count",
+                log.histogramRequestLatency[0].count, equalTo(2));
+        collector.checkThat("histogramRequestLatency[1].start",
+                log.histogramRequestLatency[1].start, equalTo(2000L));
+        collector.checkThat("histogramRequestLatency[1].count",
+                log.histogramRequestLatency[1].count, equalTo(1));
+
+        mDut.clear();
+        log = mDut.consolidateProto();
+        collector.checkThat("numBatchedOperations (cleared)", log.numBatchedOperations,
+                equalTo(0));
+        collector.checkThat("histogramRequestLatency.length (cleared)",
+                log.histogramRequestLatency.length, equalTo(0));
+    }
+
     private RangingRequest getDummyRangingRequest(int countAp, int countAware) {
         RangingRequest.Builder builder = new RangingRequest.Builder();
         byte[] placeholderMacBase = {0x0, 0x1, 0x2, 0x3, 0x4, 0x5};
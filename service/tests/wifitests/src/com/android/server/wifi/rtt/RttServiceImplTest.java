@@ -34,6 +34,7 @@ import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -1379,6 +1380,149 @@ public class RttServiceImplTest extends WifiBaseTest {
      * Simulate power state change due to doze. Changes the power manager return values and
      * dispatches a broadcast.
      */
+    /**
+     * Validate that compatible pending requests of multiple apps are merged into a single HAL
+     * operation, that the results are de-multiplexed to each app, and that requests with Aware
+     * peers are not merged.
+     */
+    @Test
+    public void testMultiClientBatchedRangingFlow() throws Exception {
+        restartWithMultiClientBatching();
+        IRttCallback callback2 = mock(IRttCallback.class);
+        IRttCallback callback3 = mock(IRttCallback.class);
+        RangingRequest request1 = RttTestUtils.getDummyRangingRequestMcOnly((byte) 1);
+        RangingRequest request2 = RttTestUtils.getDummyRangingRequestMcOnly((byte) 2);
+        RangingRequest request3 = RttTestUtils.getDummyRangingRequestMcOnly((byte) 3);
+        RangingRequest request4 = RttTestUtils.getDummyRangingRequest((byte) 4);
+        Pair<List<RangingResult>, List<RangingResult>> result1 =
+                RttTestUtils.getDummyRangingResults(request1);
+        Pair<List<RangingResult>, List<RangingResult>> result2 =
+                RttTestUtils.getDummyRangingResults(request2);
+        Pair<List<RangingResult>, List<RangingResult>> result3 =
+                RttTestUtils.getDummyRangingResults(request3);
+
+        // (1) request ranging operations from 3 apps: request 1 is dispatched on its own
+        mDut.startRanging(mockIbinder, mPackageName, mFeatureId, null, request1, mockCallback);
+        mDut.fakeUid = mDefaultUid + 1;
+        mDut.startRanging(mockIbinder, mPackageName, mFeatureId, null, request2, callback2);
+        mDut.fakeUid = mDefaultUid + 2;
+        mDut.startRanging(mockIbinder, mPackageName, mFeatureId, null, request3, callback3);
+        mDut.startRanging(mockIbinder, mPackageName, mFeatureId, null, request4, callback3);
+        mMockLooper.dispatchAll();
+
+        verify(mockNative).rangeRequest(mIntCaptor.capture(), eq(request1), eq(true));
+        verify(mockMetrics).recordBatchedRangingOperation(1, 1);
+        verifyWakeupSet(false, 0);
+
+        // (2) results of request 1: requests 2 and 3 are merged into a single operation
+        mDut.onRangingResults(mIntCaptor.getValue(), result1.first);
+        mMockLooper.dispatchAll();
+
+        verify(mockCallback).onRangingResults(result1.second);
+        verifyWakeupCancelled();
+        verify(mockNative, times(2)).rangeRequest(mIntCaptor.capture(), mRequestCaptor.capture(),
+                eq(true));
+        RangingRequest mergedRequest = mRequestCaptor.getValue();
+        assertEquals(2, mergedRequest.mRttPeers.size());
+        assertTrue(mergedRequest.mRttPeers.containsAll(request2.mRttPeers));
+        assertTrue(mergedRequest.mRttPeers.containsAll(request3.mRttPeers));
+        verify(mockMetrics).recordBatchedRangingOperation(2, 2);
+        verifyWakeupSet(false, 0);
+
+        // (3) results of the merged operation are de-multiplexed to each app
+        List<RangingResult> mergedResults = new ArrayList<>(result3.first);
+        mergedResults.addAll(result2.first);
+        mDut.onRangingResults(mIntCaptor.getValue(), mergedResults);
+        mMockLooper.dispatchAll();
+
+        verify(callback2).onRangingResults(result2.second);
+        verify(callback3).onRangingResults(result3.second);
+        verifyWakeupCancelled();
+
+        // (4) request 4 (with an Aware peer) is dispatched on its own
+        verify(mockNative).rangeRequest(mIntCaptor.capture(), eq(request4), eq(true));
+        verify(mockMetrics).recordBatchedRangingOperation(1, 3);
+        verifyWakeupSet(true, 0);
+
+        // verify metrics
+        verify(mockMetrics).recordResult(eq(request1), eq(result1.first), anyInt());
+        verify(mockMetrics).recordResult(eq(request2), eq(result2.first), anyInt());
+        verify(mockMetrics).recordResult(eq(request3), eq(result3.first), anyInt());
+        verify(mockMetrics, times(3)).recordRequestLatency(anyInt());
+        verify(mockMetrics, times(3)).recordOverallStatus(
+                WifiMetricsProto.WifiRttLog.OVERALL_SUCCESS);
+        verifyNoMoreInteractions(callback2);
+
+        // clean-up
+        mDut.onRangingResults(mIntCaptor.getValue(),
+                RttTestUtils.getDummyRangingResults(request4).first);
+        mMockLooper.dispatchAll();
+        verifyWakeupCancelled();
+    }
+
+    /**
+     * Validate that the death of an app whose request was merged into a HAL operation does not
+     * cancel the operation, and that the results are still delivered to the other apps.
+     */
+    @Test
+    public void testMultiClientBatchedRangingBinderDeath() throws Exception {
+        restartWithMultiClientBatching();
+        IRttCallback callback2 = mock(IRttCallback.class);
+        IRttCallback callback3 = mock(IRttCallback.class);
+        RangingRequest request1 = RttTestUtils.getDummyRangingRequestMcOnly((byte) 1);
+        RangingRequest request2 = RttTestUtils.getDummyRangingRequestMcOnly((byte) 2);
+        RangingRequest request3 = RttTestUtils.getDummyRangingRequestMcOnly((byte) 3);
+        Pair<List<RangingResult>, List<RangingResult>> result1 =
+                RttTestUtils.getDummyRangingResults(request1);
+        Pair<List<RangingResult>, List<RangingResult>> result2 =
+                RttTestUtils.getDummyRangingResults(request2);
+        Pair<List<RangingResult>, List<RangingResult>> result3 =
+                RttTestUtils.getDummyRangingResults(request3);
+
+        // (1) request ranging operations from 3 apps and merge requests 2 and 3
+        mDut.startRanging(mockIbinder, mPackageName, mFeatureId, null, request1, mockCallback);
+        mDut.fakeUid = mDefaultUid + 1;
+        mDut.startRanging(mockIbinder, mPackageName, mFeatureId, null, request2, callback2);
+        mDut.fakeUid = mDefaultUid + 2;
+        mDut.startRanging(mockIbinder, mPackageName, mFeatureId, null, request3, callback3);
+        mMockLooper.dispatchAll();
+        verify(mockIbinder, times(3)).linkToDeath(mDeathRecipientCaptor.capture(), anyInt());
+
+        verify(mockNative).rangeRequest(mIntCaptor.capture(), eq(request1), eq(true));
+        mDut.onRangingResults(mIntCaptor.getValue(), result1.first);
+        mMockLooper.dispatchAll();
+        verify(mockNative, times(2)).rangeRequest(mIntCaptor.capture(), mRequestCaptor.capture(),
+                eq(true));
+        assertEquals(2, mRequestCaptor.getValue().mRttPeers.size());
+        int cmdId = mIntCaptor.getValue();
+
+        // (2) app of request 2 (which owns the merged operation) dies: operation isn't cancelled
+        mDeathRecipientCaptor.getAllValues().get(1).binderDied();
+        mMockLooper.dispatchAll();
+        verify(mockNative, never()).rangeCancel(anyInt(), any());
+
+        // (3) results of the merged operation are only delivered to the remaining app
+        List<RangingResult> mergedResults = new ArrayList<>(result2.first);
+        mergedResults.addAll(result3.first);
+        mDut.onRangingResults(cmdId, mergedResults);
+        mMockLooper.dispatchAll();
+
+        verify(callback3).onRangingResults(result3.second);
+        verify(mockMetrics).recordResult(eq(request3), eq(result3.first), anyInt());
+        verify(mockMetrics, never()).recordResult(eq(request2), any(), anyInt());
+        verifyNoMoreInteractions(callback2);
+    }
+
+    private void restartWithMultiClientBatching() {
+        mMockResources.setBoolean(R.bool.config_wifiRttMultiClientBatchingEnabled, true);
+        mDut = new RttServiceImplSpy(mockContext);
+        mDut.fakeUid = mDefaultUid;
+        mDut.start(mMockLooper.getLooper(), mockClock, mockAwareManager, mockNative,
+                mockMetrics, mockPermissionUtil, mWifiSettingsConfigStore);
+        mMockLooper.dispatchAll();
+        assertTrue(mDut.isAvailable());
+    }
+
     private void simulatePowerStateChangeDoze(boolean isDozeOn) {
         when(mMockPowerManager.isDeviceIdleMode()).thenReturn(isDozeOn);
 
@@ -16,9 +16,9 @@
 
 package com.android.server.wifi.util;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
-import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import androidx.test.filters.SmallTest;
@@ -46,7 +46,7 @@ public class ByteArrayRingBufferTest extends WifiBaseTest {
         final byte[] data = {0};
         assertTrue(rb.appendBuffer(data));
         assertEquals(1, rb.getNumBuffers());
-        assertSame(data, rb.getBuffer(0));
+        assertArrayEquals(data, rb.getBuffer(0));
     }
 
     @Test
@@ -57,8 +57,8 @@ public class ByteArrayRingBufferTest extends WifiBaseTest {
         assertTrue(rb.appendBuffer(data1));
         assertTrue(rb.appendBuffer(data2));
         assertEquals(2, rb.getNumBuffers());
-        assertSame(data1, rb.getBuffer(0));
-        assertSame(data2, rb.getBuffer(1));
+        assertArrayEquals(data1, rb.getBuffer(0));
+        assertArrayEquals(data2, rb.getBuffer(1));
     }
 
     @Test
@@ -98,7 +98,7 @@ public class ByteArrayRingBufferTest extends WifiBaseTest {
         final byte[] data2 = {11};
         assertTrue(rb.appendBuffer(data2));
         assertEquals(1, rb.getNumBuffers());
-        assertSame(data2, rb.getBuffer(0));
+        assertArrayEquals(data2, rb.getBuffer(0));
     }
 
     @Test
@@ -112,7 +112,7 @@ public class ByteArrayRingBufferTest extends WifiBaseTest {
         final byte[] data3 = {11, 12, 13, 14, 15, 16};
         assertTrue(rb.appendBuffer(data3));
         assertEquals(1, rb.getNumBuffers());
-        assertSame(data3, rb.getBuffer(0));
+        assertArrayEquals(data3, rb.getBuffer(0));
     }
 
     @Test
@@ -137,8 +137,8 @@ public class ByteArrayRingBufferTest extends WifiBaseTest {
         final byte[] data3 = {11};
         assertTrue(rb.appendBuffer(data3));
         assertEquals(2, rb.getNumBuffers());
-        assertSame(data2, rb.getBuffer(0));
-        assertSame(data3, rb.getBuffer(1));
+        assertArrayEquals(data2, rb.getBuffer(0));
+        assertArrayEquals(data3, rb.getBuffer(1));
     }
 
     @Test
@@ -194,4 +194,89 @@ public class ByteArrayRingBufferTest extends WifiBaseTest {
         rb.resize(MAX_BYTES * 2);
     }
 
+    /** Verifies that an element which wraps around the end of the ring is returned intact. */
+    @Test
+    public void canRetrieveElementWrappingAroundEndOfRing() {
+        final ByteArrayRingBuffer rb = new ByteArrayRingBuffer(MAX_BYTES);
+        final byte[] data1 = {1, 2, 3, 4, 5, 6};
+        final byte[] data2 = {7, 8, 9};
+        final byte[] data3 = {10, 11, 12, 13};
+        assertTrue(rb.appendBuffer(data1));
+        assertTrue(rb.appendBuffer(data2));
+        assertTrue(rb.appendBuffer(data3));
+        assertEquals(2, rb.getNumBuffers());
+        assertArrayEquals(data2, rb.getBuffer(0));
+        assertArrayEquals(data3, rb.getBuffer(1));
+    }
+
+    /** Verifies that the ring keeps a copy of the data, rather than the caller's array. */
+    @Test
+    public void appendCopiesData() {
+        final ByteArrayRingBuffer rb = new ByteArrayRingBuffer(MAX_BYTES);
+        final byte[] data = {1, 2, 3};
+        assertTrue(rb.appendBuffer(data));
+        data[0] = 4;
+        assertArrayEquals(new byte[] {1, 2, 3}, rb.getBuffer(0));
+
+        rb.getBuffer(0)[1] = 5;
+        assertArrayEquals(new byte[] {1, 2, 3}, rb.getBuffer(0));
+    }
+
+    /** Verifies that more elements than the initial index capacity can be held, in order. */
+    @Test
+    public void canHoldManySmallElementsInFifoOrder() {
+        final int maxBytes = 100;
+        final ByteArrayRingBuffer rb = new ByteArrayRingBuffer(maxBytes);
+        for (int i = 0; i < maxBytes * 3; i++) {
+            assertTrue(rb.appendBuffer(new byte[] {(byte) i}));
+        }
+        assertEquals(maxBytes, rb.getNumBuffers());
+        for (int i = 0; i < maxBytes; i++) {
+            assertArrayEquals(new byte[] {(byte) (maxBytes * 2 + i)}, rb.getBuffer(i));
+        }
+    }
+
+    /** Verifies that zero length elements are held. */
+    @Test
+    public void canAddEmptyElement() {
+        final ByteArrayRingBuffer rb = new ByteArrayRingBuffer(MAX_BYTES);
+        final byte[] data = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+        assertTrue(rb.appendBuffer(data));
+        assertTrue(rb.appendBuffer(new byte[0]));
+        assertEquals(2, rb.getNumBuffers());
+        assertArrayEquals(data, rb.getBuffer(0));
+        assertArrayEquals(new byte[0], rb.getBuffer(1));
+    }
+
+    /** Verifies that accessing an element out of the ring throws. */
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getBufferOutOfRangeThrows() {
+        final ByteArrayRingBuffer rb = new ByteArrayRingBuffer(MAX_BYTES);
+        assertTrue(rb.appendBuffer(new byte[] {1}));
+        rb.getBuffer(1);
+    }
+
+    /** Verifies that resize() retains the content of elements which wrapped around the ring. */
+    @Test
+    public void resizeRetainsWrappedElements() {
+        final ByteArrayRingBuffer rb = new ByteArrayRingBuffer(MAX_BYTES);
+        final byte[] data1 = {1, 2, 3, 4, 5, 6};
+        final byte[] data2 = {7, 8, 9};
+        final byte[] data3 = {10, 11, 12, 13};
+        assertTrue(rb.appendBuffer(data1));
+        assertTrue(rb.appendBuffer(data2));
+        assertTrue(rb.appendBuffer(data3));
+
+        rb.resize(MAX_BYTES * 2);
+        final byte[] data4 = {14, 15, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, 26};
+        assertTrue(rb.appendBuffer(data4));
+        assertEquals(2, rb.getNumBuffers());
+        assertArrayEquals(data3, rb.getBuffer(0));
+        assertArrayEquals(data4, rb.getBuffer(1));
+
+        rb.resize(data4.length);
+        assertEquals(1, rb.getNumBuffers());
+        assertArrayEquals(data4, rb.getBuffer(0));
+    }
+
 }
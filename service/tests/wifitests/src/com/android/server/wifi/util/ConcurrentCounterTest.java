@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.util;
+
+import static org.junit.Assert.assertEquals;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.wifi.WifiBaseTest;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests for ConcurrentCounter.
+ */
+@SmallTest
+public class ConcurrentCounterTest extends WifiBaseTest {
+    private static final int NUM_THREADS = 4;
+    private static final int NUM_INCREMENTS_PER_THREAD = 10000;
+
+    /**
+     * Tests incrementing and subtracting a reported count.
+     */
+    @Test
+    public void testIncrementAndSubtract() {
+        ConcurrentCounter counter = new ConcurrentCounter();
+        assertEquals(0, counter.get());
+
+        counter.increment();
+        counter.add(4);
+        int reported = counter.get();
+        assertEquals(5, reported);
+
+        counter.increment();
+        counter.subtract(reported);
+        assertEquals(1, counter.get());
+    }
+
+    /**
+     * Tests that the count saturates to the int range.
+     */
+    @Test
+    public void testSaturation() {
+        ConcurrentCounter counter = new ConcurrentCounter();
+        counter.add(Integer.MAX_VALUE);
+        counter.add(Integer.MAX_VALUE);
+        assertEquals(Integer.MAX_VALUE, counter.get());
+    }
+
+    /**
+     * Tests that no increment is lost when reporting and subtracting the count while other
+     * threads increment it.
+     */
+    @Test
+    public void testConcurrentIncrementsWhileReporting() throws Exception {
+        ConcurrentCounter counter = new ConcurrentCounter();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < NUM_THREADS; i++) {
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < NUM_INCREMENTS_PER_THREAD; j++) {
+                    counter.increment();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        long totalReported = 0;
+        while (threads.stream().anyMatch(Thread::isAlive)) {
+            int reported = counter.get();
+            counter.subtract(reported);
+            totalReported += reported;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        totalReported += counter.get();
+
+        assertEquals(NUM_THREADS * NUM_INCREMENTS_PER_THREAD, totalReported);
+    }
+}
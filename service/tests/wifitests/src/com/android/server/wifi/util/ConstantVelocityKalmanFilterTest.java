@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.wifi.WifiBaseTest;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Unit tests for {@link com.android.server.wifi.util.ConstantVelocityKalmanFilter}.
+ */
+@SmallTest
+public class ConstantVelocityKalmanFilterTest extends WifiBaseTest {
+    private static final double ACCELERATION_STANDARD_DEVIATION = 0.02;
+    private static final double TOLERANCE = 1e-9;
+
+    private int mSteps = 1000;
+    private int mSeed = 314159;
+
+    /**
+     * Sets the state transition and process noise of a generic filter for the given time step.
+     */
+    private void setDeltaTime(KalmanFilter kf, double dt) {
+        kf.mF = new Matrix(2, new double[]{1.0, dt, 0.0, 1.0});
+        Matrix tG = new Matrix(1, new double[]{0.5 * dt * dt, dt});
+        double variance = ACCELERATION_STANDARD_DEVIATION * ACCELERATION_STANDARD_DEVIATION;
+        kf.mQ = tG.dotTranspose(tG).dot(new Matrix(2, new double[]{
+                variance, 0.0,
+                0.0, variance}));
+    }
+
+    private static void assertClose(double expected, double actual) {
+        assertEquals(expected, actual, TOLERANCE * Math.max(1.0, Math.abs(expected)));
+    }
+
+    /**
+     * Test that the filter holds no estimate until initialized, and after a reset.
+     */
+    @Test
+    public void testInitializeAndReset() throws Exception {
+        ConstantVelocityKalmanFilter kf =
+                new ConstantVelocityKalmanFilter(ACCELERATION_STANDARD_DEVIATION);
+        assertFalse(kf.isInitialized());
+        assertNotNull(kf.toString());
+
+        kf.initialize(-60.0, 4.0);
+        assertTrue(kf.isInitialized());
+        assertEquals(-60.0, kf.getValue(), 0.0);
+        assertEquals(0.0, kf.getRate(), 0.0);
+        assertNotNull(kf.toString());
+
+        kf.reset();
+        assertFalse(kf.isInitialized());
+    }
+
+    /**
+     * Test that the filter produces the same estimates as the generic filter with the equivalent
+     * matrices, over random time steps and measurement noise.
+     */
+    @Test
+    public void testMatchesGenericFilter() throws Exception {
+        Random random = new Random(mSeed);
+        double initialVariance = 9.0 * 2.0 * 2.0;
+        double rssi = -60.0;
+
+        ConstantVelocityKalmanFilter kf =
+                new ConstantVelocityKalmanFilter(ACCELERATION_STANDARD_DEVIATION);
+        kf.initialize(rssi, initialVariance);
+        KalmanFilter reference = new KalmanFilter();
+        reference.mH = new Matrix(2, new double[]{1.0, 0.0});
+        reference.mR = new Matrix(1, new double[]{1.0});
+        reference.mx = new Matrix(1, new double[]{rssi, 0.0});
+        reference.mP = new Matrix(2, new double[]{initialVariance, 0.0, 0.0, 0.0});
+
+        for (int i = 0; i < mSteps; i++) {
+            double dt = 0.5 + 5.0 * random.nextDouble();
+            double standardDeviation = 1.0 + 3.0 * random.nextDouble();
+            rssi += random.nextGaussian() * standardDeviation;
+
+            kf.predict(dt);
+            kf.update(rssi, standardDeviation * standardDeviation);
+            setDeltaTime(reference, dt);
+            reference.mR.put(0, 0, standardDeviation * standardDeviation);
+            reference.predict();
+            reference.update(new Matrix(1, new double[]{rssi}));
+
+            assertClose(reference.mx.get(0, 0), kf.getValue());
+            assertClose(reference.mx.get(1, 0), kf.getRate());
+
+            double horizon = 15.0;
+            setDeltaTime(reference, horizon);
+            assertClose(reference.mF.dot(reference.mx).get(0, 0), kf.forecast(horizon));
+        }
+    }
+
+    /**
+     * Test that a singular innovation covariance throws like the generic filter does.
+     */
+    @Test(expected = ArithmeticException.class)
+    public void testUpdateWithSingularCovarianceThrows() throws Exception {
+        ConstantVelocityKalmanFilter kf =
+                new ConstantVelocityKalmanFilter(ACCELERATION_STANDARD_DEVIATION);
+        kf.initialize(-60.0, 0.0);
+        kf.update(-61.0, 0.0);
+    }
+}